@@ -0,0 +1,6 @@
+# Rules added to the release ones for the benchmark build type.
+#
+# The benchmark module runs in the app's process and calls the app's classes by name, so
+# they are kept as they are. Code shrinking of the libraries still applies.
+-keep class com.example.theguardiannews.** { *; }
+-dontobfuscate
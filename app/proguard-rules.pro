@@ -18,4 +18,12 @@
 
 # If you keep the line number information, uncomment this to
 # hide the original source file name.
-#-renamesourcefileattribute SourceFile
\ No newline at end of file
+#-renamesourcefileattribute SourceFile
+
+# src/main/baseline-prof.txt names the classes and methods it lists as they are in the source,
+# and AGP 7.3 does not rewrite it for the obfuscated names, so those classes keep theirs.
+# Unused code is still removed.
+-keepnames class com.example.theguardiannews.** { *; }
+-keepnames class androidx.recyclerview.widget.** { *; }
+-keepnames class okhttp3.** { *; }
+-keepnames class okio.** { *; }
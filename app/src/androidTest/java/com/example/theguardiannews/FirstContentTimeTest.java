@@ -0,0 +1,75 @@
+package com.example.theguardiannews;
+
+import static org.junit.Assert.assertTrue;
+
+import android.content.Context;
+import android.os.Bundle;
+import android.os.SystemClock;
+import android.util.Log;
+
+import androidx.recyclerview.widget.RecyclerView;
+import androidx.test.core.app.ActivityScenario;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.platform.app.InstrumentationRegistry;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Measures the time from launching {@link MainActivity} until the first rows are on screen
+ * when the query has results cached by an earlier run. The cached phase of the loader should
+ * show them well before any network round trip could complete.
+ */
+@RunWith(AndroidJUnit4.class)
+public class FirstContentTimeTest {
+
+    private static final String LOG_TAG = FirstContentTimeTest.class.getSimpleName();
+
+    /** Upper bound for showing cached content, well under a typical network round trip. */
+    private static final long MAX_FIRST_CONTENT_MILLIS = 1500;
+
+    private static final long TIMEOUT_MILLIS = 10000;
+
+    @Test
+    public void cachedResults_areShownBeforeTheNetworkAnswers() {
+        Context context = InstrumentationRegistry.getInstrumentation().getTargetContext();
+
+        // stale entry, so the loader still revalidates after showing it
+        List<News> news = new ArrayList<News>();
+        for (int i = 0; i < 20; i++) {
+            news.add(new News("world/" + i, "World news", "Cached title " + i, "Jane Doe",
+                    1667343600000L, "https://www.theguardian.com/world/" + i));
+        }
+        NewsCache.get(context).put(MainActivity.buildQueryUrls(context, 1).get(0),
+                new NewsCache.Entry(news, "\"cached\"", null, 0, 0));
+
+        long start = SystemClock.elapsedRealtime();
+        ActivityScenario<MainActivity> scenario = ActivityScenario.launch(MainActivity.class);
+        try {
+            final int[] rows = new int[1];
+            long elapsed;
+            do {
+                scenario.onActivity(new ActivityScenario.ActivityAction<MainActivity>() {
+                    @Override
+                    public void perform(MainActivity activity) {
+                        rows[0] = ((RecyclerView) activity.findViewById(R.id.list)).getChildCount();
+                    }
+                });
+                elapsed = SystemClock.elapsedRealtime() - start;
+            } while (rows[0] == 0 && elapsed < TIMEOUT_MILLIS);
+
+            Log.i(LOG_TAG, "Time to first content: " + elapsed + " ms");
+            Bundle results = new Bundle();
+            results.putLong("time_to_first_content_ms", elapsed);
+            InstrumentationRegistry.getInstrumentation().sendStatus(0, results);
+
+            assertTrue("No rows shown", rows[0] > 0);
+            assertTrue("First content took " + elapsed + " ms", elapsed < MAX_FIRST_CONTENT_MILLIS);
+        } finally {
+            scenario.close();
+        }
+    }
+}
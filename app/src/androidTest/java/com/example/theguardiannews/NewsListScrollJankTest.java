@@ -0,0 +1,252 @@
+package com.example.theguardiannews;
+
+import static org.junit.Assert.assertTrue;
+
+import android.annotation.SuppressLint;
+import android.content.Context;
+import android.os.Bundle;
+import android.util.Log;
+import android.view.Choreographer;
+import android.view.LayoutInflater;
+import android.view.View;
+import android.view.ViewGroup;
+import android.widget.ArrayAdapter;
+import android.widget.ListView;
+import android.widget.TextView;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.core.content.ContextCompat;
+import androidx.metrics.performance.FrameData;
+import androidx.metrics.performance.JankStats;
+import androidx.recyclerview.widget.LinearLayoutManager;
+import androidx.recyclerview.widget.RecyclerView;
+import androidx.test.core.app.ActivityScenario;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.platform.app.InstrumentationRegistry;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Scrolls a 1,000 row fixture through the previous ListView + ArrayAdapter list and through
+ * the RecyclerView based {@link NewsAdapter}, recording every frame with {@link JankStats},
+ * and reports the frame time percentiles and jank count of both.
+ */
+@RunWith(AndroidJUnit4.class)
+public class NewsListScrollJankTest {
+
+    private static final String LOG_TAG = NewsListScrollJankTest.class.getSimpleName();
+
+    private static final int ITEMS = 1000;
+    private static final int SCROLL_FRAMES = 600;
+    private static final int SCROLL_STEP_DP = 40;
+
+    @Test
+    public void scroll_listViewVersusRecyclerView() throws InterruptedException {
+        FrameStats legacy = measure(new ListFactory() {
+            @Override
+            public View create(Context context, List<News> news) {
+                ListView listView = new ListView(context);
+                listView.setAdapter(new LegacyNewsAdapter(context, news));
+                return listView;
+            }
+
+            @Override
+            public void scrollBy(View list, int pixels) {
+                ((ListView) list).scrollListBy(pixels);
+            }
+        });
+
+        FrameStats recycler = measure(new ListFactory() {
+            @Override
+            public View create(Context context, List<News> news) {
+                RecyclerView recyclerView = new RecyclerView(context);
+                recyclerView.setLayoutManager(new LinearLayoutManager(context));
+                recyclerView.setHasFixedSize(true);
+                NewsAdapter adapter = new NewsAdapter(context, new NewsAdapter.OnNewsClickListener() {
+                    @Override
+                    public void onNewsClick(News news) {
+                    }
+                });
+                recyclerView.setAdapter(adapter);
+                new NewsStyler(context).style(news);
+                adapter.submitList(news);
+                return recyclerView;
+            }
+
+            @Override
+            public void scrollBy(View list, int pixels) {
+                list.scrollBy(0, pixels);
+            }
+        });
+
+        Log.i(LOG_TAG, "ListView: " + legacy + ", RecyclerView: " + recycler);
+        Bundle results = new Bundle();
+        legacy.addTo(results, "listview");
+        recycler.addTo(results, "recyclerview");
+        InstrumentationRegistry.getInstrumentation().sendStatus(0, results);
+
+        assertTrue(legacy.frames > 0);
+        assertTrue(recycler.frames > 0);
+    }
+
+    private interface ListFactory {
+        View create(Context context, List<News> news);
+
+        void scrollBy(View list, int pixels);
+    }
+
+    private FrameStats measure(final ListFactory factory) throws InterruptedException {
+        final List<News> news = fixture();
+        final FrameStats stats = new FrameStats();
+        final CountDownLatch done = new CountDownLatch(1);
+        final JankStats[] jankStats = new JankStats[1];
+
+        ActivityScenario<MainActivity> scenario = ActivityScenario.launch(MainActivity.class);
+        try {
+            scenario.onActivity(new ActivityScenario.ActivityAction<MainActivity>() {
+                @Override
+                public void perform(MainActivity activity) {
+                    final View list = factory.create(activity, news);
+                    activity.setContentView(list);
+                    final int step = (int) (SCROLL_STEP_DP * activity.getResources().getDisplayMetrics().density);
+
+                    jankStats[0] = JankStats.createAndTrack(activity.getWindow(), new JankStats.OnFrameListener() {
+                        @Override
+                        public void onFrame(@NonNull FrameData frameData) {
+                            stats.add(frameData);
+                        }
+                    });
+
+                    // one scroll step per frame, driven by the display's vsync
+                    Choreographer.getInstance().postFrameCallback(new Choreographer.FrameCallback() {
+                        private int mFrame;
+
+                        @Override
+                        public void doFrame(long frameTimeNanos) {
+                            if (mFrame++ < SCROLL_FRAMES) {
+                                factory.scrollBy(list, step);
+                                Choreographer.getInstance().postFrameCallback(this);
+                            } else {
+                                jankStats[0].setTrackingEnabled(false);
+                                done.countDown();
+                            }
+                        }
+                    });
+                }
+            });
+            assertTrue("Scroll did not finish", done.await(60, TimeUnit.SECONDS));
+        } finally {
+            scenario.close();
+        }
+        return stats;
+    }
+
+    private static List<News> fixture() {
+        String[] sections = {"World news", "Football", "Technology", "Environment", "Life and style"};
+        List<News> news = new ArrayList<News>(ITEMS);
+        for (int i = 0; i < ITEMS; i++) {
+            news.add(new News("fixture/" + i, sections[i % sections.length],
+                    "Fixture headline number " + i + " for the scroll benchmark",
+                    "Author " + (i % 37), 1667343600000L + (i % 28) * 24 * 60 * 60 * 1000L,
+                    "https://www.theguardian.com/fixture/" + i));
+        }
+        return news;
+    }
+
+    /** Frame durations seen by JankStats while scrolling. */
+    private static class FrameStats {
+        private final List<Long> mDurations = new ArrayList<Long>();
+        int frames;
+        int janky;
+
+        synchronized void add(FrameData frameData) {
+            frames++;
+            if (frameData.isJank()) {
+                janky++;
+            }
+            mDurations.add(frameData.getFrameDurationUiNanos());
+        }
+
+        synchronized long percentileMillis(double percentile) {
+            if (mDurations.isEmpty()) {
+                return 0;
+            }
+            Long[] sorted = mDurations.toArray(new Long[0]);
+            Arrays.sort(sorted);
+            int index = (int) Math.min(sorted.length - 1, Math.round(percentile * (sorted.length - 1)));
+            return TimeUnit.NANOSECONDS.toMillis(sorted[index]);
+        }
+
+        void addTo(Bundle bundle, String prefix) {
+            bundle.putInt(prefix + "_frames", frames);
+            bundle.putInt(prefix + "_janky_frames", janky);
+            bundle.putLong(prefix + "_p50_ms", percentileMillis(0.5));
+            bundle.putLong(prefix + "_p90_ms", percentileMillis(0.9));
+            bundle.putLong(prefix + "_p99_ms", percentileMillis(0.99));
+        }
+
+        @Override
+        public String toString() {
+            return frames + " frames, " + janky + " janky, p50 " + percentileMillis(0.5)
+                    + " ms, p90 " + percentileMillis(0.9) + " ms, p99 " + percentileMillis(0.99) + " ms";
+        }
+    }
+
+    /** The ArrayAdapter the news list used before moving to RecyclerView, kept as a baseline. */
+    private static class LegacyNewsAdapter extends ArrayAdapter<News> {
+
+        // the category strings it matched sections against with String.contains
+        private static final String NEWS_CATEGORIES = "World news News Environment";
+        private static final String FOOTBALL_CATEGORIES = "Football ";
+        private static final String TECHNOLOGY_CATEGORIES = "Technology";
+
+        LegacyNewsAdapter(Context context, List<News> news) {
+            super(context, 0, news);
+        }
+
+        @SuppressLint("SetTextI18n")
+        @NonNull
+        @Override
+        public View getView(int position, @Nullable View convertView, @NonNull ViewGroup parent) {
+            TextView[] views;
+            if (convertView == null) {
+                convertView = LayoutInflater.from(getContext()).inflate(R.layout.news_item, parent, false);
+                views = new TextView[]{
+                        convertView.findViewById(R.id.author_text),
+                        convertView.findViewById(R.id.title_text),
+                        convertView.findViewById(R.id.date_text),
+                        convertView.findViewById(R.id.section_text)};
+                convertView.setTag(views);
+            } else {
+                views = (TextView[]) convertView.getTag();
+            }
+            News news = getItem(position);
+            views[0].setText(news.getAuthorText());
+            views[1].setText(news.getTitle());
+            views[2].setText(Utilities.timeConversion(news.getPublishedAt(), NewsTimeFormatter.getDefault()));
+            TextView sectionText = views[3];
+            sectionText.setText(news.getSection());
+
+            int colourId;
+            if (NEWS_CATEGORIES.contains(news.getSection())) {
+                colourId = R.color.news;
+            } else if (FOOTBALL_CATEGORIES.contains(news.getSection())) {
+                colourId = R.color.sports;
+            } else if (TECHNOLOGY_CATEGORIES.contains(news.getSection())) {
+                colourId = R.color.culture;
+            } else {
+                colourId = R.color.unclassified;
+            }
+            sectionText.setTextColor(ContextCompat.getColor(getContext(), colourId));
+            return convertView;
+        }
+    }
+}
@@ -0,0 +1,60 @@
+package com.example.theguardiannews;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * {@link CancellationToken} is handed to the requests of a load, so they can all be abandoned
+ * once the load is no longer wanted. Unlike {@link android.os.CancellationSignal} it tells any
+ * number of requests running at once, such as the sections fetched by {@link NewsFanOut}.
+ */
+public final class CancellationToken {
+
+    private final List<Runnable> mActions = new ArrayList<Runnable>();
+    private boolean mCancelled;
+
+    /**
+     * Whether {@link #cancel()} has been called.
+     */
+    public synchronized boolean isCancelled() {
+        return mCancelled;
+    }
+
+    /**
+     * Run the given action once the token is cancelled, straight away if it already is.
+     */
+    public void onCancel(Runnable action) {
+        synchronized (this) {
+            if (!mCancelled) {
+                mActions.add(action);
+                return;
+            }
+        }
+        action.run();
+    }
+
+    /**
+     * Forget an action given to {@link #onCancel(Runnable)}, once what it stops is over.
+     */
+    public synchronized void remove(Runnable action) {
+        mActions.remove(action);
+    }
+
+    /**
+     * Cancel the token, running every action waiting for it.
+     */
+    public void cancel() {
+        List<Runnable> actions;
+        synchronized (this) {
+            if (mCancelled) {
+                return;
+            }
+            mCancelled = true;
+            actions = new ArrayList<Runnable>(mActions);
+            mActions.clear();
+        }
+        for (Runnable action : actions) {
+            action.run();
+        }
+    }
+}
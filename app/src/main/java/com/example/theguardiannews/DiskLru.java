@@ -0,0 +1,162 @@
+package com.example.theguardiannews;
+
+import android.util.Log;
+
+import java.io.File;
+import java.nio.charset.Charset;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * {@link DiskLru} keeps the index of a directory of cache files, one for each key, in least
+ * recently used order, so the oldest are deleted once the files take more than a byte budget.
+ * {@link NewsCache} and {@link ImageDiskCache} keep their files with one. The index is built
+ * from the files left by a previous run the first time it is used, not when the cache is
+ * created, so a cache created on the main thread does not list and sort its directory there.
+ * Its methods are called with the lock of the cache that owns it held.
+ */
+final class DiskLru {
+
+    private static final String LOG_TAG = DiskLru.class.getSimpleName();
+
+    private final File mDirectory;
+    private final long mMaxBytes;
+
+    // file name -> size in bytes, in least recently used order, null until it is built
+    private LinkedHashMap<String, Long> mIndex;
+    private long mSize;
+
+    /**
+     * @param directory where the files are written, created if missing
+     * @param maxBytes the total size the files may take before the oldest are deleted
+     */
+    DiskLru(File directory, long maxBytes) {
+        mDirectory = directory;
+        mMaxBytes = maxBytes;
+    }
+
+    /**
+     * The file kept for the key, which becomes the most recently used, or null if there is
+     * none.
+     */
+    File get(String key) {
+        String name = fileName(key);
+        // get rather than containsKey so the access order is updated
+        if (index().get(name) == null) {
+            return null;
+        }
+        File file = new File(mDirectory, name);
+        // remember the access so the order survives a restart
+        file.setLastModified(System.currentTimeMillis());
+        return file;
+    }
+
+    /**
+     * The file to write the key's contents to before {@link #commit(String, File)} puts it in
+     * place, or null if the directory cannot be created.
+     */
+    File temp(String key) {
+        if (!mDirectory.exists() && !mDirectory.mkdirs()) {
+            Log.e(LOG_TAG, "Cannot create cache directory " + mDirectory);
+            return null;
+        }
+        return new File(mDirectory, fileName(key) + ".tmp");
+    }
+
+    /**
+     * Put the written temp file in place of the key's file, deleting the oldest files if the
+     * budget is exceeded. False if it could not be renamed, when it is deleted.
+     */
+    boolean commit(String key, File temp) {
+        String name = fileName(key);
+        File file = new File(mDirectory, name);
+        if (!temp.renameTo(file)) {
+            temp.delete();
+            return false;
+        }
+        Map<String, Long> index = index();
+        Long previous = index.put(name, file.length());
+        if (previous != null) {
+            mSize -= previous;
+        }
+        mSize += file.length();
+        trimToSize();
+        return true;
+    }
+
+    /** Delete the key's file. */
+    void remove(String key) {
+        String name = fileName(key);
+        Long size = index().remove(name);
+        if (size != null) {
+            mSize -= size;
+        }
+        new File(mDirectory, name).delete();
+    }
+
+    /** Total bytes the files take. */
+    long size() {
+        index();
+        return mSize;
+    }
+
+    // file name for a key, a hash of it so it is safe on any file system
+    static String fileName(String key) {
+        byte[] bytes = key.getBytes(Charset.forName("UTF-8"));
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-1").digest(bytes);
+            StringBuilder name = new StringBuilder(digest.length * 2);
+            for (byte b : digest) {
+                name.append(Character.forDigit((b >> 4) & 0xf, 16))
+                        .append(Character.forDigit(b & 0xf, 16));
+            }
+            return name.toString();
+        } catch (NoSuchAlgorithmException e) {
+            return Integer.toHexString(Arrays.hashCode(bytes));
+        }
+    }
+
+    // the LRU index, built from the files left by a previous run, oldest access first, the
+    // first time it is needed
+    private Map<String, Long> index() {
+        if (mIndex != null) {
+            return mIndex;
+        }
+        mIndex = new LinkedHashMap<String, Long>(16, 0.75f, true);
+        File[] files = mDirectory.listFiles();
+        if (files == null) {
+            return mIndex;
+        }
+        Arrays.sort(files, new Comparator<File>() {
+            @Override
+            public int compare(File a, File b) {
+                return Long.compare(a.lastModified(), b.lastModified());
+            }
+        });
+        for (File file : files) {
+            if (file.getName().endsWith(".tmp")) {
+                file.delete();
+                continue;
+            }
+            mIndex.put(file.getName(), file.length());
+            mSize += file.length();
+        }
+        trimToSize();
+        return mIndex;
+    }
+
+    private void trimToSize() {
+        Iterator<Map.Entry<String, Long>> eldest = mIndex.entrySet().iterator();
+        while (mSize > mMaxBytes && eldest.hasNext()) {
+            Map.Entry<String, Long> entry = eldest.next();
+            new File(mDirectory, entry.getKey()).delete();
+            mSize -= entry.getValue();
+            eldest.remove();
+        }
+    }
+}
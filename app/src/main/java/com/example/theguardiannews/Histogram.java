@@ -0,0 +1,102 @@
+package com.example.theguardiannews;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * {@link Histogram} keeps the latest values recorded for one measurement in a fixed ring, so
+ * recording is a couple of atomic operations with no lock and no allocation, from any thread.
+ * Percentiles are worked out from a copy of the ring when they are asked for. A snapshot
+ * taken while values are being recorded may see a slot that is about to be overwritten,
+ * which is close enough for a debug panel.
+ */
+final class Histogram {
+
+    private final AtomicLongArray mValues;
+    private final int mMask;
+    // values recorded since the last reset, the next slot to write is this modulo the size
+    private final AtomicLong mRecorded = new AtomicLong();
+
+    /**
+     * @param capacity the latest values kept, rounded up to a power of two
+     */
+    Histogram(int capacity) {
+        int size = Integer.highestOneBit(Math.max(1, capacity - 1)) << 1;
+        mValues = new AtomicLongArray(size);
+        mMask = size - 1;
+    }
+
+    void record(long value) {
+        long slot = mRecorded.getAndIncrement();
+        mValues.set((int) (slot & mMask), value);
+    }
+
+    /** Values recorded since the last reset, including those the ring no longer holds. */
+    long count() {
+        return mRecorded.get();
+    }
+
+    void reset() {
+        mRecorded.set(0);
+    }
+
+    /**
+     * The values the ring holds, sorted, with the number recorded in all.
+     */
+    Snapshot snapshot() {
+        long recorded = mRecorded.get();
+        int kept = (int) Math.min(recorded, mValues.length());
+        long[] values = new long[kept];
+        for (int i = 0; i < kept; i++) {
+            values[i] = mValues.get(i);
+        }
+        Arrays.sort(values);
+        return new Snapshot(values, recorded);
+    }
+
+    /** The values held at one moment, sorted. */
+    static final class Snapshot {
+        private final long[] mValues;
+        final long count;
+
+        Snapshot(long[] sortedValues, long count) {
+            mValues = sortedValues;
+            this.count = count;
+        }
+
+        /** Values the percentiles are worked out from. */
+        int size() {
+            return mValues.length;
+        }
+
+        /**
+         * The smallest value at least the given fraction of the values are no greater than,
+         * or 0 when there are none.
+         *
+         * @param fraction between 0 and 1, e.g. 0.95 for the 95th percentile
+         */
+        long percentile(double fraction) {
+            if (mValues.length == 0) {
+                return 0;
+            }
+            int rank = (int) Math.ceil(fraction * mValues.length);
+            return mValues[Math.min(mValues.length - 1, Math.max(0, rank - 1))];
+        }
+
+        long max() {
+            return mValues.length == 0 ? 0 : mValues[mValues.length - 1];
+        }
+
+        double mean() {
+            if (mValues.length == 0) {
+                return 0;
+            }
+            long sum = 0;
+            for (long value : mValues) {
+                sum += value;
+            }
+            return (double) sum / mValues.length;
+        }
+    }
+}
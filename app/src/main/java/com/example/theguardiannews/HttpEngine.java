@@ -0,0 +1,79 @@
+package com.example.theguardiannews;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Map;
+
+/**
+ * {@link HttpEngine} makes the GET requests behind {@link Utilities#fetchNewsData}, so the
+ * HTTP stack can be swapped or instrumented. Implementations are expected to reuse
+ * connections and to hand back the body already decompressed.
+ */
+public interface HttpEngine {
+
+    /**
+     * Make a GET request for the given URL with the given extra request headers.
+     *
+     * @param token abandons the request when cancelled, closing its connection, may be null
+     * @throws IOException if the URL is malformed, the request failed or it was cancelled
+     */
+    Response get(String url, Map<String, String> headers, CancellationToken token) throws IOException;
+
+    /**
+     * The answer to a request. It must be closed, which releases the connection for reuse.
+     */
+    interface Response extends Closeable {
+        int code();
+
+        /** The value of the given response header, or null if there is none. */
+        String header(String name);
+
+        /** The body, decompressed if the server compressed it. */
+        InputStream body() throws IOException;
+    }
+
+    /** Told about every request once it is over. */
+    interface MetricsListener {
+        void onRequestFinished(Metrics metrics);
+    }
+
+    /**
+     * Where the time of one request went. Times are in milliseconds, -1 when the step did not
+     * happen, such as the DNS lookup and connect of a request made on a reused connection.
+     */
+    final class Metrics {
+        public final String url;
+        public final String protocol;
+        public final boolean connectionReused;
+        public final long dnsMillis;
+        public final long connectMillis;
+        // from the start of the call to the first byte of the response headers
+        public final long ttfbMillis;
+        public final long totalMillis;
+        // body bytes as they came over the wire, before any decompression
+        public final long bytesReceived;
+        public final boolean failed;
+
+        public Metrics(String url, String protocol, boolean connectionReused, long dnsMillis,
+                       long connectMillis, long ttfbMillis, long totalMillis, long bytesReceived,
+                       boolean failed) {
+            this.url = url;
+            this.protocol = protocol;
+            this.connectionReused = connectionReused;
+            this.dnsMillis = dnsMillis;
+            this.connectMillis = connectMillis;
+            this.ttfbMillis = ttfbMillis;
+            this.totalMillis = totalMillis;
+            this.bytesReceived = bytesReceived;
+            this.failed = failed;
+        }
+
+        @Override
+        public String toString() {
+            return protocol + (connectionReused ? " reused" : " new") + " dns=" + dnsMillis
+                    + "ms connect=" + connectMillis + "ms ttfb=" + ttfbMillis + "ms total="
+                    + totalMillis + "ms bytes=" + bytesReceived + (failed ? " failed" : "");
+        }
+    }
+}
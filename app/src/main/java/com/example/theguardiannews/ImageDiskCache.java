@@ -0,0 +1,97 @@
+package com.example.theguardiannews;
+
+import android.util.Log;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * {@link ImageDiskCache} keeps downloaded images on disk as the server sent them, one file
+ * per URL, so an image evicted from memory or shown in an earlier run is decoded again
+ * without going to the network. Files are evicted least recently used first once the byte
+ * budget is exceeded. The files left by an earlier run are only listed when the first image
+ * is looked up, which {@link ThumbnailLoader} does on its executor, not when the cache is
+ * created with the list.
+ */
+public class ImageDiskCache {
+
+    private static final String LOG_TAG = ImageDiskCache.class.getSimpleName();
+
+    // the image files, by their URL
+    private final DiskLru mFiles;
+
+    /**
+     * @param directory where the images are written, created if missing
+     * @param maxBytes the total size the images may take before the oldest are evicted
+     */
+    public ImageDiskCache(File directory, long maxBytes) {
+        mFiles = new DiskLru(directory, maxBytes);
+    }
+
+    /**
+     * Return the image stored for the given URL, or null if there is none.
+     */
+    public synchronized byte[] get(String url) {
+        File file = mFiles.get(url);
+        if (file == null) {
+            return null;
+        }
+        try {
+            return read(file);
+        } catch (IOException e) {
+            Log.e(LOG_TAG, "Problem reading cached image, dropping it", e);
+            mFiles.remove(url);
+            return null;
+        }
+    }
+
+    /**
+     * Store the image for the given URL, evicting old images if needed.
+     */
+    public synchronized void put(String url, byte[] data) {
+        File temp = mFiles.temp(url);
+        if (temp == null) {
+            return;
+        }
+        try {
+            OutputStream out = new FileOutputStream(temp);
+            try {
+                out.write(data);
+            } finally {
+                out.close();
+            }
+        } catch (IOException e) {
+            Log.e(LOG_TAG, "Problem writing cached image", e);
+            temp.delete();
+            return;
+        }
+        if (!mFiles.commit(url, temp)) {
+            Log.e(LOG_TAG, "Cannot rename " + temp);
+        }
+    }
+
+    /** Total bytes currently used by the images. */
+    public synchronized long size() {
+        return mFiles.size();
+    }
+
+    private static byte[] read(File file) throws IOException {
+        InputStream in = new FileInputStream(file);
+        try {
+            ByteArrayOutputStream out = new ByteArrayOutputStream((int) file.length());
+            byte[] buffer = new byte[8192];
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                out.write(buffer, 0, read);
+            }
+            return out.toByteArray();
+        } finally {
+            in.close();
+        }
+    }
+}
@@ -1,41 +1,51 @@
 package com.example.theguardiannews;
 
-import android.app.LoaderManager;
-import android.app.LoaderManager.LoaderCallbacks;
 import android.content.Context;
 import android.content.Intent;
-import android.content.Loader;
 import android.content.SharedPreferences;
 import android.net.ConnectivityManager;
-import android.net.NetworkInfo;
 import android.net.Uri;
 import android.os.Bundle;
+import android.os.Looper;
+import android.os.MessageQueue;
 import android.preference.PreferenceManager;
 import android.view.Menu;
 import android.view.MenuItem;
 import android.view.View;
-import android.widget.AdapterView;
-import android.widget.ListView;
 import android.widget.TextView;
 
+import androidx.annotation.NonNull;
 import androidx.appcompat.app.AppCompatActivity;
+import androidx.appcompat.widget.SearchView;
+import androidx.core.content.ContextCompat;
+import androidx.lifecycle.Observer;
+import androidx.lifecycle.ViewModelProvider;
+import androidx.recyclerview.widget.DividerItemDecoration;
+import androidx.recyclerview.widget.LinearLayoutManager;
+import androidx.recyclerview.widget.RecyclerView;
+
+import com.google.android.material.snackbar.Snackbar;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
 
 public class MainActivity extends AppCompatActivity
-        implements LoaderCallbacks<List<News>>,
-        SharedPreferences.OnSharedPreferenceChangeListener {
+        implements SharedPreferences.OnSharedPreferenceChangeListener {
 
     private static final String LOG_TAG = MainActivity.class.getName();
 
-    /** URL for news data from the Guardian dataset */
-    private static final String BASE_URL =
-            "https://content.guardianapis.com/search?";
+    /** URL for news data from the Guardian dataset, set at build time */
+    static final String BASE_URL = BuildConfig.GUARDIAN_BASE_URL;
 
+    // the key the prefetch is queued under until there is a network
+    private static final String PAGING_KEY = "later-pages";
 
-    // Constant value for the news loader ID. We can choose any integer.
-    private static final int NEWS_LOADER_ID = 1;
 
     // Adapter for the list of news
     private NewsAdapter mAdapter;
@@ -44,181 +54,553 @@ public class MainActivity extends AppCompatActivity
     /** TextView that is displayed when the list is empty */
     private TextView mEmptyStateTextView;
 
+    private LinearLayoutManager mLayoutManager;
+
+    // Fetches the pages after the first one as the user scrolls
+    private NewsPager mPager;
+
+    // Runs the page fetches of mPager
+    private ExecutorService mPageExecutor;
+
+    // Holds the first page across configuration changes
+    private NewsViewModel mViewModel;
+
+    // Follows the networks, and replays the fetches that failed for want of one
+    private NewsConnectivity mConnectivity;
+
+    // Prefetches the next page again once a fetch that found no network can be made, only
+    // over an unmetered network as the user has not asked for it yet
+    private final Runnable mResumePaging = new Runnable() {
+        @Override
+        public void run() {
+            mPager.resume();
+        }
+    };
+
+    // The words of the query page 1 was shown for, which the later pages are fetched with;
+    // read on the pager's thread
+    private volatile String mShownWords;
+
+    // Whether the first page was reported as fully drawn
+    private boolean mReportedFullyDrawn;
+
     @Override
     protected void onCreate(Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
         setContentView(R.layout.activity_main);
 
-        // Find a reference to the {@link ListView} in the layout
-        ListView newsListView = (ListView) findViewById(R.id.list);
+        // Find a reference to the {@link RecyclerView} in the layout
+        RecyclerView newsListView = (RecyclerView) findViewById(R.id.list);
+        mLayoutManager = new LinearLayoutManager(this);
+        newsListView.setLayoutManager(mLayoutManager);
+        newsListView.addItemDecoration(new DividerItemDecoration(this, DividerItemDecoration.VERTICAL));
+
+        // Rows all have the same height and the list only changes through the adapter, so
+        // keep a few more off-screen rows bound and pooled to avoid rebinding on short flings
+        newsListView.setHasFixedSize(true);
+        newsListView.setItemViewCacheSize(getResources().getInteger(R.integer.list_view_cache_size));
+        newsListView.getRecycledViewPool().setMaxRecycledViews(0,
+                getResources().getInteger(R.integer.list_recycled_view_pool_size));
 
         mEmptyStateTextView = (TextView) findViewById(R.id.empty_view);
-        newsListView.setEmptyView(mEmptyStateTextView);
 
-        // Create a new adapter that takes an empty list of news as input
-        mAdapter = new NewsAdapter(this, new ArrayList<News>());
+        // Recording of load and bind timings, switched on from the metrics panel
+        NewsMetrics.get().setEnabled(NewsMetricsActivity.isRecording(this));
+
+        // Create a new adapter with an item click listener, which sends an intent to a web
+        // browser to open a website with more information about the selected news.
+        mAdapter = new NewsAdapter(this, new NewsAdapter.OnNewsClickListener() {
+            @Override
+            public void onNewsClick(News currentNews) {
+                // Convert the String URL into a URI object (to pass into the Intent constructor)
+                Uri newsUri = Uri.parse(currentNews.getLink());
+
+                // Create a new intent to view the news URI
+                Intent websiteIntent = new Intent(Intent.ACTION_VIEW, newsUri);
 
-        // Set the adapter on the {@link ListView}
+                // Send the intent to launch a new activity
+                startActivity(websiteIntent);
+            }
+        });
+
+        // Set the adapter on the {@link RecyclerView}
         // so the list can be populated in the user interface
         newsListView.setAdapter(mAdapter);
 
-        // Obtain a reference to the SharedPreferences file for this app
-        SharedPreferences prefs = PreferenceManager.getDefaultSharedPreferences(this);
-        // And register to be notified of preference changes
-        // So we know when the user has adjusted the query settings
-        prefs.registerOnSharedPreferenceChangeListener(this);
-
-        // Set an item click listener on the ListView, which sends an intent to a web browser
-        // to open a website with more information about the selected news.
-        newsListView.setOnItemClickListener(new AdapterView.OnItemClickListener() {
+        // Page 1 comes from the view model, the pager adds the following pages as the user
+        // scrolls towards the end of the list
+        final Context appContext = getApplicationContext();
+        final NewsStyler styler = new NewsStyler(this);
+        mConnectivity = NewsConnectivity.get(this);
+        mPageExecutor = Executors.newSingleThreadExecutor();
+        mPager = new NewsPager(new NewsPager.PageSource() {
             @Override
-            public void onItemClick(AdapterView<?> adapterView, View view, int position, long l) {
-                // Find the current news that was clicked on
-                News currentNews = mAdapter.getItem(position);
+            public NewsResults fetchPage(final int page) {
+                if (!mConnectivity.isOnline()) {
+                    // asked for again when the user scrolls to it, or prefetched once there
+                    // is a network
+                    mConnectivity.whenReconnected(PAGING_KEY, true, mResumePaging);
+                    return null;
+                }
+                List<String> urls = buildQueryUrls(appContext, page, mShownWords);
+                final NewsCache cache = NewsCache.get(appContext);
+                // results without thumbnails and tags do not replace complete stored copies
+                final NewsFetchPolicy.Plan plan = NewsFetchPolicy.get().plan(pageSize(appContext));
+                final NewsStore store = plan.fields ? NewsStore.get(appContext) : null;
+                // a page dropped by the pager and scrolled back to soon is answered by the memo,
+                // and so is the second page of a batch fetched on a fast link
+                final NewsMemo memo = NewsMemo.get();
+                final NewsMemo.Fetcher fetcher = new NewsMemo.Fetcher() {
+                    @Override
+                    public List<News> fetch(String url, CancellationToken token) {
+                        return Utilities.fetchNewsData(ResilientHttpEngine.get(), url, cache, cache.get(url),
+                                store, token);
+                    }
+                };
+                NewsResults news;
+                if (urls.size() == 1) {
+                    news = fetchLaterPage(memo, fetcher, plan, urls.get(0), page);
+                } else {
+                    // the page of each section, fetched together and merged by time; the
+                    // merged list lasts as long as the longest section's. Each page is in time
+                    // order, but not the feed across pages: page 2 of a busy section can be
+                    // newer than the end of page 1 of a quiet one, and is shown after it. Pages
+                    // keep a fixed place in the list that way, so the pager can release and
+                    // fetch them again.
+                    final AtomicInteger pages = new AtomicInteger(0);
+                    List<News> merged = NewsFanOut.get().fetchAll(urls, new NewsFanOut.Source() {
+                        @Override
+                        public List<News> fetch(String url) {
+                            NewsResults section = fetchLaterPage(memo, fetcher, plan, url, page);
+                            int count = section == null ? NewsResults.UNKNOWN : section.pages;
+                            int longest;
+                            do {
+                                longest = pages.get();
+                            } while (longest != NewsResults.UNKNOWN
+                                    && (count == NewsResults.UNKNOWN || count > longest)
+                                    && !pages.compareAndSet(longest, count));
+                            return section;
+                        }
+                    }, null);
+                    news = merged == null ? null : new NewsResults(merged, NewsResults.UNKNOWN,
+                            plan.pageSize, page, pages.get());
+                }
+                if (news != null) {
+                    styler.style(news);
+                }
+                return news;
+            }
+        }, mPageExecutor, ContextCompat.getMainExecutor(this), new NewsPager.Listener() {
+            @Override
+            public void onWindowChanged(List<News> window) {
+                showWindow(window);
+            }
+        }, getResources().getInteger(R.integer.paging_prefetch_distance),
+                getResources().getInteger(R.integer.paging_max_pages));
 
-                // Convert the String URL into a URI object (to pass into the Intent constructor)
-                Uri earthquakeUri = Uri.parse(currentNews.getLink());
+        newsListView.addOnScrollListener(new RecyclerView.OnScrollListener() {
+            @Override
+            public void onScrolled(@NonNull RecyclerView recyclerView, int dx, int dy) {
+                int first = mLayoutManager.findFirstVisibleItemPosition();
+                if (first != RecyclerView.NO_POSITION) {
+                    mPager.onScrolled(first, recyclerView.getChildCount(), mAdapter.getItemCount());
+                }
+            }
+        });
 
-                // Create a new intent to view the earthquake URI
-                Intent websiteIntent = new Intent(Intent.ACTION_VIEW, earthquakeUri);
+        // The view model survives configuration changes, so a recreated activity is handed
+        // the rows it had and the query is only loaded again once it changes
+        mViewModel = new ViewModelProvider(this).get(NewsViewModel.class);
+        mViewModel.getNews().observe(this, new Observer<List<News>>() {
+            @Override
+            public void onChanged(List<News> news) {
+                showFirstPage(news);
+            }
+        });
+        mViewModel.isLoading().observe(this, new Observer<Boolean>() {
+            @Override
+            public void onChanged(Boolean loading) {
+                // a failed fetch with nothing to show ends the loading too
+                if (!loading) {
+                    findViewById(R.id.loading_indicator).setVisibility(View.GONE);
+                    reportFullyDrawnOnce();
+                } else if (mAdapter.getItemCount() == 0) {
+                    // loading again once a network appeared, in place of the error
+                    mEmptyStateTextView.setVisibility(View.GONE);
+                    findViewById(R.id.loading_indicator).setVisibility(View.VISIBLE);
+                }
+            }
+        });
+        mViewModel.getError().observe(this, new Observer<NewsFetchException.Reason>() {
+            @Override
+            public void onChanged(NewsFetchException.Reason reason) {
+                if (reason != null) {
+                    showError(reason);
+                }
+            }
+        });
+        mViewModel.setQuery(currentQuery(this));
 
-                // Send the intent to launch a new activity
-                startActivity(websiteIntent);
+        // Whatever the first frame does not need waits until the main thread is idle after it
+        Looper.myQueue().addIdleHandler(new MessageQueue.IdleHandler() {
+            @Override
+            public boolean queueIdle() {
+                if (!isDestroyed()) {
+                    onFirstFrameIdle();
+                }
+                return false;
             }
         });
+    }
+
+    // the start-up work that can wait until the first rows are on screen
+    private void onFirstFrameIdle() {
+        // Register to be notified of preference changes
+        // So we know when the user has adjusted the query settings
+        PreferenceManager.getDefaultSharedPreferences(this).registerOnSharedPreferenceChangeListener(this);
 
-        // Get a reference to the ConnectivityManager to check state of network connectivity
+        // What the connection type says of its speed, until requests over it tell more. The
+        // load itself fails straight away without a network, and is made again by the view
+        // model once there is one.
         ConnectivityManager connMgr = (ConnectivityManager)
                 getSystemService(Context.CONNECTIVITY_SERVICE);
+        NewsFetchPolicy.get().onLinkKnown(NewsFetchPolicy.linkKbps(connMgr));
 
-        // Get details on the currently active default data network
-        NetworkInfo networkInfo = connMgr.getActiveNetworkInfo();
+        // Keep the chosen sections fetched in the background, so opening the app can be
+        // answered from the store
+        NewsSyncWorker.schedule(this);
+    }
 
-        // If there is a network connection, fetch data
-        if (networkInfo != null && networkInfo.isConnected()) {
-            // Get a reference to the LoaderManager, in order to interact with loaders.
-            LoaderManager loaderManager = getLoaderManager();
+    // a page after the first of one section, from the batch the plan fetches it in, with the
+    // pages of the list's size the section has
+    private static NewsResults fetchLaterPage(NewsMemo memo, NewsMemo.Fetcher fetcher,
+                                              NewsFetchPolicy.Plan plan, String url, int page) {
+        List<News> batch = memo.fetch(plan.batchUrl(url, page), null, fetcher);
+        return batch == null ? null : NewsResults.page(plan.pageOf(batch, page), batch, page, plan.pageSize);
+    }
 
-            // Initialize the loader. Pass in the int ID constant defined above and pass in null for
-            // the bundle. Pass in this activity for the LoaderCallbacks parameter (which is valid
-            // because this activity implements the LoaderCallbacks interface).
-            loaderManager.initLoader(NEWS_LOADER_ID, null, this);
-        } else {
-            // Otherwise, display error
-            // First, hide loading indicator so error message will be visible
-            View loadingIndicator = findViewById(R.id.loading_indicator);
-            loadingIndicator.setVisibility(View.GONE);
+    // tells the system the first page is loaded, which ends the time to full display the
+    // startup benchmarks measure
+    private void reportFullyDrawnOnce() {
+        if (!mReportedFullyDrawn) {
+            mReportedFullyDrawn = true;
+            reportFullyDrawn();
+        }
+    }
+
+    // tells why the fetch failed: in place of the list when there is nothing to show,
+    // otherwise below the rows already shown, which may be old, once rather than again after
+    // every rotation
+    private void showError(NewsFetchException.Reason reason) {
+        int message = errorMessage(reason);
+        if (mAdapter.getItemCount() == 0) {
+            mEmptyStateTextView.setText(message);
+            mEmptyStateTextView.setVisibility(View.VISIBLE);
+        } else if (mViewModel.tellError()) {
+            Snackbar.make(findViewById(R.id.list), message, Snackbar.LENGTH_LONG).show();
+        }
+    }
 
-            // Update empty state with no connection error message
-            mEmptyStateTextView.setText(R.string.no_internet);
+    /**
+     * The message telling the user why the news could not be fetched.
+     */
+    static int errorMessage(NewsFetchException.Reason reason) {
+        switch (reason) {
+            case OFFLINE:
+                return R.string.no_internet;
+            case TIMEOUT:
+                return R.string.server_timeout;
+            case UNAVAILABLE:
+                return R.string.server_unavailable;
+            case BAD_RESPONSE:
+                return R.string.bad_response;
+            default:
+                return R.string.no_server;
         }
     }
 
+    @Override
+    protected void onDestroy() {
+        super.onDestroy();
+        PreferenceManager.getDefaultSharedPreferences(this).unregisterOnSharedPreferenceChangeListener(this);
+        mConnectivity.cancel(PAGING_KEY, mResumePaging);
+        mPageExecutor.shutdownNow();
+    }
+
+    // shows the pager's rows, keeping the top visible article in place when pages are
+    // added or released above it
+    private void showWindow(final List<News> window) {
+        final int first = mLayoutManager.findFirstVisibleItemPosition();
+        View top = mLayoutManager.findViewByPosition(first);
+        final int offset = top == null ? 0 : top.getTop();
+        final long anchorId = first == RecyclerView.NO_POSITION ? RecyclerView.NO_ID : mAdapter.getItemId(first);
+
+        // the difference is worked out in the background, the callback runs once it is applied
+        mAdapter.submitList(window, new Runnable() {
+            @Override
+            public void run() {
+                mEmptyStateTextView.setVisibility(window.isEmpty() ? View.VISIBLE : View.GONE);
+                if (anchorId == RecyclerView.NO_ID) {
+                    return;
+                }
+                for (int i = 0; i < window.size(); i++) {
+                    if (NewsAdapter.rowId(window.get(i)) == anchorId) {
+                        // only when rows above it were added or released
+                        if (i != first) {
+                            mLayoutManager.scrollToPositionWithOffset(i, offset);
+                        }
+                        return;
+                    }
+                }
+            }
+        });
+    }
+
     @Override
     public void onSharedPreferenceChanged(SharedPreferences prefs, String key) {
-        if (key.equals(getString(R.string.sections_key)) ||
-                key.equals(getString(R.string.requests_key))){
-            mAdapter.clear();
+        if (key.equals(getString(R.string.selected_sections_key)) ||
+                key.equals(getString(R.string.requests_key)) ||
+                key.equals(getString(R.string.search_key))){
+            // Keep showing the current results until the new query delivers, and only show
+            // the loading indicator when there is nothing on screen
+            if (mAdapter.getItemCount() == 0) {
+                // Hide the empty state text view as the loading indicator will be displayed
+                mEmptyStateTextView.setVisibility(View.GONE);
+
+                View loadingIndicator = findViewById(R.id.loading_indicator);
+                loadingIndicator.setVisibility(View.VISIBLE);
+            }
 
-            // Hide the empty state text view as the loading indicator will be displayed
-            mEmptyStateTextView.setVisibility(View.GONE);
+            // Requery the Guardian as the query settings have been updated, cancelling the
+            // load of the previous settings; an open search box keeps its words
+            mViewModel.onSettingsChanged();
+        }
+    }
 
-            // Show the loading indicator while new data is being fetched
-            View loadingIndicator = findViewById(R.id.loading_indicator);
-            loadingIndicator.setVisibility(View.VISIBLE);
+    /**
+     * The URL the news is asked for from: {@link #BASE_URL}, unless a debug build was pointed
+     * at another server, such as a local stand-in for the Guardian, in the preferences.
+     */
+    static String baseUrl(Context context) {
+        if (BuildConfig.DEBUG) {
+            String url = PreferenceManager.getDefaultSharedPreferences(context)
+                    .getString(context.getString(R.string.base_url_key), null);
+            if (url != null && !url.isEmpty()) {
+                return url;
+            }
+        }
+        return BASE_URL;
+    }
 
-            // Restart the loader to requery the Guardian as the query settings have been updated
-            getLoaderManager().restartLoader(NEWS_LOADER_ID, null, this);
+    /**
+     * The first page of the results of the current settings.
+     */
+    static NewsRepository.Query currentQuery(Context context) {
+        return currentQuery(context, searchWords(context));
+    }
+
+    /**
+     * The first page of the results of the current settings, searching for the given words
+     * instead of those in the settings, or for none if they are null.
+     */
+    static NewsRepository.Query currentQuery(Context context, String words) {
+        return new NewsRepository.Query(buildQueryUrls(context, 1, words), selectedSections(context),
+                words, pageSize(context));
+    }
+
+    /**
+     * The sections chosen in the settings as sorted sections_key values, or just "all" when
+     * every section is wanted. Until the settings are opened, the single section chosen
+     * before several could be is used.
+     */
+    static List<String> selectedSections(Context context) {
+        SharedPreferences sharedPrefs = PreferenceManager.getDefaultSharedPreferences(context);
+        String all = context.getString(R.string.all);
+        Set<String> chosen = sharedPrefs.getStringSet(context.getString(R.string.selected_sections_key), null);
+        if (chosen == null) {
+            chosen = Collections.singleton(sharedPrefs.getString(context.getString(R.string.sections_key), all));
         }
+        if (chosen.isEmpty() || chosen.contains(all)) {
+            return Collections.singletonList(all);
+        }
+        return new ArrayList<String>(new TreeSet<String>(chosen));
     }
 
-    @Override
-    public Loader<List<News>> onCreateLoader(int i, Bundle bundle) {
-        // onCreateLoader instantiates and returns a new Loader for the given ID
-        SharedPreferences sharedPrefs = PreferenceManager.getDefaultSharedPreferences(this);
-        String section = sharedPrefs.getString(getString(R.string.sections_key), getString(R.string.all));
-        String keyWords = "";
+    /**
+     * The words searched for in the settings, or null when there are none.
+     */
+    static String searchWords(Context context) {
+        SharedPreferences sharedPrefs = PreferenceManager.getDefaultSharedPreferences(context);
+        String keyWords = sharedPrefs.getString(context.getString(R.string.search_key), context.getString(R.string.none));
+        if (keyWords.equals(context.getString(R.string.none)) || keyWords.trim().isEmpty()) {
+            return null;
+        }
+        return keyWords;
+    }
 
-        if (!sharedPrefs.getString(getString(R.string.search_key), getString(R.string.none)).equals(getString(R.string.none))) {
-            keyWords = sharedPrefs.getString(getString(R.string.search_key), getString(R.string.none));
+    /**
+     * The number of items requested per page in the settings.
+     */
+    static int pageSize(Context context) {
+        SharedPreferences sharedPrefs = PreferenceManager.getDefaultSharedPreferences(context);
+        String requests = sharedPrefs.getString(context.getString(R.string.requests_key), context.getString(R.string.default_request_number));
+        try {
+            return Integer.parseInt(requests.trim());
+        } catch (NumberFormatException e) {
+            return Integer.parseInt(context.getString(R.string.default_request_number));
         }
-        if (!keyWords.equals("")) {
-            keyWords = searchStringFormatter(keyWords);
+    }
+
+    /**
+     * Build the Guardian query URLs for the given page of the current settings' results, one
+     * for each section chosen.
+     */
+    static List<String> buildQueryUrls(Context context, int page) {
+        return buildQueryUrls(context, page, searchWords(context));
+    }
+
+    /**
+     * Build the Guardian query URLs for the given page of the current settings' results
+     * for the given search words, or for none if they are null.
+     */
+    static List<String> buildQueryUrls(Context context, int page, String words) {
+        NewsMetrics metrics = NewsMetrics.get();
+        NewsMetrics.beginSection("MainActivity.buildQueryUrls");
+        long start = metrics.start();
+        try {
+            List<String> sections = selectedSections(context);
+            List<String> urls = new ArrayList<String>(sections.size());
+            for (String section : sections) {
+                urls.add(buildQueryUrl(context, section, sections.size() > 1, page, words));
+            }
+            return urls;
+        } finally {
+            metrics.stop(NewsMetrics.Stat.URL_BUILD, start);
+            NewsMetrics.endSection();
+        }
+    }
+
+    /**
+     * Build the Guardian query URL for the given page of a section's results with the given
+     * search words and the number of items currently chosen in the settings.
+     *
+     * @param merged whether the results are merged with other sections' by publication time,
+     *               so they must come newest first
+     * @param words the words searched for, or null if there are none
+     */
+    private static String buildQueryUrl(Context context, String section, boolean merged, int page, String words) {
+        SharedPreferences sharedPrefs = PreferenceManager.getDefaultSharedPreferences(context);
+        String keyWords = "";
+        if (words != null) {
+            keyWords = searchStringFormatter(words, context.getString(R.string.AND));
         }
 
         // Build url
-        Uri baseUri = Uri.parse(BASE_URL);
+        Uri baseUri = Uri.parse(baseUrl(context));
 
         Uri.Builder builder = baseUri.buildUpon();
 
-        if (!section.equals(getString(R.string.all))) {
-            builder.appendQueryParameter(getString(R.string.section), section);
+        if (!section.equals(context.getString(R.string.all))) {
+            builder.appendQueryParameter(context.getString(R.string.section), section);
 
         }
 
-        if (section.equals(getString(R.string.news)) && keyWords.equals("")) {
-            builder.appendQueryParameter(getString(R.string.order_by), getString(R.string.relevance));
+        // the merge by publication time needs every section's results newest first
+        if (merged) {
+            builder.appendQueryParameter(context.getString(R.string.order_by), context.getString(R.string.newest));
+        } else if (section.equals(context.getString(R.string.news)) && keyWords.equals("")) {
+            builder.appendQueryParameter(context.getString(R.string.order_by), context.getString(R.string.relevance));
         }
 
-        builder.appendQueryParameter(getString(R.string.show_fields), getString(R.string.thumbnail));
-        builder.appendQueryParameter(getString(R.string.page_size), sharedPrefs.getString(getString(R.string.requests_key), getString(R.string.default_request_number)));
+        if (!keyWords.equals("")) {
+            builder.appendQueryParameter(context.getString(R.string.q), keyWords);
+        }
 
-        builder.appendQueryParameter(getString(R.string.show_tags), getString(R.string.contributor));
+        builder.appendQueryParameter(context.getString(R.string.show_fields), context.getString(R.string.thumbnail));
+        builder.appendQueryParameter(context.getString(R.string.page_size), sharedPrefs.getString(context.getString(R.string.requests_key), context.getString(R.string.default_request_number)));
 
-        builder.appendQueryParameter(getString(R.string.api_key), getString(R.string.key_api));
+        builder.appendQueryParameter(context.getString(R.string.show_tags), context.getString(R.string.contributor));
 
-//        return builder.toString();
-        return new NewsLoader(this, builder.toString());
-    }
+        builder.appendQueryParameter(context.getString(R.string.page), String.valueOf(page));
 
-    // a method to remove unwanted spaces from the user's search string and insert "AND" between words to allow for better searching
-    private String searchStringFormatter(String keyWords) {
-        while (keyWords.contains("  ")) {
-            keyWords = keyWords.replace("  ", " ");
-        }
-        while (keyWords.startsWith(" ")) {
-            keyWords = keyWords.substring(1);
-        }
-        while (keyWords.endsWith(" ")) {
-            keyWords = keyWords.substring(0, keyWords.length() - 1);
+        builder.appendQueryParameter(context.getString(R.string.api_key), context.getString(R.string.key_api));
 
-        }
-        if (keyWords.equals(" ")) {
-            keyWords = "";
-        }
+        return builder.toString();
+    }
 
-        if (keyWords.contains(" ")) {
-            keyWords = keyWords.replace(" ", " " + getString(R.string.AND) + " ");
+    // a method to remove unwanted spaces from the user's search string and insert "AND" between
+    // words to allow for better searching, in one pass over the string
+    static String searchStringFormatter(String keyWords, String and) {
+        StringBuilder formatted = new StringBuilder(keyWords.length() + 8);
+        for (String word : NewsSearch.tokenize(keyWords)) {
+            if (formatted.length() > 0) {
+                formatted.append(' ').append(and).append(' ');
+            }
+            formatted.append(word);
         }
-
-        return keyWords;
+        return formatted.toString();
     }
 
-    @Override
-    public void onLoadFinished(Loader<List<News>> loader, List<News> news) {
+    private void showFirstPage(List<News> news) {
         // Hide loading indicator because the data has been loaded
         View loadingIndicator = findViewById(R.id.loading_indicator);
         loadingIndicator.setVisibility(View.GONE);
 
-        // Set empty state text to display "No news found."
-        mEmptyStateTextView.setText(R.string.returned_no_results);
-
-        // If there is a valid list of {@link News}s, then add them to the adapter's
-        // data set. This will trigger the ListView to update.
-        if (news != null && !news.isEmpty()) {
-            mAdapter.addAll(news);
+        // Bring the adapter's data set in line with the list of {@link News}s. Only the rows
+        // that changed are touched, so the cached results shown first are kept in place when
+        // the fresh ones arrive. A failed fetch keeps them, as it leaves the list unchanged.
+        // The pager takes it as page 1 and passes the rows on to the adapter.
+        if (news != null) {
+            // Set empty state text to display "No news found."
+            mEmptyStateTextView.setText(R.string.returned_no_results);
+            mShownWords = mViewModel.getQuery().words;
+            mPager.deliverFirstPage(mViewModel.getQuery().getUrls().toString(), news);
         }
     }
 
-    @Override
-    public void onLoaderReset(Loader<List<News>> loader) {
-        // Loader reset, so we can clear out our existing data.
-        mAdapter.clear();
-    }
-
     @Override
     public boolean onCreateOptionsMenu(Menu menu) {
         getMenuInflater().inflate(R.menu.settings_icon, menu);
+        // the metrics panel is a tool for looking into slow loads, not part of the app
+        menu.findItem(R.id.action_metrics).setVisible(BuildConfig.DEBUG);
+
+        // The results follow the typing; the view model waits for it to pause before asking
+        // the server, and answers words it has results for straight away
+        MenuItem searchItem = menu.findItem(R.id.action_search);
+        final SearchView searchView = (SearchView) searchItem.getActionView();
+        // what was typed before the activity was recreated
+        String searchText = mViewModel.getSearchText();
+        if (searchText != null) {
+            searchItem.expandActionView();
+            searchView.setQuery(searchText, false);
+        }
+        searchItem.setOnActionExpandListener(new MenuItem.OnActionExpandListener() {
+            @Override
+            public boolean onMenuItemActionExpand(MenuItem item) {
+                return true;
+            }
+
+            @Override
+            public boolean onMenuItemActionCollapse(MenuItem item) {
+                mViewModel.closeSearch();
+                return true;
+            }
+        });
+        searchView.setOnQueryTextListener(new SearchView.OnQueryTextListener() {
+            @Override
+            public boolean onQueryTextSubmit(String query) {
+                mViewModel.submitSearch(query);
+                // hides the keyboard so the results can be seen
+                searchView.clearFocus();
+                return true;
+            }
+
+            @Override
+            public boolean onQueryTextChange(String newText) {
+                mViewModel.search(newText);
+                return true;
+            }
+        });
         return true;
     }
 
@@ -229,6 +611,9 @@ public class MainActivity extends AppCompatActivity
             Intent settingsIntent = new Intent(this, NewsSettingsActivity.class);
             startActivity(settingsIntent);
             return true;
+        } else if (id == R.id.action_metrics) {
+            startActivity(new Intent(this, NewsMetricsActivity.class));
+            return true;
         }
         return super.onOptionsItemSelected(item);
     }
@@ -0,0 +1,38 @@
+package com.example.theguardiannews;
+
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * {@link NamePool} hands out one shared instance of each section and contributor name, so the
+ * thousands of {@link News} items of a feed hold a few hundred distinct strings rather than
+ * a copy each. Unlike {@link String#intern()} the pool is bounded: once full, new names are
+ * returned as they are.
+ */
+final class NamePool {
+
+    /** Distinct names kept, far more than the sections and contributors of a feed. */
+    private static final int MAX_NAMES = 8192;
+
+    private static final ConcurrentHashMap<String, String> sNames = new ConcurrentHashMap<String, String>();
+
+    private NamePool() {
+    }
+
+    /**
+     * Return the pooled instance equal to the given name, adding it if there is none yet.
+     */
+    static String intern(String name) {
+        if (name == null || name.isEmpty()) {
+            return "";
+        }
+        String pooled = sNames.get(name);
+        if (pooled != null) {
+            return pooled;
+        }
+        if (sNames.size() >= MAX_NAMES) {
+            return name;
+        }
+        pooled = sNames.putIfAbsent(name, name);
+        return pooled != null ? pooled : name;
+    }
+}
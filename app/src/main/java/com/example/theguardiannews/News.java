@@ -1,41 +1,118 @@
 package com.example.theguardiannews;
 
 
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
 /**
- * {@link News} represents a single News item.
- * Each object has 4 properties: title, section, author, and date
+ * {@link News} represents a single article, with every contributor credited for it.
+ * Each object has 8 properties: id, section id, section, title, authors, publication time,
+ * link and thumbnail. Section and contributor names repeat across a feed, so they are
+ * shared through {@link NamePool}; the date shown is worked out from the publication time.
  */
 public class News {
 
+    private static final String[] NO_AUTHORS = new String[0];
+
+    // The Guardian id of the article, e.g. world/2022/nov/01/some-headline, stable across
+    // fetches and the key of the article everywhere in the app
+    private final String mId;
+
+    // The Guardian id of the section, e.g. world, or "" if it is not known
+    private final String mSectionId;
+
     // The section of that particular News item
-    private String mSection;
+    private final String mSection;
 
     // The title of that News item
-    private String mTitle;
+    private final String mTitle;
 
-    // The author of the News item
-    private String mAuthor;
+    // The contributors of the News item, in the order the Guardian lists them
+    private final String[] mAuthors;
 
-    // The date in which the News item was published
-    private String mDate;
+    // The time the News item was published, in milliseconds since the epoch, or 0
+    private final long mPublishedAt;
 
     // The link to the news article on the Guardian website
-    private String mLink;
+    private final String mLink;
+
+    // The URL of the article's thumbnail image, or "" if it has none
+    private final String mThumbnail;
+
+    // How the row is displayed, worked out once on a background thread by NewsStyler. The
+    // author and date texts are null until then.
+    private int mColour;
+    private String mSectionLabel;
+    private String mAuthorText;
+    private String mDateText;
 
     /**
-     * Create a new News object.
+     * Create a new News object with a single contributor.
+     * @param vId is the id of the article in the Guardian API
      * @param vSection is the section in which the News object belongs(eg. Technology)
      * @param vTitle is the title of the News object
      * @param vAuthor is the author of the News object
-     * @param vDate is the date in which the News object was published
+     * @param vPublishedAt is the time the article was published, in milliseconds since the epoch
      * @param vLink is the link to the news article on the Guardian website.
      */
-    public News(String vSection, String vTitle, String vAuthor, String vDate, String vLink){
-        mSection = vSection;
+    public News(String vId, String vSection, String vTitle, String vAuthor, long vPublishedAt,
+                String vLink){
+        this(vId, "", vSection, vTitle, Collections.singletonList(vAuthor), vPublishedAt, vLink, "");
+    }
+
+    /**
+     * Create a new News object with its section id, contributors and thumbnail.
+     * @param vSectionId is the id of the section in the Guardian API (eg. technology)
+     * @param vAuthors are the contributors of the article, possibly none
+     * @param vThumbnail is the URL of the article's thumbnail image, or "" if it has none
+     */
+    public News(String vId, String vSectionId, String vSection, String vTitle, List<String> vAuthors,
+                long vPublishedAt, String vLink, String vThumbnail){
+        mId = vId;
+        mSectionId = NamePool.intern(vSectionId);
+        mSection = NamePool.intern(vSection);
         mTitle = vTitle;
-        mAuthor = vAuthor;
-        mDate = vDate;
+        if (vAuthors.isEmpty()) {
+            mAuthors = NO_AUTHORS;
+        } else {
+            mAuthors = new String[vAuthors.size()];
+            for (int i = 0; i < mAuthors.length; i++) {
+                mAuthors[i] = NamePool.intern(vAuthors.get(i));
+            }
+        }
+        mPublishedAt = vPublishedAt;
         mLink = vLink;
+        mThumbnail = vThumbnail;
+        mSectionLabel = mSection;
+    }
+
+    /**
+     * Set how the News item is displayed.
+     * @param vColour is the colour of the section and author text
+     * @param vSectionLabel is the section name as shown, possibly shortened
+     * @param vAuthorText is the authors as shown, empty when there is nobody to credit
+     * @param vDateText is the publication date as shown, empty when it is not known
+     */
+    void setDisplay(int vColour, String vSectionLabel, String vAuthorText, String vDateText) {
+        mColour = vColour;
+        mSectionLabel = vSectionLabel;
+        mAuthorText = vAuthorText;
+        mDateText = vDateText;
+    }
+
+    /**
+     * Get the Guardian id of the article
+     */
+    public String getId() {
+        return mId;
+    }
+
+    /**
+     * Get the Guardian id of the section of the News item, or "" if it is not known
+     */
+    public String getSectionId() {
+        return mSectionId;
     }
 
     /**
@@ -53,17 +130,32 @@ public class News {
     }
 
     /**
-     * Get the author of the News item
+     * Get the contributors of the News item, which cannot be changed
+     */
+    public List<String> getAuthors() {
+        return Collections.unmodifiableList(Arrays.asList(mAuthors));
+    }
+
+    /**
+     * Get the number of contributors of the News item
      */
-    public String getAuthor() {
-        return mAuthor;
+    public int getAuthorCount() {
+        return mAuthors.length;
     }
 
     /**
-     * Get the date of the News item
+     * Get the contributor of the News item at the given position
      */
-    public String getDate() {
-        return mDate;
+    public String getAuthor(int index) {
+        return mAuthors[index];
+    }
+
+    /**
+     * Get the time the News item was published, in milliseconds since the epoch,
+     * or 0 if it is not known
+     */
+    public long getPublishedAt() {
+        return mPublishedAt;
     }
 
     /**
@@ -71,5 +163,55 @@ public class News {
      */
     public String getLink() { return mLink;}
 
+    /**
+     * Get the URL of the thumbnail image of the News item, or "" if it has none
+     */
+    public String getThumbnail() {
+        return mThumbnail;
+    }
+
+    /**
+     * Get the colour the section and author of the News item are shown in
+     */
+    public int getColour() {
+        return mColour;
+    }
+
+    /**
+     * Get the section name as shown in the list
+     */
+    public String getSectionLabel() {
+        return mSectionLabel;
+    }
+
+    /**
+     * Get the authors as shown in the list
+     */
+    public String getAuthorText() {
+        return mAuthorText != null ? mAuthorText : joinedAuthors();
+    }
+
+    /**
+     * Get the publication date as shown in the list when it is not recent
+     */
+    public String getDateText() {
+        return mDateText != null ? mDateText
+                : Utilities.timeConversion(mPublishedAt, NewsTimeFormatter.getDefault());
+    }
+
+    // the contributors separated by commas, the only one as it is
+    private String joinedAuthors() {
+        if (mAuthors.length == 1) {
+            return mAuthors[0];
+        }
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < mAuthors.length; i++) {
+            if (i > 0) {
+                text.append(", ");
+            }
+            text.append(mAuthors[i]);
+        }
+        return text.toString();
+    }
 
 }
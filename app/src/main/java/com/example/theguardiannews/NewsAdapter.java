@@ -1,97 +1,151 @@
 package com.example.theguardiannews;
 
 
-import android.annotation.SuppressLint;
 import android.content.Context;
 import android.view.LayoutInflater;
 import android.view.View;
 import android.view.ViewGroup;
-import android.widget.ArrayAdapter;
+import android.widget.ImageView;
 import android.widget.TextView;
 
 import androidx.annotation.NonNull;
-import androidx.annotation.Nullable;
-import androidx.core.content.ContextCompat;
-
-import java.util.List;
+import androidx.recyclerview.widget.DiffUtil;
+import androidx.recyclerview.widget.ListAdapter;
+import androidx.recyclerview.widget.RecyclerView;
 
 /*
- * {@link NewsAdapter} is an {@link ArrayAdapter} that can provide the layout for each list
- * based on a data source, which is a list of {@link News} objects.
+ * {@link NewsAdapter} is a {@link ListAdapter} that provides the layout for each row of the
+ * news list, based on a data source which is a list of {@link News} objects. New lists are
+ * compared to the current one on a background thread, so a refresh or a new page only
+ * touches the rows that changed. Thumbnails are shown by the {@link ThumbnailLoader}.
  * */
-public class NewsAdapter extends ArrayAdapter<News> {
+public class NewsAdapter extends ListAdapter<News, NewsAdapter.ViewHolder> {
+
+    /** Told when a row is tapped. */
+    public interface OnNewsClickListener {
+        void onNewsClick(News news);
+    }
+
+    // rows are the same when they show the same article
+    private static final DiffUtil.ItemCallback<News> DIFF_CALLBACK = new DiffUtil.ItemCallback<News>() {
+        @Override
+        public boolean areItemsTheSame(@NonNull News oldItem, @NonNull News newItem) {
+            return oldItem.getId().equals(newItem.getId());
+        }
+
+        @Override
+        public boolean areContentsTheSame(@NonNull News oldItem, @NonNull News newItem) {
+            return oldItem.getTitle().equals(newItem.getTitle())
+                    && oldItem.getSection().equals(newItem.getSection())
+                    && oldItem.getPublishedAt() == newItem.getPublishedAt()
+                    && oldItem.getAuthorText().equals(newItem.getAuthorText())
+                    && oldItem.getLink().equals(newItem.getLink())
+                    && oldItem.getThumbnail().equals(newItem.getThumbnail())
+                    && oldItem.getColour() == newItem.getColour();
+        }
+    };
+
     private Context context;
+    private final OnNewsClickListener mClickListener;
+    private final ThumbnailLoader mThumbnails;
+    private final NewsMetrics mMetrics = NewsMetrics.get();
 
-    public NewsAdapter(@NonNull Context context, @NonNull List<News> objects) {
-        super(context, 0, objects);
+    public NewsAdapter(@NonNull Context context, @NonNull OnNewsClickListener clickListener) {
+        super(DIFF_CALLBACK);
         this.context = context;
+        mClickListener = clickListener;
+        mThumbnails = ThumbnailLoader.get(context);
+        setHasStableIds(true);
     }
 
-    @SuppressLint("SetTextI18n")
-    @NonNull
     @Override
-    public View getView(int position, @Nullable View convertView, @NonNull ViewGroup parent) {
-        ViewHolder viewHolder;
-        // creating convertView if it doesn't already exist and setting up viewHolder
-        if (convertView == null) {
-            convertView = LayoutInflater.from(getContext()).inflate(R.layout.news_item, parent, false);
-            viewHolder = new ViewHolder(convertView);
-            convertView.setTag(viewHolder);
-        } else {
-            viewHolder = (ViewHolder) convertView.getTag();
+    public long getItemId(int position) {
+        return rowId(getItem(position));
+    }
+
+    /**
+     * A 64-bit id for the row of the given item, stable across refreshes and pages.
+     */
+    static long rowId(News news) {
+        // FNV-1a over the article id
+        return fnv(0xcbf29ce484222325L, news.getId());
+    }
+
+    private static long fnv(long hash, String string) {
+        for (int i = 0; i < string.length(); i++) {
+            hash = (hash ^ string.charAt(i)) * 0x100000001b3L;
         }
+        return hash;
+    }
+
+    @NonNull
+    @Override
+    public ViewHolder onCreateViewHolder(@NonNull ViewGroup parent, int viewType) {
+        View view = LayoutInflater.from(context).inflate(R.layout.news_item, parent, false);
+        return new ViewHolder(view);
+    }
+
+    @Override
+    public void onBindViewHolder(@NonNull ViewHolder viewHolder, int position) {
+        // everything shown was worked out by NewsStyler when the news was loaded, apart from
+        // how long ago a recent article was published, which depends on the time of the bind
+        // and is picked from the formatter's cached strings, so binding allocates nothing.
+        // RecyclerView marks the bind as "RV OnBindView" in the system trace itself.
+        long start = mMetrics.start();
         News objectToDisplay = getItem(position);
-        // adding details to list view item
-        assert objectToDisplay != null;
-        if (!objectToDisplay.getAuthor().equals("not known")) {
-            viewHolder.authorText.setText(objectToDisplay.getAuthor());
-        }
+        viewHolder.authorText.setText(objectToDisplay.getAuthorText());
         viewHolder.titleText.setText(objectToDisplay.getTitle());
-        viewHolder.dateText.setText(objectToDisplay.getDate());
-        viewHolder.sectionText.setText(objectToDisplay.getSection());
+        // recent articles show how long ago they were published, the rest their date; the
+        // formatter is asked for each time, as it is made again when the time zone changes
+        long publishedAt = objectToDisplay.getPublishedAt();
+        NewsTimeFormatter formatter = NewsTimeFormatter.getDefault(context);
+        String relativeDate = publishedAt == 0 ? null
+                : formatter.formatRelative(publishedAt, System.currentTimeMillis());
+        viewHolder.dateText.setText(relativeDate != null ? relativeDate : objectToDisplay.getDateText());
+        viewHolder.sectionText.setText(objectToDisplay.getSectionLabel());
 
         // setting colours
-        int colour = getCategoryColour(objectToDisplay.getSection(), viewHolder);
-        viewHolder.sectionText.setTextColor(colour);
-        viewHolder.authorText.setTextColor(colour);
-        return convertView;
+        viewHolder.sectionText.setTextColor(objectToDisplay.getColour());
+        viewHolder.authorText.setTextColor(objectToDisplay.getColour());
+
+        // the thumbnail comes from memory or is fetched, rows without one leave the space to the text
+        String thumbnail = objectToDisplay.getThumbnail();
+        viewHolder.thumbnailImage.setVisibility(thumbnail.isEmpty() ? View.GONE : View.VISIBLE);
+        mThumbnails.load(thumbnail, viewHolder.thumbnailImage);
+        mMetrics.stop(NewsMetrics.Stat.BIND, start);
+    }
+
+    @Override
+    public void onViewRecycled(@NonNull ViewHolder viewHolder) {
+        // the row may be reused for another article before its thumbnail arrives
+        mThumbnails.cancel(viewHolder.thumbnailImage);
     }
 
     // setting up viewHolder class
-    private class ViewHolder {
+    class ViewHolder extends RecyclerView.ViewHolder implements View.OnClickListener {
         final TextView titleText;
         final TextView authorText;
         final TextView sectionText;
         final TextView dateText;
+        final ImageView thumbnailImage;
 
         ViewHolder(View view) {
+            super(view);
             this.titleText = view.findViewById(R.id.title_text);
             this.authorText = view.findViewById(R.id.author_text);
             this.dateText = view.findViewById(R.id.date_text);
             this.sectionText = view.findViewById(R.id.section_text);
+            this.thumbnailImage = view.findViewById(R.id.thumbnail_image);
+            view.setOnClickListener(this);
         }
-    }
 
-    // method to get the right colour for each section category and to truncate unknown and long section names
-    @SuppressLint("SetTextI18n")
-    private int getCategoryColour(String category, ViewHolder viewHolder) {
-        int categoryColourId;
-        if (context.getString(R.string.news_colour_categories).contains(category)) {
-            categoryColourId = R.color.news;
-        }  else if (context.getString(R.string.football_colour_categories).contains(category)) {
-            categoryColourId = R.color.sports;
-        } else if (context.getString(R.string.technology_colour_categories).contains(category)) {
-            categoryColourId = R.color.culture;
-        }  else {
-            categoryColourId = R.color.unclassified;
-            int index = category.indexOf(" ", category.indexOf(" ") + 1);
-
-            if (index != -1) {
-                category = category.substring(0, index);
-                viewHolder.sectionText.setText(category);
+        @Override
+        public void onClick(View view) {
+            int position = getBindingAdapterPosition();
+            if (position != RecyclerView.NO_POSITION) {
+                mClickListener.onNewsClick(getItem(position));
             }
         }
-        return ContextCompat.getColor(getContext(), categoryColourId);
     }
 
 }
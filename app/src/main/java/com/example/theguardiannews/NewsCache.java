@@ -0,0 +1,294 @@
+package com.example.theguardiannews;
+
+import android.content.Context;
+import android.util.Log;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * {@link NewsCache} keeps the parsed result of each Guardian query on disk, together with the
+ * ETag / Last-Modified validators the server sent, so a repeated query can be answered from
+ * disk or revalidated with a conditional request. Equal queries share the entry named by their
+ * {@link NewsQueryKey}. Entries are stored in a compact binary form and evicted least recently
+ * used first once the byte budget is exceeded.
+ */
+public class NewsCache {
+
+    private static final String LOG_TAG = NewsCache.class.getSimpleName();
+
+    private static final int MAGIC = 0x4e455753; // "NEWS"
+    private static final int VERSION = 7;
+
+    // strings written for each News item before its contributors
+    private static final int FIELDS = 6;
+
+    /** Default size of the on-disk cache. */
+    private static final long DEFAULT_MAX_BYTES = 2 * 1024 * 1024;
+
+    private static NewsCache sInstance;
+
+    // the entry files, by the key of their query
+    private final DiskLru mFiles;
+
+    /**
+     * The cache shared by the whole app, kept in the app's cache directory.
+     */
+    public static synchronized NewsCache get(Context context) {
+        if (sInstance == null) {
+            File directory = new File(context.getApplicationContext().getCacheDir(), "news");
+            sInstance = new NewsCache(directory, DEFAULT_MAX_BYTES);
+        }
+        return sInstance;
+    }
+
+    /**
+     * @param directory where the entries are written, created if missing
+     * @param maxBytes the total size the entries may take before the oldest are evicted
+     */
+    public NewsCache(File directory, long maxBytes) {
+        mFiles = new DiskLru(directory, maxBytes);
+    }
+
+    /**
+     * A cached query result and the validators needed to revalidate it.
+     */
+    public static class Entry {
+        final List<News> news;
+        final String etag;
+        final String lastModified;
+        final long fetchedAt;
+        final long maxAgeMillis;
+
+        public Entry(List<News> news, String etag, String lastModified, long fetchedAt, long maxAgeMillis) {
+            this.news = news;
+            this.etag = etag;
+            this.lastModified = lastModified;
+            this.fetchedAt = fetchedAt;
+            this.maxAgeMillis = maxAgeMillis;
+        }
+
+        /** Whether the server said this result can be reused without asking again. */
+        boolean isFresh(long now) {
+            return now - fetchedAt < maxAgeMillis;
+        }
+
+        /** Whether a conditional request can be made for this entry. */
+        boolean canRevalidate() {
+            return etag != null || lastModified != null;
+        }
+    }
+
+    /**
+     * Return the entry for the given query URL, or null if there is none.
+     */
+    public synchronized Entry get(String url) {
+        String key = NewsQueryKey.of(url);
+        File file = mFiles.get(key);
+        if (file == null) {
+            return null;
+        }
+        try {
+            return read(file);
+        } catch (IOException e) {
+            Log.e(LOG_TAG, "Problem reading cache entry, dropping it", e);
+            mFiles.remove(key);
+            return null;
+        }
+    }
+
+    /**
+     * Store the entry for the given query URL, evicting old entries if needed.
+     */
+    public synchronized void put(String url, Entry entry) {
+        String key = NewsQueryKey.of(url);
+        File temp = mFiles.temp(key);
+        if (temp == null) {
+            return;
+        }
+        try {
+            write(temp, entry);
+        } catch (IOException e) {
+            Log.e(LOG_TAG, "Problem writing cache entry", e);
+            temp.delete();
+            return;
+        }
+        if (!mFiles.commit(key, temp)) {
+            Log.e(LOG_TAG, "Cannot rename " + temp);
+        }
+    }
+
+    /**
+     * Record that the server confirmed the entry is still valid (a 304 response).
+     */
+    public synchronized void markRevalidated(String url, Entry entry, long now, long maxAgeMillis) {
+        put(url, new Entry(entry.news, entry.etag, entry.lastModified, now, maxAgeMillis));
+    }
+
+    /** Total bytes currently used by the entries. */
+    public synchronized long size() {
+        return mFiles.size();
+    }
+
+    /*
+     * The entry format is a header, with the counts of the results and pages the server told,
+     * followed by a table of the distinct strings in the result
+     * and, for each News item, the indexes of its six fields in that table, the number of its
+     * contributors and their indexes, followed by the publication time of each item. Section
+     * and contributor names repeat a lot within a result so each is only written once.
+     */
+    private static void write(File file, Entry entry) throws IOException {
+        DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(new FileOutputStream(file)));
+        try {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            writeNullableString(out, entry.etag);
+            writeNullableString(out, entry.lastModified);
+            out.writeLong(entry.fetchedAt);
+            out.writeLong(entry.maxAgeMillis);
+            NewsResults results = NewsResults.of(entry.news);
+            out.writeInt(results.total);
+            out.writeInt(results.pageSize);
+            out.writeInt(results.currentPage);
+            out.writeInt(results.pages);
+
+            Map<String, Integer> table = new HashMap<String, Integer>();
+            List<String> strings = new ArrayList<String>();
+            int authors = 0;
+            for (News item : entry.news) {
+                authors += item.getAuthorCount();
+            }
+            int[] indexes = new int[entry.news.size() * (FIELDS + 1) + authors];
+            int i = 0;
+            for (News item : entry.news) {
+                indexes[i++] = intern(item.getId(), table, strings);
+                indexes[i++] = intern(item.getSectionId(), table, strings);
+                indexes[i++] = intern(item.getSection(), table, strings);
+                indexes[i++] = intern(item.getTitle(), table, strings);
+                indexes[i++] = intern(item.getLink(), table, strings);
+                indexes[i++] = intern(item.getThumbnail(), table, strings);
+                indexes[i++] = item.getAuthorCount();
+                for (int j = 0; j < item.getAuthorCount(); j++) {
+                    indexes[i++] = intern(item.getAuthor(j), table, strings);
+                }
+            }
+            long[] publishedAt = new long[entry.news.size()];
+            for (int j = 0; j < publishedAt.length; j++) {
+                publishedAt[j] = entry.news.get(j).getPublishedAt();
+            }
+
+            writeVarInt(out, strings.size());
+            for (String string : strings) {
+                out.writeUTF(string);
+            }
+            writeVarInt(out, entry.news.size());
+            for (int index : indexes) {
+                writeVarInt(out, index);
+            }
+            for (long time : publishedAt) {
+                out.writeLong(time);
+            }
+        } finally {
+            out.close();
+        }
+    }
+
+    private static Entry read(File file) throws IOException {
+        DataInputStream in = new DataInputStream(
+                new BufferedInputStream(new FileInputStream(file)));
+        try {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                throw new IOException("Unknown cache entry format");
+            }
+            String etag = readNullableString(in);
+            String lastModified = readNullableString(in);
+            long fetchedAt = in.readLong();
+            long maxAgeMillis = in.readLong();
+            int total = in.readInt();
+            int pageSize = in.readInt();
+            int currentPage = in.readInt();
+            int pages = in.readInt();
+
+            String[] strings = new String[readVarInt(in)];
+            for (int i = 0; i < strings.length; i++) {
+                strings[i] = in.readUTF();
+            }
+            int count = readVarInt(in);
+            String[][] fields = new String[count][FIELDS];
+            List<List<String>> authors = new ArrayList<List<String>>(count);
+            for (int i = 0; i < count; i++) {
+                for (int j = 0; j < FIELDS; j++) {
+                    fields[i][j] = strings[readVarInt(in)];
+                }
+                String[] contributors = new String[readVarInt(in)];
+                for (int j = 0; j < contributors.length; j++) {
+                    contributors[j] = strings[readVarInt(in)];
+                }
+                authors.add(Arrays.asList(contributors));
+            }
+            List<News> news = new ArrayList<News>(count);
+            for (int i = 0; i < count; i++) {
+                String[] item = fields[i];
+                news.add(new News(item[0], item[1], item[2], item[3], authors.get(i), in.readLong(), item[4],
+                        item[5]));
+            }
+            return new Entry(new NewsResults(news, total, pageSize, currentPage, pages), etag, lastModified,
+                    fetchedAt, maxAgeMillis);
+        } finally {
+            in.close();
+        }
+    }
+
+    private static int intern(String string, Map<String, Integer> table, List<String> strings) {
+        Integer index = table.get(string);
+        if (index == null) {
+            index = strings.size();
+            table.put(string, index);
+            strings.add(string);
+        }
+        return index;
+    }
+
+    private static void writeNullableString(DataOutputStream out, String string) throws IOException {
+        out.writeBoolean(string != null);
+        if (string != null) {
+            out.writeUTF(string);
+        }
+    }
+
+    private static String readNullableString(DataInputStream in) throws IOException {
+        return in.readBoolean() ? in.readUTF() : null;
+    }
+
+    private static void writeVarInt(DataOutputStream out, int value) throws IOException {
+        while ((value & ~0x7f) != 0) {
+            out.writeByte((value & 0x7f) | 0x80);
+            value >>>= 7;
+        }
+        out.writeByte(value);
+    }
+
+    private static int readVarInt(DataInputStream in) throws IOException {
+        int value = 0;
+        int shift = 0;
+        int b;
+        do {
+            b = in.readUnsignedByte();
+            value |= (b & 0x7f) << shift;
+            shift += 7;
+        } while ((b & 0x80) != 0);
+        return value;
+    }
+}
@@ -0,0 +1,307 @@
+package com.example.theguardiannews;
+
+import android.content.Context;
+import android.net.ConnectivityManager;
+import android.net.Network;
+import android.net.NetworkCapabilities;
+import android.net.NetworkRequest;
+import android.os.Build;
+import android.os.Handler;
+import android.os.Looper;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * {@link NewsConnectivity} follows the networks the device can reach the internet over with a
+ * {@link ConnectivityManager.NetworkCallback}, instead of asking once whether there is one.
+ * The network it goes by is a validated one, an unmetered one if there is one, and when it
+ * changes the {@link NewsFetchPolicy} starts again from what the new one suggests and the
+ * failures the {@link ResilientHttpEngine} counted over the old one are forgotten.
+ *
+ * Fetches that failed, or were not made, for want of a network are queued with
+ * {@link #whenReconnected(String, boolean, Runnable)} and replayed once one appears, each key
+ * only once however often it was queued, or straight away if one appeared in the meantime.
+ * Background work is only replayed over an unmetered network. The listeners and the replays
+ * are called on the main thread.
+ *
+ * The shared monitor looks up the networks and registers its callback on a thread of its own,
+ * so the app's start does not wait on the system for them. Until it knows, it takes the
+ * device to be online and leaves it to the requests to find out otherwise.
+ */
+public final class NewsConnectivity {
+
+    /** Told on the main thread when the network the app goes by changes. */
+    public interface Listener {
+        void onConnectivityChanged(boolean online, boolean metered);
+    }
+
+    private static NewsConnectivity sInstance;
+
+    private final ConnectivityManager mConnectivity;
+    private final NewsFetchPolicy mPolicy;
+    private final ResilientHttpEngine mEngine;
+    private final Handler mMainHandler = new Handler(Looper.getMainLooper());
+    // on the main thread
+    private final List<Listener> mListeners = new ArrayList<Listener>();
+
+    // guarded by this: the networks with a way to the internet and what they offer, and the
+    // one gone by, null when there is none
+    private final Map<Network, NetworkCapabilities> mNetworks = new LinkedHashMap<Network, NetworkCapabilities>();
+    private Network mPreferred;
+    private boolean mMetered;
+    // the fetches waiting for a network, by key, in the order they were first queued
+    private final Map<String, Replay> mQueue = new LinkedHashMap<String, Replay>();
+    private boolean mStarted;
+    // whether the networks there are were looked up
+    private boolean mKnown;
+
+    private final ConnectivityManager.NetworkCallback mCallback = new ConnectivityManager.NetworkCallback() {
+        @Override
+        public void onAvailable(Network network) {
+            // before Android 8 the capabilities may not follow on their own
+            NetworkCapabilities capabilities = mConnectivity.getNetworkCapabilities(network);
+            if (capabilities != null) {
+                update(network, capabilities);
+            }
+        }
+
+        @Override
+        public void onCapabilitiesChanged(Network network, NetworkCapabilities capabilities) {
+            update(network, capabilities);
+        }
+
+        @Override
+        public void onLost(Network network) {
+            update(network, null);
+        }
+    };
+
+    /**
+     * The monitor shared by the whole app, following the networks from a moment after it is
+     * first asked for.
+     */
+    public static synchronized NewsConnectivity get(Context context) {
+        if (sInstance == null) {
+            ConnectivityManager connectivity = (ConnectivityManager)
+                    context.getApplicationContext().getSystemService(Context.CONNECTIVITY_SERVICE);
+            final NewsConnectivity monitor = new NewsConnectivity(connectivity, NewsFetchPolicy.get(),
+                    ResilientHttpEngine.get());
+            new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    monitor.start();
+                }
+            }, "NewsConnectivity").start();
+            sInstance = monitor;
+        }
+        return sInstance;
+    }
+
+    /**
+     * @param policy told the speed of each new network, may be null
+     * @param engine told when its failures were over another network, may be null
+     */
+    public NewsConnectivity(ConnectivityManager connectivity, NewsFetchPolicy policy, ResilientHttpEngine engine) {
+        mConnectivity = connectivity;
+        mPolicy = policy;
+        mEngine = engine;
+    }
+
+    /**
+     * Start following the networks, from those there are now. Queued actions a network there
+     * is now may be used for are run.
+     */
+    public void start() {
+        synchronized (this) {
+            if (mStarted) {
+                return;
+            }
+            mStarted = true;
+            for (Network network : mConnectivity.getAllNetworks()) {
+                NetworkCapabilities capabilities = mConnectivity.getNetworkCapabilities(network);
+                if (capabilities != null && capabilities.hasCapability(NetworkCapabilities.NET_CAPABILITY_INTERNET)) {
+                    mNetworks.put(network, capabilities);
+                }
+            }
+            choose();
+            mKnown = true;
+            if (mPreferred != null) {
+                for (Runnable action : due(mMetered)) {
+                    mMainHandler.post(action);
+                }
+            }
+        }
+        mConnectivity.registerNetworkCallback(new NetworkRequest.Builder()
+                .addCapability(NetworkCapabilities.NET_CAPABILITY_INTERNET)
+                .build(), mCallback);
+    }
+
+    /** Stop following the networks. */
+    public void stop() {
+        synchronized (this) {
+            if (!mStarted) {
+                return;
+            }
+            mStarted = false;
+        }
+        mConnectivity.unregisterNetworkCallback(mCallback);
+    }
+
+    /**
+     * Whether there is a validated network, so requests can reach the server. True until the
+     * networks have been looked up.
+     */
+    public synchronized boolean isOnline() {
+        return !mKnown || mPreferred != null;
+    }
+
+    /** Whether the network gone by is metered, false when there is none. */
+    public synchronized boolean isMetered() {
+        return mMetered;
+    }
+
+    /** Call on the main thread. */
+    public void addListener(Listener listener) {
+        mListeners.add(listener);
+    }
+
+    /** Call on the main thread. */
+    public void removeListener(Listener listener) {
+        mListeners.remove(listener);
+    }
+
+    /**
+     * Run the action on the main thread the next time a network it may use appears, or the
+     * network gone by changes to one it may use. An action already queued under the key is
+     * replaced, so it runs once. If the network gone by may be used already, as when it came
+     * back while the fetch was failing, the action is posted at once, since no change would
+     * come to replay it.
+     *
+     * @param background whether the action is background work, which waits for an unmetered
+     *                   network
+     */
+    public synchronized void whenReconnected(String key, boolean background, Runnable action) {
+        if (mStarted && mPreferred != null && (!background || !mMetered)) {
+            mQueue.remove(key);
+            mMainHandler.post(action);
+            return;
+        }
+        // a key queued again keeps its place
+        mQueue.put(key, new Replay(action, background));
+    }
+
+    /**
+     * Take the action queued under the key off the queue, if it is still the one given.
+     */
+    public synchronized void cancel(String key, Runnable action) {
+        Replay replay = mQueue.get(key);
+        if (replay != null && replay.mAction == action) {
+            mQueue.remove(key);
+        }
+    }
+
+    /** The actions waiting for a network. */
+    synchronized int queued() {
+        return mQueue.size();
+    }
+
+    // on a connectivity thread: the network changed, or was lost when there are no capabilities
+    private void update(Network network, NetworkCapabilities capabilities) {
+        synchronized (this) {
+            if (!mStarted) {
+                return;
+            }
+            if (capabilities == null) {
+                mNetworks.remove(network);
+            } else {
+                mNetworks.put(network, capabilities);
+            }
+            Network previous = mPreferred;
+            boolean wasMetered = mMetered;
+            choose();
+            boolean same = mPreferred == null ? previous == null : mPreferred.equals(previous);
+            if (same && mMetered == wasMetered) {
+                return;
+            }
+            if (mPreferred != null && !mPreferred.equals(previous)) {
+                long kbps = mNetworks.get(mPreferred).getLinkDownstreamBandwidthKbps();
+                if (mPolicy != null) {
+                    mPolicy.onNetworkChanged(kbps);
+                }
+                if (mEngine != null) {
+                    mEngine.onNetworkChanged();
+                }
+            }
+            final boolean online = mPreferred != null;
+            final boolean metered = mMetered;
+            final List<Runnable> due = online ? due(metered) : new ArrayList<Runnable>();
+            mMainHandler.post(new Runnable() {
+                @Override
+                public void run() {
+                    for (Listener listener : new ArrayList<Listener>(mListeners)) {
+                        listener.onConnectivityChanged(online, metered);
+                    }
+                    for (Runnable action : due) {
+                        action.run();
+                    }
+                }
+            });
+        }
+    }
+
+    // picks the network to go by: a validated one, unmetered if there is one
+    private void choose() {
+        Network chosen = null;
+        boolean metered = false;
+        for (Map.Entry<Network, NetworkCapabilities> entry : mNetworks.entrySet()) {
+            NetworkCapabilities capabilities = entry.getValue();
+            if (!isValidated(capabilities)) {
+                continue;
+            }
+            boolean unmetered = capabilities.hasCapability(NetworkCapabilities.NET_CAPABILITY_NOT_METERED);
+            if (chosen == null || (metered && unmetered)) {
+                chosen = entry.getKey();
+                metered = !unmetered;
+            }
+        }
+        mPreferred = chosen;
+        mMetered = metered;
+    }
+
+    // whether the system found the network to reach the internet; before Android 6 it does
+    // not say, so a network with internet access is taken at its word
+    private static boolean isValidated(NetworkCapabilities capabilities) {
+        if (!capabilities.hasCapability(NetworkCapabilities.NET_CAPABILITY_INTERNET)) {
+            return false;
+        }
+        return Build.VERSION.SDK_INT < Build.VERSION_CODES.M
+                || capabilities.hasCapability(NetworkCapabilities.NET_CAPABILITY_VALIDATED);
+    }
+
+    // takes the actions that may run over the network gone by off the queue
+    private List<Runnable> due(boolean metered) {
+        List<Runnable> due = new ArrayList<Runnable>();
+        for (Iterator<Replay> it = mQueue.values().iterator(); it.hasNext(); ) {
+            Replay replay = it.next();
+            if (!replay.mBackground || !metered) {
+                due.add(replay.mAction);
+                it.remove();
+            }
+        }
+        return due;
+    }
+
+    private static final class Replay {
+        final Runnable mAction;
+        final boolean mBackground;
+
+        Replay(Runnable action, boolean background) {
+            mAction = action;
+            mBackground = background;
+        }
+    }
+}
@@ -0,0 +1,123 @@
+package com.example.theguardiannews;
+
+import android.net.Uri;
+
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.TimeZone;
+
+/**
+ * {@link NewsDelta} refreshes the first page of a query newest first by asking only for what
+ * was published since the newest article we have. The cached results of the query tell the
+ * time of that article; the request adds {@code from-date} and {@code order-by=newest} to the
+ * query URL, and its few results go at the head of the cached ones, which are cut back to
+ * the page size. Queries ordered by relevance, and later pages, are fetched in full.
+ */
+final class NewsDelta {
+
+    private static final String ORDER_BY = "order-by";
+    private static final String NEWEST = "newest";
+    private static final String FROM_DATE = "from-date";
+    private static final String USE_DATE = "use-date";
+    private static final String PUBLISHED = "published";
+    private static final String SEARCH = "q";
+    private static final String PAGE = "page";
+
+    private NewsDelta() {
+    }
+
+    /**
+     * Same as {@link Utilities#fetchNewsOrThrow(HttpEngine, String, NewsCache, NewsCache.Entry,
+     * NewsStore, CancellationToken)}, but a stale cached result of a query ordered newest
+     * first is brought up to date with a request for the newer articles only.
+     *
+     * @param window the most articles kept for the query, its page size
+     */
+    static List<News> fetch(HttpEngine engine, String url, NewsCache cache, NewsCache.Entry cached,
+                            NewsStore store, CancellationToken token, int window)
+            throws NewsFetchException {
+        long newest = cached == null ? 0 : newestPublishedAt(cached.news);
+        if (cache == null || newest == 0 || cached.isFresh(System.currentTimeMillis())
+                || !isNewestFirst(url)) {
+            return Utilities.fetchNewsOrThrow(engine, url, cache, cached, store, token);
+        }
+
+        // the newer articles go to the store as usual, but not to the cache under their own URL
+        List<News> newer = Utilities.fetchNewsOrThrow(engine, deltaUrl(url, newest), null, null, store, token);
+        List<News> news = mergeHead(newer, cached.news, window);
+        cache.put(url, new NewsCache.Entry(news, null, null, System.currentTimeMillis(), 0));
+        return news;
+    }
+
+    /**
+     * Whether the results of the URL come newest first, so newer ones can be put at their
+     * head: the first page, with no search words and no order but newest. Without search
+     * words the Guardian orders by newest unless told otherwise.
+     */
+    static boolean isNewestFirst(String url) {
+        Uri uri = Uri.parse(url);
+        String order = uri.getQueryParameter(ORDER_BY);
+        String page = uri.getQueryParameter(PAGE);
+        return uri.getQueryParameter(SEARCH) == null && (order == null || order.equals(NEWEST))
+                && (page == null || page.equals("1"));
+    }
+
+    /**
+     * The URL asking for the results of the given one published at or after the given time,
+     * newest first.
+     */
+    static String deltaUrl(String url, long fromMillis) {
+        Uri uri = Uri.parse(url);
+        Uri.Builder builder = uri.buildUpon().clearQuery();
+        for (String name : uri.getQueryParameterNames()) {
+            if (name.equals(ORDER_BY) || name.equals(FROM_DATE) || name.equals(USE_DATE)) {
+                continue;
+            }
+            for (String value : uri.getQueryParameters(name)) {
+                builder.appendQueryParameter(name, value);
+            }
+        }
+        SimpleDateFormat format = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss'Z'", Locale.US);
+        format.setTimeZone(TimeZone.getTimeZone("UTC"));
+        builder.appendQueryParameter(FROM_DATE, format.format(new Date(fromMillis)));
+        builder.appendQueryParameter(USE_DATE, PUBLISHED);
+        builder.appendQueryParameter(ORDER_BY, NEWEST);
+        return builder.build().toString();
+    }
+
+    /**
+     * The newer articles followed by the known ones they do not replace, at most the given
+     * number. The newer version of an article known already wins.
+     */
+    static List<News> mergeHead(List<News> newer, List<News> known, int window) {
+        Set<String> seen = new HashSet<String>();
+        List<News> merged = new ArrayList<News>(Math.min(window, newer.size() + known.size()));
+        for (int i = 0; i < newer.size() && merged.size() < window; i++) {
+            News item = newer.get(i);
+            if (seen.add(item.getId())) {
+                merged.add(item);
+            }
+        }
+        for (int i = 0; i < known.size() && merged.size() < window; i++) {
+            News item = known.get(i);
+            if (seen.add(item.getId())) {
+                merged.add(item);
+            }
+        }
+        return merged;
+    }
+
+    // the publication time of the newest article, 0 if none has one
+    private static long newestPublishedAt(List<News> news) {
+        long newest = 0;
+        for (News item : news) {
+            newest = Math.max(newest, item.getPublishedAt());
+        }
+        return newest;
+    }
+}
@@ -0,0 +1,164 @@
+package com.example.theguardiannews;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link NewsFanOut} loads several section queries at once and merges them into one feed,
+ * newest first. Each query runs on a bounded pool, so the whole load takes about as long as
+ * the slowest query rather than the sum of them, and the results that have arrived are merged
+ * and handed on while the others are still running. Rows repeated across queries are dropped.
+ */
+public class NewsFanOut {
+
+    /** Fetches the results of one query, newest first, or null if it failed. */
+    public interface Source {
+        List<News> fetch(String url);
+    }
+
+    /** Told the merge of the results that have arrived while others are still running. */
+    public interface Listener {
+        void onPartialResult(List<News> news);
+    }
+
+    /** Queries run at the same time by the shared instance. */
+    private static final int MAX_CONCURRENT_REQUESTS = 4;
+
+    private static NewsFanOut sInstance;
+
+    private final Executor mExecutor;
+
+    /**
+     * The instance shared by the whole app, whose threads stop when it is idle.
+     */
+    public static synchronized NewsFanOut get() {
+        if (sInstance == null) {
+            ThreadPoolExecutor executor = new ThreadPoolExecutor(MAX_CONCURRENT_REQUESTS,
+                    MAX_CONCURRENT_REQUESTS, 30, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>());
+            executor.allowCoreThreadTimeOut(true);
+            sInstance = new NewsFanOut(executor);
+        }
+        return sInstance;
+    }
+
+    /**
+     * @param executor runs the queries, its size bounds how many run at once
+     */
+    public NewsFanOut(Executor executor) {
+        mExecutor = executor;
+    }
+
+    /**
+     * Fetch every URL concurrently and return the merged results, or null if every fetch
+     * failed or the calling thread was interrupted, which cancels the fetches still running.
+     *
+     * @param listener told on the calling thread about each partial merge, may be null
+     */
+    public List<News> fetchAll(List<String> urls, final Source source, Listener listener) {
+        ExecutorCompletionService<Result> completion = new ExecutorCompletionService<Result>(mExecutor);
+        List<Future<Result>> futures = new ArrayList<Future<Result>>(urls.size());
+        for (int i = 0; i < urls.size(); i++) {
+            final int index = i;
+            final String url = urls.get(i);
+            futures.add(completion.submit(new Callable<Result>() {
+                @Override
+                public Result call() {
+                    try {
+                        return new Result(index, source.fetch(url));
+                    } catch (RuntimeException e) {
+                        return new Result(index, null);
+                    }
+                }
+            }));
+        }
+
+        // kept in query order, so rows published at the same time merge the same way each time
+        List<List<News>> arrived = new ArrayList<List<News>>(Collections.<List<News>>nCopies(urls.size(), null));
+        boolean any = false;
+        try {
+            for (int i = 0; i < urls.size(); i++) {
+                Result result = completion.take().get();
+                if (result.news == null) {
+                    continue;
+                }
+                arrived.set(result.index, result.news);
+                any = true;
+                if (listener != null && i < urls.size() - 1) {
+                    listener.onPartialResult(merge(arrived));
+                }
+            }
+        } catch (InterruptedException e) {
+            for (Future<Result> future : futures) {
+                future.cancel(true);
+            }
+            Thread.currentThread().interrupt();
+            return null;
+        } catch (ExecutionException e) {
+            // call() catches everything a fetch can throw
+            throw new IllegalStateException(e);
+        }
+        return any ? merge(arrived) : null;
+    }
+
+    /**
+     * Merge lists that are each newest first into one list, newest first, keeping the first
+     * of any rows for the same article. Null lists are skipped.
+     */
+    static List<News> merge(final List<List<News>> lists) {
+        int total = 0;
+        // the next row of each list, as {list, position}, newest first
+        PriorityQueue<int[]> heads = new PriorityQueue<int[]>(Math.max(1, lists.size()), new Comparator<int[]>() {
+            @Override
+            public int compare(int[] a, int[] b) {
+                int byTime = Long.compare(lists.get(b[0]).get(b[1]).getPublishedAt(),
+                        lists.get(a[0]).get(a[1]).getPublishedAt());
+                return byTime != 0 ? byTime : a[0] - b[0];
+            }
+        });
+        for (int i = 0; i < lists.size(); i++) {
+            List<News> list = lists.get(i);
+            if (list != null && !list.isEmpty()) {
+                heads.add(new int[]{i, 0});
+                total += list.size();
+            }
+        }
+
+        List<News> merged = new ArrayList<News>(total);
+        Set<String> seen = new HashSet<String>();
+        while (!heads.isEmpty()) {
+            int[] head = heads.poll();
+            List<News> list = lists.get(head[0]);
+            News item = list.get(head[1]);
+            if (seen.add(item.getId())) {
+                merged.add(item);
+            }
+            if (++head[1] < list.size()) {
+                heads.add(head);
+            }
+        }
+        return merged;
+    }
+
+    private static class Result {
+        final int index;
+        final List<News> news;
+
+        Result(int index, List<News> news) {
+            this.index = index;
+            this.news = news;
+        }
+    }
+}
@@ -0,0 +1,57 @@
+package com.example.theguardiannews;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.ConnectException;
+import java.net.NoRouteToHostException;
+import java.net.UnknownHostException;
+
+/**
+ * {@link NewsFetchException} is thrown when the news could not be fetched, with the reason,
+ * so the user can be told more than that no news was found.
+ */
+public class NewsFetchException extends IOException {
+
+    /** Why a fetch failed. */
+    public enum Reason {
+        // the device could not reach the server at all
+        OFFLINE,
+        // the server took too long to answer
+        TIMEOUT,
+        // the server answered with an error
+        SERVER,
+        // the server failed so often lately that it is not asked for a while
+        UNAVAILABLE,
+        // the server's answer could not be read
+        BAD_RESPONSE
+    }
+
+    public final Reason reason;
+
+    public NewsFetchException(Reason reason, String message, Throwable cause) {
+        super(message, cause);
+        this.reason = reason;
+    }
+
+    /**
+     * The exception for a request that failed with the given exception.
+     */
+    static NewsFetchException from(IOException e) {
+        if (e instanceof NewsFetchException) {
+            return (NewsFetchException) e;
+        }
+        Reason reason;
+        if (e instanceof ResilientHttpEngine.CircuitOpenException) {
+            reason = Reason.UNAVAILABLE;
+        } else if (e instanceof UnknownHostException || e instanceof ConnectException
+                || e instanceof NoRouteToHostException) {
+            reason = Reason.OFFLINE;
+        } else if (e instanceof InterruptedIOException) {
+            // which SocketTimeoutException is
+            reason = Reason.TIMEOUT;
+        } else {
+            reason = Reason.SERVER;
+        }
+        return new NewsFetchException(reason, e.getMessage(), e);
+    }
+}
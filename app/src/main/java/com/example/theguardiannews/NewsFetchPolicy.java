@@ -0,0 +1,318 @@
+package com.example.theguardiannews;
+
+import android.net.ConnectivityManager;
+import android.net.Network;
+import android.net.NetworkCapabilities;
+import android.net.NetworkInfo;
+import android.net.Uri;
+import android.os.Build;
+import android.telephony.TelephonyManager;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * {@link NewsFetchPolicy} shapes the requests for the news to the link they go over. It keeps
+ * an estimate of the throughput and round trip time from the requests made lately, starting
+ * from what the connection type suggests, and plans each load from it:
+ * <ul>
+ * <li>on a slow link the first page is asked for in smaller chunks, the first shown as soon as
+ * it arrives and the rest topped up after it, without the thumbnails and contributor tags
+ * that make up most of each result;</li>
+ * <li>on a fast link two of the later pages are asked for in one request;</li>
+ * <li>otherwise the requests are left as they are.</li>
+ * </ul>
+ * However the requests are shaped, the user gets the number of articles they asked for.
+ */
+public final class NewsFetchPolicy implements HttpEngine.MetricsListener {
+
+    /** How fast the link is taken to be. */
+    public enum Speed {
+        SLOW, NORMAL, FAST
+    }
+
+    // below either of these the link is slow
+    static final long SLOW_KBPS = 256;
+    static final long SLOW_RTT_MILLIS = 1500;
+    // above this, with a round trip under the next, the link is fast
+    static final long FAST_KBPS = 4000;
+    static final long FAST_RTT_MILLIS = 400;
+
+    // the least number of articles in a chunk of the first page
+    static final int MIN_CHUNK = 5;
+    // the later pages asked for in one request on a fast link
+    static final int FAST_BATCH_PAGES = 2;
+
+    // bodies smaller than this say more about the round trip than about the throughput
+    private static final long MIN_SAMPLE_BYTES = 4096;
+    // as far as smaller bodies, such as the chunks asked for on a slow link, can raise the
+    // throughput estimate: enough for a normal link, never a fast one
+    static final long NORMAL_KBPS = 1000;
+    // the weight of a new measurement in the estimates
+    private static final double ALPHA = 0.3;
+
+    private static final String PAGE = "page";
+    private static final String PAGE_SIZE = "page-size";
+    private static final String SHOW_FIELDS = "show-fields";
+    private static final String SHOW_TAGS = "show-tags";
+
+    private static NewsFetchPolicy sInstance;
+
+    // the estimates, 0 while unknown, guarded by this
+    private double mKbps;
+    private double mRttMillis;
+
+    /**
+     * The policy shared by the whole app, which learns from every request of
+     * {@link OkHttpEngine#get()}.
+     */
+    public static synchronized NewsFetchPolicy get() {
+        if (sInstance == null) {
+            sInstance = new NewsFetchPolicy();
+        }
+        return sInstance;
+    }
+
+    /**
+     * A policy with nothing known about the link, which leaves the requests as they are until
+     * it is told about some.
+     */
+    public NewsFetchPolicy() {
+    }
+
+    @Override
+    public synchronized void onRequestFinished(HttpEngine.Metrics metrics) {
+        if (metrics.failed) {
+            return;
+        }
+        if (metrics.ttfbMillis >= 0) {
+            // the time to the first byte of a request on a reused connection is about a round
+            // trip, plus the server's own time
+            mRttMillis = average(mRttMillis, metrics.ttfbMillis);
+        }
+        long transferMillis = metrics.totalMillis - Math.max(0, metrics.ttfbMillis);
+        if (transferMillis < 0 || metrics.bytesReceived <= 0) {
+            return;
+        }
+        // bits per millisecond are kilobits per second
+        double kbps = metrics.bytesReceived * 8.0 / Math.max(1, transferMillis);
+        if (metrics.bytesReceived >= MIN_SAMPLE_BYTES) {
+            mKbps = average(mKbps, kbps);
+        } else if (mKbps > 0 && Math.min(kbps, NORMAL_KBPS) > mKbps) {
+            // a small body that came quickly cannot tell how fast the link is, but does say
+            // it is no longer as slow as thought, so a slow link is not stuck with its chunks
+            mKbps = average(mKbps, Math.min(kbps, NORMAL_KBPS));
+        }
+    }
+
+    private static double average(double estimate, double sample) {
+        return estimate == 0 ? sample : estimate + ALPHA * (sample - estimate);
+    }
+
+    /**
+     * Start from what the connection type suggests, unless requests have told more already.
+     * A speed of 0 means nothing is known.
+     */
+    public synchronized void onLinkKnown(long downstreamKbps) {
+        if (mKbps == 0) {
+            mKbps = downstreamKbps;
+        }
+    }
+
+    /**
+     * Start again from what the connection type suggests, after the device moved to another
+     * network. A speed of 0 means nothing is known.
+     */
+    public synchronized void onNetworkChanged(long downstreamKbps) {
+        mKbps = downstreamKbps;
+        mRttMillis = 0;
+    }
+
+    /**
+     * What the system knows of the downstream bandwidth of the active network, or 0 if
+     * nothing is known or there is no network.
+     */
+    @SuppressWarnings("deprecation")
+    static long linkKbps(ConnectivityManager connectivity) {
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.M) {
+            Network network = connectivity.getActiveNetwork();
+            NetworkCapabilities capabilities = network == null ? null : connectivity.getNetworkCapabilities(network);
+            return capabilities == null ? 0 : capabilities.getLinkDownstreamBandwidthKbps();
+        }
+        NetworkInfo info = connectivity.getActiveNetworkInfo();
+        if (info == null || !info.isConnected()) {
+            return 0;
+        }
+        if (info.getType() != ConnectivityManager.TYPE_MOBILE) {
+            return 0;
+        }
+        switch (info.getSubtype()) {
+            case TelephonyManager.NETWORK_TYPE_GPRS:
+            case TelephonyManager.NETWORK_TYPE_EDGE:
+            case TelephonyManager.NETWORK_TYPE_CDMA:
+            case TelephonyManager.NETWORK_TYPE_1xRTT:
+            case TelephonyManager.NETWORK_TYPE_IDEN:
+                // 2G
+                return 100;
+            default:
+                return 0;
+        }
+    }
+
+    /** The estimated throughput in kilobits per second, 0 while unknown. */
+    public synchronized long kbps() {
+        return Math.round(mKbps);
+    }
+
+    /** The estimated round trip time, 0 while unknown. */
+    public synchronized long rttMillis() {
+        return Math.round(mRttMillis);
+    }
+
+    /**
+     * How fast the link is taken to be. A link nothing is known about is normal.
+     */
+    public synchronized Speed speed() {
+        if ((mKbps > 0 && mKbps < SLOW_KBPS) || mRttMillis > SLOW_RTT_MILLIS) {
+            return Speed.SLOW;
+        }
+        if (mKbps >= FAST_KBPS && mRttMillis < FAST_RTT_MILLIS) {
+            return Speed.FAST;
+        }
+        return Speed.NORMAL;
+    }
+
+    /**
+     * How to ask for a load of the given number of articles a section, from the current
+     * estimates.
+     */
+    public Plan plan(int pageSize) {
+        switch (speed()) {
+            case SLOW:
+                return new Plan(pageSize, chunkSize(pageSize), false, 1);
+            case FAST:
+                return new Plan(pageSize, pageSize, true, FAST_BATCH_PAGES);
+            default:
+                return new Plan(pageSize, pageSize, true, 1);
+        }
+    }
+
+    /**
+     * The size of the chunks the first page is split into on a slow link: the largest that
+     * divides the page size evenly, so the chunks line up with the Guardian's pages, and is
+     * no larger than a third of it, but at least {@link #MIN_CHUNK}. The page size itself if
+     * there is none.
+     */
+    static int chunkSize(int pageSize) {
+        for (int size = Math.max(MIN_CHUNK, pageSize / 3); size >= MIN_CHUNK; size--) {
+            if (pageSize % size == 0 && size < pageSize) {
+                return size;
+            }
+        }
+        return pageSize;
+    }
+
+    /**
+     * The given query URL asking for the given page of the given size, and without the
+     * thumbnails and contributor tags unless they are wanted.
+     */
+    static String shape(String url, int pageSize, int page, boolean fields) {
+        Uri uri = Uri.parse(url);
+        Uri.Builder builder = uri.buildUpon().clearQuery();
+        for (String name : uri.getQueryParameterNames()) {
+            if (name.equals(PAGE) || name.equals(PAGE_SIZE)
+                    || (!fields && (name.equals(SHOW_FIELDS) || name.equals(SHOW_TAGS)))) {
+                continue;
+            }
+            for (String value : uri.getQueryParameters(name)) {
+                builder.appendQueryParameter(name, value);
+            }
+        }
+        builder.appendQueryParameter(PAGE_SIZE, String.valueOf(pageSize));
+        builder.appendQueryParameter(PAGE, String.valueOf(page));
+        return builder.build().toString();
+    }
+
+    /**
+     * How one load is asked for. The first page of {@link #pageSize} articles comes in
+     * {@link #chunks()} requests of {@link #chunkSize}, and the later pages in requests of
+     * {@link #batchPages} pages each.
+     */
+    public static final class Plan {
+        final int pageSize;
+        final int chunkSize;
+        // whether the thumbnails and contributor tags are asked for
+        final boolean fields;
+        final int batchPages;
+
+        Plan(int pageSize, int chunkSize, boolean fields, int batchPages) {
+            this.pageSize = pageSize;
+            this.chunkSize = chunkSize;
+            this.fields = fields;
+            this.batchPages = batchPages;
+        }
+
+        /** Whether the requests are the ones the query URLs make as they are. */
+        boolean isPlain() {
+            return chunkSize == pageSize && fields && batchPages == 1;
+        }
+
+        /** The number of requests the first page is asked for in. */
+        int chunks() {
+            return pageSize / chunkSize;
+        }
+
+        /**
+         * The URL of the first page, or of its first chunk, which is the query URL itself
+         * unless the plan changes it.
+         */
+        String firstUrl(String url) {
+            return fields && chunks() == 1 ? url : chunkUrl(url, 1);
+        }
+
+        /**
+         * The URL of the given chunk of the first page, counted from 1.
+         */
+        String chunkUrl(String url, int chunk) {
+            return shape(url, chunkSize, chunk, fields);
+        }
+
+        /**
+         * The page of the batch holding the given later page, whose URL is asked for with
+         * {@link #batchUrl(String, int)}. The first page is never part of a batch, so page 2
+         * is asked for on its own when the batches would pair it with page 1.
+         */
+        int batchOf(int page) {
+            int batch = (page - 1) / batchPages + 1;
+            return batch == 1 ? page : batch;
+        }
+
+        /** The number of pages in the batch holding the given later page. */
+        int batchSize(int page) {
+            return (page - 1) / batchPages == 0 ? 1 : batchPages;
+        }
+
+        /**
+         * The URL of the batch holding the given later page, which is the page's own URL
+         * unless the plan changes it.
+         */
+        String batchUrl(String url, int page) {
+            if (fields && batchSize(page) == 1) {
+                return url;
+            }
+            return shape(url, batchSize(page) * pageSize, batchOf(page), fields);
+        }
+
+        /**
+         * The articles of the given later page among those of its batch.
+         */
+        List<News> pageOf(List<News> batch, int page) {
+            if (batchSize(page) == 1) {
+                return batch;
+            }
+            int from = Math.min(batch.size(), (page - 1) % batchPages * pageSize);
+            int to = Math.min(batch.size(), from + pageSize);
+            return new ArrayList<News>(batch.subList(from, to));
+        }
+    }
+}
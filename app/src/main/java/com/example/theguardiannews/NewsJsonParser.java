@@ -0,0 +1,174 @@
+package com.example.theguardiannews;
+
+import android.util.JsonReader;
+import android.util.JsonToken;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * {@link NewsJsonParser} reads a Guardian search response straight off an {@link InputStream}
+ * with a pull parser and builds {@link News} objects as it walks {@code response.results[]}.
+ * Unlike {@link Utilities#extractNews(String)} the whole body is never held in memory and
+ * fields the app does not use are skipped without being materialised. The counts of the
+ * results and their pages are kept with them, so the list knows where they end.
+ */
+public final class NewsJsonParser {
+
+    private NewsJsonParser() {
+    }
+
+    /**
+     * Parse the given stream and return the list of {@link News} it contains, with the counts
+     * of the results and pages the response tells. The stream is not closed, that is left to
+     * the caller which owns the connection.
+     */
+    public static NewsResults parse(InputStream inputStream) throws IOException {
+        NewsResults results = null;
+        JsonReader reader = new JsonReader(new InputStreamReader(inputStream, Charset.forName("UTF-8")));
+
+        reader.beginObject();
+        while (reader.hasNext()) {
+            if (reader.nextName().equals("response")) {
+                results = readResponse(reader);
+            } else {
+                reader.skipValue();
+            }
+        }
+        reader.endObject();
+        return results != null ? results : new NewsResults(new ArrayList<News>());
+    }
+
+    // walks the "response" object looking for the results array and the counts
+    private static NewsResults readResponse(JsonReader reader) throws IOException {
+        List<News> news = new ArrayList<News>();
+        int total = NewsResults.UNKNOWN;
+        int pageSize = NewsResults.UNKNOWN;
+        int currentPage = NewsResults.UNKNOWN;
+        int pages = NewsResults.UNKNOWN;
+        reader.beginObject();
+        while (reader.hasNext()) {
+            String name = reader.nextName();
+            if (name.equals("results")) {
+                reader.beginArray();
+                while (reader.hasNext()) {
+                    readResult(reader, news);
+                }
+                reader.endArray();
+            } else if (name.equals("total")) {
+                total = readCount(reader);
+            } else if (name.equals("pageSize")) {
+                pageSize = readCount(reader);
+            } else if (name.equals("currentPage")) {
+                currentPage = readCount(reader);
+            } else if (name.equals("pages")) {
+                pages = readCount(reader);
+            } else {
+                reader.skipValue();
+            }
+        }
+        reader.endObject();
+        return new NewsResults(news, total, pageSize, currentPage, pages);
+    }
+
+    // reads a count, UNKNOWN if it is not a number
+    private static int readCount(JsonReader reader) throws IOException {
+        if (reader.peek() != JsonToken.NUMBER) {
+            reader.skipValue();
+            return NewsResults.UNKNOWN;
+        }
+        return reader.nextInt();
+    }
+
+    // reads one article; the field order is not guaranteed so everything is collected first
+    private static void readResult(JsonReader reader, List<News> news) throws IOException {
+        String id = null;
+        String title = null;
+        String sectionId = "";
+        String section = null;
+        String date = null;
+        String link = null;
+        String thumbnail = "";
+        List<String> authors = null;
+
+        reader.beginObject();
+        while (reader.hasNext()) {
+            String name = reader.nextName();
+            if (reader.peek() == JsonToken.NULL) {
+                reader.skipValue();
+            } else if (name.equals("id")) {
+                id = reader.nextString();
+            } else if (name.equals("webTitle")) {
+                title = reader.nextString();
+            } else if (name.equals("sectionId")) {
+                sectionId = reader.nextString();
+            } else if (name.equals("sectionName")) {
+                section = reader.nextString();
+            } else if (name.equals("webPublicationDate")) {
+                date = reader.nextString();
+            } else if (name.equals("webUrl")) {
+                link = reader.nextString();
+            } else if (name.equals("fields")) {
+                thumbnail = readThumbnail(reader);
+            } else if (name.equals("tags")) {
+                authors = readContributors(reader);
+            } else {
+                reader.skipValue();
+            }
+        }
+        reader.endObject();
+
+        if (title == null || section == null || date == null || link == null) {
+            return;
+        }
+
+        if (id == null) {
+            id = link;
+        }
+        title = Utilities.trimTitle(title);
+        long publishedAt = Utilities.parsePublicationDate(date);
+
+        // one News item crediting every contributor, the same as extractNews
+        news.add(new News(id, sectionId, section, title,
+                authors != null ? authors : Collections.<String>emptyList(), publishedAt, link, thumbnail));
+    }
+
+    // reads the thumbnail URL out of the show-fields object, "" if it is not there
+    private static String readThumbnail(JsonReader reader) throws IOException {
+        String thumbnail = "";
+        reader.beginObject();
+        while (reader.hasNext()) {
+            if (reader.nextName().equals("thumbnail") && reader.peek() == JsonToken.STRING) {
+                thumbnail = reader.nextString();
+            } else {
+                reader.skipValue();
+            }
+        }
+        reader.endObject();
+        return thumbnail;
+    }
+
+    // collects the webTitle of every tag, which for show-tags=contributor is the author name
+    private static List<String> readContributors(JsonReader reader) throws IOException {
+        List<String> authors = new ArrayList<String>(2);
+        reader.beginArray();
+        while (reader.hasNext()) {
+            reader.beginObject();
+            while (reader.hasNext()) {
+                if (reader.nextName().equals("webTitle") && reader.peek() == JsonToken.STRING) {
+                    authors.add(reader.nextString());
+                } else {
+                    reader.skipValue();
+                }
+            }
+            reader.endObject();
+        }
+        reader.endArray();
+        return authors;
+    }
+}
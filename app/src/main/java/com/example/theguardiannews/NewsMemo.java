@@ -0,0 +1,211 @@
+package com.example.theguardiannews;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link NewsMemo} sits in front of the fetch of a query URL. URLs asking for the same results
+ * are reduced to one {@link NewsQueryKey}, the one the {@link NewsCache} uses. A caller asking
+ * for a key that is being fetched waits for that fetch instead of making its own, and the
+ * parsed results are kept in memory for a short while, so a section chosen again soon or a
+ * page the list dropped is not fetched twice. The copies handed out keep the counts of the
+ * {@link NewsResults} they were fetched with. Only successful fetches are kept, and the least
+ * recently used are evicted first.
+ */
+public class NewsMemo {
+
+    /** Fetches the results of one query URL, or null if it failed. */
+    public interface Fetcher {
+        /**
+         * @param token cancelled once no caller waits for the results any more
+         */
+        List<News> fetch(String url, CancellationToken token);
+    }
+
+    /** Results kept by the shared instance. */
+    private static final int DEFAULT_MAX_ENTRIES = 32;
+
+    /** How long the shared instance keeps results, shorter than the sync interval. */
+    private static final long DEFAULT_TTL_MILLIS = TimeUnit.MINUTES.toMillis(1);
+
+    private static NewsMemo sInstance;
+
+    private final int mMaxEntries;
+    private final long mTtlMillis;
+    private final NewsSync.Clock mClock;
+
+    // canonical key -> results, in least recently used order
+    private final LinkedHashMap<String, Entry> mMemo = new LinkedHashMap<String, Entry>(16, 0.75f, true);
+    // canonical key -> the fetch running for it
+    private final Map<String, Flight> mFlights = new HashMap<String, Flight>();
+
+    private int mHits;
+    private int mMisses;
+    private int mCoalesced;
+
+    /**
+     * The memo shared by the whole app.
+     */
+    public static synchronized NewsMemo get() {
+        if (sInstance == null) {
+            sInstance = new NewsMemo(DEFAULT_MAX_ENTRIES, DEFAULT_TTL_MILLIS, NewsSync.SYSTEM_CLOCK);
+        }
+        return sInstance;
+    }
+
+    /**
+     * @param maxEntries the number of results kept before the oldest are evicted
+     * @param ttlMillis how long results are kept after they were fetched
+     * @param clock tells the time the results are aged by
+     */
+    public NewsMemo(int maxEntries, long ttlMillis, NewsSync.Clock clock) {
+        mMaxEntries = maxEntries;
+        mTtlMillis = ttlMillis;
+        mClock = clock;
+    }
+
+    /**
+     * Return the results for the URL: from memory if they were fetched recently, from the
+     * fetch of an equal URL if one is running, or else from the fetcher. The list returned is
+     * the caller's own.
+     *
+     * @param token abandons the wait when cancelled, and the fetch too once nobody else waits
+     *              for it, may be null
+     * @return the results, or null if the fetch failed or the token was cancelled
+     */
+    public List<News> fetch(String url, CancellationToken token, Fetcher fetcher) {
+        final String key = NewsQueryKey.of(url);
+        final Flight flight;
+        boolean leader = false;
+        synchronized (this) {
+            Entry entry = mMemo.get(key);
+            if (entry != null && mClock.currentTimeMillis() - entry.mFetchedAt < mTtlMillis) {
+                mHits++;
+                return NewsResults.copyOf(entry.mNews);
+            }
+            if (entry != null) {
+                mMemo.remove(key);
+            }
+            Flight running = mFlights.get(key);
+            if (running == null) {
+                running = new Flight();
+                mFlights.put(key, running);
+                leader = true;
+                mMisses++;
+            } else {
+                mCoalesced++;
+            }
+            running.mWaiters++;
+            flight = running;
+        }
+
+        // a caller that gives up no longer holds the fetch, which stops once nobody does
+        Runnable leave = new Runnable() {
+            @Override
+            public void run() {
+                boolean abandoned;
+                synchronized (NewsMemo.this) {
+                    abandoned = !flight.mDone && --flight.mWaiters == 0;
+                    if (abandoned && mFlights.get(key) == flight) {
+                        mFlights.remove(key);
+                    }
+                    NewsMemo.this.notifyAll();
+                }
+                if (abandoned) {
+                    flight.mToken.cancel();
+                }
+            }
+        };
+        if (token != null) {
+            token.onCancel(leave);
+        }
+        try {
+            return leader ? lead(key, url, flight, fetcher) : follow(flight, token);
+        } finally {
+            if (token != null) {
+                token.remove(leave);
+            }
+        }
+    }
+
+    /** Results answered from memory. */
+    public synchronized int hits() {
+        return mHits;
+    }
+
+    /** Results that had to be fetched. */
+    public synchronized int misses() {
+        return mMisses;
+    }
+
+    /** Results that waited for a fetch of an equal URL instead of making their own. */
+    public synchronized int coalesced() {
+        return mCoalesced;
+    }
+
+    // runs the fetch on the caller's thread and hands the results to whoever waits
+    private List<News> lead(String key, String url, Flight flight, Fetcher fetcher) {
+        List<News> news = null;
+        try {
+            news = fetcher.fetch(url, flight.mToken);
+        } finally {
+            synchronized (this) {
+                if (mFlights.get(key) == flight) {
+                    mFlights.remove(key);
+                }
+                if (news != null && !flight.mToken.isCancelled()) {
+                    mMemo.put(key, new Entry(news, mClock.currentTimeMillis()));
+                    trimToSize();
+                }
+                flight.mNews = news;
+                flight.mDone = true;
+                notifyAll();
+            }
+        }
+        return news == null ? null : NewsResults.copyOf(news);
+    }
+
+    // waits for the fetch another caller runs
+    private synchronized List<News> follow(Flight flight, CancellationToken token) {
+        try {
+            while (!flight.mDone && (token == null || !token.isCancelled())) {
+                wait();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return null;
+        }
+        return flight.mDone && flight.mNews != null ? NewsResults.copyOf(flight.mNews) : null;
+    }
+
+    private void trimToSize() {
+        Iterator<Entry> eldest = mMemo.values().iterator();
+        while (mMemo.size() > mMaxEntries && eldest.hasNext()) {
+            eldest.next();
+            eldest.remove();
+        }
+    }
+
+    // results and when they were fetched
+    private static class Entry {
+        final List<News> mNews;
+        final long mFetchedAt;
+
+        Entry(List<News> news, long fetchedAt) {
+            mNews = news;
+            mFetchedAt = fetchedAt;
+        }
+    }
+
+    // a fetch running for a key, guarded by the memo's lock apart from its token
+    private static class Flight {
+        final CancellationToken mToken = new CancellationToken();
+        int mWaiters;
+        boolean mDone;
+        List<News> mNews;
+    }
+}
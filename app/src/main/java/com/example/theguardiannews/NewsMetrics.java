@@ -0,0 +1,178 @@
+package com.example.theguardiannews;
+
+import android.os.Trace;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * {@link NewsMetrics} records where the time of loading and showing the news goes, for the
+ * panel {@link NewsMetricsActivity} shows. Timings and sizes go into a {@link Histogram} each
+ * and outcomes are counted. Nothing is recorded until it is enabled, and while it is off
+ * every call returns after reading one field, so the hot paths can call it freely.
+ *
+ * The same steps are marked as {@link Trace} sections whether recording is on or not, so
+ * they show up in systrace and Perfetto captures.
+ */
+public final class NewsMetrics implements HttpEngine.MetricsListener {
+
+    /** A measurement kept as a histogram. Timings are in microseconds. */
+    public enum Stat {
+        URL_BUILD("URL build", true),
+        CONNECT("Connect", true),
+        TTFB("Time to first byte", true),
+        DOWNLOAD_BYTES("Download bytes", false),
+        PARSE("Parse", true),
+        BIND("Adapter bind", true),
+        ARTICLES("Articles per response", false);
+
+        final String label;
+        final boolean timing;
+
+        Stat(String label, boolean timing) {
+            this.label = label;
+            this.timing = timing;
+        }
+    }
+
+    /** An outcome that is counted. */
+    public enum Counter {
+        // answered by the disk cache without a request
+        CACHE_FRESH("Cache fresh"),
+        // answered by the disk cache after the server said it had not changed
+        CACHE_REVALIDATED("Cache revalidated"),
+        // answered by a full response from the server
+        CACHE_MISS("Cache miss"),
+        REQUEST_FAILED("Request failed"),
+        // attempts repeated by ResilientHttpEngine after a failure
+        RETRY("Retries"),
+        // second attempts raced against a slow one
+        HEDGE("Hedged requests"),
+        // requests failed fast while the server was taken to be down
+        CIRCUIT_OPEN("Circuit open");
+
+        final String label;
+
+        Counter(String label) {
+            this.label = label;
+        }
+    }
+
+    /** Latest values kept for each measurement. */
+    private static final int DEFAULT_CAPACITY = 1024;
+
+    private static NewsMetrics sInstance;
+
+    private final Histogram[] mHistograms = new Histogram[Stat.values().length];
+    private final AtomicLongArray mCounts = new AtomicLongArray(Counter.values().length);
+    private volatile boolean mEnabled;
+
+    /**
+     * The metrics shared by the whole app, off until enabled.
+     */
+    public static synchronized NewsMetrics get() {
+        if (sInstance == null) {
+            sInstance = new NewsMetrics(DEFAULT_CAPACITY);
+        }
+        return sInstance;
+    }
+
+    /**
+     * @param capacity the latest values kept for each measurement
+     */
+    NewsMetrics(int capacity) {
+        for (int i = 0; i < mHistograms.length; i++) {
+            mHistograms[i] = new Histogram(capacity);
+        }
+    }
+
+    public boolean isEnabled() {
+        return mEnabled;
+    }
+
+    public void setEnabled(boolean enabled) {
+        mEnabled = enabled;
+    }
+
+    /**
+     * Start timing a step.
+     *
+     * @return the value to hand to {@link #stop}, 0 while recording is off
+     */
+    public long start() {
+        return mEnabled ? System.nanoTime() : 0;
+    }
+
+    /**
+     * Record the time since {@link #start} returned the given value.
+     */
+    public void stop(Stat stat, long start) {
+        if (start != 0) {
+            mHistograms[stat.ordinal()].record((System.nanoTime() - start) / 1000);
+        }
+    }
+
+    /**
+     * Record a value that is not a timing, such as a size.
+     */
+    public void record(Stat stat, long value) {
+        if (mEnabled) {
+            mHistograms[stat.ordinal()].record(value);
+        }
+    }
+
+    public void increment(Counter counter) {
+        if (mEnabled) {
+            mCounts.incrementAndGet(counter.ordinal());
+        }
+    }
+
+    public long count(Counter counter) {
+        return mCounts.get(counter.ordinal());
+    }
+
+    Histogram.Snapshot snapshot(Stat stat) {
+        return mHistograms[stat.ordinal()].snapshot();
+    }
+
+    /** Forget everything recorded so far. */
+    public void reset() {
+        for (Histogram histogram : mHistograms) {
+            histogram.reset();
+        }
+        for (int i = 0; i < mCounts.length(); i++) {
+            mCounts.set(i, 0);
+        }
+    }
+
+    @Override
+    public void onRequestFinished(HttpEngine.Metrics metrics) {
+        if (!mEnabled) {
+            return;
+        }
+        if (metrics.failed) {
+            increment(Counter.REQUEST_FAILED);
+            return;
+        }
+        // a reused connection has no connect time of its own
+        if (metrics.connectMillis >= 0) {
+            mHistograms[Stat.CONNECT.ordinal()].record(metrics.connectMillis * 1000);
+        }
+        if (metrics.ttfbMillis >= 0) {
+            mHistograms[Stat.TTFB.ordinal()].record(metrics.ttfbMillis * 1000);
+        }
+        mHistograms[Stat.DOWNLOAD_BYTES.ordinal()].record(metrics.bytesReceived);
+    }
+
+    /**
+     * Mark the start of a step in the system trace. The name should be a constant, so it is
+     * not built on every call.
+     */
+    public static void beginSection(String name) {
+        Trace.beginSection(name);
+    }
+
+    /** Mark the end of the innermost step started on this thread. */
+    public static void endSection() {
+        Trace.endSection();
+    }
+}
@@ -0,0 +1,102 @@
+package com.example.theguardiannews;
+
+import android.content.Context;
+import android.os.Bundle;
+import android.preference.PreferenceManager;
+import android.view.View;
+import android.widget.CompoundButton;
+import android.widget.TextView;
+
+import androidx.appcompat.app.AppCompatActivity;
+import androidx.appcompat.widget.SwitchCompat;
+
+import java.util.Locale;
+
+/**
+ * {@link NewsMetricsActivity} is the debug panel behind the overflow menu. It switches the
+ * recording of {@link NewsMetrics} on and off and shows the 50th, 95th and 99th percentiles
+ * of every measurement with the cache and memo counts.
+ */
+public class NewsMetricsActivity extends AppCompatActivity {
+
+    private NewsMetrics mMetrics;
+    private TextView mText;
+
+    /**
+     * Whether recording was switched on in the panel, which lasts across launches.
+     */
+    static boolean isRecording(Context context) {
+        return PreferenceManager.getDefaultSharedPreferences(context)
+                .getBoolean(context.getString(R.string.metrics_key), false);
+    }
+
+    @Override
+    protected void onCreate(Bundle savedInstanceState) {
+        super.onCreate(savedInstanceState);
+        setContentView(R.layout.news_metrics_activity);
+        mMetrics = NewsMetrics.get();
+        mText = (TextView) findViewById(R.id.metrics_text);
+
+        SwitchCompat recording = (SwitchCompat) findViewById(R.id.metrics_recording);
+        recording.setChecked(mMetrics.isEnabled());
+        recording.setOnCheckedChangeListener(new CompoundButton.OnCheckedChangeListener() {
+            @Override
+            public void onCheckedChanged(CompoundButton button, boolean checked) {
+                PreferenceManager.getDefaultSharedPreferences(NewsMetricsActivity.this).edit()
+                        .putBoolean(getString(R.string.metrics_key), checked).apply();
+                mMetrics.setEnabled(checked);
+                showMetrics();
+            }
+        });
+        findViewById(R.id.metrics_reset).setOnClickListener(new View.OnClickListener() {
+            @Override
+            public void onClick(View view) {
+                mMetrics.reset();
+                showMetrics();
+            }
+        });
+    }
+
+    @Override
+    protected void onResume() {
+        super.onResume();
+        showMetrics();
+    }
+
+    private void showMetrics() {
+        mText.setText(report(mMetrics, NewsMemo.get()));
+    }
+
+    /**
+     * The panel's text: a line for each measurement, then the counts.
+     */
+    static String report(NewsMetrics metrics, NewsMemo memo) {
+        StringBuilder text = new StringBuilder();
+        text.append(String.format(Locale.US, "%-22s %8s %8s %8s %6s%n", "", "p50", "p95", "p99", "n"));
+        for (NewsMetrics.Stat stat : NewsMetrics.Stat.values()) {
+            Histogram.Snapshot snapshot = metrics.snapshot(stat);
+            text.append(String.format(Locale.US, "%-22s %8s %8s %8s %6d%n", stat.label,
+                    value(stat, snapshot.percentile(0.5)), value(stat, snapshot.percentile(0.95)),
+                    value(stat, snapshot.percentile(0.99)), snapshot.count));
+        }
+
+        text.append('\n');
+        long fresh = metrics.count(NewsMetrics.Counter.CACHE_FRESH);
+        long revalidated = metrics.count(NewsMetrics.Counter.CACHE_REVALIDATED);
+        long loads = fresh + revalidated + metrics.count(NewsMetrics.Counter.CACHE_MISS);
+        for (NewsMetrics.Counter counter : NewsMetrics.Counter.values()) {
+            text.append(String.format(Locale.US, "%-22s %8d%n", counter.label, metrics.count(counter)));
+        }
+        text.append(String.format(Locale.US, "%-22s %8s%n", "Cache hit rate",
+                loads == 0 ? "-" : (fresh + revalidated) * 100 / loads + "%"));
+        text.append(String.format(Locale.US, "%-22s %8d%n", "Memo hits", memo.hits()));
+        text.append(String.format(Locale.US, "%-22s %8d%n", "Memo misses", memo.misses()));
+        text.append(String.format(Locale.US, "%-22s %8d%n", "Memo shared", memo.coalesced()));
+        return text.toString();
+    }
+
+    // timings in milliseconds, microseconds kept as a decimal
+    private static String value(NewsMetrics.Stat stat, long value) {
+        return stat.timing ? String.format(Locale.US, "%.1fms", value / 1000.0) : String.valueOf(value);
+    }
+}
@@ -0,0 +1,249 @@
+package com.example.theguardiannews;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.Executor;
+
+/**
+ * {@link NewsPager} turns the Guardian's numbered result pages into one scrolling list.
+ * Page 1 is handed over by {@link NewsViewModel}'s results; the following pages are fetched
+ * with the {@code page} parameter as the user nears the end of the list, and the page after
+ * the last one shown is always prefetched so it can be appended straight away, up to the last
+ * page the results count or the first found past it, which the Guardian answers with a 400.
+ * Articles repeated across a page boundary are dropped, and only a bounded window of pages is
+ * kept in memory: pages far from the visible rows are released and fetched again if the user
+ * scrolls back to them.
+ *
+ * All methods must be called on the main thread; the listener is also called there.
+ */
+public class NewsPager {
+
+    /**
+     * Fetches one page of results, called on a background thread. Null means it failed, and
+     * an empty page that it is past the last one. The pages the results tell of are counted
+     * in pages of the list's own size.
+     */
+    public interface PageSource {
+        NewsResults fetchPage(int page);
+    }
+
+    /** Told whenever the rows in the window change. */
+    public interface Listener {
+        void onWindowChanged(List<News> window);
+    }
+
+    private final PageSource mSource;
+    private final Executor mBackgroundExecutor;
+    private final Executor mMainExecutor;
+    private final Listener mListener;
+    private final int mPrefetchDistance;
+    private final int mMaxPages;
+
+    // the pages currently shown, by page number, already de-duplicated
+    private final TreeMap<Integer, List<News>> mWindow = new TreeMap<Integer, List<News>>();
+    // pages fetched ahead of being shown
+    private final Map<Integer, List<News>> mPrefetched = new HashMap<Integer, List<News>>();
+    // pages being fetched
+    private final Set<Integer> mInFlight = new HashSet<Integer>();
+    // pages to show as soon as their fetch completes
+    private final Set<Integer> mWanted = new HashSet<Integer>();
+
+    private String mQuery;
+    // bumped on every new query so results for an old one are ignored
+    private int mGeneration;
+    // the page after the last one, nothing is requested from it on
+    private int mEndPage = Integer.MAX_VALUE;
+
+    /**
+     * @param prefetchDistance how many rows from either end of the window the next page is shown
+     * @param maxPages how many pages are kept in the window before far-off ones are released
+     */
+    public NewsPager(PageSource source, Executor backgroundExecutor, Executor mainExecutor,
+                     Listener listener, int prefetchDistance, int maxPages) {
+        mSource = source;
+        mBackgroundExecutor = backgroundExecutor;
+        mMainExecutor = mainExecutor;
+        mListener = listener;
+        mPrefetchDistance = prefetchDistance;
+        mMaxPages = Math.max(2, maxPages);
+    }
+
+    /**
+     * Hand over page 1 of the given query. A new query starts the list again; the same query
+     * (a fresh copy of a cached page 1) only replaces that page if it is still in the window.
+     */
+    public void deliverFirstPage(String query, List<News> page) {
+        if (!query.equals(mQuery)) {
+            mQuery = query;
+            mGeneration++;
+            mWindow.clear();
+            mPrefetched.clear();
+            mInFlight.clear();
+            mWanted.clear();
+            mEndPage = Integer.MAX_VALUE;
+        } else if (!mWindow.containsKey(1)) {
+            return;
+        }
+        mWindow.put(1, withoutDuplicates(1, page));
+        if (page.isEmpty()) {
+            mEndPage = 1;
+        }
+        publish();
+        prefetch(mWindow.lastKey() + 1);
+    }
+
+    /**
+     * Called as the list scrolls, with the positions of the visible rows in the window.
+     */
+    public void onScrolled(int firstVisible, int visibleCount, int totalCount) {
+        if (mWindow.isEmpty()) {
+            return;
+        }
+        if (firstVisible + visibleCount >= totalCount - mPrefetchDistance) {
+            show(mWindow.lastKey() + 1);
+        }
+        if (firstVisible <= mPrefetchDistance && mWindow.firstKey() > 1) {
+            show(mWindow.firstKey() - 1);
+        }
+    }
+
+    /**
+     * Prefetch the page after the window again, as after its fetch failed for want of a
+     * network.
+     */
+    public void resume() {
+        if (!mWindow.isEmpty()) {
+            prefetch(mWindow.lastKey() + 1);
+        }
+    }
+
+    /** The number of the first page in the window, 0 when it is empty. */
+    public int firstPage() {
+        return mWindow.isEmpty() ? 0 : mWindow.firstKey();
+    }
+
+    // shows the page now if it was prefetched, otherwise as soon as it arrives
+    private void show(int page) {
+        if (page < 1 || page >= mEndPage || mWindow.containsKey(page)) {
+            return;
+        }
+        List<News> prefetched = mPrefetched.remove(page);
+        if (prefetched != null) {
+            addToWindow(page, prefetched);
+            return;
+        }
+        mWanted.add(page);
+        fetch(page);
+    }
+
+    private void prefetch(int page) {
+        if (page < mEndPage && !mWindow.containsKey(page) && !mPrefetched.containsKey(page)) {
+            fetch(page);
+        }
+    }
+
+    private void fetch(final int page) {
+        if (!mInFlight.add(page)) {
+            return;
+        }
+        final int generation = mGeneration;
+        mBackgroundExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                final NewsResults news = mSource.fetchPage(page);
+                mMainExecutor.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        onPageFetched(generation, page, news);
+                    }
+                });
+            }
+        });
+    }
+
+    private void onPageFetched(int generation, int page, NewsResults news) {
+        if (generation != mGeneration) {
+            return;
+        }
+        mInFlight.remove(page);
+        if (news == null) {
+            // failed, it is asked for again the next time the user scrolls near it
+            mWanted.remove(page);
+            return;
+        }
+        if (news.pages != NewsResults.UNKNOWN) {
+            // nothing is asked for past the last page the server counts
+            mEndPage = Math.min(mEndPage, news.pages + 1);
+        }
+        if (news.isEmpty()) {
+            mEndPage = Math.min(mEndPage, page);
+            mWanted.remove(page);
+            return;
+        }
+        if (mWanted.remove(page)) {
+            addToWindow(page, news);
+        } else {
+            mPrefetched.put(page, news);
+        }
+    }
+
+    private void addToWindow(int page, List<News> news) {
+        mWindow.put(page, withoutDuplicates(page, news));
+
+        // release the page furthest from the one just shown
+        while (mWindow.size() > mMaxPages) {
+            int released = page > mWindow.firstKey() ? mWindow.firstKey() : mWindow.lastKey();
+            mWindow.remove(released);
+        }
+        // prefetched pages next to a released end are of no use any more
+        mPrefetched.keySet().retainAll(neighbours());
+
+        publish();
+        if (page == mWindow.lastKey()) {
+            prefetch(page + 1);
+        }
+    }
+
+    // the pages either side of the window, the only ones worth holding prefetched
+    private Set<Integer> neighbours() {
+        Set<Integer> pages = new HashSet<Integer>();
+        pages.add(mWindow.firstKey() - 1);
+        pages.add(mWindow.lastKey() + 1);
+        return pages;
+    }
+
+    // removes the articles another page of the window already shows
+    private List<News> withoutDuplicates(int page, List<News> news) {
+        Set<String> shown = new HashSet<String>();
+        for (Map.Entry<Integer, List<News>> entry : mWindow.entrySet()) {
+            if (entry.getKey() != page) {
+                for (News item : entry.getValue()) {
+                    shown.add(item.getId());
+                }
+            }
+        }
+        if (shown.isEmpty()) {
+            return news;
+        }
+        List<News> unique = new ArrayList<News>(news.size());
+        for (News item : news) {
+            if (!shown.contains(item.getId())) {
+                unique.add(item);
+            }
+        }
+        return unique;
+    }
+
+    private void publish() {
+        List<News> window = new ArrayList<News>();
+        for (List<News> page : mWindow.values()) {
+            window.addAll(page);
+        }
+        mListener.onWindowChanged(window);
+    }
+}
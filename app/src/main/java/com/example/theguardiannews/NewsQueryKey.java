@@ -0,0 +1,105 @@
+package com.example.theguardiannews;
+
+import java.io.UnsupportedEncodingException;
+import java.net.URLDecoder;
+import java.net.URLEncoder;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * {@link NewsQueryKey} reduces a Guardian query URL to a key that is the same for URLs asking
+ * for the same results, which {@link NewsCache} names its entries by and {@link NewsMemo}
+ * shares its fetches by:
+ * <ul>
+ * <li>the scheme and host are lower-cased;</li>
+ * <li>the parameters are sorted, their names lower-cased and the API key left out;</li>
+ * <li>the values keep their case, apart from the search words, which are stripped of repeated
+ * spaces and lower-cased, but for the Guardian's AND, OR and NOT operators.</li>
+ * </ul>
+ */
+final class NewsQueryKey {
+
+    /** The parameter that does not change the results. */
+    private static final String IGNORED_PARAMETER = "api-key";
+
+    // the search words are matched case-insensitively, apart from the Guardian's operators
+    private static final String SEARCH_PARAMETER = "q";
+    private static final List<String> OPERATORS = Arrays.asList("AND", "OR", "NOT");
+
+    private NewsQueryKey() {
+    }
+
+    /**
+     * The key of the query URL.
+     */
+    static String of(String url) {
+        int question = url.indexOf('?');
+        String base = question == -1 ? url : url.substring(0, question);
+        int authority = base.indexOf("://");
+        if (authority != -1) {
+            int path = base.indexOf('/', authority + 3);
+            int end = path == -1 ? base.length() : path;
+            base = base.substring(0, end).toLowerCase(Locale.ROOT) + base.substring(end);
+        }
+        if (question == -1) {
+            return base;
+        }
+
+        List<String> parameters = new ArrayList<String>();
+        for (String parameter : url.substring(question + 1).split("&")) {
+            if (parameter.isEmpty()) {
+                continue;
+            }
+            int equals = parameter.indexOf('=');
+            String name = decode(equals == -1 ? parameter : parameter.substring(0, equals)).toLowerCase(Locale.ROOT);
+            if (name.equals(IGNORED_PARAMETER)) {
+                continue;
+            }
+            String value = equals == -1 ? "" : decode(parameter.substring(equals + 1));
+            if (name.equals(SEARCH_PARAMETER)) {
+                value = normalizeWords(value);
+            }
+            parameters.add(encode(name) + '=' + encode(value));
+        }
+        Collections.sort(parameters);
+        StringBuilder key = new StringBuilder(base);
+        for (int i = 0; i < parameters.size(); i++) {
+            key.append(i == 0 ? '?' : '&').append(parameters.get(i));
+        }
+        return key.toString();
+    }
+
+    private static String normalizeWords(String words) {
+        StringBuilder normalized = new StringBuilder(words.length());
+        for (String word : words.trim().split("\\s+")) {
+            if (word.isEmpty()) {
+                continue;
+            }
+            if (normalized.length() > 0) {
+                normalized.append(' ');
+            }
+            normalized.append(OPERATORS.contains(word) ? word : word.toLowerCase(Locale.ROOT));
+        }
+        return normalized.toString();
+    }
+
+    private static String decode(String s) {
+        try {
+            return URLDecoder.decode(s, "UTF-8");
+        } catch (UnsupportedEncodingException | IllegalArgumentException e) {
+            // not escaped the way a URL should be, so it is compared as it is
+            return s;
+        }
+    }
+
+    private static String encode(String s) {
+        try {
+            return URLEncoder.encode(s, "UTF-8");
+        } catch (UnsupportedEncodingException e) {
+            return s;
+        }
+    }
+}
@@ -0,0 +1,528 @@
+package com.example.theguardiannews;
+
+import android.content.Context;
+import android.database.sqlite.SQLiteException;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link NewsRepository} loads the news list on threads of its own. A load happens in two
+ * phases: the sections' articles are told from the local {@link NewsStore} (or the last known
+ * results for the queries from the {@link NewsCache}) as soon as they are read, then the fresh
+ * results once the server has answered. Several sections are fetched together by
+ * {@link NewsFanOut}, and the merge of those that have answered is told while the others are
+ * still on their way. Loads of equal queries running at the same time are shared, and a load
+ * nobody waits for any more is cancelled, closing its connections. A load that could not
+ * reach the server tells why, so the user knows the rows shown may be old. The requests are
+ * shaped to the link by a {@link NewsFetchPolicy}, and not made at all while
+ * {@link NewsConnectivity} knows of no network to make them over.
+ * Its methods are called on the main thread, where the results are told.
+ */
+public class NewsRepository {
+
+    private static final String LOG_TAG = NewsRepository.class.getSimpleName();
+
+    // loads run at the same time by the shared instance, so a new query does not wait for a
+    // cancelled one to wind down
+    private static final int THREADS = 2;
+
+    /** Told the results of a load, on the main thread. */
+    public interface Callback {
+        /**
+         * @param news the results, or null if the fetch failed
+         * @param done whether these are the fetched results, after which nothing more is told
+         */
+        void onNews(List<News> news, boolean done);
+
+        /**
+         * The fetch failed for the given reason. Told just before the last results, which are
+         * null, so whatever was told before is all there is, or short of the chunks of a page
+         * that failed.
+         */
+        void onFailed(NewsFetchException.Reason reason);
+    }
+
+    /**
+     * What a load is for: the URL of each section, the sections, the words searched for and
+     * the number of articles fetched for each section. Equal queries share a load.
+     */
+    public static final class Query {
+        final List<String> urls;
+        final List<String> sections;
+        final String words;
+        final int pageSize;
+
+        /**
+         * @param urls to load data from, one for each section
+         * @param sections the sections_key values of the URLs, which the stored articles are
+         *                 filtered by
+         * @param words the words searched for, or null if there are none
+         * @param pageSize the number of articles fetched for each section
+         */
+        public Query(List<String> urls, List<String> sections, String words, int pageSize) {
+            this.urls = urls;
+            this.sections = sections;
+            this.words = words;
+            this.pageSize = pageSize;
+        }
+
+        /** The query URLs, one for each section. */
+        public List<String> getUrls() {
+            return urls;
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            if (!(other instanceof Query)) {
+                return false;
+            }
+            Query query = (Query) other;
+            return urls.equals(query.urls) && sections.equals(query.sections)
+                    && (words == null ? query.words == null : words.equals(query.words))
+                    && pageSize == query.pageSize;
+        }
+
+        @Override
+        public int hashCode() {
+            return Arrays.hashCode(new Object[]{urls, sections, words, pageSize});
+        }
+    }
+
+    private static NewsRepository sInstance;
+
+    private final Context mContext;
+    private final HttpEngine mEngine;
+    private final NewsCache mCache;
+    private final NewsStore mStore;
+    private final NewsMemo mMemo;
+    private final NewsFetchPolicy mPolicy;
+    private final NewsConnectivity mConnectivity;
+    private final Executor mExecutor;
+    private final Handler mMainHandler = new Handler(Looper.getMainLooper());
+
+    // the load running for each query, and the load each callback is waiting for
+    private final Map<Query, Load> mLoads = new HashMap<Query, Load>();
+    private final Map<Callback, Load> mWaiting = new HashMap<Callback, Load>();
+    // why the last fetch of each URL failed, kept until one succeeds, so loads that shared a
+    // failed fetch with another load are told the reason too
+    private final Map<String, NewsFetchException.Reason> mFailures =
+            new ConcurrentHashMap<String, NewsFetchException.Reason>();
+
+    /**
+     * The repository shared by the whole app.
+     */
+    public static synchronized NewsRepository get(Context context) {
+        if (sInstance == null) {
+            Context appContext = context.getApplicationContext();
+            ThreadPoolExecutor executor = new ThreadPoolExecutor(THREADS, THREADS, 30, TimeUnit.SECONDS,
+                    new LinkedBlockingQueue<Runnable>());
+            executor.allowCoreThreadTimeOut(true);
+            sInstance = new NewsRepository(appContext, ResilientHttpEngine.get(), NewsCache.get(appContext),
+                    NewsStore.get(appContext), NewsMemo.get(), NewsFetchPolicy.get(),
+                    NewsConnectivity.get(appContext), executor);
+        }
+        return sInstance;
+    }
+
+    /**
+     * @param engine makes the requests
+     * @param cache keeps the result of each query
+     * @param store keeps every article fetched
+     * @param memo shares the fetches of equal URLs and keeps their results for a while
+     * @param executor runs the loads
+     */
+    public NewsRepository(Context context, HttpEngine engine, NewsCache cache, NewsStore store,
+                          NewsMemo memo, Executor executor) {
+        this(context, engine, cache, store, memo, new NewsFetchPolicy(), executor);
+    }
+
+    /**
+     * Same as {@link #NewsRepository(Context, HttpEngine, NewsCache, NewsStore, NewsMemo,
+     * Executor)}, shaping the requests with the given policy.
+     */
+    public NewsRepository(Context context, HttpEngine engine, NewsCache cache, NewsStore store,
+                          NewsMemo memo, NewsFetchPolicy policy, Executor executor) {
+        this(context, engine, cache, store, memo, policy, null, executor);
+    }
+
+    /**
+     * Same as {@link #NewsRepository(Context, HttpEngine, NewsCache, NewsStore, NewsMemo,
+     * NewsFetchPolicy, Executor)}, only asking the server while the given monitor knows of a
+     * network, or always if it is null.
+     */
+    public NewsRepository(Context context, HttpEngine engine, NewsCache cache, NewsStore store,
+                          NewsMemo memo, NewsFetchPolicy policy, NewsConnectivity connectivity,
+                          Executor executor) {
+        mContext = context.getApplicationContext();
+        mEngine = engine;
+        mCache = cache;
+        mStore = store;
+        mMemo = memo;
+        mPolicy = policy;
+        mConnectivity = connectivity;
+        mExecutor = executor;
+    }
+
+    /**
+     * Load the given query for the callback, joining the load of an equal query if one is
+     * running. Whatever the callback was waiting for before is no longer wanted.
+     */
+    public void load(Query query, Callback callback) {
+        cancel(callback);
+        Load load = mLoads.get(query);
+        if (load == null) {
+            load = new Load(query);
+            mLoads.put(query, load);
+            mExecutor.execute(load.mTask);
+        } else if (load.mKnown != null) {
+            // catch up with what the others waiting were already told
+            callback.onNews(load.mKnown, false);
+        }
+        load.mCallbacks.add(callback);
+        mWaiting.put(callback, load);
+    }
+
+    /**
+     * Stop telling the callback about its load. The load is cancelled, and its requests
+     * abandoned, if no other callback is waiting for it.
+     */
+    public void cancel(Callback callback) {
+        Load load = mWaiting.remove(callback);
+        if (load == null) {
+            return;
+        }
+        load.mCallbacks.remove(callback);
+        if (load.mCallbacks.isEmpty()) {
+            if (mLoads.get(load.mQuery) == load) {
+                mLoads.remove(load.mQuery);
+            }
+            load.mToken.cancel();
+            load.mTask.cancel(true);
+        }
+    }
+
+    // on a background thread
+    private List<News> fetch(final Load load) {
+        final Query query = load.mQuery;
+        final CancellationToken token = load.mToken;
+        final Map<String, NewsCache.Entry> cached = new HashMap<String, NewsCache.Entry>();
+        for (String url : query.urls) {
+            cached.put(url, mCache.get(url));
+        }
+        // works out how each row is displayed while we are off the main thread
+        final NewsStyler styler = new NewsStyler(mContext);
+
+        // The store answers with an indexed query on the sections, or a full-text search for
+        // keywords
+        final List<News> stored = readStore(query);
+
+        // The sections were fetched in full recently, by the background sync or an earlier
+        // load, so the store answers on its own
+        NewsSync sync = new NewsSync(mContext, mStore, MainActivity.baseUrl(mContext), NewsSync.SYSTEM_CLOCK);
+        long maxAge = TimeUnit.MINUTES.toMillis(mContext.getResources().getInteger(R.integer.sync_interval_minutes));
+        if (query.words == null && stored != null && !stored.isEmpty() && isFresh(sync, query, maxAge)) {
+            styler.style(stored);
+            return stored;
+        }
+
+        // First phase: show what we already have for this query while it is revalidated. The
+        // cached results of the queries cover anything the store has not seen.
+        List<News> cachedNews = cachedNews(query, cached);
+        if (stored != null && !stored.isEmpty()) {
+            styler.style(stored);
+            publish(load, stored);
+        } else if (cachedNews != null) {
+            styler.style(cachedNews);
+            publish(load, cachedNews);
+        }
+
+        // Without a network every attempt would only wait for its timeouts, so what we have is
+        // all there is until one appears
+        if (mConnectivity != null && !mConnectivity.isOnline()) {
+            load.mFailure = NewsFetchException.Reason.OFFLINE;
+            return null;
+        }
+
+        // Second phase: perform the network requests, parse the responses, and extract a list of news.
+        // The cached entries answer directly or turn the requests into conditional ones, and
+        // new results are written to the store. A stale result ordered newest first only asks
+        // for what was published since. A URL fetched a moment ago, or being fetched by
+        // someone else, is answered by the memo. On a slow link the first page comes in
+        // chunks without thumbnails and tags, which are kept out of the store so they do not
+        // replace complete copies.
+        final NewsFetchPolicy.Plan plan = mPolicy.plan(query.pageSize);
+        final NewsStore store = plan.fields ? mStore : null;
+        final NewsMemo.Fetcher fetcher = new NewsMemo.Fetcher() {
+            @Override
+            public List<News> fetch(String url, CancellationToken flight) {
+                NewsCache.Entry entry = cached.containsKey(url) ? cached.get(url) : mCache.get(url);
+                try {
+                    List<News> news = NewsDelta.fetch(mEngine, url, mCache, entry, store,
+                            flight, plan.chunkSize);
+                    mFailures.remove(url);
+                    return news;
+                } catch (NewsFetchException e) {
+                    // a cancelled fetch fails on purpose
+                    if (!flight.isCancelled()) {
+                        Log.e(LOG_TAG, "Problem fetching the news.", e);
+                        mFailures.put(url, e.reason);
+                    }
+                    return null;
+                }
+            }
+        };
+        final NewsFanOut.Listener partials = new NewsFanOut.Listener() {
+            @Override
+            public void onPartialResult(List<News> partial) {
+                // the stored rows fill in for the sections and chunks still on their way
+                List<News> shown = partial;
+                if (stored != null) {
+                    shown = query.words != null ? merge(partial, stored)
+                            : NewsFanOut.merge(Arrays.asList(partial, stored));
+                }
+                styler.style(shown);
+                publish(load, shown);
+            }
+        };
+        final Set<String> fetched = Collections.synchronizedSet(new HashSet<String>());
+        List<News> news;
+        if (query.urls.size() == 1) {
+            String url = query.urls.get(0);
+            news = fetchFirstPage(url, plan, load, fetcher, partials);
+            if (news != null && store != null && !load.mShort.contains(url)) {
+                fetched.add(query.sections.get(0));
+            }
+        } else {
+            news = NewsFanOut.get().fetchAll(query.urls, new NewsFanOut.Source() {
+                @Override
+                public List<News> fetch(String url) {
+                    List<News> section = fetchFirstPage(url, plan, load, fetcher, null);
+                    if (section != null && store != null && !load.mShort.contains(url)) {
+                        fetched.add(query.sections.get(query.urls.indexOf(url)));
+                    }
+                    return section;
+                }
+            }, partials);
+        }
+        if (query.words == null && !fetched.isEmpty()) {
+            markSynced(fetched);
+        }
+        if (news != null && query.words != null && stored != null) {
+            // the server's matches come first, followed by local ones it did not return
+            news = merge(news, stored);
+        }
+        if (news != null) {
+            styler.style(news);
+        } else if (!token.isCancelled()) {
+            load.mFailure = failure(query, plan);
+        }
+        return news;
+    }
+
+    // the first page of a section's results in the chunks the plan asks for, the articles
+    // so far told to the listener, if any, as each chunk but the last arrives. Null if the
+    // first chunk failed. A later chunk that fails leaves the page short: the load is failed
+    // for it, so the user is told and the page is loaded again, and the section is not
+    // recorded as fetched in full.
+    private List<News> fetchFirstPage(String url, NewsFetchPolicy.Plan plan, Load load,
+                                      NewsMemo.Fetcher fetcher, NewsFanOut.Listener listener) {
+        if (plan.chunks() == 1) {
+            return mMemo.fetch(plan.firstUrl(url), load.mToken, fetcher);
+        }
+        List<News> page = new ArrayList<News>(plan.pageSize);
+        for (int chunk = 1; chunk <= plan.chunks(); chunk++) {
+            String chunkUrl = plan.chunkUrl(url, chunk);
+            List<News> part = mMemo.fetch(chunkUrl, load.mToken, fetcher);
+            if (part == null) {
+                if (chunk == 1) {
+                    return null;
+                }
+                // the chunks that did arrive are still worth showing
+                load.mShort.add(url);
+                if (!load.mToken.isCancelled()) {
+                    NewsFetchException.Reason reason = mFailures.get(chunkUrl);
+                    load.mFailure = reason != null ? reason : NewsFetchException.Reason.SERVER;
+                }
+                return page;
+            }
+            page.addAll(part);
+            if (part.size() < plan.chunkSize) {
+                // there are no more results
+                break;
+            }
+            if (listener != null && chunk < plan.chunks()) {
+                listener.onPartialResult(new ArrayList<News>(page));
+            }
+        }
+        return page;
+    }
+
+    // why the fetch of the query's URLs failed, the first reason known
+    private NewsFetchException.Reason failure(Query query, NewsFetchPolicy.Plan plan) {
+        for (String url : query.urls) {
+            NewsFetchException.Reason reason = mFailures.get(plan.firstUrl(url));
+            if (reason != null) {
+                return reason;
+            }
+        }
+        return NewsFetchException.Reason.SERVER;
+    }
+
+    // the stored articles for the query, or null if the store cannot be read
+    private List<News> readStore(Query query) {
+        List<String> sectionIds = query.sections.contains(mContext.getString(R.string.all)) ? null : query.sections;
+        // as many as the server is asked for
+        int limit = query.pageSize * query.sections.size();
+        try {
+            return query.words != null ? mStore.search(query.words, sectionIds, limit)
+                    : mStore.query(sectionIds, limit);
+        } catch (SQLiteException e) {
+            Log.e(LOG_TAG, "Problem reading the news store.", e);
+            return null;
+        }
+    }
+
+    // whether every section was fetched in full less than the given time ago
+    private static boolean isFresh(NewsSync sync, Query query, long maxAgeMillis) {
+        for (String section : query.sections) {
+            if (!sync.isFresh(section, maxAgeMillis)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // the cached results of the queries merged by time, or null if none are cached
+    private static List<News> cachedNews(Query query, Map<String, NewsCache.Entry> cached) {
+        List<List<News>> lists = new ArrayList<List<News>>();
+        for (String url : query.urls) {
+            NewsCache.Entry entry = cached.get(url);
+            if (entry != null) {
+                lists.add(entry.news);
+            }
+        }
+        return lists.isEmpty() ? null : NewsFanOut.merge(lists);
+    }
+
+    // records that the newest articles of the given sections are now in the store
+    private void markSynced(Set<String> sections) {
+        try {
+            mStore.markSynced(new ArrayList<String>(sections), System.currentTimeMillis());
+        } catch (SQLiteException e) {
+            Log.e(LOG_TAG, "Problem recording the load.", e);
+        }
+    }
+
+    // the remote rows followed by the local rows that are not among them
+    static List<News> merge(List<News> remote, List<News> local) {
+        Set<String> seen = new HashSet<String>();
+        List<News> merged = new ArrayList<News>(remote.size() + local.size());
+        for (News item : remote) {
+            seen.add(item.getId());
+            merged.add(item);
+        }
+        for (News item : local) {
+            if (seen.add(item.getId())) {
+                merged.add(item);
+            }
+        }
+        return merged;
+    }
+
+    // hands results that are not the last ones to the main thread, for whoever still waits
+    private void publish(final Load load, final List<News> news) {
+        mMainHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                if (load.mCallbacks.isEmpty()) {
+                    return;
+                }
+                load.mKnown = news;
+                for (Callback callback : new ArrayList<Callback>(load.mCallbacks)) {
+                    callback.onNews(news, false);
+                }
+            }
+        });
+    }
+
+    // on the main thread once a load is over
+    private void finish(Load load, List<News> news) {
+        if (mLoads.get(load.mQuery) == load) {
+            mLoads.remove(load.mQuery);
+        }
+        List<Callback> callbacks = new ArrayList<Callback>(load.mCallbacks);
+        load.mCallbacks.clear();
+        for (Callback callback : callbacks) {
+            mWaiting.remove(callback);
+        }
+        for (Callback callback : callbacks) {
+            if (load.mFailure != null) {
+                callback.onFailed(load.mFailure);
+            }
+            callback.onNews(news, true);
+        }
+    }
+
+    // a load and the callbacks waiting for it
+    private class Load {
+        final Query mQuery;
+        final CancellationToken mToken = new CancellationToken();
+        final List<Callback> mCallbacks = new ArrayList<Callback>(1);
+        final FutureTask<List<News>> mTask;
+        // the last results told before the load is over, null until then
+        List<News> mKnown;
+        // why the fetch failed, null unless it did, even if only for a chunk of a page
+        volatile NewsFetchException.Reason mFailure;
+        // the URLs whose first page is missing the chunks that failed
+        final Set<String> mShort = Collections.synchronizedSet(new HashSet<String>());
+
+        Load(Query query) {
+            mQuery = query;
+            mTask = new FutureTask<List<News>>(new Callable<List<News>>() {
+                @Override
+                public List<News> call() {
+                    return fetch(Load.this);
+                }
+            }) {
+                @Override
+                protected void done() {
+                    if (isCancelled()) {
+                        return;
+                    }
+                    List<News> news;
+                    try {
+                        news = get();
+                    } catch (InterruptedException | ExecutionException e) {
+                        Log.e(LOG_TAG, "Problem loading the news.", e);
+                        news = null;
+                    }
+                    final List<News> result = news;
+                    mMainHandler.post(new Runnable() {
+                        @Override
+                        public void run() {
+                            finish(Load.this, result);
+                        }
+                    });
+                }
+            };
+        }
+    }
+}
@@ -0,0 +1,78 @@
+package com.example.theguardiannews;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * {@link NewsResults} is one page of the results of a query that also knows where it stands
+ * among all of them, as the Guardian tells in {@code response.total}, {@code pageSize},
+ * {@code currentPage} and {@code pages}. The Guardian answers a page past the last with an
+ * HTTP 400 rather than an empty page, so this is how the end of the results is known before
+ * asking for it. Lists copied on their way to the screen keep it with {@link #copyOf(List)}.
+ */
+public class NewsResults extends ArrayList<News> {
+
+    /** What the server did not tell. */
+    static final int UNKNOWN = -1;
+
+    // the results there are in all, and the size, number and count of the pages they are in
+    final int total;
+    final int pageSize;
+    final int currentPage;
+    final int pages;
+
+    NewsResults(Collection<News> news, int total, int pageSize, int currentPage, int pages) {
+        super(news);
+        this.total = total;
+        this.pageSize = pageSize;
+        this.currentPage = currentPage;
+        this.pages = pages;
+    }
+
+    /** Results nothing is known about beyond their rows. */
+    NewsResults(Collection<News> news) {
+        this(news, UNKNOWN, UNKNOWN, UNKNOWN, UNKNOWN);
+    }
+
+    /** The empty page the Guardian answers with a 400 for, past the last one. */
+    static NewsResults pastTheEnd() {
+        return new NewsResults(Collections.<News>emptyList());
+    }
+
+    /**
+     * The given list as results, telling nothing more unless it is already.
+     */
+    static NewsResults of(List<News> news) {
+        return news instanceof NewsResults ? (NewsResults) news : new NewsResults(news);
+    }
+
+    /**
+     * A copy of the given list that keeps what it tells about the other pages.
+     */
+    static NewsResults copyOf(List<News> news) {
+        NewsResults results = of(news);
+        return new NewsResults(news, results.total, results.pageSize, results.currentPage, results.pages);
+    }
+
+    /**
+     * The given rows as the given page of a list of pages of the given size, counted from
+     * what the results they were taken from tell.
+     */
+    static NewsResults page(List<News> rows, List<News> fetched, int page, int pageSize) {
+        return new NewsResults(rows, of(fetched).total, pageSize, page, of(fetched).pageCount(pageSize));
+    }
+
+    /**
+     * The number of pages of the given size the query has: worked out from the total when the
+     * server told it, or its own count when its pages are of that size, otherwise
+     * {@link #UNKNOWN}.
+     */
+    int pageCount(int size) {
+        if (total != UNKNOWN) {
+            return Math.max(1, (total + size - 1) / size);
+        }
+        return pageSize == size ? pages : UNKNOWN;
+    }
+}
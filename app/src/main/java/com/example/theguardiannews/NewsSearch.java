@@ -0,0 +1,250 @@
+package com.example.theguardiannews;
+
+import android.os.Handler;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * {@link NewsSearch} turns the text typed in the search box into searches. The server is only
+ * asked once the typing has paused for the debounce window, and only for words it was not
+ * asked for last. The results of each search are kept by their words, the least recently
+ * used evicted first, so that:
+ * <ul>
+ * <li>words searched for before, as when backspacing, are answered from the cache without
+ * waiting or asking the server;</li>
+ * <li>while more is typed, the results of the longest cached words the text starts with are
+ * filtered by their titles and shown straight away, until the server answers.</li>
+ * </ul>
+ * A search that replaces another cancels it through the {@link NewsViewModel} it is given to.
+ * All methods must be called on the main thread, where the listener is told.
+ */
+public class NewsSearch {
+
+    /** Told what to show for the text typed. */
+    public interface Listener {
+        /**
+         * Ask the server for the given words, or stop searching if they are null.
+         */
+        void onSearch(String words);
+
+        /**
+         * Show results that are at hand for the given words.
+         *
+         * @param exact whether they are the server's results for these words, rather than
+         *              those of other words filtered to fit
+         */
+        void onLocalResults(String words, List<News> news, boolean exact);
+    }
+
+    private final Handler mHandler;
+    private final long mDebounceMillis;
+    private final int mMaxEntries;
+    private final Listener mListener;
+
+    // key -> results, in least recently used order
+    private final LinkedHashMap<String, List<News>> mCache =
+            new LinkedHashMap<String, List<News>>(16, 0.75f, true);
+
+    // the words waiting for the typing to pause, and their key
+    private String mPendingWords;
+    private String mPendingKey;
+    // the key of the words the server was last asked for, null when there is no search
+    private String mSearchedKey;
+    private int mSearches;
+
+    private final Runnable mDebounced = new Runnable() {
+        @Override
+        public void run() {
+            if (mPendingKey != null) {
+                search(mPendingWords, mPendingKey);
+                mPendingKey = null;
+            }
+        }
+    };
+
+    /**
+     * @param handler of the main thread, which the debounce window is timed on
+     * @param debounceMillis how long the typing must pause before the server is asked
+     * @param maxEntries the searches whose results are kept
+     */
+    public NewsSearch(Handler handler, long debounceMillis, int maxEntries, Listener listener) {
+        mHandler = handler;
+        mDebounceMillis = debounceMillis;
+        mMaxEntries = maxEntries;
+        mListener = listener;
+    }
+
+    /**
+     * The text in the search box changed.
+     */
+    public void onTextChanged(String text) {
+        mHandler.removeCallbacks(mDebounced);
+        String key = key(text);
+        if (key.isEmpty()) {
+            stop();
+            return;
+        }
+        List<News> cached = mCache.get(key);
+        if (cached != null) {
+            // nothing to wait for
+            mPendingKey = null;
+            mSearchedKey = key;
+            mListener.onLocalResults(text.trim(), cached, true);
+            return;
+        }
+        List<News> refined = refine(key);
+        if (refined != null) {
+            mListener.onLocalResults(text.trim(), refined, false);
+        }
+        mPendingWords = text.trim();
+        mPendingKey = key;
+        mHandler.postDelayed(mDebounced, mDebounceMillis);
+    }
+
+    /**
+     * The search box was submitted: search for its text without waiting.
+     */
+    public void onSubmit(String text) {
+        mHandler.removeCallbacks(mDebounced);
+        String key = key(text);
+        if (key.isEmpty()) {
+            stop();
+        } else if (mCache.containsKey(key)) {
+            mPendingKey = null;
+            mSearchedKey = key;
+            mListener.onLocalResults(text.trim(), mCache.get(key), true);
+        } else {
+            search(text.trim(), key);
+        }
+    }
+
+    /**
+     * The search box was closed; what was typed last is not searched for.
+     */
+    public void cancel() {
+        mHandler.removeCallbacks(mDebounced);
+        mPendingKey = null;
+        mSearchedKey = null;
+    }
+
+    /**
+     * Keep the server's results for the given words.
+     */
+    public void put(String words, List<News> news) {
+        String key = key(words);
+        if (key.isEmpty()) {
+            return;
+        }
+        mCache.put(key, Collections.unmodifiableList(new ArrayList<News>(news)));
+        while (mCache.size() > mMaxEntries) {
+            mCache.remove(mCache.keySet().iterator().next());
+        }
+    }
+
+    /**
+     * Forget the results kept, as when the settings they were searched with changed.
+     */
+    public void clear() {
+        mCache.clear();
+    }
+
+    /** The times the server was asked, for tests. */
+    int searches() {
+        return mSearches;
+    }
+
+    private void search(String words, String key) {
+        if (key.equals(mSearchedKey)) {
+            return;
+        }
+        mSearchedKey = key;
+        mSearches++;
+        mListener.onSearch(words);
+    }
+
+    private void stop() {
+        if (mSearchedKey != null || mPendingKey != null) {
+            mSearchedKey = null;
+            mPendingKey = null;
+            mListener.onSearch(null);
+        }
+    }
+
+    // the results of the longest cached words the key starts with, keeping the articles
+    // whose titles have a word starting with each of the key's, or null if none are cached
+    private List<News> refine(String key) {
+        String longest = null;
+        for (String cached : mCache.keySet()) {
+            if (key.startsWith(cached) && (longest == null || cached.length() > longest.length())) {
+                longest = cached;
+            }
+        }
+        if (longest == null) {
+            return null;
+        }
+        List<String> tokens = tokenize(key);
+        List<News> refined = new ArrayList<News>();
+        for (News news : mCache.get(longest)) {
+            if (matches(tokenize(news.getTitle().toLowerCase(Locale.ROOT)), tokens)) {
+                refined.add(news);
+            }
+        }
+        return refined;
+    }
+
+    private static boolean matches(List<String> titleWords, List<String> tokens) {
+        for (String token : tokens) {
+            boolean found = false;
+            for (String word : titleWords) {
+                if (word.startsWith(token)) {
+                    found = true;
+                    break;
+                }
+            }
+            if (!found) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * What the given text is cached by: its words, lower case, one space apart.
+     */
+    static String key(String text) {
+        StringBuilder key = new StringBuilder(text.length());
+        for (String token : tokenize(text)) {
+            if (key.length() > 0) {
+                key.append(' ');
+            }
+            key.append(token.toLowerCase(Locale.ROOT));
+        }
+        return key.toString();
+    }
+
+    /**
+     * The words of the given text, split at runs of whitespace in a single pass.
+     */
+    static List<String> tokenize(String text) {
+        List<String> tokens = new ArrayList<String>();
+        int start = -1;
+        for (int i = 0; i < text.length(); i++) {
+            if (Character.isWhitespace(text.charAt(i))) {
+                if (start != -1) {
+                    tokens.add(text.substring(start, i));
+                    start = -1;
+                }
+            } else if (start == -1) {
+                start = i;
+            }
+        }
+        if (start != -1) {
+            tokens.add(text.substring(start));
+        }
+        return tokens;
+    }
+}
@@ -3,12 +3,19 @@ package com.example.theguardiannews;
 import android.content.SharedPreferences;
 import android.os.Bundle;
 import android.preference.ListPreference;
+import android.preference.MultiSelectListPreference;
 import android.preference.Preference;
 import android.preference.PreferenceFragment;
 import android.preference.PreferenceManager;
+import android.text.TextUtils;
 
 import androidx.appcompat.app.AppCompatActivity;
 
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
 public class NewsSettingsActivity extends AppCompatActivity {
 
     @Override
@@ -23,20 +30,36 @@ public class NewsSettingsActivity extends AppCompatActivity {
         @Override
         public void onCreate(Bundle savedInstanceState) {
             super.onCreate(savedInstanceState);
+            carryOverSection();
             addPreferencesFromResource(R.xml.news_search_settings);
 
-            Preference section = findPreference(getString(R.string.sections_key));
-            bindPreferenceSummaryToValue(section);
+            MultiSelectListPreference sections =
+                    (MultiSelectListPreference) findPreference(getString(R.string.selected_sections_key));
+            sections.setOnPreferenceChangeListener(this);
+            onPreferenceChange(sections, sections.getValues());
+
+            Preference searchWords = findPreference(getString(R.string.search_key));
+            bindPreferenceSummaryToValue(searchWords);
 
             Preference numberOfItem = findPreference(getString(R.string.requests_key));
             bindPreferenceSummaryToValue(numberOfItem);
 
+            // the server a debug build is pointed at; release builds have no such setting
+            addPreferencesFromResource(R.xml.news_debug_settings);
+            Preference baseUrl = findPreference(getString(R.string.base_url_key));
+            if (baseUrl != null) {
+                bindPreferenceSummaryToValue(baseUrl);
+            }
+
         }
 
         @Override
         public boolean onPreferenceChange(Preference preference, Object value) {
             String stringValue = value.toString();
-            if (preference instanceof ListPreference) {
+            if (preference instanceof MultiSelectListPreference) {
+                preference.setSummary(sectionsSummary((MultiSelectListPreference) preference,
+                        (Set<?>) value));
+            } else if (preference instanceof ListPreference) {
                 ListPreference listPreference = (ListPreference) preference;
                 int prefIndex = listPreference.findIndexOfValue(stringValue);
                 if (prefIndex >= 0) {
@@ -57,6 +80,29 @@ public class NewsSettingsActivity extends AppCompatActivity {
             onPreferenceChange(preference, preferenceString);
         }
 
+        // the labels of the chosen sections, in the order they are listed; none means all
+        private String sectionsSummary(MultiSelectListPreference preference, Set<?> values) {
+            CharSequence[] labels = preference.getEntries();
+            CharSequence[] entryValues = preference.getEntryValues();
+            List<CharSequence> chosen = new ArrayList<CharSequence>();
+            for (int i = 0; i < entryValues.length; i++) {
+                if (values.contains(entryValues[i].toString())) {
+                    chosen.add(labels[i]);
+                }
+            }
+            return chosen.isEmpty() ? getString(R.string.ALL) : TextUtils.join(", ", chosen);
+        }
+
+        // the single section chosen before several could be becomes the first choice
+        private void carryOverSection() {
+            SharedPreferences preferences = PreferenceManager.getDefaultSharedPreferences(getActivity());
+            String key = getString(R.string.selected_sections_key);
+            if (!preferences.contains(key)) {
+                Set<String> sections = new HashSet<String>(MainActivity.selectedSections(getActivity()));
+                preferences.edit().putStringSet(key, sections).apply();
+            }
+        }
+
 
     }
 
@@ -0,0 +1,477 @@
+package com.example.theguardiannews;
+
+import android.content.Context;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteOpenHelper;
+import android.database.sqlite.SQLiteStatement;
+import android.text.TextUtils;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * {@link NewsStore} is the local database of every article the app has fetched, one row per
+ * article and contributor, keyed by the Guardian id. Fetched results are written in a single
+ * transaction and read back with queries on the section and publication time indices, so the
+ * articles of a section can be shown without going to the network. The rows of an article
+ * are read back as one {@link News} crediting every contributor. Titles, authors and section
+ * names are also kept in a full-text index, so keyword searches can be answered offline.
+ */
+public class NewsStore extends SQLiteOpenHelper {
+
+    private static final String DATABASE_NAME = "news.db";
+    private static final int DATABASE_VERSION = 4;
+    // the oldest version the steps in onUpgrade start from, older ones are created afresh
+    private static final int OLDEST_UPGRADABLE_VERSION = 1;
+
+    /** Articles kept before the oldest are deleted. */
+    private static final int DEFAULT_MAX_ARTICLES = 5000;
+
+    private static final String TABLE = "articles";
+    private static final String COLUMN_ID = "id";
+    private static final String COLUMN_AUTHOR = "author";
+    private static final String COLUMN_SECTION_ID = "section_id";
+    private static final String COLUMN_SECTION = "section";
+    private static final String COLUMN_TITLE = "title";
+    private static final String COLUMN_PUBLISHED_AT = "published_at";
+    private static final String COLUMN_LINK = "link";
+    private static final String COLUMN_THUMBNAIL = "thumbnail";
+
+    // when each section was last fetched in full
+    private static final String SYNC_TABLE = "syncs";
+    private static final String COLUMN_SYNCED_AT = "synced_at";
+
+    // the full-text index over the articles table, its docid is the article row's rowid
+    private static final String SEARCH_TABLE = "articles_fts";
+
+    /** Matches looked at when ranking a search, newest first. */
+    private static final int MAX_SEARCH_CANDIDATES = 500;
+
+    // how much a hit counts in each indexed column: title, author, section
+    private static final double[] SEARCH_WEIGHTS = {3.0, 2.0, 1.0};
+
+    private static final String[] COLUMNS = {COLUMN_ID, COLUMN_SECTION_ID, COLUMN_SECTION,
+            COLUMN_TITLE, COLUMN_AUTHOR, COLUMN_PUBLISHED_AT, COLUMN_LINK, COLUMN_THUMBNAIL};
+
+    // newest first; rowid keeps the contributors of an article in the order they were given
+    private static final String ORDER = COLUMN_PUBLISHED_AT + " DESC, " + COLUMN_ID + ", rowid";
+
+    private static NewsStore sInstance;
+
+    private final int mMaxArticles;
+
+    /**
+     * The store shared by the whole app.
+     */
+    public static synchronized NewsStore get(Context context) {
+        if (sInstance == null) {
+            sInstance = new NewsStore(context.getApplicationContext(), DATABASE_NAME, DEFAULT_MAX_ARTICLES);
+        }
+        return sInstance;
+    }
+
+    /**
+     * @param name the database file name, or null for a database held in memory
+     * @param maxArticles the articles kept before the oldest are deleted
+     */
+    public NewsStore(Context context, String name, int maxArticles) {
+        super(context, name, null, DATABASE_VERSION);
+        mMaxArticles = maxArticles;
+    }
+
+    @Override
+    public void onCreate(SQLiteDatabase db) {
+        db.execSQL("CREATE TABLE " + TABLE + " ("
+                + COLUMN_ID + " TEXT NOT NULL, "
+                + COLUMN_AUTHOR + " TEXT NOT NULL, "
+                + COLUMN_SECTION_ID + " TEXT NOT NULL, "
+                + COLUMN_SECTION + " TEXT NOT NULL, "
+                + COLUMN_TITLE + " TEXT NOT NULL, "
+                + COLUMN_PUBLISHED_AT + " INTEGER NOT NULL, "
+                + COLUMN_LINK + " TEXT NOT NULL, "
+                + COLUMN_THUMBNAIL + " TEXT NOT NULL DEFAULT '', "
+                + "PRIMARY KEY (" + COLUMN_ID + ", " + COLUMN_AUTHOR + "))");
+        // a section's newest articles, and the newest of all, are read straight off an index
+        db.execSQL("CREATE INDEX articles_section_published ON " + TABLE
+                + " (" + COLUMN_SECTION_ID + ", " + COLUMN_PUBLISHED_AT + ")");
+        db.execSQL("CREATE INDEX articles_published ON " + TABLE + " (" + COLUMN_PUBLISHED_AT + ")");
+        createSearchIndex(db);
+        createSyncTable(db);
+    }
+
+    @Override
+    public void onConfigure(SQLiteDatabase db) {
+        // so INSERT OR REPLACE runs the delete trigger that keeps the search index in step
+        db.execSQL("PRAGMA recursive_triggers = ON");
+    }
+
+    @Override
+    public void onUpgrade(SQLiteDatabase db, int oldVersion, int newVersion) {
+        if (oldVersion < OLDEST_UPGRADABLE_VERSION) {
+            recreate(db);
+            return;
+        }
+        if (oldVersion < 2) {
+            createSearchIndex(db);
+            db.execSQL("INSERT INTO " + SEARCH_TABLE + "(" + SEARCH_TABLE + ") VALUES ('rebuild')");
+        }
+        if (oldVersion < 3) {
+            createSyncTable(db);
+        }
+        if (oldVersion < 4) {
+            db.execSQL("ALTER TABLE " + TABLE + " ADD COLUMN " + COLUMN_THUMBNAIL + " TEXT NOT NULL DEFAULT ''");
+        }
+    }
+
+    @Override
+    public void onDowngrade(SQLiteDatabase db, int oldVersion, int newVersion) {
+        // left by a newer build, whose schema this one cannot know
+        recreate(db);
+    }
+
+    // everything in the store was fetched and can be fetched again, so a schema there are no
+    // upgrade steps for is dropped and created afresh rather than failing every open
+    private void recreate(SQLiteDatabase db) {
+        db.execSQL("DROP TRIGGER IF EXISTS articles_fts_insert");
+        db.execSQL("DROP TRIGGER IF EXISTS articles_fts_delete");
+        db.execSQL("DROP TABLE IF EXISTS " + SEARCH_TABLE);
+        db.execSQL("DROP TABLE IF EXISTS " + SYNC_TABLE);
+        db.execSQL("DROP TABLE IF EXISTS " + TABLE);
+        onCreate(db);
+    }
+
+    private static void createSyncTable(SQLiteDatabase db) {
+        db.execSQL("CREATE TABLE " + SYNC_TABLE + " ("
+                + COLUMN_SECTION + " TEXT PRIMARY KEY, "
+                + COLUMN_SYNCED_AT + " INTEGER NOT NULL)");
+    }
+
+    // an FTS4 index reading its text from the articles table, kept up to date by triggers
+    private static void createSearchIndex(SQLiteDatabase db) {
+        db.execSQL("CREATE VIRTUAL TABLE " + SEARCH_TABLE + " USING fts4(content=\"" + TABLE + "\", "
+                + COLUMN_TITLE + ", " + COLUMN_AUTHOR + ", " + COLUMN_SECTION + ")");
+        db.execSQL("CREATE TRIGGER articles_fts_insert AFTER INSERT ON " + TABLE + " BEGIN "
+                + "INSERT INTO " + SEARCH_TABLE + " (docid, " + COLUMN_TITLE + ", " + COLUMN_AUTHOR
+                + ", " + COLUMN_SECTION + ") VALUES (new.rowid, new." + COLUMN_TITLE + ", new."
+                + COLUMN_AUTHOR + ", new." + COLUMN_SECTION + "); END");
+        db.execSQL("CREATE TRIGGER articles_fts_delete BEFORE DELETE ON " + TABLE + " BEGIN "
+                + "DELETE FROM " + SEARCH_TABLE + " WHERE docid = old.rowid; END");
+    }
+
+    /**
+     * Insert or replace the given articles in one transaction, then delete the oldest
+     * articles over the budget.
+     */
+    public void putAll(List<News> news) {
+        if (news.isEmpty()) {
+            return;
+        }
+        NewsMetrics.beginSection("NewsStore.putAll");
+        SQLiteDatabase db = getWritableDatabase();
+        db.beginTransaction();
+        try {
+            // one compiled statement is rebound for every row
+            SQLiteStatement insert = db.compileStatement("INSERT OR REPLACE INTO " + TABLE + " ("
+                    + COLUMN_ID + ", " + COLUMN_AUTHOR + ", " + COLUMN_SECTION_ID + ", "
+                    + COLUMN_SECTION + ", " + COLUMN_TITLE + ", " + COLUMN_PUBLISHED_AT + ", "
+                    + COLUMN_LINK + ", " + COLUMN_THUMBNAIL + ") VALUES (?, ?, ?, ?, ?, ?, ?, ?)");
+            // an article's old rows go first, so contributors no longer credited go with them
+            SQLiteStatement delete = db.compileStatement("DELETE FROM " + TABLE + " WHERE "
+                    + COLUMN_ID + " = ?");
+            try {
+                for (int i = 0; i < news.size(); i++) {
+                    News item = news.get(i);
+                    delete.bindString(1, item.getId());
+                    delete.executeUpdateDelete();
+                    insert.bindString(1, item.getId());
+                    insert.bindString(3, item.getSectionId());
+                    insert.bindString(4, item.getSection());
+                    insert.bindString(5, item.getTitle());
+                    insert.bindLong(6, item.getPublishedAt());
+                    insert.bindString(7, item.getLink());
+                    insert.bindString(8, item.getThumbnail());
+                    // a row for each contributor, so each is in the search index, and a
+                    // single row with no author for an article nobody is credited for
+                    int authors = item.getAuthorCount();
+                    for (int j = 0; j < Math.max(authors, 1); j++) {
+                        insert.bindString(2, authors == 0 ? "" : item.getAuthor(j));
+                        insert.executeInsert();
+                    }
+                }
+            } finally {
+                insert.close();
+                delete.close();
+            }
+            db.execSQL("DELETE FROM " + TABLE + " WHERE " + COLUMN_ID + " IN (SELECT DISTINCT "
+                    + COLUMN_ID + " FROM " + TABLE + " ORDER BY " + COLUMN_PUBLISHED_AT
+                    + " DESC LIMIT -1 OFFSET " + mMaxArticles + ")");
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+            NewsMetrics.endSection();
+        }
+    }
+
+    /**
+     * Return the newest articles of the given section, newest first.
+     *
+     * @param sectionId the Guardian id of the section, or null for every section
+     * @param limit the most articles returned
+     */
+    public List<News> query(String sectionId, int limit) {
+        return query(sectionId == null ? null : Collections.singleton(sectionId), limit);
+    }
+
+    /**
+     * Return the newest articles of any of the given sections, newest first.
+     *
+     * @param sectionIds the Guardian ids of the sections, or null for every section
+     * @param limit the most articles returned
+     */
+    public List<News> query(Collection<String> sectionIds, int limit) {
+        // the newest articles are picked off the indices first, so the limit counts articles
+        // rather than contributor rows
+        String newest = "SELECT DISTINCT " + COLUMN_ID + " FROM " + TABLE
+                + (sectionIds == null ? "" : " WHERE " + inList(COLUMN_SECTION_ID, sectionIds))
+                + " ORDER BY " + COLUMN_PUBLISHED_AT + " DESC LIMIT " + limit;
+        String sql = "SELECT " + TextUtils.join(", ", COLUMNS) + " FROM " + TABLE
+                + " WHERE " + COLUMN_ID + " IN (" + newest + ") ORDER BY " + ORDER;
+        String[] selectionArgs = sectionIds == null ? null : sectionIds.toArray(new String[0]);
+        return readArticles(getReadableDatabase().rawQuery(sql, selectionArgs));
+    }
+
+    // one News for each run of rows of the same article, the cursor ordered by ORDER
+    private static List<News> readArticles(Cursor cursor) {
+        try {
+            List<News> news = new ArrayList<News>();
+            List<String> authors = new ArrayList<String>(2);
+            boolean more = cursor.moveToNext();
+            while (more) {
+                String id = cursor.getString(0);
+                String sectionId = cursor.getString(1);
+                String section = cursor.getString(2);
+                String title = cursor.getString(3);
+                long publishedAt = cursor.getLong(5);
+                String link = cursor.getString(6);
+                String thumbnail = cursor.getString(7);
+                authors.clear();
+                do {
+                    String author = cursor.getString(4);
+                    if (!author.isEmpty()) {
+                        authors.add(author);
+                    }
+                    more = cursor.moveToNext();
+                } while (more && id.equals(cursor.getString(0)));
+                news.add(new News(id, sectionId, section, title, authors, publishedAt, link, thumbnail));
+            }
+            return news;
+        } finally {
+            cursor.close();
+        }
+    }
+
+    /**
+     * Return the stored articles matching every word of the given text, each word also
+     * matching as a prefix ("clim" finds "climate"). Articles are ranked by where the words
+     * were found, title first, then by how rare they are; ties go to the newest.
+     *
+     * @param text the words searched for, as typed
+     * @param sectionId the Guardian id of the section searched, or null for every section
+     * @param limit the most articles returned
+     */
+    public List<News> search(String text, String sectionId, int limit) {
+        return search(text, sectionId == null ? null : Collections.singleton(sectionId), limit);
+    }
+
+    /**
+     * Return the stored articles of any of the given sections matching the given text, ranked
+     * as {@link #search(String, String, int)} does.
+     *
+     * @param sectionIds the Guardian ids of the sections searched, or null for every section
+     */
+    public List<News> search(String text, Collection<String> sectionIds, int limit) {
+        String match = matchExpression(text);
+        if (match.isEmpty()) {
+            return new ArrayList<News>();
+        }
+        String sql = "SELECT a." + COLUMN_ID + ", matchinfo(" + SEARCH_TABLE + ", 'pcnx')"
+                + " FROM " + SEARCH_TABLE + " JOIN " + TABLE + " a ON a.rowid = " + SEARCH_TABLE + ".docid"
+                + " WHERE " + SEARCH_TABLE + " MATCH ?"
+                + (sectionIds == null ? "" : " AND " + inList("a." + COLUMN_SECTION_ID, sectionIds))
+                + " ORDER BY a." + COLUMN_PUBLISHED_AT + " DESC, a." + COLUMN_ID + ", a.rowid"
+                + " LIMIT " + MAX_SEARCH_CANDIDATES;
+        List<String> args = new ArrayList<String>();
+        args.add(match);
+        if (sectionIds != null) {
+            args.addAll(sectionIds);
+        }
+        Cursor cursor = getReadableDatabase().rawQuery(sql, args.toArray(new String[0]));
+        // each article scores as its best row, the one whose contributor matched if any;
+        // the map keeps them newest first
+        final Map<String, Double> scores = new LinkedHashMap<String, Double>();
+        try {
+            while (cursor.moveToNext()) {
+                String id = cursor.getString(0);
+                double score = score(cursor.getBlob(1));
+                Double best = scores.get(id);
+                if (best == null || score > best) {
+                    scores.put(id, score);
+                }
+            }
+        } finally {
+            cursor.close();
+        }
+        List<String> ranked = new ArrayList<String>(scores.keySet());
+        // a stable sort, so equal scores stay newest first
+        Collections.sort(ranked, new Comparator<String>() {
+            @Override
+            public int compare(String a, String b) {
+                return Double.compare(scores.get(b), scores.get(a));
+            }
+        });
+        if (ranked.size() > limit) {
+            ranked = ranked.subList(0, limit);
+        }
+        if (ranked.isEmpty()) {
+            return new ArrayList<News>();
+        }
+
+        // the matches are read back whole, crediting the contributors that did not match too
+        Cursor rows = getReadableDatabase().rawQuery("SELECT " + TextUtils.join(", ", COLUMNS)
+                + " FROM " + TABLE + " WHERE " + inList(COLUMN_ID, ranked) + " ORDER BY " + ORDER,
+                ranked.toArray(new String[0]));
+        Map<String, News> articles = new HashMap<String, News>();
+        for (News item : readArticles(rows)) {
+            articles.put(item.getId(), item);
+        }
+        List<News> news = new ArrayList<News>(ranked.size());
+        for (String id : ranked) {
+            News item = articles.get(id);
+            if (item != null) {
+                news.add(item);
+            }
+        }
+        return news;
+    }
+
+    /**
+     * Turn typed text into an FTS query: every run of letters and digits becomes a lower-case
+     * prefix term, and all terms must match. Anything else, including the query syntax's own
+     * operators and quotes, is dropped.
+     */
+    static String matchExpression(String text) {
+        StringBuilder match = new StringBuilder();
+        int start = -1;
+        for (int i = 0; i <= text.length(); i++) {
+            boolean wordChar = i < text.length() && Character.isLetterOrDigit(text.charAt(i));
+            if (wordChar && start == -1) {
+                start = i;
+            } else if (!wordChar && start != -1) {
+                if (match.length() > 0) {
+                    match.append(' ');
+                }
+                match.append(text.substring(start, i).toLowerCase(Locale.ROOT)).append('*');
+                start = -1;
+            }
+        }
+        return match.toString();
+    }
+
+    // "column IN (?, ?)" with one argument for each value, such as the sections, which the
+    // section index serves
+    private static String inList(String column, Collection<String> values) {
+        StringBuilder selection = new StringBuilder(column).append(" IN (");
+        for (int i = 0; i < values.size(); i++) {
+            selection.append(i == 0 ? "?" : ", ?");
+        }
+        return selection.append(')').toString();
+    }
+
+    /*
+     * Scores a match from FTS4's matchinfo 'pcnx': the phrase count p, the column count c,
+     * the row count n, then for each phrase and column the hits in this row, the hits in
+     * every row and the rows with a hit. Each hit counts by its column's weight and by how
+     * few rows the phrase appears in.
+     */
+    private static double score(byte[] matchinfo) {
+        IntBuffer info = ByteBuffer.wrap(matchinfo).order(ByteOrder.nativeOrder()).asIntBuffer();
+        int phrases = info.get(0);
+        int columns = info.get(1);
+        long rows = info.get(2) & 0xffffffffL;
+        double score = 0;
+        for (int p = 0; p < phrases; p++) {
+            for (int c = 0; c < columns && c < SEARCH_WEIGHTS.length; c++) {
+                int base = 3 + 3 * (p * columns + c);
+                int hits = info.get(base);
+                if (hits > 0) {
+                    long rowsWithHit = info.get(base + 2) & 0xffffffffL;
+                    score += SEARCH_WEIGHTS[c] * hits * Math.log(1.0 + (double) rows / (1 + rowsWithHit));
+                }
+            }
+        }
+        return score;
+    }
+
+    /**
+     * Record that the newest articles of the given sections were fetched at the given time.
+     *
+     * @param sections sections_key values, such as world or all
+     */
+    public void markSynced(Collection<String> sections, long time) {
+        SQLiteDatabase db = getWritableDatabase();
+        db.beginTransaction();
+        try {
+            SQLiteStatement insert = db.compileStatement("INSERT OR REPLACE INTO " + SYNC_TABLE
+                    + " (" + COLUMN_SECTION + ", " + COLUMN_SYNCED_AT + ") VALUES (?, ?)");
+            try {
+                for (String section : sections) {
+                    insert.bindString(1, section);
+                    insert.bindLong(2, time);
+                    insert.executeInsert();
+                }
+            } finally {
+                insert.close();
+            }
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+    }
+
+    /**
+     * Return when the newest articles of the given section were last fetched, or 0 if never.
+     *
+     * @param section a sections_key value, such as world or all
+     */
+    public long syncedAt(String section) {
+        Cursor cursor = getReadableDatabase().query(SYNC_TABLE, new String[]{COLUMN_SYNCED_AT},
+                COLUMN_SECTION + " = ?", new String[]{section}, null, null, null);
+        try {
+            return cursor.moveToFirst() ? cursor.getLong(0) : 0;
+        } finally {
+            cursor.close();
+        }
+    }
+
+    /** Number of articles in the store. */
+    public long count() {
+        SQLiteStatement count = getReadableDatabase().compileStatement("SELECT COUNT(DISTINCT "
+                + COLUMN_ID + ") FROM " + TABLE);
+        try {
+            return count.simpleQueryForLong();
+        } finally {
+            count.close();
+        }
+    }
+}
@@ -0,0 +1,102 @@
+package com.example.theguardiannews;
+
+import android.content.Context;
+import android.content.res.Resources;
+
+import androidx.core.content.ContextCompat;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * {@link NewsStyler} works out how each {@link News} row is displayed: the colour of its
+ * section, the section label (long unknown section names are cut to two words), the
+ * contributors credited and the publication date. It runs on the background thread that
+ * produced the news, so binding a row in {@link NewsAdapter} only copies ready-made values
+ * into the views.
+ */
+public class NewsStyler {
+
+    // the author value that means there is nobody to credit
+    private static final String UNKNOWN_AUTHOR = "not known";
+
+    // section name -> colour, resolved once from the resources
+    private final Map<String, Integer> mSectionColours = new HashMap<String, Integer>();
+    private final int mUnclassifiedColour;
+    // the formatter of the dates is asked for on each use, as it changes with the time zone
+    private final Context mContext;
+
+    public NewsStyler(Context context) {
+        mContext = context.getApplicationContext();
+        Resources resources = context.getResources();
+        addSections(resources.getStringArray(R.array.news_colour_sections),
+                ContextCompat.getColor(context, R.color.news));
+        addSections(resources.getStringArray(R.array.sports_colour_sections),
+                ContextCompat.getColor(context, R.color.sports));
+        addSections(resources.getStringArray(R.array.culture_colour_sections),
+                ContextCompat.getColor(context, R.color.culture));
+        mUnclassifiedColour = ContextCompat.getColor(context, R.color.unclassified);
+    }
+
+    private void addSections(String[] sections, int colour) {
+        for (String section : sections) {
+            mSectionColours.put(section, colour);
+        }
+    }
+
+    /**
+     * Work out the display data of every item in the list.
+     */
+    public void style(List<News> news) {
+        for (int i = 0; i < news.size(); i++) {
+            style(news.get(i));
+        }
+    }
+
+    /**
+     * Work out the display data of the given item.
+     */
+    public void style(News news) {
+        String section = news.getSection();
+        Integer colour = mSectionColours.get(section);
+        String label = section;
+        if (colour == null) {
+            colour = mUnclassifiedColour;
+            label = truncateSection(section);
+        }
+        String date = Utilities.timeConversion(news.getPublishedAt(),
+                NewsTimeFormatter.getDefault(mContext));
+        news.setDisplay(colour, label, authorText(news), date);
+    }
+
+    // the contributors separated by commas, a single one shared rather than copied
+    static String authorText(News news) {
+        String only = null;
+        StringBuilder text = null;
+        for (int i = 0; i < news.getAuthorCount(); i++) {
+            String author = news.getAuthor(i);
+            if (author.equals(UNKNOWN_AUTHOR)) {
+                continue;
+            }
+            if (only == null) {
+                only = author;
+            } else {
+                if (text == null) {
+                    text = new StringBuilder(only);
+                }
+                text.append(", ").append(author);
+            }
+        }
+        return text != null ? text.toString() : only != null ? only : "";
+    }
+
+    // method to truncate unknown and long section names to their first two words
+    static String truncateSection(String section) {
+        int index = section.indexOf(" ", section.indexOf(" ") + 1);
+        if (index != -1) {
+            return section.substring(0, index);
+        }
+        return section;
+    }
+}
@@ -0,0 +1,161 @@
+package com.example.theguardiannews;
+
+import android.content.Context;
+import android.database.sqlite.SQLiteException;
+import android.net.Uri;
+import android.text.TextUtils;
+import android.util.Log;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+
+/**
+ * {@link NewsSync} fetches the newest articles of the user's sections into the
+ * {@link NewsStore}, so the news list can be answered locally. The sections are coalesced
+ * into as few requests as the API allows: one for every section together, using its
+ * {@code section=a|b} syntax, plus one for "all" if that is chosen. The newest articles of
+ * the request may come mostly from one section, so a section the others crowded out is then
+ * asked for on its own. A section is recorded with the time it was fetched, which
+ * {@link #isFresh(String, long)} checks, only once it got the articles wanted for it, or all
+ * there are: the list answers from the store alone while it is fresh.
+ */
+public class NewsSync {
+
+    private static final String LOG_TAG = NewsSync.class.getSimpleName();
+
+    /** The largest page size the Guardian API accepts. */
+    private static final int MAX_PAGE_SIZE = 200;
+
+    /** Tells the time, so tests can move it. */
+    public interface Clock {
+        long currentTimeMillis();
+    }
+
+    /** The device's clock. */
+    public static final Clock SYSTEM_CLOCK = new Clock() {
+        @Override
+        public long currentTimeMillis() {
+            return System.currentTimeMillis();
+        }
+    };
+
+    private final Context mContext;
+    private final NewsStore mStore;
+    private final String mBaseUrl;
+    private final Clock mClock;
+
+    /**
+     * @param store where the fetched articles are written
+     * @param baseUrl the Guardian search URL the requests are made to
+     * @param clock the time the syncs are recorded with
+     */
+    public NewsSync(Context context, NewsStore store, String baseUrl, Clock clock) {
+        mContext = context.getApplicationContext();
+        mStore = store;
+        mBaseUrl = baseUrl;
+        mClock = clock;
+    }
+
+    /**
+     * Fetch the newest articles of the given sections into the store. This is on a
+     * background thread.
+     *
+     * @param sections sections_key values, such as world or all
+     * @param pageSize the number of articles wanted for each section
+     * @return whether every request succeeded
+     */
+    public boolean sync(Collection<String> sections, int pageSize) {
+        String all = mContext.getString(R.string.all);
+        // sorted so the same choice always makes the same request
+        Set<String> named = new TreeSet<String>(sections);
+        boolean ok = true;
+        if (named.remove(all)) {
+            ok = fetch(Collections.<String>emptySet(), pageSize, pageSize) != null;
+        }
+        if (!named.isEmpty()) {
+            Set<String> shortOf = fetch(named, Math.min(MAX_PAGE_SIZE, pageSize * named.size()), pageSize);
+            if (shortOf == null) {
+                return false;
+            }
+            for (String section : shortOf) {
+                ok &= fetch(Collections.singleton(section), pageSize, pageSize) != null;
+            }
+        }
+        return ok;
+    }
+
+    /**
+     * Whether the given section was fetched less than the given time ago.
+     */
+    public boolean isFresh(String section, long maxAgeMillis) {
+        try {
+            return mClock.currentTimeMillis() - mStore.syncedAt(section) < maxAgeMillis;
+        } catch (SQLiteException e) {
+            Log.e(LOG_TAG, "Problem reading the sync time.", e);
+            return false;
+        }
+    }
+
+    // one request for the given sections, every section if empty, recording those that got
+    // the articles wanted for each; returns the sections that did not, or null if it failed
+    private Set<String> fetch(Set<String> sections, int requested, int pageSize) {
+        String url = buildSyncUrl(mContext, mBaseUrl, sections, requested);
+        List<News> news = Utilities.fetchNewsData(url, null, mStore);
+        if (news == null) {
+            return null;
+        }
+        Set<String> names = sections.isEmpty()
+                ? Collections.singleton(mContext.getString(R.string.all)) : sections;
+        Set<String> synced = new TreeSet<String>();
+        Set<String> shortOf = new TreeSet<String>();
+        // a short answer is all the server has, for every section asked for
+        boolean exhausted = news.size() < requested;
+        for (String name : names) {
+            if (exhausted || (sections.isEmpty() ? news.size() : count(news, name)) >= pageSize) {
+                synced.add(name);
+            } else {
+                shortOf.add(name);
+            }
+        }
+        if (!synced.isEmpty()) {
+            try {
+                mStore.markSynced(synced, mClock.currentTimeMillis());
+            } catch (SQLiteException e) {
+                Log.e(LOG_TAG, "Problem recording the sync.", e);
+                return null;
+            }
+        }
+        return shortOf;
+    }
+
+    // the articles of the given section among the news
+    private static int count(List<News> news, String section) {
+        int count = 0;
+        for (News item : news) {
+            if (section.equals(item.getSectionId())) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Build the Guardian query URL for the newest articles of the given sections, or of every
+     * section if none are given.
+     */
+    static String buildSyncUrl(Context context, String baseUrl, Collection<String> sections, int pageSize) {
+        Uri.Builder builder = Uri.parse(baseUrl).buildUpon();
+        if (!sections.isEmpty()) {
+            builder.appendQueryParameter(context.getString(R.string.section),
+                    TextUtils.join("|", sections));
+        }
+        builder.appendQueryParameter(context.getString(R.string.show_fields), context.getString(R.string.thumbnail));
+        builder.appendQueryParameter(context.getString(R.string.page_size), String.valueOf(pageSize));
+        builder.appendQueryParameter(context.getString(R.string.show_tags), context.getString(R.string.contributor));
+        builder.appendQueryParameter(context.getString(R.string.api_key), context.getString(R.string.key_api));
+        return builder.toString();
+    }
+}
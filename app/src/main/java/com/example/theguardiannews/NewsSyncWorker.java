@@ -0,0 +1,62 @@
+package com.example.theguardiannews;
+
+import android.content.Context;
+
+import androidx.annotation.NonNull;
+import androidx.work.BackoffPolicy;
+import androidx.work.Constraints;
+import androidx.work.ExistingPeriodicWorkPolicy;
+import androidx.work.NetworkType;
+import androidx.work.PeriodicWorkRequest;
+import androidx.work.WorkManager;
+import androidx.work.Worker;
+import androidx.work.WorkerParameters;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link NewsSyncWorker} runs a {@link NewsSync} of the user's sections in the background,
+ * periodically and only on an unmetered network while charging. A failed sync is retried
+ * with exponentially growing delays.
+ */
+public class NewsSyncWorker extends Worker {
+
+    /** Name the periodic sync is scheduled under, so it is only scheduled once. */
+    static final String WORK_NAME = "news-sync";
+
+    /** Delay before the first retry of a failed sync, doubled for each further one. */
+    private static final long BACKOFF_MINUTES = 5;
+
+    public NewsSyncWorker(@NonNull Context context, @NonNull WorkerParameters params) {
+        super(context, params);
+    }
+
+    /**
+     * Schedule the periodic sync, keeping the existing schedule if there is one.
+     */
+    public static void schedule(Context context) {
+        Constraints constraints = new Constraints.Builder()
+                .setRequiredNetworkType(NetworkType.UNMETERED)
+                .setRequiresCharging(true)
+                .build();
+        PeriodicWorkRequest request = new PeriodicWorkRequest.Builder(NewsSyncWorker.class,
+                context.getResources().getInteger(R.integer.sync_interval_minutes), TimeUnit.MINUTES)
+                .setConstraints(constraints)
+                .setBackoffCriteria(BackoffPolicy.EXPONENTIAL, BACKOFF_MINUTES, TimeUnit.MINUTES)
+                .build();
+        WorkManager.getInstance(context).enqueueUniquePeriodicWork(WORK_NAME,
+                ExistingPeriodicWorkPolicy.KEEP, request);
+    }
+
+    @NonNull
+    @Override
+    public Result doWork() {
+        Context context = getApplicationContext();
+        NewsSync sync = new NewsSync(context, NewsStore.get(context), MainActivity.baseUrl(context),
+                NewsSync.SYSTEM_CLOCK);
+        if (sync.sync(MainActivity.selectedSections(context), MainActivity.pageSize(context))) {
+            return Result.success();
+        }
+        return Result.retry();
+    }
+}
@@ -0,0 +1,264 @@
+package com.example.theguardiannews;
+
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
+import android.content.res.Resources;
+
+import java.text.DateFormatSymbols;
+import java.util.Locale;
+import java.util.TimeZone;
+
+/**
+ * {@link NewsTimeFormatter} turns the Guardian's {@code webPublicationDate} into text for the
+ * news list. Timestamps are parsed straight into epoch milliseconds, honouring the UTC "Z" or
+ * a numeric offset, and formatted with plain arithmetic instead of {@code SimpleDateFormat},
+ * so a formatter can be shared between threads and costs one String per call.
+ * Relative times ("5 min ago") are answered from a table of strings taken from the resources.
+ * The shared instance is dropped when the time zone or the locale changes.
+ */
+public final class NewsTimeFormatter {
+
+    private static final long MINUTE = 60 * 1000L;
+    private static final long HOUR = 60 * MINUTE;
+    private static final long DAY = 24 * HOUR;
+
+    private static volatile NewsTimeFormatter sDefault;
+    // the application told when the time zone or locale change, so sDefault is dropped
+    private static Context sWatched;
+
+    private final TimeZone mZone;
+    private final Locale mLocale;
+    private final String[] mShortMonths;
+    private final String[] mAmPm;
+    // where the relative texts come from, null if only absolute times are formatted
+    private final Resources mResources;
+    private final String mJustNow;
+
+    // relative texts, filled in on first use; racy but harmless as Strings are immutable
+    private final String[] mMinutesAgo = new String[60];
+    private final String[] mHoursAgo = new String[24];
+
+    /**
+     * A formatter of absolute times only, {@link #formatRelative(long, long)} answers null.
+     */
+    public NewsTimeFormatter(TimeZone zone, Locale locale) {
+        this(zone, locale, null);
+    }
+
+    /**
+     * @param zone the time zone the absolute times are shown in
+     * @param locale the locale the month names and AM/PM markers are taken from
+     * @param resources where the relative texts are taken from, null for absolute times only
+     */
+    public NewsTimeFormatter(TimeZone zone, Locale locale, Resources resources) {
+        mZone = (TimeZone) zone.clone();
+        mLocale = locale;
+        DateFormatSymbols symbols = DateFormatSymbols.getInstance(locale);
+        mShortMonths = symbols.getShortMonths();
+        mAmPm = symbols.getAmPmStrings();
+        mResources = resources;
+        mJustNow = resources != null ? resources.getString(R.string.time_just_now) : null;
+    }
+
+    /**
+     * The formatter for the device's current time zone and locale, with the relative texts
+     * if {@link #getDefault(Context)} made it.
+     */
+    public static NewsTimeFormatter getDefault() {
+        NewsTimeFormatter formatter = sDefault;
+        TimeZone zone = TimeZone.getDefault();
+        Locale locale = Locale.getDefault();
+        if (formatter == null || !formatter.mZone.getID().equals(zone.getID())
+                || !formatter.mLocale.equals(locale)) {
+            formatter = new NewsTimeFormatter(zone, locale, formatter != null ? formatter.mResources : null);
+            sDefault = formatter;
+        }
+        return formatter;
+    }
+
+    /**
+     * The formatter for the device's current time zone and locale, with the relative texts of
+     * the app's resources. It is made again after the time zone or the locale change, and
+     * allocates nothing otherwise, so it can be asked for on every bind.
+     */
+    public static NewsTimeFormatter getDefault(Context context) {
+        NewsTimeFormatter formatter = sDefault;
+        if (formatter == null || formatter.mResources == null) {
+            formatter = create(context.getApplicationContext());
+        }
+        return formatter;
+    }
+
+    private static synchronized NewsTimeFormatter create(Context application) {
+        if (sWatched != application) {
+            IntentFilter changes = new IntentFilter(Intent.ACTION_TIMEZONE_CHANGED);
+            changes.addAction(Intent.ACTION_LOCALE_CHANGED);
+            application.registerReceiver(new BroadcastReceiver() {
+                @Override
+                public void onReceive(Context context, Intent intent) {
+                    sDefault = null;
+                }
+            }, changes);
+            sWatched = application;
+        }
+        NewsTimeFormatter formatter = new NewsTimeFormatter(TimeZone.getDefault(), Locale.getDefault(),
+                application.getResources());
+        sDefault = formatter;
+        return formatter;
+    }
+
+    /**
+     * Parse an ISO-8601 timestamp such as {@code 2022-11-01T23:00:00Z},
+     * {@code 2022-11-01T23:00:00.123Z} or {@code 2022-11-01T23:00:00+01:00}
+     * into milliseconds since the epoch.
+     *
+     * @throws IllegalArgumentException if the text is not such a timestamp
+     */
+    public static long parse(CharSequence text) {
+        if (text.length() < 19 || text.charAt(4) != '-' || text.charAt(7) != '-'
+                || text.charAt(10) != 'T' || text.charAt(13) != ':' || text.charAt(16) != ':') {
+            throw new IllegalArgumentException("Not an ISO-8601 timestamp: " + text);
+        }
+        int year = digits(text, 0, 4);
+        int month = digits(text, 5, 2);
+        int day = digits(text, 8, 2);
+        int hour = digits(text, 11, 2);
+        int minute = digits(text, 14, 2);
+        int second = digits(text, 17, 2);
+        if (month < 1 || month > 12 || day < 1 || day > 31 || hour > 23 || minute > 59 || second > 60) {
+            throw new IllegalArgumentException("Not an ISO-8601 timestamp: " + text);
+        }
+
+        int index = 19;
+        int millis = 0;
+        if (index < text.length() && text.charAt(index) == '.') {
+            int start = ++index;
+            while (index < text.length() && Character.isDigit(text.charAt(index))) {
+                if (index - start < 3) {
+                    millis = millis * 10 + (text.charAt(index) - '0');
+                }
+                index++;
+            }
+            for (int i = index - start; i < 3; i++) {
+                millis *= 10;
+            }
+        }
+
+        long offset = 0;
+        if (index == text.length()) {
+            // no zone given, the Guardian always sends UTC
+        } else if (text.charAt(index) == 'Z' && index + 1 == text.length()) {
+            offset = 0;
+        } else if ((text.charAt(index) == '+' || text.charAt(index) == '-')
+                && index + 6 == text.length() && text.charAt(index + 3) == ':') {
+            offset = digits(text, index + 1, 2) * HOUR + digits(text, index + 4, 2) * MINUTE;
+            if (text.charAt(index) == '-') {
+                offset = -offset;
+            }
+        } else {
+            throw new IllegalArgumentException("Not an ISO-8601 timestamp: " + text);
+        }
+
+        return daysFromCivil(year, month, day) * DAY
+                + hour * HOUR + minute * MINUTE + second * 1000L + millis - offset;
+    }
+
+    /**
+     * Format the instant as the date and time shown in the list, e.g. "Nov 1 2022\n11:00 PM".
+     */
+    public String format(long epochMillis) {
+        long local = epochMillis + mZone.getOffset(epochMillis);
+        long days = floorDiv(local, DAY);
+        int millisOfDay = (int) (local - days * DAY);
+        int hour = millisOfDay / (int) HOUR;
+        int minute = (millisOfDay / (int) MINUTE) % 60;
+
+        // civil date from days since the epoch (Howard Hinnant's algorithm)
+        long z = days + 719468;
+        long era = floorDiv(z, 146097);
+        long dayOfEra = z - era * 146097;
+        long yearOfEra = (dayOfEra - dayOfEra / 1460 + dayOfEra / 36524 - dayOfEra / 146096) / 365;
+        long dayOfYear = dayOfEra - (365 * yearOfEra + yearOfEra / 4 - yearOfEra / 100);
+        long mp = (5 * dayOfYear + 2) / 153;
+        int day = (int) (dayOfYear - (153 * mp + 2) / 5 + 1);
+        int month = (int) (mp < 10 ? mp + 3 : mp - 9);
+        long year = yearOfEra + era * 400 + (month <= 2 ? 1 : 0);
+
+        int hour12 = hour % 12 == 0 ? 12 : hour % 12;
+        StringBuilder text = new StringBuilder(24);
+        text.append(mShortMonths[month - 1]).append(' ').append(day).append(' ').append(year)
+                .append('\n').append(hour12).append(':');
+        if (minute < 10) {
+            text.append('0');
+        }
+        text.append(minute).append(' ').append(mAmPm[hour < 12 ? 0 : 1]);
+        return text.toString();
+    }
+
+    /**
+     * Format how long ago the instant was, e.g. "5 min ago", or return null if it was a day
+     * or more ago, or the formatter has no resources, and the absolute time should be shown
+     * instead. Allocates nothing once each text has been used.
+     */
+    public String formatRelative(long epochMillis, long nowMillis) {
+        if (mResources == null) {
+            return null;
+        }
+        long age = nowMillis - epochMillis;
+        if (age < MINUTE) {
+            return mJustNow;
+        }
+        if (age < HOUR) {
+            int minutes = (int) (age / MINUTE);
+            String text = mMinutesAgo[minutes];
+            if (text == null) {
+                text = mResources.getQuantityString(R.plurals.time_minutes_ago, minutes, minutes);
+                mMinutesAgo[minutes] = text;
+            }
+            return text;
+        }
+        if (age < DAY) {
+            int hours = (int) (age / HOUR);
+            String text = mHoursAgo[hours];
+            if (text == null) {
+                text = mResources.getQuantityString(R.plurals.time_hours_ago, hours, hours);
+                mHoursAgo[hours] = text;
+            }
+            return text;
+        }
+        return null;
+    }
+
+    // days since 1970-01-01 of the given date (Howard Hinnant's algorithm)
+    private static long daysFromCivil(int year, int month, int day) {
+        long y = month <= 2 ? year - 1 : year;
+        long era = floorDiv(y, 400);
+        long yearOfEra = y - era * 400;
+        long dayOfYear = (153 * (month > 2 ? month - 3 : month + 9) + 2) / 5 + day - 1;
+        long dayOfEra = yearOfEra * 365 + yearOfEra / 4 - yearOfEra / 100 + dayOfYear;
+        return era * 146097 + dayOfEra - 719468;
+    }
+
+    // Math.floorDiv only exists from API 24
+    private static long floorDiv(long x, long y) {
+        long q = x / y;
+        if ((x % y != 0) && ((x ^ y) < 0)) {
+            q--;
+        }
+        return q;
+    }
+
+    private static int digits(CharSequence text, int start, int count) {
+        int value = 0;
+        for (int i = start; i < start + count; i++) {
+            char c = text.charAt(i);
+            if (c < '0' || c > '9') {
+                throw new IllegalArgumentException("Not an ISO-8601 timestamp: " + text);
+            }
+            value = value * 10 + (c - '0');
+        }
+        return value;
+    }
+}
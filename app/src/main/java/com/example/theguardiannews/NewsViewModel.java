@@ -0,0 +1,240 @@
+package com.example.theguardiannews;
+
+import android.app.Application;
+import android.content.res.Resources;
+import android.os.Handler;
+import android.os.Looper;
+
+import androidx.annotation.NonNull;
+import androidx.lifecycle.AndroidViewModel;
+import androidx.lifecycle.LiveData;
+import androidx.lifecycle.MutableLiveData;
+
+import java.util.List;
+
+/**
+ * {@link NewsViewModel} holds the first page of the news list for {@link MainActivity}. It
+ * outlives configuration changes, so a recreated activity shows the rows it had without
+ * fetching them again. Changing the query cancels the load of the previous one. Why the last
+ * fetch failed is kept alongside, so the rows shown can be explained, and is told in passing
+ * only once for each failure, not again by every recreated activity. A fetch that found no
+ * way to the server is made again as soon as {@link NewsConnectivity} finds a network.
+ * What is typed in the search box goes through a {@link NewsSearch}, which decides when the
+ * server is asked and what can be shown without asking it.
+ */
+public class NewsViewModel extends AndroidViewModel {
+
+    // the key the reload is queued under, one for the first page shown
+    private static final String RETRY_KEY = "first-page";
+
+    private final NewsRepository mRepository;
+    private final NewsConnectivity mConnectivity;
+
+    // the last results told, kept when a fetch fails so the rows on screen stay
+    private final MutableLiveData<List<News>> mNews = new MutableLiveData<List<News>>();
+    private final MutableLiveData<Boolean> mLoading = new MutableLiveData<Boolean>(false);
+    // why the last fetch failed, null when it did not
+    private final MutableLiveData<NewsFetchException.Reason> mError =
+            new MutableLiveData<NewsFetchException.Reason>();
+    // whether the last failure was told in passing already
+    private boolean mErrorTold;
+    // whether the load being finished failed, so the results it ends with are short
+    private boolean mShort;
+
+    private NewsRepository.Query mQuery;
+    // the text of the search box, null while it is closed
+    private String mSearchText;
+    private final NewsSearch mSearch;
+
+    private final NewsRepository.Callback mCallback = new NewsRepository.Callback() {
+        @Override
+        public void onNews(List<News> news, boolean done) {
+            if (news != null) {
+                mNews.setValue(news);
+            }
+            if (done) {
+                if (news != null && !mShort) {
+                    mError.setValue(null);
+                    if (mQuery.words != null) {
+                        mSearch.put(mQuery.words, news);
+                    }
+                }
+                mShort = false;
+                mLoading.setValue(false);
+            }
+        }
+
+        @Override
+        public void onFailed(NewsFetchException.Reason reason) {
+            mErrorTold = false;
+            mShort = true;
+            mError.setValue(reason);
+            // there was no network to fetch over: try again once there is one, or at once if
+            // it came back meanwhile. A network that is there but failing is not retried in a
+            // loop; the user can ask again.
+            if (mConnectivity != null && !mConnectivity.isOnline()) {
+                mConnectivity.whenReconnected(RETRY_KEY, false, mRetry);
+            }
+        }
+    };
+
+    // loads the current query again
+    private final Runnable mRetry = new Runnable() {
+        @Override
+        public void run() {
+            if (mQuery != null) {
+                mLoading.setValue(true);
+                mRepository.load(mQuery, mCallback);
+            }
+        }
+    };
+
+    public NewsViewModel(@NonNull Application application) {
+        this(application, NewsRepository.get(application), NewsConnectivity.get(application));
+    }
+
+    NewsViewModel(Application application, NewsRepository repository) {
+        this(application, repository, null);
+    }
+
+    /**
+     * @param connectivity tells when a failed fetch is worth making again, may be null
+     */
+    NewsViewModel(Application application, NewsRepository repository, NewsConnectivity connectivity) {
+        super(application);
+        mRepository = repository;
+        mConnectivity = connectivity;
+        Resources resources = application.getResources();
+        mSearch = new NewsSearch(new Handler(Looper.getMainLooper()),
+                resources.getInteger(R.integer.search_debounce_millis),
+                resources.getInteger(R.integer.search_cache_entries), new NewsSearch.Listener() {
+            @Override
+            public void onSearch(String words) {
+                setQuery(words == null ? MainActivity.currentQuery(getApplication())
+                        : MainActivity.currentQuery(getApplication(), words));
+            }
+
+            @Override
+            public void onLocalResults(String words, List<News> news, boolean exact) {
+                if (exact) {
+                    showResults(MainActivity.currentQuery(getApplication(), words), news);
+                } else {
+                    // shown until the server's results for the words replace them
+                    mNews.setValue(news);
+                }
+            }
+        });
+    }
+
+    /** The rows of the first page, from the store or cache first and then from the server. */
+    public LiveData<List<News>> getNews() {
+        return mNews;
+    }
+
+    /** Whether the fetch of the current query is still going on. */
+    public LiveData<Boolean> isLoading() {
+        return mLoading;
+    }
+
+    /** Why the last fetch of the current query failed, null unless it did. */
+    public LiveData<NewsFetchException.Reason> getError() {
+        return mError;
+    }
+
+    /**
+     * Whether the last failure is still to be told in passing, below rows that stay on screen:
+     * true the first time it is asked after each failure, false after.
+     */
+    public boolean tellError() {
+        if (mErrorTold || mError.getValue() == null) {
+            return false;
+        }
+        mErrorTold = true;
+        return true;
+    }
+
+    /** The query the rows are loaded for, null until one is set. */
+    public NewsRepository.Query getQuery() {
+        return mQuery;
+    }
+
+    /**
+     * Load the given query, unless it is already the one loaded or being loaded. The same
+     * query is loaded again if its last load failed or ended short. The load of the previous
+     * query is cancelled.
+     */
+    public void setQuery(NewsRepository.Query query) {
+        if (query.equals(mQuery) && (mError.getValue() == null || mLoading.getValue())) {
+            return;
+        }
+        mQuery = query;
+        mError.setValue(null);
+        mLoading.setValue(true);
+        mRepository.load(query, mCallback);
+    }
+
+    /**
+     * The text in the search box changed.
+     */
+    public void search(String text) {
+        mSearchText = text;
+        mSearch.onTextChanged(text);
+    }
+
+    /**
+     * The search box was submitted.
+     */
+    public void submitSearch(String text) {
+        mSearchText = text;
+        mSearch.onSubmit(text);
+    }
+
+    /**
+     * The search box was closed, so the words in the settings are searched for again.
+     */
+    public void closeSearch() {
+        mSearchText = null;
+        mSearch.cancel();
+        setQuery(MainActivity.currentQuery(getApplication()));
+    }
+
+    /**
+     * The query settings changed: load them, for the words in the search box if it is open.
+     */
+    public void onSettingsChanged() {
+        // results kept for other sections or page sizes
+        mSearch.clear();
+        if (mSearchText == null || NewsSearch.key(mSearchText).isEmpty()) {
+            setQuery(MainActivity.currentQuery(getApplication()));
+        } else {
+            setQuery(MainActivity.currentQuery(getApplication(), mSearchText.trim()));
+        }
+    }
+
+    /** The text of the search box, null while it is closed. */
+    public String getSearchText() {
+        return mSearchText;
+    }
+
+    /** The times the server was asked while searching, for tests. */
+    int searches() {
+        return mSearch.searches();
+    }
+
+    // shows results at hand for the query, in place of loading it
+    private void showResults(NewsRepository.Query query, List<News> news) {
+        mRepository.cancel(mCallback);
+        mQuery = query;
+        mError.setValue(null);
+        mNews.setValue(news);
+        mLoading.setValue(false);
+    }
+
+    @Override
+    protected void onCleared() {
+        mRepository.cancel(mCallback);
+        if (mConnectivity != null) {
+            mConnectivity.cancel(RETRY_KEY, mRetry);
+        }
+    }
+}
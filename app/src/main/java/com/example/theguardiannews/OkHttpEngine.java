@@ -0,0 +1,240 @@
+package com.example.theguardiannews;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.MalformedURLException;
+import java.net.Proxy;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import okhttp3.Call;
+import okhttp3.Connection;
+import okhttp3.ConnectionPool;
+import okhttp3.EventListener;
+import okhttp3.OkHttpClient;
+import okhttp3.Protocol;
+import okhttp3.Request;
+import okhttp3.ResponseBody;
+
+/**
+ * {@link OkHttpEngine} is the {@link HttpEngine} used by the app. One client is shared, so
+ * connections are kept alive in a pool and reused, responses are requested gzip-compressed
+ * and unpacked as they are read, and HTTP/2 is negotiated with servers that offer it,
+ * carrying concurrent requests over one connection.
+ */
+public class OkHttpEngine implements HttpEngine {
+
+    /** Default time allowed to connect, the same as the app used before. */
+    public static final long DEFAULT_CONNECT_TIMEOUT_MILLIS = 15000;
+
+    /** Default time allowed between two reads. */
+    public static final long DEFAULT_READ_TIMEOUT_MILLIS = 10000;
+
+    // idle connections kept and for how long; the app talks to one host
+    private static final int MAX_IDLE_CONNECTIONS = 4;
+    private static final long KEEP_ALIVE_MINUTES = 5;
+
+    private static OkHttpEngine sInstance;
+
+    private final OkHttpClient mClient;
+
+    /**
+     * The engine shared by the whole app, with the default timeouts, reporting to
+     * {@link NewsMetrics} and to {@link NewsFetchPolicy}, which learns the link's speed.
+     */
+    public static synchronized OkHttpEngine get() {
+        if (sInstance == null) {
+            final NewsMetrics metrics = NewsMetrics.get();
+            final NewsFetchPolicy policy = NewsFetchPolicy.get();
+            sInstance = new OkHttpEngine(DEFAULT_CONNECT_TIMEOUT_MILLIS, DEFAULT_READ_TIMEOUT_MILLIS,
+                    new MetricsListener() {
+                        @Override
+                        public void onRequestFinished(Metrics request) {
+                            metrics.onRequestFinished(request);
+                            policy.onRequestFinished(request);
+                        }
+                    });
+        }
+        return sInstance;
+    }
+
+    /**
+     * @param connectTimeoutMillis time allowed to connect
+     * @param readTimeoutMillis time allowed between two reads
+     * @param listener told the metrics of every request, may be null
+     */
+    public OkHttpEngine(long connectTimeoutMillis, long readTimeoutMillis, MetricsListener listener) {
+        OkHttpClient.Builder builder = new OkHttpClient.Builder()
+                .connectTimeout(connectTimeoutMillis, TimeUnit.MILLISECONDS)
+                .readTimeout(readTimeoutMillis, TimeUnit.MILLISECONDS)
+                .connectionPool(new ConnectionPool(MAX_IDLE_CONNECTIONS, KEEP_ALIVE_MINUTES, TimeUnit.MINUTES));
+        if (listener != null) {
+            builder.eventListenerFactory(new MetricsFactory(listener));
+        }
+        mClient = builder.build();
+    }
+
+    @Override
+    public Response get(String url, Map<String, String> headers, CancellationToken token) throws IOException {
+        Request.Builder request = new Request.Builder();
+        try {
+            request.url(url);
+        } catch (IllegalArgumentException e) {
+            throw new MalformedURLException(url);
+        }
+        for (Map.Entry<String, String> header : headers.entrySet()) {
+            request.header(header.getKey(), header.getValue());
+        }
+        // no Accept-Encoding is set here: OkHttp asks for gzip itself and then unpacks it
+        final Call call = mClient.newCall(request.build());
+        if (token == null) {
+            return new OkHttpResponse(call.execute(), null, null);
+        }
+        // cancelling the call closes its socket, whether it is waiting or reading the body
+        Runnable cancel = new Runnable() {
+            @Override
+            public void run() {
+                call.cancel();
+            }
+        };
+        token.onCancel(cancel);
+        try {
+            return new OkHttpResponse(call.execute(), token, cancel);
+        } catch (IOException e) {
+            token.remove(cancel);
+            throw e;
+        }
+    }
+
+    private static class OkHttpResponse implements Response {
+        private final okhttp3.Response mResponse;
+        private final CancellationToken mToken;
+        private final Runnable mCancel;
+
+        OkHttpResponse(okhttp3.Response response, CancellationToken token, Runnable cancel) {
+            mResponse = response;
+            mToken = token;
+            mCancel = cancel;
+        }
+
+        @Override
+        public int code() {
+            return mResponse.code();
+        }
+
+        @Override
+        public String header(String name) {
+            return mResponse.header(name);
+        }
+
+        @Override
+        public InputStream body() throws IOException {
+            ResponseBody body = mResponse.body();
+            if (body == null) {
+                throw new IOException("Response has no body");
+            }
+            return body.byteStream();
+        }
+
+        @Override
+        public void close() {
+            mResponse.close();
+            if (mToken != null) {
+                mToken.remove(mCancel);
+            }
+        }
+    }
+
+    private static class MetricsFactory implements EventListener.Factory {
+        private final MetricsListener mListener;
+
+        MetricsFactory(MetricsListener listener) {
+            mListener = listener;
+        }
+
+        @Override
+        public EventListener create(Call call) {
+            return new MetricsEventListener(mListener);
+        }
+    }
+
+    // one per call, collecting the times of its steps
+    private static class MetricsEventListener extends EventListener {
+        private final MetricsListener mListener;
+        private long mCallStart;
+        private long mDnsStart = -1;
+        private long mDnsMillis = -1;
+        private long mConnectStart = -1;
+        private long mConnectMillis = -1;
+        private long mTtfbMillis = -1;
+        private long mBytes;
+        private String mProtocol = "unknown";
+
+        MetricsEventListener(MetricsListener listener) {
+            mListener = listener;
+        }
+
+        @Override
+        public void callStart(Call call) {
+            mCallStart = System.nanoTime();
+        }
+
+        @Override
+        public void dnsStart(Call call, String domainName) {
+            mDnsStart = System.nanoTime();
+        }
+
+        @Override
+        public void dnsEnd(Call call, String domainName, List<InetAddress> inetAddressList) {
+            mDnsMillis = millisSince(mDnsStart);
+        }
+
+        @Override
+        public void connectStart(Call call, InetSocketAddress inetSocketAddress, Proxy proxy) {
+            mConnectStart = System.nanoTime();
+        }
+
+        @Override
+        public void connectEnd(Call call, InetSocketAddress inetSocketAddress, Proxy proxy, Protocol protocol) {
+            mConnectMillis = millisSince(mConnectStart);
+        }
+
+        @Override
+        public void connectionAcquired(Call call, Connection connection) {
+            mProtocol = connection.protocol().toString();
+        }
+
+        @Override
+        public void responseHeadersStart(Call call) {
+            mTtfbMillis = millisSince(mCallStart);
+        }
+
+        @Override
+        public void responseBodyEnd(Call call, long byteCount) {
+            mBytes += byteCount;
+        }
+
+        @Override
+        public void callEnd(Call call) {
+            finish(call, false);
+        }
+
+        @Override
+        public void callFailed(Call call, IOException ioe) {
+            finish(call, true);
+        }
+
+        private void finish(Call call, boolean failed) {
+            mListener.onRequestFinished(new Metrics(call.request().url().toString(), mProtocol,
+                    mConnectStart == -1, mDnsMillis, mConnectMillis, mTtfbMillis,
+                    millisSince(mCallStart), mBytes, failed));
+        }
+
+        private static long millisSince(long start) {
+            return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        }
+    }
+}
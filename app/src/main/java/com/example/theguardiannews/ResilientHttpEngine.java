@@ -0,0 +1,509 @@
+package com.example.theguardiannews;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Random;
+import java.util.TimeZone;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link ResilientHttpEngine} wraps another {@link HttpEngine} so one slow or failed request
+ * does not cost the user the news list. Every request the app makes is an idempotent GET,
+ * so it is safe to repeat:
+ * <ul>
+ * <li>a request that fails, or that the server answers with a 5xx or 429, is retried after a
+ * random pause that grows with each attempt, or after the pause the server asked for in its
+ * {@code Retry-After} header;</li>
+ * <li>an attempt that has not been answered after the usual 95th percentile of answers is
+ * raced by a second one, and the first answer wins;</li>
+ * <li>after several requests in a row failed, requests fail straight away with a
+ * {@link CircuitOpenException} for a while, so the app falls back on what it has kept
+ * instead of waiting on timeouts. Then one request is let through to try the server again.</li>
+ * </ul>
+ * All of it happens within a deadline for the whole request: once it has passed there are no
+ * more attempts, and a raced attempt still unanswered is given up with an
+ * {@link InterruptedIOException}, so the user is told soon that the news could not be fetched.
+ */
+public class ResilientHttpEngine implements HttpEngine {
+
+    /** Thrown instead of making a request while the server is taken to be down. */
+    public static class CircuitOpenException extends IOException {
+        CircuitOpenException(String message) {
+            super(message);
+        }
+    }
+
+    static final int DEFAULT_MAX_ATTEMPTS = 3;
+    static final long DEFAULT_BACKOFF_MILLIS = 250;
+    // the second attempt of the shared instance waits at least this long
+    static final long DEFAULT_HEDGE_AFTER_MILLIS = 1000;
+    static final int DEFAULT_FAILURE_THRESHOLD = 5;
+    static final long DEFAULT_OPEN_MILLIS = TimeUnit.SECONDS.toMillis(30);
+    // a little over one attempt that reads for as long as the read timeout allows
+    static final long DEFAULT_DEADLINE_MILLIS = TimeUnit.SECONDS.toMillis(12);
+
+    // the longest pause between two attempts
+    private static final long MAX_BACKOFF_MILLIS = 4000;
+    // the longest pause the server may ask for before the request is given up instead
+    private static final long MAX_RETRY_AFTER_MILLIS = TimeUnit.SECONDS.toMillis(10);
+
+    // answer times kept for working out when to send a second attempt
+    private static final int LATENCY_SAMPLES = 64;
+
+    private static final int HTTP_TOO_MANY_REQUESTS = 429;
+
+    private static ResilientHttpEngine sInstance;
+
+    private final HttpEngine mDelegate;
+    private final int mMaxAttempts;
+    private final long mBackoffMillis;
+    private final long mHedgeAfterMillis;
+    private final int mFailureThreshold;
+    private final long mOpenMillis;
+    private final long mDeadlineMillis;
+    private final ExecutorService mExecutor;
+    private final NewsSync.Clock mClock;
+    private final Random mRandom = new Random();
+    private final Histogram mLatencies = new Histogram(LATENCY_SAMPLES);
+
+    // the circuit breaker's state, guarded by this
+    private int mFailures;
+    private long mOpenedAt = -1;
+    private boolean mTrying;
+
+    /**
+     * The engine shared by the whole app, around {@link OkHttpEngine#get()}.
+     */
+    public static synchronized ResilientHttpEngine get() {
+        if (sInstance == null) {
+            sInstance = new ResilientHttpEngine(OkHttpEngine.get(), DEFAULT_MAX_ATTEMPTS,
+                    DEFAULT_BACKOFF_MILLIS, DEFAULT_HEDGE_AFTER_MILLIS, DEFAULT_FAILURE_THRESHOLD,
+                    DEFAULT_OPEN_MILLIS, DEFAULT_DEADLINE_MILLIS, Executors.newCachedThreadPool(),
+                    NewsSync.SYSTEM_CLOCK);
+        }
+        return sInstance;
+    }
+
+    /**
+     * @param delegate makes the requests
+     * @param maxAttempts the attempts made at most for one request, 1 for no retries
+     * @param backoffMillis the longest pause before the second attempt, doubled for each
+     *                      attempt after that
+     * @param hedgeAfterMillis the least time an attempt is waited for before a second one is
+     *                         raced against it, or 0 for no second attempts
+     * @param failureThreshold the requests failing in a row after which requests fail fast
+     * @param openMillis how long requests fail fast before the server is tried again
+     * @param executor runs the raced attempts, may be null when there are none
+     * @param clock tells the time the breaker is opened by
+     */
+    public ResilientHttpEngine(HttpEngine delegate, int maxAttempts, long backoffMillis,
+                               long hedgeAfterMillis, int failureThreshold, long openMillis,
+                               ExecutorService executor, NewsSync.Clock clock) {
+        this(delegate, maxAttempts, backoffMillis, hedgeAfterMillis, failureThreshold, openMillis, 0,
+                executor, clock);
+    }
+
+    /**
+     * @param deadlineMillis the longest a request may take over all its attempts, or 0 for as
+     *                       long as they take
+     */
+    public ResilientHttpEngine(HttpEngine delegate, int maxAttempts, long backoffMillis,
+                               long hedgeAfterMillis, int failureThreshold, long openMillis,
+                               long deadlineMillis, ExecutorService executor, NewsSync.Clock clock) {
+        mDelegate = delegate;
+        mMaxAttempts = maxAttempts;
+        mBackoffMillis = backoffMillis;
+        mHedgeAfterMillis = hedgeAfterMillis;
+        mFailureThreshold = failureThreshold;
+        mOpenMillis = openMillis;
+        mDeadlineMillis = deadlineMillis;
+        mExecutor = executor;
+        mClock = clock;
+    }
+
+    @Override
+    public Response get(String url, Map<String, String> headers, CancellationToken token) throws IOException {
+        allowRequest();
+        NewsMetrics metrics = NewsMetrics.get();
+        long deadline = mDeadlineMillis > 0 ? now() + mDeadlineMillis : Long.MAX_VALUE;
+        for (int attempt = 1; ; attempt++) {
+            Response response;
+            try {
+                response = mHedgeAfterMillis > 0 ? race(url, headers, token, deadline)
+                        : attempt(url, headers, token);
+            } catch (IOException e) {
+                if (isCancelled(token)) {
+                    abandoned();
+                    throw e;
+                }
+                long pause = backoffMillis(attempt);
+                if (attempt >= mMaxAttempts || now() + pause >= deadline) {
+                    failed();
+                    throw e;
+                }
+                metrics.increment(NewsMetrics.Counter.RETRY);
+                pause(pause, token);
+                continue;
+            }
+            if (!isRetryable(response.code())) {
+                succeeded();
+                return response;
+            }
+            // the server may say when to ask again
+            long pause = retryAfterMillis(response.header("Retry-After"), mClock.currentTimeMillis());
+            if (pause < 0) {
+                pause = backoffMillis(attempt);
+            }
+            if (attempt >= mMaxAttempts || pause > MAX_RETRY_AFTER_MILLIS || now() + pause >= deadline) {
+                // the caller gets the server's answer, which says what went wrong
+                failed();
+                return response;
+            }
+            response.close();
+            metrics.increment(NewsMetrics.Counter.RETRY);
+            pause(pause, token);
+        }
+    }
+
+    /**
+     * The pause a {@code Retry-After} header asks for, given in seconds or as an HTTP date, or
+     * -1 if there is none or it cannot be read.
+     */
+    static long retryAfterMillis(String retryAfter, long now) {
+        if (retryAfter == null) {
+            return -1;
+        }
+        String value = retryAfter.trim();
+        try {
+            return Math.max(0, TimeUnit.SECONDS.toMillis(Long.parseLong(value)));
+        } catch (NumberFormatException e) {
+            // a date then
+        }
+        SimpleDateFormat format = new SimpleDateFormat("EEE, dd MMM yyyy HH:mm:ss zzz", Locale.US);
+        format.setTimeZone(TimeZone.getTimeZone("GMT"));
+        try {
+            return Math.max(0, format.parse(value).getTime() - now);
+        } catch (ParseException e) {
+            return -1;
+        }
+    }
+
+    private static long now() {
+        return TimeUnit.NANOSECONDS.toMillis(System.nanoTime());
+    }
+
+    // the time left before the deadline to wait for, 0 for as long as it takes
+    private static long waitMillis(long deadline) {
+        return deadline == Long.MAX_VALUE ? 0 : Math.max(1, deadline - now());
+    }
+
+    private static boolean isRetryable(int code) {
+        return code >= 500 || code == HTTP_TOO_MANY_REQUESTS;
+    }
+
+    private static boolean isCancelled(CancellationToken token) {
+        return token != null && token.isCancelled();
+    }
+
+    // one attempt on the caller's thread, timed for the hedging delay
+    private Response attempt(String url, Map<String, String> headers, CancellationToken token) throws IOException {
+        long start = System.nanoTime();
+        Response response = mDelegate.get(url, headers, token);
+        if (!isRetryable(response.code())) {
+            mLatencies.record(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+        }
+        return response;
+    }
+
+    // an attempt, raced by a second one if it is slower than usual
+    private Response race(final String url, final Map<String, String> headers, CancellationToken token,
+                          long deadline) throws IOException {
+        final Race race = new Race();
+        Runnable cancel = new Runnable() {
+            @Override
+            public void run() {
+                race.cancel();
+            }
+        };
+        if (token != null) {
+            token.onCancel(cancel);
+        }
+        boolean handedOut = false;
+        try {
+            start(race, 0, url, headers);
+            long left = waitMillis(deadline);
+            long hedgeDelay = hedgeDelayMillis();
+            if (!race.await(left == 0 ? hedgeDelay : Math.min(hedgeDelay, left))) {
+                // no second attempt once the deadline has passed
+                if (now() < deadline) {
+                    NewsMetrics.get().increment(NewsMetrics.Counter.HEDGE);
+                    start(race, 1, url, headers);
+                }
+                if (!race.await(waitMillis(deadline))) {
+                    race.cancel();
+                    throw new InterruptedIOException("No answer within " + mDeadlineMillis + "ms");
+                }
+            }
+            Response winner = race.result();
+            handedOut = true;
+            // the caller's token still stops the winner while its body is read
+            return new RaceResponse(winner, token, cancel);
+        } finally {
+            if (!handedOut && token != null) {
+                token.remove(cancel);
+            }
+        }
+    }
+
+    private void start(final Race race, final int index, final String url, final Map<String, String> headers) {
+        final CancellationToken attemptToken = race.begin(index);
+        mExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    race.answered(index, attempt(url, headers, attemptToken));
+                } catch (IOException e) {
+                    race.failed(e);
+                }
+            }
+        });
+    }
+
+    // the 95th percentile of recent answer times, and at least the configured delay
+    private long hedgeDelayMillis() {
+        return Math.max(mHedgeAfterMillis, mLatencies.snapshot().percentile(0.95));
+    }
+
+    // a random time up to the attempt's backoff
+    private long backoffMillis(int attempt) {
+        long cap = Math.min(MAX_BACKOFF_MILLIS, mBackoffMillis << Math.min(attempt - 1, 16));
+        return (long) (mRandom.nextDouble() * cap);
+    }
+
+    // waits the given time, unless the token is cancelled first
+    private void pause(long millis, CancellationToken token) throws IOException {
+        final CountDownLatch cancelled = new CountDownLatch(1);
+        Runnable wake = new Runnable() {
+            @Override
+            public void run() {
+                cancelled.countDown();
+            }
+        };
+        if (token != null) {
+            token.onCancel(wake);
+        }
+        try {
+            if (cancelled.await(millis, TimeUnit.MILLISECONDS)) {
+                abandoned();
+                throw new IOException("Canceled");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            abandoned();
+            throw new IOException("Interrupted", e);
+        } finally {
+            if (token != null) {
+                token.remove(wake);
+            }
+        }
+    }
+
+    // the circuit breaker: closed while mOpenedAt is -1, open until mOpenMillis after it,
+    // then half open while the one request let through is mTrying
+    private synchronized void allowRequest() throws CircuitOpenException {
+        if (mOpenedAt == -1) {
+            return;
+        }
+        if (mClock.currentTimeMillis() - mOpenedAt < mOpenMillis || mTrying) {
+            NewsMetrics.get().increment(NewsMetrics.Counter.CIRCUIT_OPEN);
+            throw new CircuitOpenException("The server failed " + mFailures + " times in a row");
+        }
+        mTrying = true;
+    }
+
+    private synchronized void succeeded() {
+        mFailures = 0;
+        mOpenedAt = -1;
+        mTrying = false;
+    }
+
+    private synchronized void failed() {
+        mFailures++;
+        if (mTrying || mFailures >= mFailureThreshold) {
+            mOpenedAt = mClock.currentTimeMillis();
+        }
+        mTrying = false;
+    }
+
+    // a request given up by its caller says nothing about the server
+    private synchronized void abandoned() {
+        mTrying = false;
+    }
+
+    /**
+     * Forget the failures so far, after the device moved to another network: those of
+     * requests without a way to the server say nothing about it.
+     */
+    public synchronized void onNetworkChanged() {
+        mFailures = 0;
+        mOpenedAt = -1;
+        mTrying = false;
+    }
+
+    // two attempts at one request, the first answer wins
+    private static class Race {
+        private final CancellationToken[] mTokens = new CancellationToken[2];
+        private int mStarted;
+        private int mFailed;
+        private Response mWinner;
+        private IOException mError;
+        private boolean mCancelled;
+
+        CancellationToken begin(int index) {
+            CancellationToken token = new CancellationToken();
+            boolean over;
+            synchronized (this) {
+                mTokens[index] = token;
+                mStarted++;
+                over = mWinner != null || mCancelled;
+            }
+            if (over) {
+                // the race ended while this attempt was being started
+                token.cancel();
+            }
+            return token;
+        }
+
+        void answered(int index, Response response) {
+            CancellationToken loser = null;
+            boolean won = false;
+            synchronized (this) {
+                if (mWinner == null && !mCancelled) {
+                    mWinner = response;
+                    won = true;
+                    loser = mTokens[1 - index];
+                    notifyAll();
+                }
+            }
+            if (won) {
+                // the other attempt, if there is one, is no longer wanted
+                if (loser != null) {
+                    loser.cancel();
+                }
+                return;
+            }
+            // too late, the connection goes back to the pool
+            try {
+                response.close();
+            } catch (IOException e) {
+                // nothing was waiting for it
+            }
+        }
+
+        synchronized void failed(IOException e) {
+            mFailed++;
+            if (mError == null) {
+                mError = e;
+            }
+            notifyAll();
+        }
+
+        void cancel() {
+            CancellationToken[] tokens;
+            synchronized (this) {
+                mCancelled = true;
+                tokens = mTokens.clone();
+                notifyAll();
+            }
+            for (CancellationToken token : tokens) {
+                if (token != null) {
+                    token.cancel();
+                }
+            }
+        }
+
+        /**
+         * Wait until an attempt answered, every attempt failed or the race was cancelled.
+         *
+         * @param millis the longest wait, 0 to wait as long as it takes
+         * @return whether the race is over
+         */
+        synchronized boolean await(long millis) throws IOException {
+            long deadline = System.currentTimeMillis() + millis;
+            try {
+                while (!isOver()) {
+                    long left = millis == 0 ? 0 : deadline - System.currentTimeMillis();
+                    if (millis != 0 && left <= 0) {
+                        return false;
+                    }
+                    wait(left);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException("Interrupted", e);
+            }
+            return true;
+        }
+
+        private boolean isOver() {
+            return mWinner != null || mFailed >= mStarted || mCancelled;
+        }
+
+        synchronized Response result() throws IOException {
+            if (mWinner != null) {
+                return mWinner;
+            }
+            if (mCancelled) {
+                throw new IOException("Canceled");
+            }
+            throw mError;
+        }
+    }
+
+    // the winning answer, which stops listening to the caller's token once it is closed
+    private static class RaceResponse implements Response {
+        private final Response mResponse;
+        private final CancellationToken mToken;
+        private final Runnable mCancel;
+
+        RaceResponse(Response response, CancellationToken token, Runnable cancel) {
+            mResponse = response;
+            mToken = token;
+            mCancel = cancel;
+        }
+
+        @Override
+        public int code() {
+            return mResponse.code();
+        }
+
+        @Override
+        public String header(String name) {
+            return mResponse.header(name);
+        }
+
+        @Override
+        public InputStream body() throws IOException {
+            return mResponse.body();
+        }
+
+        @Override
+        public void close() throws IOException {
+            try {
+                mResponse.close();
+            } finally {
+                if (mToken != null) {
+                    mToken.remove(mCancel);
+                }
+            }
+        }
+    }
+}
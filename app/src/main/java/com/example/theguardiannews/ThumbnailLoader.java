@@ -0,0 +1,321 @@
+package com.example.theguardiannews;
+
+import android.content.Context;
+import android.content.res.Resources;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+import android.util.LruCache;
+import android.widget.ImageView;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * {@link ThumbnailLoader} shows the article thumbnails in the news list. Images are decoded
+ * straight down to the size of a row's thumbnail, the decoded bitmaps are kept in memory up
+ * to a byte budget and the downloaded files in an {@link ImageDiskCache}. A URL wanted by
+ * several rows at once is fetched once, and a fetch no row wants any more is cancelled.
+ * Its methods are called on the main thread, where the images are delivered.
+ */
+public class ThumbnailLoader {
+
+    private static final String LOG_TAG = ThumbnailLoader.class.getSimpleName();
+
+    /** Default size of the on-disk cache. */
+    private static final long DEFAULT_DISK_BYTES = 10 * 1024 * 1024;
+
+    // images fetched and decoded at the same time by the shared instance
+    private static final int THREADS = 2;
+
+    private static ThumbnailLoader sInstance;
+
+    private final HttpEngine mEngine;
+    private final ImageDiskCache mDisk;
+    private final LruCache<String, Bitmap> mMemory;
+    private final int mWidth;
+    private final int mHeight;
+    private final Executor mExecutor;
+    private final Handler mMainHandler = new Handler(Looper.getMainLooper());
+
+    // the fetch running for each URL, and the fetch each view is waiting for
+    private final Map<String, Request> mInFlight = new HashMap<String, Request>();
+    private final Map<ImageView, Request> mWaiting = new HashMap<ImageView, Request>();
+
+    // how each image was found, so the hit rate can be measured
+    private int mMemoryHits;
+    private final AtomicInteger mDiskHits = new AtomicInteger();
+    private final AtomicInteger mNetworkLoads = new AtomicInteger();
+    private long mPeakMemoryBytes;
+
+    /**
+     * The loader shared by the whole app, sized for the rows of the news list, keeping up to
+     * an eighth of the heap in decoded bitmaps.
+     */
+    public static synchronized ThumbnailLoader get(Context context) {
+        if (sInstance == null) {
+            Context appContext = context.getApplicationContext();
+            Resources resources = appContext.getResources();
+            ThreadPoolExecutor executor = new ThreadPoolExecutor(THREADS, THREADS, 30, TimeUnit.SECONDS,
+                    new LinkedBlockingQueue<Runnable>());
+            executor.allowCoreThreadTimeOut(true);
+            sInstance = new ThumbnailLoader(OkHttpEngine.get(),
+                    new ImageDiskCache(new File(appContext.getCacheDir(), "thumbnails"), DEFAULT_DISK_BYTES),
+                    (int) Math.min(Integer.MAX_VALUE, Runtime.getRuntime().maxMemory() / 8),
+                    resources.getDimensionPixelSize(R.dimen.thumbnail_width),
+                    resources.getDimensionPixelSize(R.dimen.thumbnail_height), executor);
+        }
+        return sInstance;
+    }
+
+    /**
+     * @param engine fetches the images
+     * @param disk keeps the fetched images
+     * @param memoryBytes the bytes of decoded bitmaps kept in memory
+     * @param width the width in pixels the images are shown at
+     * @param height the height in pixels the images are shown at
+     * @param executor runs the fetches and decoding
+     */
+    public ThumbnailLoader(HttpEngine engine, ImageDiskCache disk, int memoryBytes, int width,
+                           int height, Executor executor) {
+        mEngine = engine;
+        mDisk = disk;
+        mMemory = new LruCache<String, Bitmap>(memoryBytes) {
+            @Override
+            protected int sizeOf(String url, Bitmap bitmap) {
+                return bitmap.getByteCount();
+            }
+        };
+        mWidth = width;
+        mHeight = height;
+        mExecutor = executor;
+    }
+
+    /**
+     * Show the image at the given URL in the view, straight away if it is in memory. The view
+     * is cleared until then, or for good if the URL is empty. Whatever the view was waiting
+     * for before is no longer wanted.
+     */
+    public void load(String url, ImageView view) {
+        cancel(view);
+        if (url.isEmpty()) {
+            view.setImageDrawable(null);
+            return;
+        }
+        Bitmap bitmap = mMemory.get(url);
+        if (bitmap != null) {
+            mMemoryHits++;
+            view.setImageBitmap(bitmap);
+            return;
+        }
+        view.setImageDrawable(null);
+        Request request = mInFlight.get(url);
+        if (request == null) {
+            request = new Request(url, new CancellationToken());
+            mInFlight.put(url, request);
+            mExecutor.execute(request);
+        }
+        request.mViews.add(view);
+        mWaiting.put(view, request);
+    }
+
+    /**
+     * Stop waiting for an image for the view, such as when its row is recycled. The fetch is
+     * cancelled if no other view is waiting for it.
+     */
+    public void cancel(ImageView view) {
+        Request request = mWaiting.remove(view);
+        if (request == null) {
+            return;
+        }
+        request.mViews.remove(view);
+        if (request.mViews.isEmpty()) {
+            if (mInFlight.get(request.mUrl) == request) {
+                mInFlight.remove(request.mUrl);
+            }
+            // closes the connection if the image is being downloaded
+            request.mToken.cancel();
+            request.cancel(true);
+        }
+    }
+
+    /** Images shown straight from memory. */
+    public int memoryHits() {
+        return mMemoryHits;
+    }
+
+    /** Images decoded from the disk cache. */
+    public int diskHits() {
+        return mDiskHits.get();
+    }
+
+    /** Images fetched from the network. */
+    public int networkLoads() {
+        return mNetworkLoads.get();
+    }
+
+    /**
+     * The most bytes of decoded bitmaps the memory cache held at once: up to a bitmap over
+     * its budget, as a new one is added before the eldest are evicted.
+     */
+    public long peakMemoryBytes() {
+        return mPeakMemoryBytes;
+    }
+
+    // on the main thread once a fetch is over, with null if it failed
+    private void deliver(Request request, Bitmap bitmap) {
+        if (mInFlight.get(request.mUrl) == request) {
+            mInFlight.remove(request.mUrl);
+        }
+        if (bitmap != null) {
+            // the cache holds the new bitmap with the ones it evicts for it for a moment
+            mPeakMemoryBytes = Math.max(mPeakMemoryBytes, (long) mMemory.size() + bitmap.getByteCount());
+            mMemory.put(request.mUrl, bitmap);
+        }
+        for (ImageView view : request.mViews) {
+            mWaiting.remove(view);
+            if (bitmap != null) {
+                view.setImageBitmap(bitmap);
+            }
+        }
+        request.mViews.clear();
+    }
+
+    // on a background thread: the decoded image from disk or the network, or null
+    private Bitmap fetch(String url, CancellationToken token) {
+        byte[] data = mDisk.get(url);
+        if (data != null) {
+            mDiskHits.incrementAndGet();
+        } else {
+            data = download(url, token);
+            if (data == null) {
+                return null;
+            }
+            mNetworkLoads.incrementAndGet();
+            mDisk.put(url, data);
+        }
+        // no row wants it any more, so the decoding is not worth it
+        if (Thread.currentThread().isInterrupted()) {
+            return null;
+        }
+        return decode(data, mWidth, mHeight);
+    }
+
+    private byte[] download(String url, CancellationToken token) {
+        HttpEngine.Response response = null;
+        try {
+            response = mEngine.get(url, Collections.<String, String>emptyMap(), token);
+            if (response.code() != HttpURLConnection.HTTP_OK) {
+                Log.e(LOG_TAG, "Error response code: " + response.code());
+                return null;
+            }
+            InputStream in = response.body();
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] buffer = new byte[8192];
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                out.write(buffer, 0, read);
+            }
+            return out.toByteArray();
+        } catch (IOException e) {
+            if (!token.isCancelled()) {
+                Log.e(LOG_TAG, "Problem fetching the thumbnail.", e);
+            }
+            return null;
+        } finally {
+            if (response != null) {
+                try {
+                    response.close();
+                } catch (IOException e) {
+                    Log.e(LOG_TAG, "Problem closing the response.", e);
+                }
+            }
+        }
+    }
+
+    /**
+     * Decode the image sampled down as far as it can be while still covering the given size,
+     * or return null if it cannot be decoded.
+     */
+    static Bitmap decode(byte[] data, int width, int height) {
+        BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inJustDecodeBounds = true;
+        BitmapFactory.decodeByteArray(data, 0, data.length, options);
+        if (options.outWidth <= 0 || options.outHeight <= 0) {
+            return null;
+        }
+        options.inJustDecodeBounds = false;
+        options.inSampleSize = inSampleSize(options.outWidth, options.outHeight, width, height);
+        // thumbnails are photos without transparency, so half the bytes of ARGB_8888 will do
+        options.inPreferredConfig = Bitmap.Config.RGB_565;
+        return BitmapFactory.decodeByteArray(data, 0, data.length, options);
+    }
+
+    /**
+     * The largest power of two an image of the given size can be divided by and still be at
+     * least the given width and height.
+     */
+    static int inSampleSize(int imageWidth, int imageHeight, int width, int height) {
+        int sample = 1;
+        while (imageWidth / (sample * 2) >= width && imageHeight / (sample * 2) >= height) {
+            sample *= 2;
+        }
+        return sample;
+    }
+
+    // a fetch and the views waiting for it, which hands its image to the main thread
+    private class Request extends FutureTask<Bitmap> {
+        final String mUrl;
+        final CancellationToken mToken;
+        final List<ImageView> mViews = new ArrayList<ImageView>(1);
+
+        Request(final String url, final CancellationToken token) {
+            super(new Callable<Bitmap>() {
+                @Override
+                public Bitmap call() {
+                    return fetch(url, token);
+                }
+            });
+            mUrl = url;
+            mToken = token;
+        }
+
+        @Override
+        protected void done() {
+            if (isCancelled()) {
+                return;
+            }
+            Bitmap bitmap;
+            try {
+                bitmap = get();
+            } catch (InterruptedException | ExecutionException e) {
+                bitmap = null;
+            }
+            final Bitmap result = bitmap;
+            mMainHandler.post(new Runnable() {
+                @Override
+                public void run() {
+                    deliver(Request.this, result);
+                }
+            });
+        }
+    }
+}
@@ -4,26 +4,22 @@ package com.example.theguardiannews;
 import static androidx.core.content.PackageManagerCompat.LOG_TAG;
 
 import android.annotation.SuppressLint;
+import android.database.sqlite.SQLiteException;
+import android.net.Uri;
 import android.text.TextUtils;
 import android.util.Log;
+import android.util.MalformedJsonException;
 
 import org.json.JSONArray;
 import org.json.JSONException;
 import org.json.JSONObject;
 
-import java.io.BufferedReader;
 import java.io.IOException;
-import java.io.InputStream;
-import java.io.InputStreamReader;
 import java.net.HttpURLConnection;
-import java.net.MalformedURLException;
-import java.net.URL;
-import java.nio.charset.Charset;
-import java.text.ParseException;
-import java.text.SimpleDateFormat;
 import java.util.ArrayList;
-import java.util.Date;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 
 public class Utilities {
@@ -38,101 +34,214 @@ public class Utilities {
     /**
      * Query the Guardian dataset and return a list of {@link News} objects.
      */
-    @SuppressLint("RestrictedApi")
     public static List<News> fetchNewsData(String requestUrl) {
-        // Create URL object
-        URL url = createUrl(requestUrl);
+        return fetchNewsData(requestUrl, null);
+    }
 
-        // Perform HTTP request to the URL and receive a JSON response back
-        String jsonResponse = null;
-        try {
-            jsonResponse = makeHttpRequest(url);
-        } catch (IOException e) {
-            Log.e(LOG_TAG, "Problem making the HTTP request.", e);
-        }
+    /**
+     * Query the Guardian dataset and return a list of {@link News} objects, answering from
+     * the given cache when the stored result is still fresh and revalidating it otherwise.
+     */
+    public static List<News> fetchNewsData(String requestUrl, NewsCache cache) {
+        return fetchNewsData(requestUrl, cache, null);
+    }
 
-        // Extract relevant fields from the JSON response and create a list of {@link News}s
-        List<News> news = extractNews(jsonResponse);
+    /**
+     * Same as {@link #fetchNewsData(String, NewsCache)}, also writing the articles the server
+     * sent into the given store, which may be null.
+     */
+    public static List<News> fetchNewsData(String requestUrl, NewsCache cache, NewsStore store) {
+        return fetchNewsData(OkHttpEngine.get(), requestUrl, cache, store);
+    }
 
-        // Return the list of {@link News}s
-        return news;
+    /**
+     * Same as {@link #fetchNewsData(String, NewsCache, NewsStore)}, making the request through
+     * the given engine.
+     */
+    public static List<News> fetchNewsData(HttpEngine engine, String requestUrl, NewsCache cache,
+                                           NewsStore store) {
+        return fetchNewsData(engine, requestUrl, cache, cache != null ? cache.get(requestUrl) : null, store);
+    }
+
+    /**
+     * Same as {@link #fetchNewsData(String, NewsCache, NewsStore)} for callers that have
+     * already read the cached entry for the query, which may be null.
+     */
+    static List<News> fetchNewsData(String requestUrl, NewsCache cache, NewsCache.Entry cached,
+                                    NewsStore store) {
+        return fetchNewsData(OkHttpEngine.get(), requestUrl, cache, cached, store);
+    }
+
+    /**
+     * Same as {@link #fetchNewsData(String, NewsCache, NewsCache.Entry, NewsStore)}, making the
+     * request through the given engine.
+     */
+    static List<News> fetchNewsData(HttpEngine engine, String requestUrl, NewsCache cache,
+                                    NewsCache.Entry cached, NewsStore store) {
+        return fetchNewsData(engine, requestUrl, cache, cached, store, null);
     }
 
     /**
-     * Returns new URL object from the given string URL.
+     * Same as {@link #fetchNewsData(HttpEngine, String, NewsCache, NewsCache.Entry, NewsStore)},
+     * abandoning the request, and returning null, once the given token is cancelled.
      */
     @SuppressLint("RestrictedApi")
-    private static URL createUrl(String stringUrl) {
-        URL url = null;
+    static List<News> fetchNewsData(HttpEngine engine, String requestUrl, NewsCache cache,
+                                    NewsCache.Entry cached, NewsStore store, CancellationToken token) {
         try {
-            url = new URL(stringUrl);
-        } catch (MalformedURLException e) {
-            Log.e(LOG_TAG, "Problem building the URL ", e);
+            return fetchNewsOrThrow(engine, requestUrl, cache, cached, store, token);
+        } catch (NewsFetchException e) {
+            // a cancelled request fails on purpose
+            if (token == null || !token.isCancelled()) {
+                Log.e(LOG_TAG, "Problem fetching the news.", e);
+            }
+            return null;
         }
-        return url;
     }
 
     /**
-     * Make an HTTP request to the given URL and return a String as the response.
+     * Same as {@link #fetchNewsData(HttpEngine, String, NewsCache, NewsCache.Entry, NewsStore,
+     * CancellationToken)}, telling why the news could not be fetched instead of returning null.
+     *
+     * @throws NewsFetchException if the request failed, the server answered with an error or
+     *                            its answer could not be read
      */
-    @SuppressLint("RestrictedApi")
-    private static String makeHttpRequest(URL url) throws IOException {
-        String jsonResponse = "";
+    static List<News> fetchNewsOrThrow(HttpEngine engine, String requestUrl, NewsCache cache,
+                                       NewsCache.Entry cached, NewsStore store,
+                                       CancellationToken token) throws NewsFetchException {
+        // The server said this result may be reused as it is, so skip the network
+        if (cached != null && cached.isFresh(System.currentTimeMillis())) {
+            NewsMetrics.get().increment(NewsMetrics.Counter.CACHE_FRESH);
+            return cached.news;
+        }
 
-        // If the URL is null, then return early.
-        if (url == null) {
-            return jsonResponse;
+        // Perform HTTP request to the URL and parse the JSON response as it arrives
+        return makeHttpRequest(engine, requestUrl, cache, cached, store, token);
+    }
+
+    /**
+     * Make an HTTP request to the given URL and return the list of {@link News} parsed
+     * from the response. When a cached entry is given the request is made conditional,
+     * and a 304 answer returns the cached list without parsing. A new result is written
+     * to the store, when one is given, in a single transaction.
+     */
+    @SuppressLint("RestrictedApi")
+    private static List<News> makeHttpRequest(HttpEngine engine, String requestUrl, NewsCache cache,
+                                              NewsCache.Entry cached, NewsStore store,
+                                              CancellationToken token) throws NewsFetchException {
+        Map<String, String> headers = new HashMap<String, String>();
+        if (cached != null && cached.canRevalidate()) {
+            if (cached.etag != null) {
+                headers.put("If-None-Match", cached.etag);
+            }
+            if (cached.lastModified != null) {
+                headers.put("If-Modified-Since", cached.lastModified);
+            }
         }
 
-        HttpURLConnection urlConnection = null;
-        InputStream inputStream = null;
+        NewsMetrics metrics = NewsMetrics.get();
+        HttpEngine.Response response;
+        try {
+            response = engine.get(requestUrl, headers, token);
+        } catch (IOException e) {
+            throw NewsFetchException.from(e);
+        }
         try {
-            urlConnection = (HttpURLConnection) url.openConnection();
-            urlConnection.setReadTimeout(10000 /* milliseconds */);
-            urlConnection.setConnectTimeout(15000 /* milliseconds */);
-            urlConnection.setRequestMethod("GET");
-            urlConnection.connect();
+            int responseCode = response.code();
+            long maxAge = maxAgeMillis(response.header("Cache-Control"));
+            if (responseCode == HttpURLConnection.HTTP_NOT_MODIFIED && cached != null) {
+                // Nothing changed on the server, keep what we have
+                cache.markRevalidated(requestUrl, cached, System.currentTimeMillis(), maxAge);
+                metrics.increment(NewsMetrics.Counter.CACHE_REVALIDATED);
+                return cached.news;
+            }
+            if (responseCode == HttpURLConnection.HTTP_BAD_REQUEST && pageOf(requestUrl) > 1) {
+                // the Guardian's answer for a page past the last, rather than an empty page
+                return NewsResults.pastTheEnd();
+            }
+            if (responseCode != HttpURLConnection.HTTP_OK) {
+                throw new NewsFetchException(NewsFetchException.Reason.SERVER,
+                        "Error response code: " + responseCode, null);
+            }
 
             // If the request was successful (response code 200),
-            // then read the input stream and parse the response.
-            if (urlConnection.getResponseCode() == 200) {
-                inputStream = urlConnection.getInputStream();
-                jsonResponse = readFromStream(inputStream);
-            } else {
-                Log.e(LOG_TAG, "Error response code: " + urlConnection.getResponseCode());
+            // then parse the input stream as it is read.
+            metrics.increment(NewsMetrics.Counter.CACHE_MISS);
+            List<News> news;
+            NewsMetrics.beginSection("Utilities.parse");
+            long parseStart = metrics.start();
+            try {
+                news = NewsJsonParser.parse(response.body());
+            } catch (MalformedJsonException | IllegalStateException e) {
+                // JsonReader reports malformed JSON as either of these
+                throw new NewsFetchException(NewsFetchException.Reason.BAD_RESPONSE,
+                        "Problem reading the news JSON results.", e);
+            } catch (IOException e) {
+                // the connection broke while the body was read
+                throw NewsFetchException.from(e);
+            } finally {
+                metrics.stop(NewsMetrics.Stat.PARSE, parseStart);
+                NewsMetrics.endSection();
             }
-        } catch (IOException e) {
-            Log.e(LOG_TAG, "Problem retrieving the news JSON results.", e);
-        } finally {
-            if (urlConnection != null) {
-                urlConnection.disconnect();
+            metrics.record(NewsMetrics.Stat.ARTICLES, news.size());
+            if (cache != null) {
+                cache.put(requestUrl, new NewsCache.Entry(news,
+                        response.header("ETag"),
+                        response.header("Last-Modified"),
+                        System.currentTimeMillis(), maxAge));
             }
-            if (inputStream != null) {
-                // Closing the input stream could throw an IOException, which is why
-                // the makeHttpRequest(URL url) method signature specifies than an IOException
-                // could be thrown.
-                inputStream.close();
+            if (store != null) {
+                try {
+                    store.putAll(news);
+                } catch (SQLiteException e) {
+                    // the result is still good to show without its local copy
+                    Log.e(LOG_TAG, "Problem writing the news to the store.", e);
+                }
             }
+            return news;
+        } finally {
+            // Closing the response hands the connection back to the engine for reuse.
+            closeQuietly(response);
         }
-        return jsonResponse;
     }
 
-    /**
-     * Convert the {@link InputStream} into a String which contains the
-     * whole JSON response from the server.
-     */
-    private static String readFromStream(InputStream inputStream) throws IOException {
-        StringBuilder output = new StringBuilder();
-        if (inputStream != null) {
-            InputStreamReader inputStreamReader = new InputStreamReader(inputStream, Charset.forName("UTF-8"));
-            BufferedReader reader = new BufferedReader(inputStreamReader);
-            String line = reader.readLine();
-            while (line != null) {
-                output.append(line);
-                line = reader.readLine();
+    // method to close a response whose connection may already be broken
+    private static void closeQuietly(HttpEngine.Response response) {
+        try {
+            response.close();
+        } catch (IOException e) {
+            // the connection is dropped instead of reused
+        }
+    }
+
+    // method to read the page a query URL asks for, 1 if it does not say
+    static int pageOf(String url) {
+        String page = Uri.parse(url).getQueryParameter("page");
+        try {
+            return page == null ? 1 : Integer.parseInt(page.trim());
+        } catch (NumberFormatException e) {
+            return 1;
+        }
+    }
+
+    // method to read the max-age directive of a Cache-Control header, 0 if there is none
+    static long maxAgeMillis(String cacheControl) {
+        if (cacheControl == null) {
+            return 0;
+        }
+        int index = cacheControl.indexOf("max-age=");
+        if (index == -1) {
+            return 0;
+        }
+        long seconds = 0;
+        for (int i = index + "max-age=".length(); i < cacheControl.length(); i++) {
+            char c = cacheControl.charAt(i);
+            if (c < '0' || c > '9') {
+                break;
             }
+            seconds = seconds * 10 + (c - '0');
         }
-        return output.toString();
+        return seconds * 1000;
     }
 
     /**
@@ -164,35 +273,37 @@ public class Utilities {
 
                 JSONObject currentNews = newsArray.getJSONObject(i);
                 // extracting title and truncating it to remove the author
-                String title = currentNews.getString("webTitle");
-                int index = title.indexOf("|");
-                if (index != -1) {
-                    title = title.substring(0, index - 1);
-                }
+                String title = trimTitle(currentNews.getString("webTitle"));
 
-                // extracting section name
+                // extracting section id and name
+                String sectionId = currentNews.optString("sectionId", "");
                 String section = currentNews.getString("sectionName");
 
                 // sorting out the date and time
-                String date = currentNews.getString("webPublicationDate");
-                index = date.indexOf("Z");
-                date = date.substring(0, index);
-                date = timeConversion(date);
+                long publishedAt = parsePublicationDate(currentNews.getString("webPublicationDate"));
 
                 // getting link to article
                 String link = currentNews.getString("webUrl");
 
-                // extracting the name of the author if there is one
-                JSONArray tagsForName = currentNews.getJSONArray("tags");
-                for (int j = 0; j < tagsForName.length(); j++) {
-                    JSONObject currentNewsAuthor = tagsForName.getJSONObject(j);
-                    String author = currentNewsAuthor.getString("webTitle");
+                // getting the id of the article, falling back to its link
+                String id = currentNews.optString("id", link);
 
-                    // creating new NewsObject object
-                    News item = new News(section, title, author, date, link);
-                    news.add(item);
+                // getting the thumbnail asked for with show-fields, if there is one
+                JSONObject fields = currentNews.optJSONObject("fields");
+                String thumbnail = fields == null ? "" : fields.optString("thumbnail", "");
+
+                // extracting the names of the authors if there are any
+                List<String> authors = new ArrayList<String>(2);
+                JSONArray tagsForName = currentNews.optJSONArray("tags");
+                for (int j = 0; tagsForName != null && j < tagsForName.length(); j++) {
+                    JSONObject currentNewsAuthor = tagsForName.getJSONObject(j);
+                    authors.add(currentNewsAuthor.getString("webTitle"));
                 }
 
+                // creating new NewsObject object, one for the article whoever wrote it
+                News item = new News(id, sectionId, section, title, authors, publishedAt, link, thumbnail);
+                news.add(item);
+
             }
         } catch (JSONException e) {
             // If an error is thrown when executing any of the above statements in the "try" block,
@@ -206,22 +317,28 @@ public class Utilities {
     }
 
 
-    // method to convert Guardian's time stamp to format suitable for UI
-    private static String timeConversion(String jsonTime) {
-        long milliSeconds;
-        @SuppressLint("SimpleDateFormat") SimpleDateFormat guardianTime = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss");
+    // method to remove the " | Author" suffix the Guardian appends to some titles
+    static String trimTitle(String title) {
+        int index = title.indexOf("|");
+        if (index != -1) {
+            title = title.substring(0, index - 1);
+        }
+        return title;
+    }
+
+    // method to read the Guardian's time stamp, or 0 if it cannot be read
+    static long parsePublicationDate(String date) {
         try {
-            Date date = guardianTime.parse(jsonTime);
-            milliSeconds = date.getTime();
-        } catch (ParseException e) {
-            e.printStackTrace();
-            return "";
+            return NewsTimeFormatter.parse(date);
+        } catch (IllegalArgumentException e) {
+            Log.e("Utilities", "Problem parsing the publication date " + date, e);
+            return 0;
         }
-        @SuppressLint("SimpleDateFormat") SimpleDateFormat dateConverter = new SimpleDateFormat("MMM d yyyy");
-        @SuppressLint("SimpleDateFormat") SimpleDateFormat timeConverter = new SimpleDateFormat("h:mm a");
-        String articleDate = dateConverter.format(milliSeconds);
-        String articleTime = timeConverter.format(milliSeconds);
-        return articleDate + "\n" + articleTime;
+    }
+
+    // method to convert Guardian's time stamp to format suitable for UI
+    static String timeConversion(long publishedAt, NewsTimeFormatter formatter) {
+        return publishedAt == 0 ? "" : formatter.format(publishedAt);
     }
 
 }
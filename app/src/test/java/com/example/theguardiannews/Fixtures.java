@@ -0,0 +1,49 @@
+package com.example.theguardiannews;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.Charset;
+
+/**
+ * Helpers shared by the unit tests for loading the recorded Guardian responses
+ * kept under src/test/resources.
+ */
+final class Fixtures {
+
+    /** A recorded /search response with 12 results, some with several contributors. */
+    static final String SEARCH_RESPONSE = "guardian_search.json";
+
+    private Fixtures() {
+    }
+
+    static byte[] bytes(String name) throws IOException {
+        InputStream in = Fixtures.class.getClassLoader().getResourceAsStream(name);
+        if (in == null) {
+            throw new IOException("Missing fixture " + name);
+        }
+        try {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] buffer = new byte[8192];
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                out.write(buffer, 0, read);
+            }
+            return out.toByteArray();
+        } finally {
+            in.close();
+        }
+    }
+
+    static String string(String name) throws IOException {
+        return new String(bytes(name), Charset.forName("UTF-8"));
+    }
+
+    /** Bytes allocated so far by the calling thread, as reported by HotSpot. */
+    static long allocatedBytes() {
+        com.sun.management.ThreadMXBean bean =
+                (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        return bean.getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+}
@@ -0,0 +1,381 @@
+package com.example.theguardiannews;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.IOException;
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+import java.util.Set;
+import java.util.TimeZone;
+import java.util.concurrent.TimeUnit;
+
+import okhttp3.HttpUrl;
+import okhttp3.mockwebserver.Dispatcher;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+import okhttp3.mockwebserver.SocketPolicy;
+
+/**
+ * {@link GuardianReplayServer} stands in for the Guardian's {@code /search} endpoint on a local
+ * {@link MockWebServer}, so the client can be tested and load tested offline. Its articles are
+ * the recorded results of {@link Fixtures#SEARCH_RESPONSE}, copied for every section with
+ * their publication times spread back from {@link #NEWEST}, and it answers the parameters the
+ * app sends the way the Guardian does:
+ * <ul>
+ * <li>{@code section}, one or several joined by {@code |};</li>
+ * <li>{@code q}, words that must all be in the title, with {@code AND} and {@code NOT};</li>
+ * <li>{@code from-date}, a date or a time in UTC;</li>
+ * <li>{@code order-by}, newest, oldest or relevance, the default for searches;</li>
+ * <li>{@code page} and {@code page-size}, with a 400 for a page past the last or a size
+ * over 200;</li>
+ * <li>{@code show-fields=thumbnail} and {@code show-tags=contributor}, left out unless
+ * asked for.</li>
+ * </ul>
+ * Faults are injected into a share of the answers, picked from a seeded random sequence so a
+ * run can be repeated: latency, a bandwidth cap, 429 and 503 answers and bodies cut short.
+ */
+final class GuardianReplayServer {
+
+    /** The sections there are articles for, those the app offers first. */
+    static final List<String> SECTIONS = Collections.unmodifiableList(Arrays.asList("news", "world",
+            "football", "environment", "technology", "politics", "commentisfree", "lifeandstyle"));
+
+    /** The publication time of the newest article, 1 November 2022 at midnight UTC. */
+    static final long NEWEST = 1667260800000L;
+
+    // the time between two articles, across the sections
+    private static final long INTERVAL_MILLIS = TimeUnit.MINUTES.toMillis(7);
+    private static final int MAX_PAGE_SIZE = 200;
+    private static final int DEFAULT_PAGE_SIZE = 10;
+
+    private final MockWebServer mServer = new MockWebServer();
+    // newest first
+    private final List<Article> mArticles = new ArrayList<Article>();
+    private final Random mRandom;
+
+    private volatile long mLatencyMillis;
+    private volatile long mBytesPerSecond;
+    private volatile double mTooManyRequestsRate;
+    private volatile double mServerErrorRate;
+    private volatile double mTruncateRate;
+
+    /**
+     * @param articlesPerSection the articles there are in each section
+     * @param seed starts the sequence the faulty answers are picked by
+     */
+    GuardianReplayServer(int articlesPerSection, long seed) throws IOException {
+        mRandom = new Random(seed);
+        try {
+            load(articlesPerSection);
+        } catch (JSONException e) {
+            throw new IOException("Malformed fixture " + Fixtures.SEARCH_RESPONSE, e);
+        }
+        mServer.setDispatcher(new Dispatcher() {
+            @Override
+            public MockResponse dispatch(RecordedRequest request) {
+                return answer(request.getRequestUrl());
+            }
+        });
+    }
+
+    void start() throws IOException {
+        mServer.start();
+    }
+
+    void shutdown() throws IOException {
+        mServer.shutdown();
+    }
+
+    /** The URL to use in place of {@link MainActivity#BASE_URL}. */
+    String baseUrl() {
+        return mServer.url("/search").toString() + "?";
+    }
+
+    int requestCount() {
+        return mServer.getRequestCount();
+    }
+
+    /** Wait this long before answering every request. */
+    void setLatency(long millis) {
+        mLatencyMillis = millis;
+    }
+
+    /** Send the bodies no faster than this, 0 for as fast as possible. */
+    void setBandwidth(long bytesPerSecond) {
+        mBytesPerSecond = bytesPerSecond;
+    }
+
+    /**
+     * Answer these shares of the requests with a 429 Too Many Requests and a 503 Service
+     * Unavailable.
+     */
+    void setErrorRates(double tooManyRequests, double serverErrors) {
+        mTooManyRequestsRate = tooManyRequests;
+        mServerErrorRate = serverErrors;
+    }
+
+    /** Drop the connection halfway through the body of this share of the answers. */
+    void setTruncateRate(double rate) {
+        mTruncateRate = rate;
+    }
+
+    private MockResponse answer(HttpUrl url) {
+        double roll;
+        synchronized (mRandom) {
+            roll = mRandom.nextDouble();
+        }
+        MockResponse response;
+        if (roll < mTooManyRequestsRate) {
+            response = error(429, "API rate limit exceeded").setHeader("Retry-After", "1");
+        } else if (roll < mTooManyRequestsRate + mServerErrorRate) {
+            response = new MockResponse().setResponseCode(503).setBody("Service Unavailable");
+        } else {
+            response = search(url);
+            if (roll < mTooManyRequestsRate + mServerErrorRate + mTruncateRate) {
+                response.setSocketPolicy(SocketPolicy.DISCONNECT_DURING_RESPONSE_BODY);
+            }
+        }
+        if (mLatencyMillis > 0) {
+            response.setHeadersDelay(mLatencyMillis, TimeUnit.MILLISECONDS);
+        }
+        if (mBytesPerSecond > 0) {
+            response.throttleBody(Math.max(1, mBytesPerSecond / 10), 100, TimeUnit.MILLISECONDS);
+        }
+        return response;
+    }
+
+    private MockResponse search(HttpUrl url) {
+        if (!url.encodedPath().equals("/search")) {
+            return new MockResponse().setResponseCode(404);
+        }
+        int page = intParameter(url, "page", 1);
+        int pageSize = intParameter(url, "page-size", DEFAULT_PAGE_SIZE);
+        if (page < 1 || pageSize < 0 || pageSize > MAX_PAGE_SIZE) {
+            return error(400, "page-size must be an integer between 0 and " + MAX_PAGE_SIZE);
+        }
+
+        String section = url.queryParameter("section");
+        Set<String> sections = section == null ? null : new HashSet<String>(Arrays.asList(section.split("\\|")));
+        Query query = new Query(url.queryParameter("q"));
+        long from = fromMillis(url.queryParameter("from-date"));
+        List<Article> matches = new ArrayList<Article>();
+        for (Article article : mArticles) {
+            if ((sections == null || sections.contains(article.mSectionId))
+                    && article.mPublishedAt >= from && query.matches(article)) {
+                matches.add(article);
+            }
+        }
+
+        String orderBy = url.queryParameter("order-by");
+        if (orderBy == null) {
+            orderBy = query.isEmpty() ? "newest" : "relevance";
+        }
+        if (orderBy.equals("oldest")) {
+            Collections.reverse(matches);
+        } else if (orderBy.equals("relevance")) {
+            sortByRelevance(matches, query);
+        }
+
+        int pages = (matches.size() + Math.max(1, pageSize) - 1) / Math.max(1, pageSize);
+        if (page > Math.max(1, pages)) {
+            return error(400, "requested page is beyond the number of available pages");
+        }
+        String fields = url.queryParameter("show-fields");
+        String tags = url.queryParameter("show-tags");
+        boolean withFields = fields != null && (fields.contains("thumbnail") || fields.equals("all"));
+        boolean withTags = tags != null && (tags.contains("contributor") || tags.equals("all"));
+
+        StringBuilder body = new StringBuilder(512 + pageSize * 1024);
+        int start = (page - 1) * pageSize;
+        body.append("{\"response\":{\"status\":\"ok\",\"userTier\":\"developer\",\"total\":")
+                .append(matches.size()).append(",\"startIndex\":").append(start + 1)
+                .append(",\"pageSize\":").append(pageSize).append(",\"currentPage\":").append(page)
+                .append(",\"pages\":").append(pages).append(",\"orderBy\":\"").append(orderBy)
+                .append("\",\"results\":[");
+        for (int i = start; i < Math.min(matches.size(), start + pageSize); i++) {
+            if (i > start) {
+                body.append(',');
+            }
+            matches.get(i).appendTo(body, withFields, withTags);
+        }
+        body.append("]}}");
+        return new MockResponse().setHeader("Content-Type", "application/json").setBody(body.toString());
+    }
+
+    private static MockResponse error(int code, String message) {
+        return new MockResponse().setResponseCode(code).setHeader("Content-Type", "application/json")
+                .setBody("{\"response\":{\"status\":\"error\",\"message\":\"" + message + "\"}}");
+    }
+
+    private static int intParameter(HttpUrl url, String name, int fallback) {
+        String value = url.queryParameter(name);
+        if (value == null) {
+            return fallback;
+        }
+        try {
+            return Integer.parseInt(value.trim());
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    // the time a from-date stands for, a day or a moment, 0 if there is none
+    private static long fromMillis(String date) {
+        if (date == null) {
+            return 0;
+        }
+        String pattern = date.length() > 10 ? "yyyy-MM-dd'T'HH:mm:ss'Z'" : "yyyy-MM-dd";
+        SimpleDateFormat format = new SimpleDateFormat(pattern, Locale.US);
+        format.setTimeZone(TimeZone.getTimeZone("UTC"));
+        try {
+            return format.parse(date).getTime();
+        } catch (ParseException e) {
+            return 0;
+        }
+    }
+
+    // the most matches of the search words first, the newest of equals first
+    private static void sortByRelevance(List<Article> articles, final Query query) {
+        Collections.sort(articles, new Comparator<Article>() {
+            @Override
+            public int compare(Article a, Article b) {
+                int byScore = query.score(b) - query.score(a);
+                return byScore != 0 ? byScore : Long.compare(b.mPublishedAt, a.mPublishedAt);
+            }
+        });
+    }
+
+    // copies the recorded results into every section, newest first
+    private void load(int articlesPerSection) throws JSONException, IOException {
+        JSONArray recorded = new JSONObject(Fixtures.string(Fixtures.SEARCH_RESPONSE))
+                .getJSONObject("response").getJSONArray("results");
+        SimpleDateFormat format = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss'Z'", Locale.US);
+        format.setTimeZone(TimeZone.getTimeZone("UTC"));
+        for (int k = 0; k < articlesPerSection; k++) {
+            for (int s = 0; s < SECTIONS.size(); s++) {
+                String sectionId = SECTIONS.get(s);
+                JSONObject result = new JSONObject(recorded.getJSONObject((k * SECTIONS.size() + s)
+                        % recorded.length()).toString());
+                long publishedAt = NEWEST - (k * SECTIONS.size() + s) * INTERVAL_MILLIS;
+                String slug = sectionId + "/replay/" + k;
+                result.put("id", slug);
+                result.put("sectionId", sectionId);
+                result.put("sectionName", sectionName(sectionId));
+                result.put("webPublicationDate", format.format(new Date(publishedAt)));
+                result.put("webUrl", "https://www.theguardian.com/" + slug);
+                result.put("apiUrl", "https://content.guardianapis.com/" + slug);
+                mArticles.add(new Article(result, sectionId, publishedAt));
+            }
+        }
+    }
+
+    private static String sectionName(String sectionId) {
+        if (sectionId.equals("world")) {
+            return "World news";
+        } else if (sectionId.equals("commentisfree")) {
+            return "Opinion";
+        } else if (sectionId.equals("lifeandstyle")) {
+            return "Life and style";
+        }
+        return Character.toUpperCase(sectionId.charAt(0)) + sectionId.substring(1);
+    }
+
+    // one result, kept as JSON text to be written out as it is
+    private static final class Article {
+        final String mSectionId;
+        final long mPublishedAt;
+        final String mTitle;
+        // the result without its fields and tags, and without its closing brace
+        final String mHead;
+        final String mFields;
+        final String mTags;
+
+        Article(JSONObject result, String sectionId, long publishedAt) throws JSONException {
+            mSectionId = sectionId;
+            mPublishedAt = publishedAt;
+            mTitle = result.getString("webTitle").toLowerCase(Locale.US);
+            Object fields = result.remove("fields");
+            Object tags = result.remove("tags");
+            mFields = fields == null ? null : fields.toString();
+            mTags = tags == null ? null : tags.toString();
+            String json = result.toString();
+            mHead = json.substring(0, json.length() - 1);
+        }
+
+        void appendTo(StringBuilder body, boolean withFields, boolean withTags) {
+            body.append(mHead);
+            if (withFields && mFields != null) {
+                body.append(",\"fields\":").append(mFields);
+            }
+            if (withTags && mTags != null) {
+                body.append(",\"tags\":").append(mTags);
+            }
+            body.append('}');
+        }
+    }
+
+    // the words searched for: all must be in a title, none of those after NOT
+    private static final class Query {
+        private final List<String> mWords = new ArrayList<String>();
+        private final List<String> mExcluded = new ArrayList<String>();
+
+        Query(String q) {
+            if (q == null) {
+                return;
+            }
+            boolean not = false;
+            for (String token : q.trim().split("\\s+")) {
+                if (token.equals("AND") || token.isEmpty()) {
+                    continue;
+                }
+                if (token.equals("NOT")) {
+                    not = true;
+                    continue;
+                }
+                String word = token.replace("\"", "").toLowerCase(Locale.US);
+                (not ? mExcluded : mWords).add(word);
+                not = false;
+            }
+        }
+
+        boolean isEmpty() {
+            return mWords.isEmpty() && mExcluded.isEmpty();
+        }
+
+        boolean matches(Article article) {
+            for (String word : mWords) {
+                if (!article.mTitle.contains(word)) {
+                    return false;
+                }
+            }
+            for (String word : mExcluded) {
+                if (article.mTitle.contains(word)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        int score(Article article) {
+            int score = 0;
+            for (String word : mWords) {
+                for (int i = article.mTitle.indexOf(word); i != -1; i = article.mTitle.indexOf(word, i + 1)) {
+                    score++;
+                }
+            }
+            return score;
+        }
+    }
+}
@@ -0,0 +1,150 @@
+package com.example.theguardiannews;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.junit.Assume.assumeTrue;
+
+import android.app.Application;
+import android.preference.PreferenceManager;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Tests for {@link GuardianReplayServer}: it answers the app's queries the way the Guardian
+ * does, fails the way it is told to, and the app can be pointed at it.
+ */
+@RunWith(RobolectricTestRunner.class)
+public class GuardianReplayServerTest {
+
+    private static final int ARTICLES_PER_SECTION = 30;
+
+    private GuardianReplayServer mServer;
+    private HttpEngine mEngine;
+
+    @Before
+    public void setUp() throws IOException {
+        mServer = new GuardianReplayServer(ARTICLES_PER_SECTION, 1);
+        mServer.start();
+        mEngine = new OkHttpEngine(5000, 5000, null);
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        mServer.shutdown();
+    }
+
+    @Test
+    public void pages_followTheQuery() throws NewsFetchException {
+        List<News> second = fetch("section=world&page-size=10&page=2");
+        assertEquals(10, second.size());
+        assertEquals("world/replay/10", second.get(0).getId());
+        for (News news : second) {
+            assertEquals("world", news.getSectionId());
+        }
+
+        // every section, newest first
+        List<News> all = fetch("page-size=50");
+        assertEquals(50, all.size());
+        for (int i = 1; i < all.size(); i++) {
+            assertTrue(all.get(i - 1).getPublishedAt() > all.get(i).getPublishedAt());
+        }
+        List<News> both = fetch("section=world|football&page-size=50");
+        assertEquals(50, both.size());
+
+        List<News> oldest = fetch("section=world&order-by=oldest&page-size=1");
+        assertEquals("world/replay/" + (ARTICLES_PER_SECTION - 1), oldest.get(0).getId());
+
+        // the articles of the last hour, a little over eight of them
+        List<News> recent = fetch("from-date=2022-10-31T23:00:00Z&page-size=50");
+        assertEquals(9, recent.size());
+
+        // the last page is short, and there is none after it: its 400 reads as the end
+        assertEquals(5, fetch("section=world&page-size=25&page=2").size());
+        assertTrue(fetch("section=world&page-size=25&page=3").isEmpty());
+        assertFailure("page-size=500", NewsFetchException.Reason.SERVER);
+    }
+
+    @Test
+    public void searches_matchTheTitles() throws NewsFetchException {
+        List<News> climate = fetch("q=climate%20AND%20talks&page-size=50");
+        assertTrue(climate.size() > 0);
+        for (News news : climate) {
+            assertTrue(news.getTitle(), news.getTitle().toLowerCase().contains("climate talks"));
+        }
+        assertEquals(0, fetch("q=climate%20AND%20NOT%20talks&page-size=50").size());
+        assertEquals(0, fetch("q=nothing&page-size=50").size());
+    }
+
+    @Test
+    public void faults_areInjectedAsAsked() throws NewsFetchException {
+        mServer.setErrorRates(1, 0);
+        assertFailure("page-size=10", NewsFetchException.Reason.SERVER);
+        mServer.setErrorRates(0, 1);
+        assertFailure("page-size=10", NewsFetchException.Reason.SERVER);
+        mServer.setErrorRates(0, 0);
+
+        mServer.setTruncateRate(1);
+        try {
+            fetch("page-size=50");
+            fail("expected the cut short body to fail");
+        } catch (NewsFetchException expected) {
+        }
+        mServer.setTruncateRate(0);
+
+        mServer.setLatency(300);
+        long start = System.nanoTime();
+        assertEquals(10, fetch("page-size=10").size());
+        assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) >= 300);
+        mServer.setLatency(0);
+
+        // 50 articles with their fields and tags are tens of kilobytes
+        mServer.setBandwidth(32 * 1024);
+        start = System.nanoTime();
+        assertEquals(50, fetch("page-size=50&show-fields=thumbnail&show-tags=contributor").size());
+        assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) >= 500);
+    }
+
+    @Test
+    public void app_canBePointedAtTheServer() throws NewsFetchException {
+        // only debug builds read the server from the preferences
+        assumeTrue(BuildConfig.DEBUG);
+        Application context = RuntimeEnvironment.getApplication();
+        PreferenceManager.getDefaultSharedPreferences(context).edit()
+                .putString(context.getString(R.string.base_url_key), mServer.baseUrl())
+                .putStringSet(context.getString(R.string.selected_sections_key), Collections.singleton("football"))
+                .commit();
+
+        List<String> urls = MainActivity.buildQueryUrls(context, 1);
+        assertEquals(1, urls.size());
+        assertTrue(urls.get(0), urls.get(0).startsWith(mServer.baseUrl()));
+        List<News> news = Utilities.fetchNewsOrThrow(mEngine, urls.get(0), null, null, null, null);
+
+        assertEquals(MainActivity.pageSize(context), news.size());
+        assertEquals("football", news.get(0).getSectionId());
+        assertEquals(1, mServer.requestCount());
+    }
+
+    private List<News> fetch(String query) throws NewsFetchException {
+        return Utilities.fetchNewsOrThrow(mEngine, mServer.baseUrl() + query, null, null, null, null);
+    }
+
+    private void assertFailure(String query, NewsFetchException.Reason reason) {
+        try {
+            fetch(query);
+            fail("expected " + reason);
+        } catch (NewsFetchException e) {
+            assertEquals(reason, e.reason);
+        }
+    }
+}
@@ -0,0 +1,103 @@
+package com.example.theguardiannews;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+
+/**
+ * Tests for {@link Histogram}: percentiles of what the ring holds, the ring keeping the latest
+ * values, and recording from several threads at once.
+ */
+public class HistogramTest {
+
+    @Test
+    public void snapshot_percentilesOfTheValues() {
+        Histogram histogram = new Histogram(128);
+        // recorded out of order
+        for (int i = 100; i >= 1; i--) {
+            histogram.record(i);
+        }
+
+        Histogram.Snapshot snapshot = histogram.snapshot();
+        assertEquals(100, snapshot.count);
+        assertEquals(100, snapshot.size());
+        assertEquals(50, snapshot.percentile(0.5));
+        assertEquals(95, snapshot.percentile(0.95));
+        assertEquals(99, snapshot.percentile(0.99));
+        assertEquals(1, snapshot.percentile(0));
+        assertEquals(100, snapshot.max());
+        assertEquals(50.5, snapshot.mean(), 0.0001);
+    }
+
+    @Test
+    public void snapshot_empty_isZero() {
+        Histogram.Snapshot snapshot = new Histogram(16).snapshot();
+
+        assertEquals(0, snapshot.count);
+        assertEquals(0, snapshot.percentile(0.5));
+        assertEquals(0, snapshot.max());
+        assertEquals(0, snapshot.mean(), 0);
+    }
+
+    @Test
+    public void record_beyondTheCapacity_keepsTheLatest() {
+        Histogram histogram = new Histogram(16);
+        for (int i = 1; i <= 1000; i++) {
+            histogram.record(i);
+        }
+
+        Histogram.Snapshot snapshot = histogram.snapshot();
+        assertEquals(1000, snapshot.count);
+        assertEquals(16, snapshot.size());
+        assertEquals(985, snapshot.percentile(0));
+        assertEquals(1000, snapshot.max());
+
+        histogram.reset();
+        histogram.record(7);
+        assertEquals(1, histogram.snapshot().size());
+        assertEquals(7, histogram.snapshot().percentile(0.99));
+    }
+
+    @Test
+    public void record_fromSeveralThreads_losesNothing() throws InterruptedException {
+        final Histogram histogram = new Histogram(1 << 16);
+        final int threads = 4;
+        final int perThread = 10000;
+        final CountDownLatch start = new CountDownLatch(1);
+        List<Thread> recorders = new ArrayList<Thread>();
+        for (int t = 0; t < threads; t++) {
+            final int value = t + 1;
+            Thread recorder = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        start.await();
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                    for (int i = 0; i < perThread; i++) {
+                        histogram.record(value);
+                    }
+                }
+            });
+            recorder.start();
+            recorders.add(recorder);
+        }
+        start.countDown();
+        for (Thread recorder : recorders) {
+            recorder.join();
+        }
+
+        Histogram.Snapshot snapshot = histogram.snapshot();
+        assertEquals(threads * perThread, snapshot.count);
+        assertEquals(threads * perThread, snapshot.size());
+        // every thread's values are all there
+        assertEquals(2.5, snapshot.mean(), 0.0001);
+        assertEquals(1, snapshot.percentile(0.25));
+        assertEquals(4, snapshot.percentile(0.76));
+    }
+}
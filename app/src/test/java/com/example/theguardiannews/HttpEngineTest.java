@@ -0,0 +1,262 @@
+package com.example.theguardiannews;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import okhttp3.mockwebserver.Dispatcher;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+import okio.Buffer;
+import okio.GzipSink;
+
+/**
+ * Tests for {@link OkHttpEngine} against a stub server that compresses when asked to:
+ * connection reuse, gzip, timeouts and the metrics hook, with the bytes on the wire and the
+ * latency of repeated queries compared to the per-request HttpURLConnection used before.
+ */
+@RunWith(RobolectricTestRunner.class)
+public class HttpEngineTest {
+
+    private static final int QUERIES = 50;
+
+    private MockWebServer mServer;
+    private String mBody;
+    private final List<HttpEngine.Metrics> mMetrics =
+            Collections.synchronizedList(new ArrayList<HttpEngine.Metrics>());
+
+    @Before
+    public void setUp() throws IOException {
+        mBody = Fixtures.string(Fixtures.SEARCH_RESPONSE);
+        mServer = new MockWebServer();
+        mServer.setDispatcher(new Dispatcher() {
+            @Override
+            public MockResponse dispatch(RecordedRequest request) {
+                return response(request);
+            }
+        });
+        mServer.start();
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        mServer.shutdown();
+    }
+
+    @Test
+    public void repeatedQueries_reuseOneConnection() throws Exception {
+        OkHttpEngine engine = new OkHttpEngine(1000, 1000, recorder());
+        String url = mServer.url("/search?section=world").toString();
+
+        for (int i = 0; i < 5; i++) {
+            assertNotNull(Utilities.fetchNewsData(engine, url, null, null));
+        }
+
+        for (int i = 0; i < 5; i++) {
+            // the sequence number counts the requests made on the same connection
+            assertEquals(i, mServer.takeRequest().getSequenceNumber());
+        }
+        assertFalse(mMetrics.get(0).connectionReused);
+        assertTrue(mMetrics.get(0).connectMillis >= 0);
+        for (int i = 1; i < 5; i++) {
+            assertTrue(mMetrics.get(i).connectionReused);
+            assertEquals(-1, mMetrics.get(i).connectMillis);
+        }
+    }
+
+    @Test
+    public void responses_areRequestedAndReadCompressed() throws Exception {
+        OkHttpEngine engine = new OkHttpEngine(1000, 1000, recorder());
+
+        List<News> news = Utilities.fetchNewsData(engine, mServer.url("/search").toString(), null, null);
+
+        assertEquals(Utilities.extractNews(mBody).size(), news.size());
+        assertEquals("gzip", mServer.takeRequest().getHeader("Accept-Encoding"));
+        HttpEngine.Metrics metrics = mMetrics.get(0);
+        assertFalse(metrics.failed);
+        assertTrue(metrics.bytesReceived > 0);
+        assertTrue(metrics.bytesReceived * 2 < mBody.getBytes("UTF-8").length);
+    }
+
+    @Test
+    public void readTimeout_isConfigurable() {
+        mServer.setDispatcher(new Dispatcher() {
+            @Override
+            public MockResponse dispatch(RecordedRequest request) {
+                return response(request).setHeadersDelay(500, TimeUnit.MILLISECONDS);
+            }
+        });
+        OkHttpEngine engine = new OkHttpEngine(1000, 100, recorder());
+
+        assertNull(Utilities.fetchNewsData(engine, mServer.url("/search").toString(), null, null));
+        assertTrue(mMetrics.get(0).failed);
+    }
+
+    @Test
+    public void metrics_measureTimeToFirstByte() {
+        mServer.setDispatcher(new Dispatcher() {
+            @Override
+            public MockResponse dispatch(RecordedRequest request) {
+                return response(request).setHeadersDelay(50, TimeUnit.MILLISECONDS);
+            }
+        });
+        OkHttpEngine engine = new OkHttpEngine(1000, 1000, recorder());
+
+        Utilities.fetchNewsData(engine, mServer.url("/search").toString(), null, null);
+
+        HttpEngine.Metrics metrics = mMetrics.get(0);
+        assertEquals("http/1.1", metrics.protocol);
+        assertTrue(metrics.ttfbMillis >= 50);
+        assertTrue(metrics.totalMillis >= metrics.ttfbMillis);
+    }
+
+    @Test
+    public void repeatedQueries_costFewerBytesAndConnectionsThanHttpUrlConnection() throws Exception {
+        String url = mServer.url("/search?section=world").toString();
+        LegacyEngine legacy = new LegacyEngine();
+        OkHttpEngine pooled = new OkHttpEngine(15000, 10000, recorder());
+
+        // warm up both so class loading is not counted
+        Utilities.fetchNewsData(legacy, url, null, null);
+        Utilities.fetchNewsData(pooled, url, null, null);
+        legacy.mBytes = 0;
+        mMetrics.clear();
+        newConnections(mServer.getRequestCount());
+
+        for (int i = 0; i < QUERIES; i++) {
+            Utilities.fetchNewsData(legacy, url, null, null);
+        }
+        int legacyConnections = newConnections(QUERIES);
+
+        for (int i = 0; i < QUERIES; i++) {
+            Utilities.fetchNewsData(pooled, url, null, null);
+        }
+        int pooledConnections = newConnections(QUERIES);
+        long pooledBytes = 0;
+        for (HttpEngine.Metrics metrics : mMetrics) {
+            pooledBytes += metrics.bytesReceived;
+        }
+
+        assertEquals(QUERIES, legacyConnections);
+        assertEquals(0, pooledConnections);
+        assertTrue("OkHttpEngine " + pooledBytes / QUERIES + " B/query, HttpURLConnection "
+                + legacy.mBytes / QUERIES, pooledBytes * 2 < legacy.mBytes);
+    }
+
+    // takes the given number of recorded requests and counts those that opened a connection
+    private int newConnections(int count) throws InterruptedException {
+        int connections = 0;
+        for (int i = 0; i < count; i++) {
+            RecordedRequest request = mServer.takeRequest();
+            if (request.getSequenceNumber() == 0) {
+                connections++;
+            }
+        }
+        return connections;
+    }
+
+    private HttpEngine.MetricsListener recorder() {
+        return new HttpEngine.MetricsListener() {
+            @Override
+            public void onRequestFinished(HttpEngine.Metrics metrics) {
+                mMetrics.add(metrics);
+            }
+        };
+    }
+
+    // the recorded response, gzip-compressed when the client says it accepts that
+    private MockResponse response(RecordedRequest request) {
+        String acceptEncoding = request.getHeader("Accept-Encoding");
+        if (acceptEncoding == null || !acceptEncoding.contains("gzip")) {
+            return new MockResponse().setBody(mBody);
+        }
+        Buffer compressed = new Buffer();
+        try {
+            GzipSink gzip = new GzipSink(compressed);
+            Buffer plain = new Buffer().writeUtf8(mBody);
+            gzip.write(plain, plain.size());
+            gzip.close();
+        } catch (IOException e) {
+            throw new AssertionError(e);
+        }
+        return new MockResponse().setBody(compressed).setHeader("Content-Encoding", "gzip");
+    }
+
+    // the request as Utilities made it before: a new connection each time, disconnected
+    // after use, without asking for compression
+    private static class LegacyEngine implements HttpEngine {
+        long mBytes;
+
+        @Override
+        public Response get(String url, Map<String, String> headers, CancellationToken token)
+                throws IOException {
+            final HttpURLConnection connection = (HttpURLConnection) new URL(url).openConnection();
+            connection.setReadTimeout(10000);
+            connection.setConnectTimeout(15000);
+            for (Map.Entry<String, String> header : headers.entrySet()) {
+                connection.setRequestProperty(header.getKey(), header.getValue());
+            }
+            connection.connect();
+            final int code = connection.getResponseCode();
+            return new Response() {
+                @Override
+                public int code() {
+                    return code;
+                }
+
+                @Override
+                public String header(String name) {
+                    return connection.getHeaderField(name);
+                }
+
+                @Override
+                public InputStream body() throws IOException {
+                    return new FilterInputStream(connection.getInputStream()) {
+                        @Override
+                        public int read() throws IOException {
+                            int b = super.read();
+                            if (b != -1) {
+                                mBytes++;
+                            }
+                            return b;
+                        }
+
+                        @Override
+                        public int read(byte[] buffer, int offset, int length) throws IOException {
+                            int read = super.read(buffer, offset, length);
+                            if (read > 0) {
+                                mBytes += read;
+                            }
+                            return read;
+                        }
+                    };
+                }
+
+                @Override
+                public void close() {
+                    connection.disconnect();
+                }
+            };
+        }
+    }
+}
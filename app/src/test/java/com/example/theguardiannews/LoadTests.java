@@ -0,0 +1,9 @@
+package com.example.theguardiannews;
+
+/**
+ * The JUnit category of the tests that replay many requests in real time, such as
+ * {@link NewsLoadTest}. They are left out of {@code ./gradlew test} and only run on their own
+ * with {@code -PloadTests}.
+ */
+public interface LoadTests {
+}
@@ -0,0 +1,126 @@
+package com.example.theguardiannews;
+
+import static org.junit.Assert.assertEquals;
+
+import android.content.Context;
+import android.widget.ImageView;
+import android.widget.LinearLayout;
+import android.widget.TextView;
+
+import androidx.core.content.ContextCompat;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Tests that {@link NewsStyler} works out the row display data up front and that binding a
+ * row in {@link NewsAdapter} then allocates nothing.
+ */
+@RunWith(RobolectricTestRunner.class)
+public class NewsAdapterBindTest {
+
+    private static final int BINDS = 10000;
+
+    private Context mContext;
+    private NewsStyler mStyler;
+
+    @Before
+    public void setUp() {
+        mContext = RuntimeEnvironment.getApplication();
+        mStyler = new NewsStyler(mContext);
+    }
+
+    @Test
+    public void styler_resolvesColourLabelAuthorAndDate() {
+        News world = news("World news", "Jane Doe");
+        News lifestyle = news("Life and style fashion", "not known");
+        mStyler.style(world);
+        mStyler.style(lifestyle);
+
+        assertEquals(ContextCompat.getColor(mContext, R.color.news), world.getColour());
+        assertEquals("World news", world.getSectionLabel());
+        assertEquals("Jane Doe", world.getAuthorText());
+        assertEquals(NewsTimeFormatter.getDefault().format(1667343600000L), world.getDateText());
+
+        assertEquals(ContextCompat.getColor(mContext, R.color.unclassified), lifestyle.getColour());
+        assertEquals("Life and", lifestyle.getSectionLabel());
+        assertEquals("", lifestyle.getAuthorText());
+    }
+
+    @Test
+    public void bind_allocatesNothingWhileScrolling() {
+        String[] sections = {"World news", "Football", "Technology", "Life and style fashion"};
+        List<News> news = new ArrayList<News>();
+        for (int i = 0; i < 100; i++) {
+            news.add(news(sections[i % sections.length], "Author " + i));
+        }
+        mStyler.style(news);
+
+        NewsAdapter adapter = new NewsAdapter(mContext, new NewsAdapter.OnNewsClickListener() {
+            @Override
+            public void onNewsClick(News news) {
+            }
+        });
+        adapter.submitList(news);
+        NewsAdapter.ViewHolder holder = adapter.new ViewHolder(row());
+
+        // warm up so class loading and interpreter set-up are not counted
+        for (int i = 0; i < BINDS; i++) {
+            adapter.onBindViewHolder(holder, i % news.size());
+        }
+
+        long start = Fixtures.allocatedBytes();
+        for (int i = 0; i < BINDS; i++) {
+            adapter.onBindViewHolder(holder, i % news.size());
+        }
+        long allocated = Fixtures.allocatedBytes() - start;
+
+        assertEquals(0, allocated);
+    }
+
+    // a row whose text views only record what they are given, so the measurement covers
+    // the adapter's own work rather than text layout
+    private LinearLayout row() {
+        LinearLayout row = new LinearLayout(mContext);
+        int[] ids = {R.id.title_text, R.id.author_text, R.id.date_text, R.id.section_text};
+        for (int id : ids) {
+            TextView view = new RecordingTextView(mContext);
+            view.setId(id);
+            row.addView(view);
+        }
+        ImageView thumbnail = new ImageView(mContext);
+        thumbnail.setId(R.id.thumbnail_image);
+        row.addView(thumbnail);
+        return row;
+    }
+
+    private static News news(String section, String author) {
+        return new News("id/" + section + author, section, "Title", author,
+                1667343600000L, "https://www.theguardian.com/" + section);
+    }
+
+    private static class RecordingTextView extends TextView {
+        CharSequence mText;
+        int mColour;
+
+        RecordingTextView(Context context) {
+            super(context);
+        }
+
+        @Override
+        public void setText(CharSequence text, BufferType type) {
+            mText = text;
+        }
+
+        @Override
+        public void setTextColor(int color) {
+            mColour = color;
+        }
+    }
+}
@@ -0,0 +1,159 @@
+package com.example.theguardiannews;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+
+/**
+ * Tests for {@link NewsCache} and the conditional requests made through it by
+ * {@link Utilities#fetchNewsData(String, NewsCache)}, against a local stub server.
+ */
+@RunWith(RobolectricTestRunner.class)
+public class NewsCacheTest {
+
+    @Rule
+    public TemporaryFolder mFolder = new TemporaryFolder();
+
+    private MockWebServer mServer;
+    private String mBody;
+
+    @Before
+    public void setUp() throws IOException {
+        mServer = new MockWebServer();
+        mServer.start();
+        mBody = Fixtures.string(Fixtures.SEARCH_RESPONSE);
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        mServer.shutdown();
+    }
+
+    @Test
+    public void entry_roundTripsThroughDisk() throws IOException {
+        File directory = mFolder.newFolder();
+        NewsCache cache = new NewsCache(directory, 1024 * 1024);
+        List<News> news = new ArrayList<News>();
+        news.add(new News("world/1", "World news", "Title one", "Jane Doe", 1667343600000L, "https://example.com/1"));
+        news.add(new News("world/2", "World news", "Title two", "Jane Doe", 1667343600000L, "https://example.com/2"));
+        cache.put("https://example.com/search?q=a", new NewsCache.Entry(news, "\"v1\"", null, 42, 0));
+
+        // a new instance over the same directory sees the entry written by the first
+        NewsCache reopened = new NewsCache(directory, 1024 * 1024);
+        NewsCache.Entry entry = reopened.get("https://example.com/search?q=a");
+
+        assertNotNull(entry);
+        assertEquals("\"v1\"", entry.etag);
+        assertNull(entry.lastModified);
+        assertEquals(42, entry.fetchedAt);
+        assertEquals(2, entry.news.size());
+        assertEquals("Title two", entry.news.get(1).getTitle());
+        assertEquals("https://example.com/2", entry.news.get(1).getLink());
+    }
+
+    @Test
+    public void put_evictsLeastRecentlyUsedOverBudget() throws IOException {
+        List<News> news = new ArrayList<News>();
+        for (int i = 0; i < 20; i++) {
+            news.add(new News("section/" + i, "Section", "Title " + i, "Author", 0, "https://example.com/" + i));
+        }
+        NewsCache probe = new NewsCache(mFolder.newFolder(), Long.MAX_VALUE);
+        probe.put("https://example.com/search?q=probe", new NewsCache.Entry(news, null, null, 0, 0));
+        long entrySize = probe.size();
+
+        // room for two entries only
+        NewsCache cache = new NewsCache(mFolder.newFolder(), entrySize * 2 + entrySize / 2);
+        cache.put("https://example.com/search?q=a", new NewsCache.Entry(news, null, null, 0, 0));
+        cache.put("https://example.com/search?q=b", new NewsCache.Entry(news, null, null, 0, 0));
+        // touch a so b becomes the eldest
+        assertNotNull(cache.get("https://example.com/search?q=a"));
+        cache.put("https://example.com/search?q=c", new NewsCache.Entry(news, null, null, 0, 0));
+
+        assertNotNull(cache.get("https://example.com/search?q=a"));
+        assertNull(cache.get("https://example.com/search?q=b"));
+        assertNotNull(cache.get("https://example.com/search?q=c"));
+        assertTrue(cache.size() <= entrySize * 2 + entrySize / 2);
+    }
+
+    @Test
+    public void filesOfAnEarlierRun_areOnlyListedOnFirstUse() throws IOException {
+        List<News> news = new ArrayList<News>();
+        news.add(new News("world/1", "World news", "Title one", "Jane Doe", 0, "https://example.com/1"));
+        File directory = mFolder.newFolder();
+        NewsCache earlier = new NewsCache(directory, Long.MAX_VALUE);
+        earlier.put("https://example.com/search?q=a", new NewsCache.Entry(news, null, null, 0, 0));
+        earlier.put("https://example.com/search?q=b", new NewsCache.Entry(news, null, null, 0, 0));
+        long entrySize = earlier.size() / 2;
+
+        // a cache with room for one entry leaves the directory alone until it is used
+        NewsCache cache = new NewsCache(directory, entrySize);
+        assertEquals(2, directory.listFiles().length);
+        assertEquals(entrySize, cache.size());
+        assertEquals(1, directory.listFiles().length);
+    }
+
+    @Test
+    public void fetch_revalidatesWithEtagAndSkipsParseOn304() throws IOException, InterruptedException {
+        NewsCache cache = new NewsCache(mFolder.newFolder(), 1024 * 1024);
+        String url = mServer.url("/search?section=world").toString();
+
+        mServer.enqueue(new MockResponse().setBody(mBody).setHeader("ETag", "\"abc\""));
+        mServer.enqueue(new MockResponse().setResponseCode(304));
+
+        List<News> first = Utilities.fetchNewsData(url, cache);
+        List<News> second = Utilities.fetchNewsData(url, cache);
+
+        RecordedRequest initial = mServer.takeRequest();
+        RecordedRequest conditional = mServer.takeRequest();
+        assertNull(initial.getHeader("If-None-Match"));
+        assertEquals("\"abc\"", conditional.getHeader("If-None-Match"));
+        assertEquals(first.size(), second.size());
+        assertEquals(first.get(0).getTitle(), second.get(0).getTitle());
+    }
+
+    @Test
+    public void fetch_servesFreshEntryWithoutNetwork() throws IOException {
+        NewsCache cache = new NewsCache(mFolder.newFolder(), 1024 * 1024);
+        String url = mServer.url("/search?section=football").toString();
+
+        mServer.enqueue(new MockResponse().setBody(mBody).setHeader("Cache-Control", "max-age=60"));
+
+        List<News> first = Utilities.fetchNewsData(url, cache);
+        List<News> second = Utilities.fetchNewsData(url, cache);
+
+        assertEquals(1, mServer.getRequestCount());
+        assertEquals(first.size(), second.size());
+    }
+
+    @Test
+    public void maxAgeMillis_readsDirective() {
+        assertEquals(60000, Utilities.maxAgeMillis("public, max-age=60"));
+        assertEquals(0, Utilities.maxAgeMillis("no-cache"));
+        assertEquals(0, Utilities.maxAgeMillis(null));
+    }
+
+    @Test
+    public void get_missingEntryReturnsNull() throws IOException {
+        NewsCache cache = new NewsCache(mFolder.newFolder(), 1024);
+        assertNull(cache.get("https://example.com/search?q=none"));
+        assertEquals(0, cache.size());
+    }
+}
@@ -0,0 +1,254 @@
+package com.example.theguardiannews;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.robolectric.Shadows.shadowOf;
+
+import android.app.Application;
+import android.content.Context;
+import android.net.ConnectivityManager;
+import android.net.Network;
+import android.net.NetworkCapabilities;
+import android.os.Looper;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.shadows.ShadowConnectivityManager;
+import org.robolectric.shadows.ShadowNetwork;
+import org.robolectric.shadows.ShadowNetworkCapabilities;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+
+/**
+ * Tests for {@link NewsConnectivity}, driving its network callback through the transitions a
+ * device goes through: no network, a captive portal, mobile data, Wi-Fi joining and leaving.
+ */
+@RunWith(RobolectricTestRunner.class)
+public class NewsConnectivityTest {
+
+    private Application mContext;
+    private ShadowConnectivityManager mShadow;
+    private NewsFetchPolicy mPolicy;
+    private NewsConnectivity mConnectivity;
+    private ConnectivityManager.NetworkCallback mCallback;
+    private final List<String> mRan = new ArrayList<String>();
+
+    @Before
+    public void setUp() {
+        mContext = RuntimeEnvironment.getApplication();
+        ConnectivityManager connectivity = (ConnectivityManager) mContext.getSystemService(Context.CONNECTIVITY_SERVICE);
+        mShadow = shadowOf(connectivity);
+        // starting without a network
+        mShadow.clearAllNetworks();
+        mPolicy = new NewsFetchPolicy();
+        mConnectivity = new NewsConnectivity(connectivity, mPolicy, null);
+        mConnectivity.start();
+        assertEquals(1, mShadow.getNetworkCallbacks().size());
+        mCallback = mShadow.getNetworkCallbacks().iterator().next();
+    }
+
+    @After
+    public void tearDown() {
+        mConnectivity.stop();
+    }
+
+    @Test
+    public void reconnecting_replaysEachQueuedFetchOnce() {
+        assertFalse(mConnectivity.isOnline());
+        mConnectivity.whenReconnected("world", false, record("world 1"));
+        mConnectivity.whenReconnected("football", false, record("football"));
+        // the same fetch failing again
+        mConnectivity.whenReconnected("world", false, record("world 2"));
+
+        // a captive portal is no way to the server
+        Network portal = ShadowNetwork.newInstance(1);
+        mCallback.onCapabilitiesChanged(portal, capabilities(false, true));
+        idle();
+        assertFalse(mConnectivity.isOnline());
+        assertTrue(mRan.isEmpty());
+
+        mCallback.onCapabilitiesChanged(portal, capabilities(true, true));
+        idle();
+        assertTrue(mConnectivity.isOnline());
+        assertEquals(2, mRan.size());
+        assertEquals("world 2", mRan.get(0));
+        assertEquals("football", mRan.get(1));
+        assertEquals(0, mConnectivity.queued());
+
+        // nothing runs twice
+        mCallback.onLost(portal);
+        mCallback.onCapabilitiesChanged(portal, capabilities(true, true));
+        idle();
+        assertEquals(2, mRan.size());
+    }
+
+    @Test
+    public void beforeTheNetworksAreKnown_takesTheDeviceToBeOnline() {
+        ConnectivityManager connectivity = (ConnectivityManager) mContext.getSystemService(Context.CONNECTIVITY_SERVICE);
+        NewsConnectivity monitor = new NewsConnectivity(connectivity, null, null);
+        assertTrue(monitor.isOnline());
+
+        // there is no network, and queued work waits for one once that is known
+        monitor.whenReconnected("page", false, record("page"));
+        monitor.start();
+        try {
+            idle();
+            assertFalse(monitor.isOnline());
+            assertTrue(mRan.isEmpty());
+            assertEquals(1, monitor.queued());
+        } finally {
+            monitor.stop();
+        }
+    }
+
+    @Test
+    public void queuedWhileOnline_runsAtOnce() {
+        Network mobile = ShadowNetwork.newInstance(1);
+        mCallback.onCapabilitiesChanged(mobile, capabilities(true, false));
+        idle();
+
+        // the network came back before the fetch that failed without it was queued
+        mConnectivity.whenReconnected("page", false, record("page"));
+        // background work still waits for Wi-Fi
+        mConnectivity.whenReconnected("prefetch", true, record("prefetch"));
+        idle();
+        assertEquals(Collections.singletonList("page"), mRan);
+        assertEquals(1, mConnectivity.queued());
+
+        mCallback.onCapabilitiesChanged(ShadowNetwork.newInstance(2), capabilities(true, true));
+        idle();
+        assertEquals(2, mRan.size());
+        assertEquals(0, mConnectivity.queued());
+    }
+
+    @Test
+    public void meteredNetwork_holdsBackgroundWorkUntilWiFi() {
+        final List<String> told = new ArrayList<String>();
+        mConnectivity.addListener(new NewsConnectivity.Listener() {
+            @Override
+            public void onConnectivityChanged(boolean online, boolean metered) {
+                told.add(online + "/" + metered);
+            }
+        });
+        mPolicy.onLinkKnown(100);
+        mConnectivity.whenReconnected("page", false, record("page"));
+        mConnectivity.whenReconnected("prefetch", true, record("prefetch"));
+
+        Network mobile = ShadowNetwork.newInstance(1);
+        mCallback.onCapabilitiesChanged(mobile, capabilities(true, false));
+        idle();
+        assertTrue(mConnectivity.isMetered());
+        assertEquals(Collections.singletonList("page"), mRan);
+        assertEquals(1, mConnectivity.queued());
+        // the new network's speed is not the old one's
+        assertEquals(0, mPolicy.kbps());
+
+        // Wi-Fi is preferred as soon as it can reach the internet
+        Network wifi = ShadowNetwork.newInstance(2);
+        mCallback.onCapabilitiesChanged(wifi, capabilities(true, true));
+        idle();
+        assertFalse(mConnectivity.isMetered());
+        assertEquals(2, mRan.size());
+        assertEquals("prefetch", mRan.get(1));
+
+        // leaving Wi-Fi falls back to mobile data, losing that too is going offline
+        mCallback.onLost(wifi);
+        idle();
+        assertTrue(mConnectivity.isOnline());
+        assertTrue(mConnectivity.isMetered());
+        mCallback.onLost(mobile);
+        idle();
+        assertFalse(mConnectivity.isOnline());
+        assertEquals(4, told.size());
+        assertEquals("true/true", told.get(0));
+        assertEquals("true/false", told.get(1));
+        assertEquals("true/true", told.get(2));
+        assertEquals("false/false", told.get(3));
+    }
+
+    @Test
+    public void offlineLoad_skipsTheServerAndReloadsOnReconnect() throws Exception {
+        MockWebServer server = new MockWebServer();
+        server.enqueue(new MockResponse().setBody(Fixtures.string(Fixtures.SEARCH_RESPONSE)));
+        server.start();
+        NewsStore store = new NewsStore(mContext, "connectivity-news.db", 5000);
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            NewsRepository repository = new NewsRepository(mContext, new OkHttpEngine(5000, 5000, null),
+                    new NewsCache(new File(mContext.getCacheDir(), "connectivity-test"), 1024 * 1024), store,
+                    new NewsMemo(32, 60 * 1000, NewsSync.SYSTEM_CLOCK), new NewsFetchPolicy(), mConnectivity,
+                    executor);
+            NewsViewModel viewModel = new NewsViewModel(mContext, repository, mConnectivity);
+
+            viewModel.setQuery(new NewsRepository.Query(
+                    Collections.singletonList(server.url("/search?section=world").toString()),
+                    Collections.singletonList("world"), null, 12));
+            waitUntilLoaded(viewModel);
+            // no attempt was made, so no timeout waited for
+            assertEquals(0, server.getRequestCount());
+            assertEquals(NewsFetchException.Reason.OFFLINE, viewModel.getError().getValue());
+            assertEquals(1, mConnectivity.queued());
+
+            mCallback.onCapabilitiesChanged(ShadowNetwork.newInstance(1), capabilities(true, true));
+            idle();
+            waitUntilLoaded(viewModel);
+            assertEquals(1, server.getRequestCount());
+            assertNotNull(viewModel.getNews().getValue());
+            assertEquals(12, viewModel.getNews().getValue().size());
+            assertNull(viewModel.getError().getValue());
+        } finally {
+            executor.shutdownNow();
+            store.close();
+            server.shutdown();
+        }
+    }
+
+    private Runnable record(final String name) {
+        return new Runnable() {
+            @Override
+            public void run() {
+                mRan.add(name);
+            }
+        };
+    }
+
+    private static NetworkCapabilities capabilities(boolean validated, boolean unmetered) {
+        NetworkCapabilities capabilities = ShadowNetworkCapabilities.newInstance();
+        shadowOf(capabilities).addCapability(NetworkCapabilities.NET_CAPABILITY_INTERNET);
+        if (validated) {
+            shadowOf(capabilities).addCapability(NetworkCapabilities.NET_CAPABILITY_VALIDATED);
+        }
+        if (unmetered) {
+            shadowOf(capabilities).addCapability(NetworkCapabilities.NET_CAPABILITY_NOT_METERED);
+        }
+        return capabilities;
+    }
+
+    private static void idle() {
+        shadowOf(Looper.getMainLooper()).idle();
+    }
+
+    private static void waitUntilLoaded(NewsViewModel viewModel) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 10000;
+        while (Boolean.TRUE.equals(viewModel.isLoading().getValue()) && System.currentTimeMillis() < deadline) {
+            idle();
+            Thread.sleep(10);
+        }
+        assertFalse(viewModel.isLoading().getValue());
+    }
+}
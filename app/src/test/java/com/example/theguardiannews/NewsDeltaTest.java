@@ -0,0 +1,197 @@
+package com.example.theguardiannews;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+import java.io.IOException;
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.Locale;
+import java.util.TimeZone;
+
+import okhttp3.HttpUrl;
+import okhttp3.mockwebserver.Dispatcher;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+
+/**
+ * Tests for {@link NewsDelta} against a stub server that answers {@code from-date} the way the
+ * Guardian does and records what it was asked: a refresh asks only for the newer articles,
+ * puts them at the head of the known ones and keeps the page size.
+ */
+@RunWith(RobolectricTestRunner.class)
+public class NewsDeltaTest {
+
+    private static final int WINDOW = 50;
+    private static final long NOV_1_2022 = 1667260800000L;
+    private static final long MINUTE = 60 * 1000L;
+
+    @Rule
+    public TemporaryFolder mFolder = new TemporaryFolder();
+
+    private MockWebServer mServer;
+    private HttpEngine mEngine;
+    private NewsCache mCache;
+    // articles published so far, oldest first
+    private final List<Long> mPublished = Collections.synchronizedList(new ArrayList<Long>());
+    private final List<HttpUrl> mRequests = Collections.synchronizedList(new ArrayList<HttpUrl>());
+    private final List<Integer> mBodyBytes = Collections.synchronizedList(new ArrayList<Integer>());
+
+    @Before
+    public void setUp() throws IOException {
+        for (int i = 0; i < 200; i++) {
+            mPublished.add(NOV_1_2022 + i * MINUTE);
+        }
+        mServer = new MockWebServer();
+        mServer.setDispatcher(new Dispatcher() {
+            @Override
+            public MockResponse dispatch(RecordedRequest request) {
+                mRequests.add(request.getRequestUrl());
+                String body = search(request.getRequestUrl());
+                mBodyBytes.add(body.length());
+                return new MockResponse().setBody(body);
+            }
+        });
+        mServer.start();
+        mEngine = new OkHttpEngine(5000, 5000, null);
+        mCache = new NewsCache(mFolder.newFolder(), 1024 * 1024);
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        mServer.shutdown();
+    }
+
+    @Test
+    public void refresh_asksOnlyForTheNewerArticles() {
+        String url = url("/search?section=world&page-size=" + WINDOW + "&page=1");
+
+        List<News> first = fetch(url);
+        assertEquals(WINDOW, first.size());
+        assertNull(mRequests.get(0).queryParameter("from-date"));
+
+        // two articles are published before the refresh
+        mPublished.add(NOV_1_2022 + 200 * MINUTE);
+        mPublished.add(NOV_1_2022 + 201 * MINUTE);
+        List<News> refreshed = fetch(url);
+
+        HttpUrl delta = mRequests.get(1);
+        assertEquals("2022-11-01T03:19:00Z", delta.queryParameter("from-date"));
+        assertEquals("newest", delta.queryParameter("order-by"));
+        assertEquals("published", delta.queryParameter("use-date"));
+        assertEquals("world", delta.queryParameter("section"));
+
+        // the new ones at the head, the oldest cut off the tail
+        assertEquals(WINDOW, refreshed.size());
+        assertEquals("world/201", refreshed.get(0).getId());
+        assertEquals("world/200", refreshed.get(1).getId());
+        assertEquals("world/199", refreshed.get(2).getId());
+        assertEquals("world/152", refreshed.get(WINDOW - 1).getId());
+        assertTrue("refresh " + mBodyBytes.get(1) + " bytes, full page " + mBodyBytes.get(0),
+                mBodyBytes.get(1) * 10 < mBodyBytes.get(0));
+
+        // the merged list is what the next refresh starts from
+        mPublished.add(NOV_1_2022 + 202 * MINUTE);
+        List<News> again = fetch(url);
+        assertEquals("2022-11-01T03:21:00Z", mRequests.get(2).queryParameter("from-date"));
+        assertEquals("world/202", again.get(0).getId());
+        assertEquals("world/153", again.get(WINDOW - 1).getId());
+    }
+
+    @Test
+    public void relevanceSearchesAndLaterPages_areFetchedInFull() {
+        String search = url("/search?q=climate&page-size=" + WINDOW);
+        fetch(search);
+        fetch(search);
+        String relevance = url("/search?section=news&order-by=relevance&page-size=" + WINDOW);
+        fetch(relevance);
+        fetch(relevance);
+        String second = url("/search?section=world&page-size=" + WINDOW + "&page=2");
+        fetch(second);
+        fetch(second);
+
+        assertEquals(6, mRequests.size());
+        for (HttpUrl request : mRequests) {
+            assertNull(request.queryParameter("from-date"));
+        }
+    }
+
+    @Test
+    public void deltaUrl_replacesTheOrder() {
+        String delta = NewsDelta.deltaUrl("https://content.guardianapis.com/search?section=world"
+                + "&order-by=relevance&page-size=15&api-key=k", NOV_1_2022);
+
+        HttpUrl url = HttpUrl.parse(delta);
+        assertEquals("world", url.queryParameter("section"));
+        assertEquals("15", url.queryParameter("page-size"));
+        assertEquals("k", url.queryParameter("api-key"));
+        assertEquals(Collections.singletonList("newest"), url.queryParameterValues("order-by"));
+        assertEquals("2022-11-01T00:00:00Z", url.queryParameter("from-date"));
+        assertTrue(NewsDelta.isNewestFirst("https://content.guardianapis.com/search?section=world&page=1"));
+        assertFalse(NewsDelta.isNewestFirst("https://content.guardianapis.com/search?q=brexit"));
+    }
+
+    private List<News> fetch(String url) {
+        try {
+            return NewsDelta.fetch(mEngine, url, mCache, mCache.get(url), null, null, WINDOW);
+        } catch (NewsFetchException e) {
+            throw new AssertionError(e);
+        }
+    }
+
+    private String url(String path) {
+        return mServer.url(path).toString();
+    }
+
+    // the published articles from the from-date on, newest first, a page of them
+    private String search(HttpUrl url) {
+        SimpleDateFormat format = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss'Z'", Locale.US);
+        format.setTimeZone(TimeZone.getTimeZone("UTC"));
+        long from = 0;
+        if (url.queryParameter("from-date") != null) {
+            try {
+                from = format.parse(url.queryParameter("from-date")).getTime();
+            } catch (ParseException e) {
+                throw new AssertionError(e);
+            }
+        }
+        int pageSize = Integer.parseInt(url.queryParameter("page-size"));
+        String page = url.queryParameter("page");
+        int skip = page == null ? 0 : (Integer.parseInt(page) - 1) * pageSize;
+
+        StringBuilder results = new StringBuilder();
+        int written = 0;
+        for (int i = mPublished.size() - 1 - skip; i >= 0 && written < pageSize; i--) {
+            long publishedAt = mPublished.get(i);
+            if (publishedAt < from) {
+                break;
+            }
+            if (written++ > 0) {
+                results.append(',');
+            }
+            results.append("{\"id\":\"world/").append(i)
+                    .append("\",\"sectionId\":\"world\",\"sectionName\":\"World news\"")
+                    .append(",\"webPublicationDate\":\"").append(format.format(new Date(publishedAt)))
+                    .append("\",\"webTitle\":\"Headline ").append(i)
+                    .append("\",\"webUrl\":\"https://www.theguardian.com/world/").append(i)
+                    .append("\",\"fields\":{\"thumbnail\":\"https://media.guim.co.uk/").append(i)
+                    .append("/500.jpg\"},\"tags\":[{\"webTitle\":\"Jane Doe\"}]}");
+        }
+        return "{\"response\":{\"status\":\"ok\",\"results\":[" + results + "]}}";
+    }
+}
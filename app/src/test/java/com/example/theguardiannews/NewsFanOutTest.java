@@ -0,0 +1,239 @@
+package com.example.theguardiannews;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+import java.io.IOException;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.Locale;
+import java.util.TimeZone;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import okhttp3.mockwebserver.Dispatcher;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+
+/**
+ * Tests for {@link NewsFanOut} against a stub server that answers each section after its own
+ * delay: the sections are fetched together, which a latch every fetch waits on shows, partial
+ * merges arrive fastest section first, and the feed comes out newest first without duplicates.
+ */
+@RunWith(RobolectricTestRunner.class)
+public class NewsFanOutTest {
+
+    private static final long HOUR = 60 * 60 * 1000L;
+    private static final long NEWEST = 1667343600000L;
+
+    // each section's delay in milliseconds, the slowest first
+    private static final List<String> SECTIONS = Arrays.asList("world", "football", "technology");
+    private static final long[] DELAYS = {300, 200, 100};
+    private static final int PER_SECTION = 3;
+
+    private MockWebServer mServer;
+    private OkHttpEngine mEngine;
+    private ExecutorService mExecutor;
+
+    @Before
+    public void setUp() throws IOException {
+        mServer = new MockWebServer();
+        mServer.setDispatcher(new Dispatcher() {
+            @Override
+            public MockResponse dispatch(RecordedRequest request) {
+                String section = request.getRequestUrl().queryParameter("section");
+                int index = SECTIONS.indexOf(section);
+                if (index == -1) {
+                    return new MockResponse().setResponseCode(404);
+                }
+                return new MockResponse().setBody(sectionResponse(index))
+                        .setHeadersDelay(DELAYS[index], TimeUnit.MILLISECONDS);
+            }
+        });
+        mServer.start();
+        mEngine = new OkHttpEngine(1000, 1000, null);
+        mExecutor = Executors.newFixedThreadPool(SECTIONS.size());
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        mExecutor.shutdownNow();
+        mServer.shutdown();
+    }
+
+    @Test
+    public void fetchAll_runsTheSectionsAtOnce() {
+        OverlapSource source = new OverlapSource(SECTIONS.size(), 10000);
+
+        List<News> news = new NewsFanOut(mExecutor).fetchAll(urls(), source, null);
+
+        // each fetch saw all of them started before it went on
+        assertEquals(SECTIONS.size() * PER_SECTION, news.size());
+        assertEquals(SECTIONS.size(), source.overlapped.get());
+    }
+
+    @Test
+    public void fetchAll_onOneThreadRunsTheSectionsInTurn() {
+        ExecutorService single = Executors.newSingleThreadExecutor();
+        try {
+            OverlapSource source = new OverlapSource(SECTIONS.size(), 100);
+
+            List<News> news = new NewsFanOut(single).fetchAll(urls(), source, null);
+
+            assertEquals(SECTIONS.size() * PER_SECTION, news.size());
+            assertEquals(0, source.overlapped.get());
+        } finally {
+            single.shutdownNow();
+        }
+    }
+
+    @Test
+    public void fetchAll_deliversPartialResultsFastestFirst() {
+        final List<List<News>> partials = new ArrayList<List<News>>();
+
+        List<News> news = new NewsFanOut(mExecutor).fetchAll(urls(), source(), new NewsFanOut.Listener() {
+            @Override
+            public void onPartialResult(List<News> partial) {
+                partials.add(partial);
+            }
+        });
+
+        assertEquals(2, partials.size());
+        assertEquals(PER_SECTION, partials.get(0).size());
+        for (News item : partials.get(0)) {
+            assertEquals("technology", item.getSectionId());
+        }
+        assertEquals(2 * PER_SECTION, partials.get(1).size());
+        assertNewestFirst(partials.get(1));
+
+        // the sections interleave by time: world, football, technology, world, ...
+        assertEquals(SECTIONS.size() * PER_SECTION, news.size());
+        assertNewestFirst(news);
+        for (int i = 0; i < news.size(); i++) {
+            assertEquals(SECTIONS.get(i % SECTIONS.size()), news.get(i).getSectionId());
+        }
+    }
+
+    @Test
+    public void fetchAll_keepsTheSectionsThatAnswered() {
+        List<String> urls = new ArrayList<String>(urls());
+        urls.add(mServer.url("/search?section=missing").toString());
+
+        List<News> news = new NewsFanOut(mExecutor).fetchAll(urls, source(), null);
+
+        assertEquals(SECTIONS.size() * PER_SECTION, news.size());
+        assertNull(new NewsFanOut(mExecutor).fetchAll(
+                Collections.singletonList(mServer.url("/search?section=missing").toString()), source(), null));
+    }
+
+    @Test
+    public void merge_ordersByTimeAndDropsDuplicates() {
+        List<News> world = Arrays.asList(news("world/1", "world", 0, "Jane Doe"),
+                news("shared/1", "world", 2, "Jane Doe"), news("world/2", "world", 4, "Jane Doe"));
+        List<News> football = Arrays.asList(news("football/1", "football", 1, "John Roe"),
+                news("shared/1", "football", 2, "Jane Doe", "John Roe"));
+
+        List<News> merged = NewsFanOut.merge(Arrays.asList(world, null, football));
+
+        assertEquals(4, merged.size());
+        assertEquals("world/1", merged.get(0).getId());
+        assertEquals("football/1", merged.get(1).getId());
+        // the same article is kept once, from the first list
+        assertEquals("shared/1", merged.get(2).getId());
+        assertEquals("world", merged.get(2).getSectionId());
+        assertEquals(Collections.singletonList("Jane Doe"), merged.get(2).getAuthors());
+        assertEquals("world/2", merged.get(3).getId());
+    }
+
+    private List<String> urls() {
+        List<String> urls = new ArrayList<String>();
+        for (String section : SECTIONS) {
+            urls.add(mServer.url("/search?section=" + section).toString());
+        }
+        return urls;
+    }
+
+    private NewsFanOut.Source source() {
+        return new NewsFanOut.Source() {
+            @Override
+            public List<News> fetch(String url) {
+                return Utilities.fetchNewsData(mEngine, url, null, null);
+            }
+        };
+    }
+
+    // fetches from the server once every fetch has started, or the wait is over, counting the
+    // fetches that saw all the others started
+    private class OverlapSource implements NewsFanOut.Source {
+        final AtomicInteger overlapped = new AtomicInteger();
+        private final CountDownLatch mStarted;
+        private final long mWaitMillis;
+
+        OverlapSource(int fetches, long waitMillis) {
+            mStarted = new CountDownLatch(fetches);
+            mWaitMillis = waitMillis;
+        }
+
+        @Override
+        public List<News> fetch(String url) {
+            mStarted.countDown();
+            try {
+                if (mStarted.await(mWaitMillis, TimeUnit.MILLISECONDS)) {
+                    overlapped.incrementAndGet();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return null;
+            }
+            return source().fetch(url);
+        }
+    }
+
+    private static void assertNewestFirst(List<News> news) {
+        for (int i = 1; i < news.size(); i++) {
+            assertTrue(news.get(i - 1).getPublishedAt() >= news.get(i).getPublishedAt());
+        }
+    }
+
+    private static News news(String id, String sectionId, int hoursAgo, String... authors) {
+        return new News(id, sectionId, sectionId, "Title " + id, Arrays.asList(authors),
+                NEWEST - hoursAgo * HOUR, "https://www.theguardian.com/" + id, "");
+    }
+
+    // the section's articles, newest first, published an hour apart in turn with the others
+    private static String sectionResponse(int index) {
+        SimpleDateFormat format = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss'Z'", Locale.US);
+        format.setTimeZone(TimeZone.getTimeZone("UTC"));
+        String section = SECTIONS.get(index);
+        StringBuilder results = new StringBuilder();
+        for (int i = 0; i < PER_SECTION; i++) {
+            long publishedAt = NEWEST - (i * SECTIONS.size() + index) * HOUR;
+            if (i > 0) {
+                results.append(',');
+            }
+            results.append("{\"id\":\"").append(section).append('/').append(i)
+                    .append("\",\"sectionId\":\"").append(section)
+                    .append("\",\"sectionName\":\"").append(section)
+                    .append("\",\"webPublicationDate\":\"").append(format.format(new Date(publishedAt)))
+                    .append("\",\"webTitle\":\"Title ").append(i)
+                    .append("\",\"webUrl\":\"https://www.theguardian.com/").append(section).append('/').append(i)
+                    .append("\",\"tags\":[{\"webTitle\":\"Jane Doe\"}]}");
+        }
+        return "{\"response\":{\"status\":\"ok\",\"results\":[" + results + "]}}";
+    }
+}
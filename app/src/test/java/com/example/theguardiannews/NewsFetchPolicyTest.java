@@ -0,0 +1,332 @@
+package com.example.theguardiannews;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.robolectric.Shadows.shadowOf;
+
+import android.app.Application;
+import android.os.Looper;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import okhttp3.HttpUrl;
+import okhttp3.mockwebserver.Dispatcher;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+
+/**
+ * Tests for {@link NewsFetchPolicy}: the estimates it keeps from the requests, the plans it
+ * makes from them, and a load over a stub server whose answers are throttled to the speed of
+ * a poor mobile link.
+ */
+@RunWith(RobolectricTestRunner.class)
+public class NewsFetchPolicyTest {
+
+    private static final int PAGE_SIZE = 15;
+    // about 160 kbit/s
+    private static final long SLOW_BYTES_PER_100_MILLIS = 2048;
+
+    private Application mContext;
+    private MockWebServer mServer;
+    private final List<HttpUrl> mRequests = Collections.synchronizedList(new ArrayList<HttpUrl>());
+    private volatile boolean mThrottled;
+    // the page the server fails to answer, 0 for none
+    private volatile int mFailingPage;
+
+    @Before
+    public void setUp() throws IOException {
+        mContext = RuntimeEnvironment.getApplication();
+        mServer = new MockWebServer();
+        mServer.setDispatcher(new Dispatcher() {
+            @Override
+            public MockResponse dispatch(RecordedRequest request) {
+                mRequests.add(request.getRequestUrl());
+                if (String.valueOf(mFailingPage).equals(request.getRequestUrl().queryParameter("page"))) {
+                    return new MockResponse().setResponseCode(500);
+                }
+                MockResponse response = new MockResponse().setBody(search(request.getRequestUrl()));
+                if (mThrottled) {
+                    response.throttleBody(SLOW_BYTES_PER_100_MILLIS, 100, TimeUnit.MILLISECONDS);
+                }
+                return response;
+            }
+        });
+        mServer.start();
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        mServer.shutdown();
+    }
+
+    @Test
+    public void unknownLink_leavesTheRequestsAlone() {
+        NewsFetchPolicy policy = new NewsFetchPolicy();
+
+        assertEquals(NewsFetchPolicy.Speed.NORMAL, policy.speed());
+        NewsFetchPolicy.Plan plan = policy.plan(PAGE_SIZE);
+        assertTrue(plan.isPlain());
+        String url = "https://content.guardianapis.com/search?section=world&page-size=15&page=3";
+        assertEquals(url, plan.firstUrl(url));
+        assertEquals(url, plan.batchUrl(url, 3));
+    }
+
+    @Test
+    public void estimates_followTheRequests() {
+        NewsFetchPolicy policy = new NewsFetchPolicy();
+
+        // 20 KB in a second after a 200ms wait: 160 kbit/s
+        for (int i = 0; i < 3; i++) {
+            policy.onRequestFinished(metrics(200, 1200, 20 * 1000));
+        }
+        assertEquals(160, policy.kbps());
+        assertEquals(200, policy.rttMillis());
+        assertEquals(NewsFetchPolicy.Speed.SLOW, policy.speed());
+
+        // the link gets better: 100 KB in 20ms after 50ms
+        for (int i = 0; i < 20; i++) {
+            policy.onRequestFinished(metrics(50, 70, 100 * 1000));
+        }
+        assertEquals(NewsFetchPolicy.Speed.FAST, policy.speed());
+
+        // failed requests and small bodies say nothing of the throughput
+        long kbps = policy.kbps();
+        policy.onRequestFinished(new HttpEngine.Metrics("u", "h2", true, -1, -1, 40, 9000, 100, false));
+        policy.onRequestFinished(new HttpEngine.Metrics("u", "h2", true, -1, -1, 40, 9000, 9000, true));
+        assertEquals(kbps, policy.kbps());
+
+        // a new network starts from what its type suggests
+        policy.onNetworkChanged(100);
+        assertEquals(NewsFetchPolicy.Speed.SLOW, policy.speed());
+        policy.onLinkKnown(50000);
+        assertEquals(100, policy.kbps());
+    }
+
+    @Test
+    public void slowLink_getsBetterOnTheChunksItAsksFor() {
+        NewsFetchPolicy policy = new NewsFetchPolicy();
+        policy.onLinkKnown(100);
+
+        // chunks of five without thumbnails or tags, still slow to arrive
+        policy.onRequestFinished(metrics(200, 275, 1500));
+        assertEquals(NewsFetchPolicy.Speed.SLOW, policy.speed());
+
+        // the link gets better, and the same chunks arrive in 10ms: a normal link, though
+        // bodies that small cannot make it a fast one
+        for (int i = 0; i < 20; i++) {
+            policy.onRequestFinished(metrics(50, 60, 1500));
+        }
+        assertEquals(NewsFetchPolicy.Speed.NORMAL, policy.speed());
+        assertTrue(policy.kbps() <= NewsFetchPolicy.NORMAL_KBPS);
+        assertFalse(policy.plan(PAGE_SIZE).chunkSize < PAGE_SIZE);
+    }
+
+    @Test
+    public void plans_keepThePageSize() {
+        NewsFetchPolicy slow = new NewsFetchPolicy();
+        slow.onLinkKnown(100);
+        NewsFetchPolicy.Plan plan = slow.plan(PAGE_SIZE);
+        assertEquals(5, plan.chunkSize);
+        assertEquals(3, plan.chunks());
+        assertFalse(plan.fields);
+
+        HttpUrl second = HttpUrl.parse(plan.chunkUrl(
+                "https://content.guardianapis.com/search?section=world&show-fields=thumbnail"
+                        + "&page-size=15&show-tags=contributor&page=1&api-key=k", 2));
+        assertEquals("5", second.queryParameter("page-size"));
+        assertEquals("2", second.queryParameter("page"));
+        assertEquals("world", second.queryParameter("section"));
+        assertEquals("k", second.queryParameter("api-key"));
+        assertNull(second.queryParameter("show-fields"));
+        assertNull(second.queryParameter("show-tags"));
+
+        assertEquals(5, NewsFetchPolicy.chunkSize(10));
+        assertEquals(10, NewsFetchPolicy.chunkSize(50));
+        // nothing divides it into chunks worth having
+        assertEquals(7, NewsFetchPolicy.chunkSize(7));
+        assertEquals(5, NewsFetchPolicy.chunkSize(5));
+    }
+
+    @Test
+    public void fastLink_fetchesTheLaterPagesInPairs() {
+        NewsFetchPolicy fast = new NewsFetchPolicy();
+        fast.onLinkKnown(50000);
+        NewsFetchPolicy.Plan plan = fast.plan(PAGE_SIZE);
+        String url = "https://content.guardianapis.com/search?section=world&page-size=15&page=1";
+
+        // page 2 would pair with the first page, which comes from elsewhere
+        assertEquals(url, plan.batchUrl(url, 2));
+        HttpUrl pair = HttpUrl.parse(plan.batchUrl(url, 3));
+        assertEquals("30", pair.queryParameter("page-size"));
+        assertEquals("2", pair.queryParameter("page"));
+        assertEquals(plan.batchUrl(url, 3), plan.batchUrl(url, 4));
+        assertEquals(plan.batchUrl(url, 5), plan.batchUrl(url, 6));
+
+        List<News> batch = new ArrayList<News>();
+        for (int i = 0; i < 2 * PAGE_SIZE; i++) {
+            batch.add(new News("world/" + i, "World news", "Headline", "", 0, "https://g.co/" + i));
+        }
+        assertEquals("world/0", plan.pageOf(batch, 3).get(0).getId());
+        assertEquals("world/15", plan.pageOf(batch, 4).get(0).getId());
+        assertEquals(PAGE_SIZE, plan.pageOf(batch, 4).size());
+        // the end of the results
+        assertEquals(5, plan.pageOf(batch.subList(0, 20), 4).size());
+        assertTrue(plan.pageOf(batch.subList(0, 10), 4).isEmpty());
+    }
+
+    @Test
+    public void slowLink_showsTheFirstChunkAndTopsUpTheRest() throws Exception {
+        NewsFetchPolicy policy = new NewsFetchPolicy();
+        HttpEngine engine = new OkHttpEngine(5000, 5000, policy);
+        mThrottled = true;
+
+        // the policy learns the speed from a request like any other
+        String url = mServer.url("/search?section=world&show-fields=thumbnail&show-tags=contributor"
+                + "&page-size=" + PAGE_SIZE + "&page=1").toString();
+        Utilities.fetchNewsData(engine, url, null, null);
+        assertEquals(NewsFetchPolicy.Speed.SLOW, policy.speed());
+        mRequests.clear();
+
+        NewsStore store = new NewsStore(mContext, "policy-news.db", 5000);
+        File directory = new File(mContext.getCacheDir(), "policy-test");
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            NewsRepository repository = new NewsRepository(mContext, engine, new NewsCache(directory, 1024 * 1024),
+                    store, new NewsMemo(32, 60 * 1000, NewsSync.SYSTEM_CLOCK), policy, executor);
+            final List<Integer> told = new ArrayList<Integer>();
+            final boolean[] done = new boolean[1];
+            repository.load(new NewsRepository.Query(Collections.singletonList(url),
+                    Collections.singletonList("world"), null, PAGE_SIZE), new NewsRepository.Callback() {
+                @Override
+                public void onNews(List<News> news, boolean last) {
+                    told.add(news == null ? -1 : news.size());
+                    done[0] = last;
+                }
+
+                @Override
+                public void onFailed(NewsFetchException.Reason reason) {
+                }
+            });
+            long deadline = System.currentTimeMillis() + 10000;
+            while (!done[0] && System.currentTimeMillis() < deadline) {
+                shadowOf(Looper.getMainLooper()).idle();
+                Thread.sleep(10);
+            }
+
+            // three chunks of five without the thumbnails and tags, shown as they arrive
+            assertEquals(Arrays.asList(5, 10, 15), told);
+            assertEquals(3, mRequests.size());
+            for (int i = 0; i < 3; i++) {
+                HttpUrl request = mRequests.get(i);
+                assertEquals("5", request.queryParameter("page-size"));
+                assertEquals(String.valueOf(i + 1), request.queryParameter("page"));
+                assertNull(request.queryParameter("show-tags"));
+                assertNull(request.queryParameter("show-fields"));
+            }
+            // the cut down copies do not replace complete stored ones
+            assertEquals(0, store.count());
+        } finally {
+            executor.shutdownNow();
+            store.close();
+        }
+    }
+
+    @Test
+    public void chunkThatFails_failsTheLoadWithTheRowsThatArrived() throws Exception {
+        NewsFetchPolicy policy = new NewsFetchPolicy();
+        policy.onLinkKnown(100);
+        mFailingPage = 2;
+        String url = mServer.url("/search?section=world&page-size=" + PAGE_SIZE + "&page=1").toString();
+
+        NewsStore store = new NewsStore(mContext, "policy-news.db", 5000);
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            NewsRepository repository = new NewsRepository(mContext, new OkHttpEngine(5000, 5000, null),
+                    new NewsCache(new File(mContext.getCacheDir(), "policy-test"), 1024 * 1024),
+                    store, new NewsMemo(32, 60 * 1000, NewsSync.SYSTEM_CLOCK), policy, executor);
+            final List<Integer> told = new ArrayList<Integer>();
+            final List<NewsFetchException.Reason> failures = new ArrayList<NewsFetchException.Reason>();
+            final boolean[] done = new boolean[1];
+            repository.load(new NewsRepository.Query(Collections.singletonList(url),
+                    Collections.singletonList("world"), null, PAGE_SIZE), new NewsRepository.Callback() {
+                @Override
+                public void onNews(List<News> news, boolean last) {
+                    told.add(news == null ? -1 : news.size());
+                    done[0] = last;
+                }
+
+                @Override
+                public void onFailed(NewsFetchException.Reason reason) {
+                    failures.add(reason);
+                }
+            });
+            long deadline = System.currentTimeMillis() + 10000;
+            while (!done[0] && System.currentTimeMillis() < deadline) {
+                shadowOf(Looper.getMainLooper()).idle();
+                Thread.sleep(10);
+            }
+
+            // the first chunk is shown, and the short page is not passed off as the whole
+            assertEquals(Arrays.asList(5, 5), told);
+            assertEquals(Collections.singletonList(NewsFetchException.Reason.SERVER), failures);
+            assertEquals(2, mRequests.size());
+        } finally {
+            executor.shutdownNow();
+            store.close();
+        }
+    }
+
+    private static HttpEngine.Metrics metrics(long ttfbMillis, long totalMillis, long bytes) {
+        return new HttpEngine.Metrics("u", "h2", true, -1, -1, ttfbMillis, totalMillis, bytes, false);
+    }
+
+    // a page of results, with a contributor tag as bulky as the Guardian's when asked for
+    private static String search(HttpUrl url) {
+        int pageSize = Integer.parseInt(url.queryParameter("page-size"));
+        int page = Integer.parseInt(url.queryParameter("page"));
+        boolean tags = url.queryParameter("show-tags") != null;
+        boolean fields = url.queryParameter("show-fields") != null;
+        StringBuilder results = new StringBuilder();
+        for (int i = (page - 1) * pageSize; i < page * pageSize; i++) {
+            if (results.length() > 0) {
+                results.append(',');
+            }
+            results.append("{\"id\":\"world/").append(i)
+                    .append("\",\"sectionId\":\"world\",\"sectionName\":\"World news\"")
+                    .append(",\"webPublicationDate\":\"2022-11-01T00:00:00Z\",\"webTitle\":\"Headline ")
+                    .append(i).append("\",\"webUrl\":\"https://www.theguardian.com/world/").append(i).append('"');
+            if (fields) {
+                results.append(",\"fields\":{\"thumbnail\":\"https://media.guim.co.uk/").append(i)
+                        .append("/500.jpg\"}");
+            }
+            if (tags) {
+                results.append(",\"tags\":[{\"id\":\"profile/jane-doe\",\"type\":\"contributor\"")
+                        .append(",\"webTitle\":\"Jane Doe\",\"bio\":\"");
+                for (int j = 0; j < 20; j++) {
+                    results.append("Jane Doe writes about world affairs. ");
+                }
+                results.append("\"}]");
+            }
+            results.append('}');
+        }
+        return "{\"response\":{\"status\":\"ok\",\"results\":[" + results + "]}}";
+    }
+}
@@ -0,0 +1,169 @@
+package com.example.theguardiannews;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import java.lang.reflect.Array;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Compares the heap held by 10k articles as {@link News} holds them, one item an article with
+ * pooled names and an epoch time, against the item a contributor with its own copies of the
+ * names and a formatted date that {@link News} used to be.
+ */
+public class NewsFootprintTest {
+
+    private static final int ARTICLES = 10000;
+    private static final long NOV_1_2022 = 1667260800000L;
+    private static final String[] SECTIONS = {"World news", "Football", "Technology", "Environment",
+            "Politics", "Business", "Culture", "Opinion"};
+
+    // object sizes as a 64-bit VM with compressed references lays them out
+    private static final int HEADER = 12;
+    private static final int ARRAY_HEADER = 16;
+    private static final int REFERENCE = 4;
+    private static final int ALIGNMENT = 8;
+
+    @Test
+    public void newsPoolsNames_andHoldsLessThanAContributorPerItem() {
+        List<Object> legacy = new ArrayList<Object>();
+        List<Object> compact = new ArrayList<Object>();
+        for (int i = 0; i < ARTICLES; i++) {
+            // every field the parser hands over is a string of its own, as read from the response
+            String id = "world/2022/nov/01/article-" + i;
+            String title = "Headline number " + i + " about something that happened today";
+            String link = "https://www.theguardian.com/" + id;
+            String thumbnail = "https://media.guim.co.uk/" + i + "/0_0_3000_1800/500.jpg";
+            long publishedAt = NOV_1_2022 + i * 60 * 1000L;
+            List<String> authors = new ArrayList<String>();
+            for (int j = 0; j <= i % 3; j++) {
+                authors.add(copy("Contributor " + (i * 7 + j) % 200));
+            }
+
+            String date = NewsTimeFormatter.getDefault().format(publishedAt);
+            for (String author : authors) {
+                legacy.add(new LegacyNews(id, copy("world"), copy(SECTIONS[i % SECTIONS.length]), title,
+                        author, publishedAt, date, link, thumbnail));
+            }
+            compact.add(new News(id, copy("world"), copy(SECTIONS[i % SECTIONS.length]), title, authors,
+                    publishedAt, link, thumbnail));
+        }
+
+        long legacyBytes = deepSize(legacy.toArray());
+        long compactBytes = deepSize(compact.toArray());
+        assertEquals(ARTICLES, compact.size());
+        News first = (News) compact.get(0);
+        News ninth = (News) compact.get(8);
+        assertSame(first.getSection(), ninth.getSection());
+        assertTrue(compact.size() + " articles take " + compactBytes / 1024 + " KiB, " + legacy.size()
+                + " contributor items " + legacyBytes / 1024 + " KiB", compactBytes < legacyBytes * 7 / 10);
+    }
+
+    // a string equal to the given one but not the same instance, as a parser would produce
+    private static String copy(String s) {
+        return new String(s.toCharArray());
+    }
+
+    /** Bytes reachable from the given object, counting every object once. */
+    static long deepSize(Object root) {
+        Map<Object, Boolean> seen = new IdentityHashMap<Object, Boolean>();
+        List<Object> pending = new ArrayList<Object>();
+        pending.add(root);
+        long size = 0;
+        while (!pending.isEmpty()) {
+            Object object = pending.remove(pending.size() - 1);
+            if (object == null || seen.put(object, Boolean.TRUE) != null) {
+                continue;
+            }
+            Class<?> type = object.getClass();
+            if (object instanceof String) {
+                // the string and its compact Latin-1 bytes
+                size += align(HEADER + 12) + align(ARRAY_HEADER + ((String) object).length());
+            } else if (type.isArray()) {
+                int length = Array.getLength(object);
+                Class<?> component = type.getComponentType();
+                size += align(ARRAY_HEADER + (long) length * sizeOf(component));
+                if (!component.isPrimitive()) {
+                    for (int i = 0; i < length; i++) {
+                        pending.add(Array.get(object, i));
+                    }
+                }
+            } else {
+                long shallow = HEADER;
+                for (Class<?> c = type; c != null; c = c.getSuperclass()) {
+                    for (Field field : c.getDeclaredFields()) {
+                        if (Modifier.isStatic(field.getModifiers())) {
+                            continue;
+                        }
+                        shallow += sizeOf(field.getType());
+                        if (!field.getType().isPrimitive()) {
+                            field.setAccessible(true);
+                            try {
+                                pending.add(field.get(object));
+                            } catch (IllegalAccessException e) {
+                                throw new AssertionError(e);
+                            }
+                        }
+                    }
+                }
+                size += align(shallow);
+            }
+        }
+        return size;
+    }
+
+    private static int sizeOf(Class<?> type) {
+        if (type == long.class || type == double.class) {
+            return 8;
+        } else if (type == int.class || type == float.class) {
+            return 4;
+        } else if (type == short.class || type == char.class) {
+            return 2;
+        } else if (type == byte.class || type == boolean.class) {
+            return 1;
+        }
+        return REFERENCE;
+    }
+
+    private static long align(long size) {
+        return (size + ALIGNMENT - 1) / ALIGNMENT * ALIGNMENT;
+    }
+
+    // the fields News had when it was an item a contributor with its date formatted up front
+    private static class LegacyNews {
+        final String mId;
+        final String mSectionId;
+        final String mSection;
+        final String mTitle;
+        final String mAuthor;
+        final String mDate;
+        final long mPublishedAt;
+        final String mLink;
+        final String mThumbnail;
+        int mColour;
+        String mSectionLabel;
+        String mAuthorText;
+
+        LegacyNews(String id, String sectionId, String section, String title, String author,
+                   long publishedAt, String date, String link, String thumbnail) {
+            mId = id;
+            mSectionId = sectionId;
+            mSection = section;
+            mTitle = title;
+            mAuthor = author;
+            mPublishedAt = publishedAt;
+            mDate = date;
+            mLink = link;
+            mThumbnail = thumbnail;
+            mSectionLabel = section;
+        }
+    }
+}
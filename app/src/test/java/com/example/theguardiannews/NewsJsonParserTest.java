@@ -0,0 +1,98 @@
+package com.example.theguardiannews;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.Charset;
+import java.util.List;
+
+/**
+ * Checks the streaming {@link NewsJsonParser} against the DOM based
+ * {@link Utilities#extractNews(String)} on a recorded response.
+ */
+@RunWith(RobolectricTestRunner.class)
+public class NewsJsonParserTest {
+
+    private static final int ROUNDS = 200;
+
+    @Test
+    public void streamingParser_matchesExtractNews() throws IOException {
+        byte[] body = Fixtures.bytes(Fixtures.SEARCH_RESPONSE);
+
+        List<News> expected = Utilities.extractNews(new String(body, Charset.forName("UTF-8")));
+        List<News> actual = NewsJsonParser.parse(new ByteArrayInputStream(body));
+
+        assertTrue(expected.size() > 0);
+        assertEquals(expected.size(), actual.size());
+        assertEquals("world", actual.get(0).getSectionId());
+        assertEquals("https://media.guim.co.uk/0000a1b2c3/0_0_3000_1800/500.jpg", actual.get(0).getThumbnail());
+        for (int i = 0; i < expected.size(); i++) {
+            assertEquals(expected.get(i).getTitle(), actual.get(i).getTitle());
+            assertEquals(expected.get(i).getSectionId(), actual.get(i).getSectionId());
+            assertEquals(expected.get(i).getSection(), actual.get(i).getSection());
+            assertEquals(expected.get(i).getAuthors(), actual.get(i).getAuthors());
+            assertEquals(expected.get(i).getPublishedAt(), actual.get(i).getPublishedAt());
+            assertEquals(expected.get(i).getLink(), actual.get(i).getLink());
+            assertEquals(expected.get(i).getThumbnail(), actual.get(i).getThumbnail());
+        }
+    }
+
+    @Test
+    public void streamingParser_keepsTheCountsOfResultsAndPages() throws IOException {
+        NewsResults results = NewsJsonParser.parse(new ByteArrayInputStream(Fixtures.bytes(Fixtures.SEARCH_RESPONSE)));
+
+        assertEquals(24510, results.total);
+        assertEquals(12, results.pageSize);
+        assertEquals(1, results.currentPage);
+        assertEquals(2043, results.pages);
+        // in pages of another size, from the total
+        assertEquals(2451, results.pageCount(10));
+        assertEquals(2043, NewsResults.copyOf(results).pages);
+    }
+
+    @Test
+    public void streamingParser_allocatesLessThanExtractNews() throws IOException {
+        byte[] body = Fixtures.bytes(Fixtures.SEARCH_RESPONSE);
+
+        // warm up both paths so class loading is not counted
+        domParse(new ByteArrayInputStream(body));
+        NewsJsonParser.parse(new ByteArrayInputStream(body));
+
+        long start = Fixtures.allocatedBytes();
+        for (int i = 0; i < ROUNDS; i++) {
+            domParse(new ByteArrayInputStream(body));
+        }
+        long domBytes = Fixtures.allocatedBytes() - start;
+
+        start = Fixtures.allocatedBytes();
+        for (int i = 0; i < ROUNDS; i++) {
+            NewsJsonParser.parse(new ByteArrayInputStream(body));
+        }
+        long streamingBytes = Fixtures.allocatedBytes() - start;
+
+        assertTrue("NewsJsonParser " + streamingBytes / ROUNDS + " bytes/parse, extractNews "
+                + domBytes / ROUNDS, streamingBytes < domBytes);
+    }
+
+    // the previous fetch path: read the whole body into a String, then build the JSON tree
+    private static List<News> domParse(InputStream inputStream) throws IOException {
+        StringBuilder output = new StringBuilder();
+        BufferedReader reader = new BufferedReader(
+                new InputStreamReader(inputStream, Charset.forName("UTF-8")));
+        String line = reader.readLine();
+        while (line != null) {
+            output.append(line);
+            line = reader.readLine();
+        }
+        return Utilities.extractNews(output.toString());
+    }
+}
@@ -0,0 +1,194 @@
+package com.example.theguardiannews;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A load test of the client stack, {@link ResilientHttpEngine} over {@link OkHttpEngine} with
+ * the streaming parse of {@link Utilities#fetchNewsOrThrow}, against a
+ * {@link GuardianReplayServer}. Each scenario replays the same mix of the queries the app
+ * makes from several threads at once, over a clean link, a distant one, a capped one and a
+ * faulty one, and checks how many were answered and how fast. The message of each check
+ * tells the requests that failed, those the server saw including the retries and second
+ * attempts, the throughput and the latency percentiles.
+ * It is in the {@link LoadTests} category, so it only runs with {@code -PloadTests}. The
+ * requests of each scenario can be set with {@code -PloadTestRequests=N}.
+ */
+@Category(LoadTests.class)
+@RunWith(RobolectricTestRunner.class)
+public class NewsLoadTest {
+
+    private static final int DEFAULT_REQUESTS = 40;
+    private static final int THREADS = 8;
+    private static final int ARTICLES_PER_SECTION = 200;
+    private static final int PAGE_SIZE = 15;
+    // words in the titles of the recorded articles
+    private static final String[] SEARCHES = {"climate", "title race", "floods", "strike", "budget", "soup"};
+
+    private GuardianReplayServer mServer;
+    private ExecutorService mExecutor;
+    private int mRequests;
+
+    @Before
+    public void setUp() throws IOException {
+        mServer = new GuardianReplayServer(ARTICLES_PER_SECTION, 42);
+        mServer.start();
+        mExecutor = Executors.newCachedThreadPool();
+        mRequests = Integer.getInteger("loadTestRequests", DEFAULT_REQUESTS);
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        mExecutor.shutdownNow();
+        mServer.shutdown();
+    }
+
+    @Test
+    public void cleanLink_answersEveryRequest() throws InterruptedException {
+        Result result = run("clean");
+
+        assertEquals(result.summary, mRequests, result.ok);
+        assertTrue(result.summary, result.latencies.percentile(0.99) < 2000);
+    }
+
+    @Test
+    public void distantServer_addsItsLatencyToEveryRequest() throws InterruptedException {
+        mServer.setLatency(150);
+
+        Result result = run("latency");
+
+        assertEquals(result.summary, mRequests, result.ok);
+        assertTrue(result.summary, result.latencies.percentile(0.5) >= 150);
+    }
+
+    @Test
+    public void cappedLink_stillAnswersEveryRequest() throws InterruptedException {
+        // about 512 kbit/s for each connection, a page of results taking a third of a second
+        mServer.setLatency(50);
+        mServer.setBandwidth(64 * 1024);
+
+        Result result = run("bandwidth");
+
+        assertEquals(result.summary, mRequests, result.ok);
+    }
+
+    @Test
+    public void faultyServer_isMostlyHiddenByTheRetries() throws InterruptedException {
+        mServer.setErrorRates(0.05, 0.10);
+        mServer.setTruncateRate(0.02);
+
+        Result result = run("faults");
+
+        // the errors are retried; a body cut short is only found out once it is parsed, so
+        // those requests fail. About one in fifty does, so three in four is far from chance.
+        assertTrue(result.summary, result.ok >= mRequests * 0.75);
+        assertTrue(result.summary, mServer.requestCount() > mRequests);
+    }
+
+    // replays the query mix from THREADS threads and sums up what it measured
+    private Result run(String scenario) throws InterruptedException {
+        final HttpEngine engine = new ResilientHttpEngine(new OkHttpEngine(10000, 10000, null),
+                ResilientHttpEngine.DEFAULT_MAX_ATTEMPTS, ResilientHttpEngine.DEFAULT_BACKOFF_MILLIS,
+                ResilientHttpEngine.DEFAULT_HEDGE_AFTER_MILLIS, ResilientHttpEngine.DEFAULT_FAILURE_THRESHOLD,
+                ResilientHttpEngine.DEFAULT_OPEN_MILLIS, mExecutor, NewsSync.SYSTEM_CLOCK);
+        final List<String> urls = queryMix(mServer.baseUrl(), mRequests, new Random(7));
+        final Histogram latencies = new Histogram(mRequests);
+        final AtomicInteger next = new AtomicInteger();
+        final AtomicInteger ok = new AtomicInteger();
+        final CountDownLatch done = new CountDownLatch(THREADS);
+
+        long start = System.nanoTime();
+        for (int t = 0; t < THREADS; t++) {
+            mExecutor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        for (int i = next.getAndIncrement(); i < urls.size(); i = next.getAndIncrement()) {
+                            long requestStart = System.nanoTime();
+                            try {
+                                Utilities.fetchNewsOrThrow(engine, urls.get(i), null, null, null, null);
+                                ok.incrementAndGet();
+                            } catch (NewsFetchException e) {
+                                // counted as the requests that were not ok
+                            }
+                            latencies.record(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - requestStart));
+                        }
+                    } finally {
+                        done.countDown();
+                    }
+                }
+            });
+        }
+        assertTrue(scenario + " did not finish", done.await(5, TimeUnit.MINUTES));
+        long elapsedMillis = Math.max(1, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+
+        Histogram.Snapshot snapshot = latencies.snapshot();
+        String summary = String.format(Locale.US,
+                "%s: %d requests  %d ok  %d failed  %d served  %.1f req/s  p50 %dms  p95 %dms  p99 %dms  max %dms",
+                scenario, urls.size(), ok.get(), urls.size() - ok.get(), mServer.requestCount(),
+                urls.size() * 1000.0 / elapsedMillis, snapshot.percentile(0.5),
+                snapshot.percentile(0.95), snapshot.percentile(0.99), snapshot.max());
+        return new Result(ok.get(), snapshot, summary);
+    }
+
+    /**
+     * The queries the app makes, in about the shares it makes them: mostly the first page of
+     * a section, then later pages, every section merged newest first, searches, and refreshes
+     * asking for what was published since the last load.
+     */
+    static List<String> queryMix(String baseUrl, int count, Random random) {
+        List<String> urls = new ArrayList<String>(count);
+        String fields = "&show-fields=thumbnail&page-size=" + PAGE_SIZE + "&show-tags=contributor";
+        for (int i = 0; i < count; i++) {
+            String section = GuardianReplayServer.SECTIONS.get(random.nextInt(GuardianReplayServer.SECTIONS.size()));
+            int kind = random.nextInt(100);
+            String query;
+            if (kind < 45) {
+                query = "section=" + section + fields + "&page=1";
+            } else if (kind < 65) {
+                query = "section=" + section + fields + "&page=" + (2 + random.nextInt(4));
+            } else if (kind < 80) {
+                query = "order-by=newest" + fields + "&page=1";
+            } else if (kind < 90) {
+                String words = SEARCHES[random.nextInt(SEARCHES.length)].replace(" ", "%20AND%20");
+                query = "q=" + words + fields + "&page=1";
+            } else {
+                query = "section=" + section + "&from-date=2022-10-31T" + String.format(Locale.US, "%02d", 12 + random.nextInt(12))
+                        + ":00:00Z&order-by=newest" + fields + "&page=1";
+            }
+            urls.add(baseUrl + query + "&api-key=test");
+        }
+        return urls;
+    }
+
+    private static final class Result {
+        final int ok;
+        final Histogram.Snapshot latencies;
+        // what was measured, in one line
+        final String summary;
+
+        Result(int ok, Histogram.Snapshot latencies, String summary) {
+            this.ok = ok;
+            this.latencies = latencies;
+            this.summary = summary;
+        }
+    }
+}
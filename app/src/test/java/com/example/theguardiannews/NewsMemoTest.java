@@ -0,0 +1,204 @@
+package com.example.theguardiannews;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Tests for {@link NewsMemo}: the memo's hits, ageing and eviction, and the sharing of
+ * fetches running at the same time.
+ */
+public class NewsMemoTest {
+
+    private static final String URL = "https://content.guardianapis.com/search?section=world&q=brexit%20AND%20vote&page=1";
+    private static final long TTL = 60 * 1000;
+
+    private FakeClock mClock;
+    private NewsMemo mMemo;
+    private CountingFetcher mFetcher;
+
+    @Before
+    public void setUp() {
+        mClock = new FakeClock();
+        mClock.mNow = 1667260800000L;
+        mMemo = new NewsMemo(2, TTL, mClock);
+        mFetcher = new CountingFetcher();
+    }
+
+    @Test
+    public void fetch_recentResults_areHits() {
+        mMemo.fetch(URL, null, mFetcher);
+        List<News> again = mMemo.fetch(URL.replace("section=world&q=brexit%20AND%20vote",
+                "q=Brexit%20AND%20Vote&section=world"), null, mFetcher);
+
+        assertEquals(1, mFetcher.mCalls.get());
+        assertEquals(1, again.size());
+        assertEquals(1, mMemo.misses());
+        assertEquals(1, mMemo.hits());
+    }
+
+    @Test
+    public void fetch_oldResults_areFetchedAgain() {
+        mMemo.fetch(URL, null, mFetcher);
+        mClock.mNow += TTL;
+        mMemo.fetch(URL, null, mFetcher);
+
+        assertEquals(2, mFetcher.mCalls.get());
+        assertEquals(0, mMemo.hits());
+        assertEquals(2, mMemo.misses());
+    }
+
+    @Test
+    public void fetch_beyondTheSize_evictsTheLeastRecentlyUsed() {
+        mMemo.fetch(url(1), null, mFetcher);
+        mMemo.fetch(url(2), null, mFetcher);
+        mMemo.fetch(url(1), null, mFetcher);
+        mMemo.fetch(url(3), null, mFetcher);
+        mMemo.fetch(url(1), null, mFetcher);
+        mMemo.fetch(url(2), null, mFetcher);
+
+        // page 2 was the least recently used when page 3 came in
+        assertEquals(4, mFetcher.mCalls.get());
+        assertEquals(2, mMemo.hits());
+    }
+
+    @Test
+    public void fetch_failures_areNotKept() {
+        mFetcher.mFail = true;
+        assertNull(mMemo.fetch(URL, null, mFetcher));
+        mFetcher.mFail = false;
+        mMemo.fetch(URL, null, mFetcher);
+
+        assertEquals(2, mFetcher.mCalls.get());
+        assertEquals(0, mMemo.hits());
+    }
+
+    @Test
+    public void fetch_atTheSameTime_sharesOneCall() throws Exception {
+        mFetcher.mRelease = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(3);
+        try {
+            Future<List<News>> first = executor.submit(fetch(URL));
+            waitForCalls(1);
+            Future<List<News>> second = executor.submit(fetch(URL));
+            Future<List<News>> third = executor.submit(fetch(URL));
+            waitForCoalesced(2);
+            mFetcher.mRelease.countDown();
+
+            assertEquals(1, first.get(5, TimeUnit.SECONDS).size());
+            assertEquals(1, second.get(5, TimeUnit.SECONDS).size());
+            assertEquals(1, third.get(5, TimeUnit.SECONDS).size());
+        } finally {
+            executor.shutdownNow();
+        }
+        assertEquals(1, mFetcher.mCalls.get());
+        assertEquals(1, mMemo.misses());
+        assertEquals(2, mMemo.coalesced());
+    }
+
+    @Test
+    public void fetch_abandonedByEveryCaller_isCancelled() throws Exception {
+        mFetcher.mRelease = new CountDownLatch(1);
+        final CancellationToken leader = new CancellationToken();
+        final CancellationToken follower = new CancellationToken();
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            Future<List<News>> first = executor.submit(fetch(URL, leader));
+            waitForCalls(1);
+            Future<List<News>> second = executor.submit(fetch(URL, follower));
+            waitForCoalesced(1);
+
+            // the fetch goes on for the caller still waiting
+            leader.cancel();
+            assertTrue(!mFetcher.mToken.isCancelled());
+            follower.cancel();
+            assertTrue(mFetcher.mToken.isCancelled());
+            assertNull(second.get(5, TimeUnit.SECONDS));
+            mFetcher.mRelease.countDown();
+            first.get(5, TimeUnit.SECONDS);
+        } finally {
+            executor.shutdownNow();
+        }
+        // a cancelled fetch is not kept
+        mFetcher.mRelease = null;
+        mMemo.fetch(URL, null, mFetcher);
+        assertEquals(2, mFetcher.mCalls.get());
+    }
+
+    private Callable<List<News>> fetch(String url) {
+        return fetch(url, null);
+    }
+
+    private Callable<List<News>> fetch(final String url, final CancellationToken token) {
+        return new Callable<List<News>>() {
+            @Override
+            public List<News> call() {
+                return mMemo.fetch(url, token, mFetcher);
+            }
+        };
+    }
+
+    private void waitForCalls(int calls) throws InterruptedException {
+        while (mFetcher.mCalls.get() < calls) {
+            Thread.sleep(5);
+        }
+    }
+
+    private void waitForCoalesced(int coalesced) throws InterruptedException {
+        while (mMemo.coalesced() < coalesced) {
+            Thread.sleep(5);
+        }
+    }
+
+    private static String url(int page) {
+        return "https://content.guardianapis.com/search?section=world&page=" + page;
+    }
+
+    // answers one article, after the test releases it if it holds a latch
+    private static class CountingFetcher implements NewsMemo.Fetcher {
+        final AtomicInteger mCalls = new AtomicInteger();
+        volatile CountDownLatch mRelease;
+        volatile boolean mFail;
+        volatile CancellationToken mToken;
+
+        @Override
+        public List<News> fetch(String url, CancellationToken token) {
+            mToken = token;
+            mCalls.incrementAndGet();
+            if (mRelease != null) {
+                try {
+                    mRelease.await(5, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    return null;
+                }
+            }
+            if (mFail) {
+                return null;
+            }
+            return Collections.singletonList(new News("world/1", "World news", "Title", "Author",
+                    1667260800000L, url));
+        }
+    }
+
+    private static class FakeClock implements NewsSync.Clock {
+        long mNow;
+
+        @Override
+        public long currentTimeMillis() {
+            return mNow;
+        }
+    }
+}
@@ -0,0 +1,60 @@
+package com.example.theguardiannews;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+/**
+ * Tests for {@link NewsMetrics}: nothing is kept while it is off, and request metrics go to
+ * the histograms they belong to.
+ */
+public class NewsMetricsTest {
+
+    @Test
+    public void disabled_recordsNothing() {
+        NewsMetrics metrics = new NewsMetrics(64);
+
+        long start = metrics.start();
+        metrics.stop(NewsMetrics.Stat.BIND, start);
+        metrics.record(NewsMetrics.Stat.ARTICLES, 15);
+        metrics.increment(NewsMetrics.Counter.CACHE_MISS);
+        metrics.onRequestFinished(new HttpEngine.Metrics("https://example.com", "h2", false, 5, 20, 80,
+                120, 4096, false));
+
+        assertEquals(0, start);
+        for (NewsMetrics.Stat stat : NewsMetrics.Stat.values()) {
+            assertEquals(0, metrics.snapshot(stat).count);
+        }
+        assertEquals(0, metrics.count(NewsMetrics.Counter.CACHE_MISS));
+    }
+
+    @Test
+    public void enabled_recordsTimingsSizesAndCounts() {
+        NewsMetrics metrics = new NewsMetrics(64);
+        metrics.setEnabled(true);
+
+        metrics.stop(NewsMetrics.Stat.PARSE, metrics.start());
+        metrics.record(NewsMetrics.Stat.ARTICLES, 15);
+        metrics.increment(NewsMetrics.Counter.CACHE_FRESH);
+        metrics.onRequestFinished(new HttpEngine.Metrics("https://example.com", "h2", false, 5, 20, 80,
+                120, 4096, false));
+        // a reused connection has no connect time
+        metrics.onRequestFinished(new HttpEngine.Metrics("https://example.com", "h2", true, -1, -1, 30,
+                60, 1024, false));
+        metrics.onRequestFinished(new HttpEngine.Metrics("https://example.com", "h2", true, -1, -1, -1,
+                10, 0, true));
+
+        assertEquals(1, metrics.snapshot(NewsMetrics.Stat.PARSE).count);
+        assertEquals(15, metrics.snapshot(NewsMetrics.Stat.ARTICLES).max());
+        assertEquals(1, metrics.snapshot(NewsMetrics.Stat.CONNECT).count);
+        assertEquals(20000, metrics.snapshot(NewsMetrics.Stat.CONNECT).max());
+        assertEquals(30000, metrics.snapshot(NewsMetrics.Stat.TTFB).percentile(0.5));
+        assertEquals(4096, metrics.snapshot(NewsMetrics.Stat.DOWNLOAD_BYTES).max());
+        assertEquals(1, metrics.count(NewsMetrics.Counter.CACHE_FRESH));
+        assertEquals(1, metrics.count(NewsMetrics.Counter.REQUEST_FAILED));
+
+        metrics.reset();
+        assertEquals(0, metrics.snapshot(NewsMetrics.Stat.TTFB).count);
+        assertEquals(0, metrics.count(NewsMetrics.Counter.CACHE_FRESH));
+    }
+}
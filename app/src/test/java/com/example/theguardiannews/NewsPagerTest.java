@@ -0,0 +1,237 @@
+package com.example.theguardiannews;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+
+import okhttp3.HttpUrl;
+import okhttp3.mockwebserver.Dispatcher;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+
+/**
+ * Tests for {@link NewsPager}, with the later pages fetched from a stub server that answers
+ * the way the Guardian does, a 400 for a page past the last, and fetches run inline so every
+ * step is deterministic.
+ */
+@RunWith(RobolectricTestRunner.class)
+public class NewsPagerTest {
+
+    private static final int PAGE_SIZE = 10;
+    private static final String QUERY = "https://content.guardianapis.com/search?section=world";
+
+    private static final Executor DIRECT = new Executor() {
+        @Override
+        public void execute(Runnable command) {
+            command.run();
+        }
+    };
+
+    // page number -> how many times it was fetched
+    private final Map<Integer, Integer> mFetches = new ConcurrentHashMap<Integer, Integer>();
+    private List<News> mWindow = new ArrayList<News>();
+    private volatile int mLastPage = 1000;
+    // whether the answers tell the total and the number of pages
+    private volatile boolean mCounted = true;
+    // how many articles of the previous page reappear at the start of the next one
+    private volatile int mOverlap;
+
+    private final MockWebServer mServer = new MockWebServer();
+    private final HttpEngine mEngine = new OkHttpEngine(5000, 5000, null);
+    private NewsPager mPager;
+
+    @Before
+    public void setUp() throws IOException {
+        mServer.setDispatcher(new Dispatcher() {
+            @Override
+            public MockResponse dispatch(RecordedRequest request) {
+                return answer(request.getRequestUrl());
+            }
+        });
+        mServer.start();
+        mPager = newPager(3);
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        mServer.shutdown();
+    }
+
+    @Test
+    public void firstPage_prefetchesSecondWithoutShowingIt() {
+        mPager.deliverFirstPage(QUERY, page(1));
+
+        assertEquals(1, fetches(2));
+        assertEquals(PAGE_SIZE, mWindow.size());
+    }
+
+    @Test
+    public void scrollingNearTheEnd_appendsPrefetchedPageAndPrefetchesNext() {
+        mPager.deliverFirstPage(QUERY, page(1));
+
+        // rows 0..4 visible, more than the prefetch distance from the end
+        mPager.onScrolled(0, 5, mWindow.size());
+        assertEquals(PAGE_SIZE, mWindow.size());
+
+        // rows 3..7 visible, within 2 rows of the end
+        mPager.onScrolled(3, 5, mWindow.size());
+        assertEquals(2 * PAGE_SIZE, mWindow.size());
+        assertEquals(1, fetches(2));
+        assertEquals(1, fetches(3));
+    }
+
+    @Test
+    public void articlesRepeatedAcrossPages_areShownOnce() {
+        mOverlap = 3;
+        mPager.deliverFirstPage(QUERY, page(1));
+        mPager.onScrolled(5, 5, mWindow.size());
+
+        assertEquals(2 * PAGE_SIZE - 3, mWindow.size());
+        List<String> ids = new ArrayList<String>();
+        for (News news : mWindow) {
+            assertFalse(ids.contains(news.getId()));
+            ids.add(news.getId());
+        }
+    }
+
+    @Test
+    public void window_releasesFarPagesAndRefetchesThemOnTheWayBack() {
+        mPager.deliverFirstPage(QUERY, page(1));
+        for (int i = 0; i < 3; i++) {
+            mPager.onScrolled(mWindow.size() - 5, 5, mWindow.size());
+        }
+
+        // pages 2..4 shown, page 1 released
+        assertEquals(3 * PAGE_SIZE, mWindow.size());
+        assertEquals(2, mPager.firstPage());
+        assertEquals("p2-0", mWindow.get(0).getId());
+
+        mPager.onScrolled(0, 5, mWindow.size());
+
+        assertEquals(1, mPager.firstPage());
+        assertEquals(1, fetches(1));
+        assertEquals(3 * PAGE_SIZE, mWindow.size());
+    }
+
+    @Test
+    public void pageCount_endsPagingWithoutAskingPastIt() {
+        mLastPage = 2;
+        mPager.deliverFirstPage(QUERY, page(1));
+        mPager.onScrolled(5, 5, mWindow.size());
+        mPager.onScrolled(15, 5, mWindow.size());
+
+        assertEquals(2 * PAGE_SIZE, mWindow.size());
+        assertEquals(0, fetches(3));
+    }
+
+    @Test
+    public void badRequestPastTheLastPage_endsPaging() {
+        // nothing tells where the results end but the 400 for the page after them
+        mCounted = false;
+        mLastPage = 2;
+        mPager.deliverFirstPage(QUERY, page(1));
+        mPager.onScrolled(5, 5, mWindow.size());
+        mPager.onScrolled(15, 5, mWindow.size());
+        mPager.onScrolled(15, 5, mWindow.size());
+
+        assertEquals(2 * PAGE_SIZE, mWindow.size());
+        assertEquals(1, fetches(3));
+        assertEquals(0, fetches(4));
+    }
+
+    @Test
+    public void newQuery_startsAgainButFreshFirstPageKeepsLaterPages() {
+        mPager.deliverFirstPage(QUERY, page(1));
+        mPager.onScrolled(5, 5, mWindow.size());
+        assertEquals(2 * PAGE_SIZE, mWindow.size());
+
+        // same query delivered again, as the loader does after revalidating
+        mPager.deliverFirstPage(QUERY, page(1));
+        assertEquals(2 * PAGE_SIZE, mWindow.size());
+
+        mPager.deliverFirstPage(QUERY + "&q=other", page(1));
+        assertEquals(PAGE_SIZE, mWindow.size());
+        assertTrue(fetches(2) >= 2);
+    }
+
+    private NewsPager newPager(int maxPages) {
+        return new NewsPager(new NewsPager.PageSource() {
+            @Override
+            public NewsResults fetchPage(int page) {
+                String url = mServer.url("/search?section=world&page-size=" + PAGE_SIZE + "&page=" + page).toString();
+                List<News> news = Utilities.fetchNewsData(mEngine, url, null, null, null, null);
+                return news == null ? null : NewsResults.page(news, news, page, PAGE_SIZE);
+            }
+        }, DIRECT, DIRECT, new NewsPager.Listener() {
+            @Override
+            public void onWindowChanged(List<News> window) {
+                mWindow = window;
+            }
+        }, 2, maxPages);
+    }
+
+    // the Guardian's answer for a page of the stub's results
+    private MockResponse answer(HttpUrl url) {
+        int page = Integer.parseInt(url.queryParameter("page"));
+        Integer count = mFetches.get(page);
+        mFetches.put(page, count == null ? 1 : count + 1);
+        if (page > mLastPage) {
+            return new MockResponse().setResponseCode(400).setBody("{\"response\":{\"status\":\"error\","
+                    + "\"message\":\"requested page is beyond the number of available pages\"}}");
+        }
+        StringBuilder body = new StringBuilder("{\"response\":{\"status\":\"ok\",");
+        if (mCounted) {
+            body.append("\"total\":").append(mLastPage * PAGE_SIZE).append(",\"pageSize\":").append(PAGE_SIZE)
+                    .append(",\"currentPage\":").append(page).append(",\"pages\":").append(mLastPage).append(',');
+        }
+        body.append("\"results\":[");
+        List<News> news = page(page);
+        for (int i = 0; i < news.size(); i++) {
+            News item = news.get(i);
+            body.append(i == 0 ? "" : ",").append("{\"id\":\"").append(item.getId())
+                    .append("\",\"sectionId\":\"world\",\"sectionName\":\"World news\",\"webTitle\":\"")
+                    .append(item.getTitle()).append("\",\"webPublicationDate\":\"2022-11-01T23:00:00Z\",\"webUrl\":\"")
+                    .append(item.getLink()).append("\"}");
+        }
+        body.append("]}}");
+        return new MockResponse().setHeader("Content-Type", "application/json").setBody(body.toString());
+    }
+
+    private int fetches(int page) {
+        Integer count = mFetches.get(page);
+        return count == null ? 0 : count;
+    }
+
+    private List<News> page(int page) {
+        List<News> news = new ArrayList<News>();
+        if (page > 1) {
+            for (int i = PAGE_SIZE - mOverlap; i < PAGE_SIZE; i++) {
+                news.add(article(page - 1, i));
+            }
+        }
+        while (news.size() < PAGE_SIZE) {
+            news.add(article(page, news.size() - (page > 1 ? mOverlap : 0)));
+        }
+        return news;
+    }
+
+    private static News article(int page, int index) {
+        String id = "p" + page + "-" + index;
+        return new News(id, "World news", "Title " + id, "Jane Doe", 1667343600000L,
+                "https://www.theguardian.com/" + id);
+    }
+}
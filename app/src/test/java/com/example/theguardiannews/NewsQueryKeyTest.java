@@ -0,0 +1,36 @@
+package com.example.theguardiannews;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+
+import org.junit.Test;
+
+/**
+ * Tests for {@link NewsQueryKey}: URLs asking for the same results share a key, and URLs
+ * asking for different ones do not.
+ */
+public class NewsQueryKeyTest {
+
+    private static final String URL = "https://content.guardianapis.com/search?section=world&q=brexit%20AND%20vote&page=1";
+
+    @Test
+    public void equalQueries_shareAKey() {
+        assertEquals(NewsQueryKey.of(URL), NewsQueryKey.of(
+                "HTTPS://Content.GuardianAPIs.com/search?page=1&Q=Brexit++AND+%20Vote%20&section=world"));
+        // the API key does not change the results
+        assertEquals(NewsQueryKey.of(URL), NewsQueryKey.of(URL + "&api-key=a"));
+        assertEquals(NewsQueryKey.of(URL + "&Api-Key=a"), NewsQueryKey.of(URL + "&api-key=b"));
+    }
+
+    @Test
+    public void differentQueries_doNotShareAKey() {
+        // the operators are kept apart from words
+        assertNotEquals(NewsQueryKey.of(URL), NewsQueryKey.of(
+                "https://content.guardianapis.com/search?section=world&q=brexit%20and%20vote&page=1"));
+        assertNotEquals(NewsQueryKey.of(URL), NewsQueryKey.of(
+                "https://content.guardianapis.com/search?section=world&q=brexit%20AND%20vote&page=2"));
+        // values other than the words keep their case
+        assertNotEquals(NewsQueryKey.of("https://content.guardianapis.com/search?tag=a/B"),
+                NewsQueryKey.of("https://content.guardianapis.com/search?tag=a/b"));
+    }
+}
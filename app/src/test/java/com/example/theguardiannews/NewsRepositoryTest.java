@@ -0,0 +1,275 @@
+package com.example.theguardiannews;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.robolectric.Shadows.shadowOf;
+
+import android.app.Application;
+import android.os.Looper;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import okhttp3.mockwebserver.Dispatcher;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+
+/**
+ * Tests for {@link NewsRepository} and {@link NewsViewModel} against a stub server that
+ * takes a while to answer: superseded loads are cancelled, equal loads are shared and a
+ * failed load tells why.
+ */
+@RunWith(RobolectricTestRunner.class)
+public class NewsRepositoryTest {
+
+    // long enough for the test to change its mind while every request is still on its way
+    private static final long SERVER_DELAY_MILLIS = 500;
+
+    private Application mContext;
+    private MockWebServer mServer;
+    private NewsStore mStore;
+    private File mDirectory;
+    private ExecutorService mExecutor;
+    // the requests that got their whole answer, and those abandoned or failed
+    private final List<String> mCompleted = Collections.synchronizedList(new ArrayList<String>());
+    private final List<String> mFailed = Collections.synchronizedList(new ArrayList<String>());
+    private NewsRepository mRepository;
+    // whether the server answers every request with an error
+    private volatile boolean mFailing;
+    // section -> counted down when the server is first asked for it
+    private final ConcurrentMap<String, CountDownLatch> mArrivals = new ConcurrentHashMap<String, CountDownLatch>();
+
+    @Before
+    public void setUp() throws IOException {
+        mContext = RuntimeEnvironment.getApplication();
+        final String body = Fixtures.string(Fixtures.SEARCH_RESPONSE);
+        mServer = new MockWebServer();
+        mServer.setDispatcher(new Dispatcher() {
+            @Override
+            public MockResponse dispatch(RecordedRequest request) {
+                arrival(request.getRequestUrl().queryParameter("section")).countDown();
+                if (mFailing) {
+                    return new MockResponse().setResponseCode(503);
+                }
+                return new MockResponse().setBody(body)
+                        .setHeadersDelay(SERVER_DELAY_MILLIS, TimeUnit.MILLISECONDS);
+            }
+        });
+        mServer.start();
+        mStore = new NewsStore(mContext, "repository-news.db", 5000);
+        mDirectory = new File(mContext.getCacheDir(), "repository-test");
+        mExecutor = Executors.newFixedThreadPool(2);
+        HttpEngine engine = new OkHttpEngine(5000, 5000, new HttpEngine.MetricsListener() {
+            @Override
+            public void onRequestFinished(HttpEngine.Metrics metrics) {
+                (metrics.failed ? mFailed : mCompleted).add(metrics.url);
+            }
+        });
+        mRepository = new NewsRepository(mContext, engine, new NewsCache(mDirectory, 1024 * 1024),
+                mStore, new NewsMemo(32, 60 * 1000, NewsSync.SYSTEM_CLOCK), mExecutor);
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        mExecutor.shutdownNow();
+        mStore.close();
+        mServer.shutdown();
+        File[] files = mDirectory.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+    }
+
+    @Test
+    public void rapidQueryChanges_completeOnlyTheLastRequest() throws Exception {
+        NewsViewModel viewModel = new NewsViewModel(mContext, mRepository);
+
+        // the user ticking through sections faster than the server answers
+        viewModel.setQuery(query("world"));
+        awaitArrival("world");
+        viewModel.setQuery(query("technology"));
+        awaitArrival("technology");
+        viewModel.setQuery(query("football"));
+        // the same settings again, as when the activity is recreated
+        viewModel.setQuery(query("football"));
+        waitUntilLoaded(viewModel);
+        drain();
+
+        assertEquals(1, mCompleted.size());
+        assertTrue(mCompleted.get(0).contains("section=football"));
+        // the superseded requests reached the server and were cut off
+        assertEquals(1, requests(mFailed, "world"));
+        assertEquals(1, requests(mFailed, "technology"));
+        assertEquals(2, mFailed.size());
+        assertNotNull(viewModel.getNews().getValue());
+        assertTrue(viewModel.getNews().getValue().size() > 0);
+        // only the last load got as far as recording its section
+        assertTrue(mStore.syncedAt("football") > 0);
+        assertEquals(0, mStore.syncedAt("world"));
+        assertEquals(0, mStore.syncedAt("technology"));
+    }
+
+    @Test
+    public void clearedViewModel_cancelsItsLoad() throws Exception {
+        NewsViewModel viewModel = new NewsViewModel(mContext, mRepository);
+
+        viewModel.setQuery(query("world"));
+        awaitArrival("world");
+        viewModel.onCleared();
+        drain();
+        shadowOf(Looper.getMainLooper()).idle();
+
+        assertEquals(0, mCompleted.size());
+        assertEquals(1, requests(mFailed, "world"));
+        assertEquals(0, mStore.syncedAt("world"));
+    }
+
+    @Test
+    public void equalQueriesAtOnce_shareOneRequest() throws Exception {
+        RecordingCallback first = new RecordingCallback();
+        RecordingCallback second = new RecordingCallback();
+
+        mRepository.load(query("world"), first);
+        mRepository.load(query("world"), second);
+        long deadline = System.currentTimeMillis() + 5000;
+        while ((!first.mDone || !second.mDone) && System.currentTimeMillis() < deadline) {
+            shadowOf(Looper.getMainLooper()).idle();
+            Thread.sleep(10);
+        }
+        drain();
+
+        assertEquals(1, mServer.getRequestCount());
+        assertEquals(1, mCompleted.size());
+        assertTrue(first.mDone && second.mDone);
+        assertNotNull(first.mNews);
+        assertEquals(first.mNews, second.mNews);
+        assertNull(first.mFailure);
+    }
+
+    @Test
+    public void failedLoad_tellsWhyUntilTheNextQueryLoads() throws Exception {
+        NewsViewModel viewModel = new NewsViewModel(mContext, mRepository);
+        mFailing = true;
+
+        viewModel.setQuery(query("world"));
+        waitUntilLoaded(viewModel);
+        assertEquals(NewsFetchException.Reason.SERVER, viewModel.getError().getValue());
+        assertNull(viewModel.getNews().getValue());
+        // told in passing once, not again by a recreated activity
+        assertTrue(viewModel.tellError());
+        assertFalse(viewModel.tellError());
+
+        mFailing = false;
+        viewModel.setQuery(query("technology"));
+        assertNull(viewModel.getError().getValue());
+        waitUntilLoaded(viewModel);
+        assertNull(viewModel.getError().getValue());
+        assertNotNull(viewModel.getNews().getValue());
+    }
+
+    @Test
+    public void equalQueryAfterAFailure_isLoadedAgain() throws Exception {
+        NewsViewModel viewModel = new NewsViewModel(mContext, mRepository);
+        mFailing = true;
+        viewModel.setQuery(query("world"));
+        waitUntilLoaded(viewModel);
+        assertNotNull(viewModel.getError().getValue());
+
+        // the same settings again, as when the activity is recreated
+        mFailing = false;
+        viewModel.setQuery(query("world"));
+        assertTrue(viewModel.isLoading().getValue());
+        waitUntilLoaded(viewModel);
+        assertNull(viewModel.getError().getValue());
+        assertNotNull(viewModel.getNews().getValue());
+
+        // once it loaded, the same query is left as it is
+        viewModel.setQuery(query("world"));
+        assertFalse(viewModel.isLoading().getValue());
+    }
+
+    private NewsRepository.Query query(String section) {
+        return new NewsRepository.Query(
+                Collections.singletonList(mServer.url("/search?section=" + section).toString()),
+                Collections.singletonList(section), null, 10);
+    }
+
+    private CountDownLatch arrival(String section) {
+        CountDownLatch latch = new CountDownLatch(1);
+        CountDownLatch earlier = mArrivals.putIfAbsent(String.valueOf(section), latch);
+        return earlier != null ? earlier : latch;
+    }
+
+    // waits until the server is asked for the section, so its request is on its way
+    private void awaitArrival(String section) throws InterruptedException {
+        assertTrue(section + " never asked for", arrival(section).await(5, TimeUnit.SECONDS));
+    }
+
+    // the recorded requests for the section
+    private static int requests(List<String> urls, String section) {
+        int count = 0;
+        synchronized (urls) {
+            for (String url : urls) {
+                if (url.contains("section=" + section)) {
+                    count++;
+                }
+            }
+        }
+        return count;
+    }
+
+    // runs what the loads hand to the main thread until the view model's query is loaded
+    private static void waitUntilLoaded(NewsViewModel viewModel) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (viewModel.isLoading().getValue() && System.currentTimeMillis() < deadline) {
+            shadowOf(Looper.getMainLooper()).idle();
+            Thread.sleep(10);
+        }
+        assertTrue(!viewModel.isLoading().getValue());
+    }
+
+    // waits for the abandoned loads to wind down, so every request has been counted
+    private void drain() throws InterruptedException {
+        mExecutor.shutdown();
+        assertTrue(mExecutor.awaitTermination(5, TimeUnit.SECONDS));
+    }
+
+    private static class RecordingCallback implements NewsRepository.Callback {
+        List<News> mNews;
+        boolean mDone;
+        NewsFetchException.Reason mFailure;
+
+        @Override
+        public void onNews(List<News> news, boolean done) {
+            mNews = news;
+            mDone = done;
+        }
+
+        @Override
+        public void onFailed(NewsFetchException.Reason reason) {
+            mFailure = reason;
+        }
+    }
+}
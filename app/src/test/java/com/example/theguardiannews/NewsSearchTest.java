@@ -0,0 +1,222 @@
+package com.example.theguardiannews;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeTrue;
+import static org.robolectric.Shadows.shadowOf;
+
+import android.app.Application;
+import android.os.Handler;
+import android.os.Looper;
+import android.preference.PreferenceManager;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+
+import java.io.File;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Tests for {@link NewsSearch}: the text typed is split and formatted in one pass, the server
+ * is only asked once the typing pauses, and words it was asked for before are answered from
+ * the cache. The debounce window is timed on the paused main looper.
+ */
+@RunWith(RobolectricTestRunner.class)
+public class NewsSearchTest {
+
+    private static final long DEBOUNCE_MILLIS = 300;
+    // a fast typist
+    private static final long KEYSTROKE_MILLIS = 80;
+
+    private final List<String> mSearched = new ArrayList<String>();
+    private final List<String> mLocal = new ArrayList<String>();
+    private List<News> mShown;
+    // what the box holds, typed a character at a time
+    private String mTyped = "";
+    private NewsSearch mSearch;
+
+    @Before
+    public void setUp() {
+        mSearch = new NewsSearch(new Handler(Looper.getMainLooper()), DEBOUNCE_MILLIS, 2,
+                new NewsSearch.Listener() {
+                    @Override
+                    public void onSearch(String words) {
+                        mSearched.add(words);
+                    }
+
+                    @Override
+                    public void onLocalResults(String words, List<News> news, boolean exact) {
+                        mLocal.add(words + (exact ? "" : "~"));
+                        mShown = news;
+                    }
+                });
+    }
+
+    @Test
+    public void tokenizer_splitsAtRunsOfWhitespace() {
+        assertEquals(Arrays.asList("climate", "talks"), NewsSearch.tokenize("  climate \t talks "));
+        assertTrue(NewsSearch.tokenize(" \n ").isEmpty());
+        assertEquals("climate talks", NewsSearch.key(" Climate   TALKS"));
+        assertEquals("climate AND talks", MainActivity.searchStringFormatter(" climate  talks ", "AND"));
+        assertEquals("", MainActivity.searchStringFormatter("   ", "AND"));
+    }
+
+    @Test
+    public void typing_asksTheServerOnceItPauses() {
+        type("climate ta");
+        assertTrue(mSearched.isEmpty());
+
+        idleFor(DEBOUNCE_MILLIS);
+        assertEquals(Collections.singletonList("climate ta"), mSearched);
+        assertEquals(1, mSearch.searches());
+
+        // submitting the same words does not ask again
+        mSearch.onSubmit("climate ta ");
+        idleFor(DEBOUNCE_MILLIS);
+        assertEquals(1, mSearch.searches());
+    }
+
+    @Test
+    public void backspacing_isAnsweredFromTheCache() {
+        type("climate");
+        idleFor(DEBOUNCE_MILLIS);
+        mSearch.put("climate", Arrays.asList(news("1", "Leaders meet for climate talks"),
+                news("2", "Climate targets missed"), news("3", "Climate tax debated")));
+
+        // the cached results filtered by their titles are shown while more is typed
+        type(" ta");
+        assertEquals("climate ta~", mLocal.get(mLocal.size() - 1));
+        assertEquals(3, mShown.size());
+        type("l");
+        assertEquals(1, mShown.size());
+        assertEquals("1", mShown.get(0).getId());
+        idleFor(DEBOUNCE_MILLIS);
+        assertEquals(Arrays.asList("climate", "climate tal"), mSearched);
+
+        // back to words already searched for: shown at once, the server is not asked
+        mSearch.onTextChanged("climate ta");
+        mSearch.onTextChanged("climate t");
+        mSearch.onTextChanged("climate ");
+        assertEquals("climate", mLocal.get(mLocal.size() - 1));
+        idleFor(DEBOUNCE_MILLIS);
+        assertEquals(2, mSearch.searches());
+
+        // clearing the box stops searching, once
+        mSearch.onTextChanged("");
+        mSearch.onTextChanged(" ");
+        assertEquals(Arrays.asList("climate", "climate tal", null), mSearched);
+    }
+
+    @Test
+    public void cache_evictsTheLeastRecentlyUsed() {
+        mSearch.put("a", Collections.<News>emptyList());
+        mSearch.put("b", Collections.<News>emptyList());
+        // using "a" keeps it over "b"
+        mSearch.onTextChanged("a");
+        mSearch.put("c", Collections.<News>emptyList());
+
+        mSearch.onTextChanged("b");
+        idleFor(DEBOUNCE_MILLIS);
+        assertEquals(Collections.singletonList("b"), mSearched);
+        mSearch.onTextChanged("a");
+        idleFor(DEBOUNCE_MILLIS);
+        assertEquals(1, mSearch.searches());
+    }
+
+    @Test
+    public void viewModel_searchesTheServerOnlyWhenTypingPauses() throws Exception {
+        // only debug builds read the server from the preferences
+        assumeTrue(BuildConfig.DEBUG);
+        Application context = RuntimeEnvironment.getApplication();
+        GuardianReplayServer server = new GuardianReplayServer(30, 1);
+        server.start();
+        PreferenceManager.getDefaultSharedPreferences(context).edit()
+                .putString(context.getString(R.string.base_url_key), server.baseUrl())
+                .putStringSet(context.getString(R.string.selected_sections_key), Collections.singleton("world"))
+                .commit();
+        NewsStore store = new NewsStore(context, "search-news.db", 5000);
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            NewsRepository repository = new NewsRepository(context, new OkHttpEngine(5000, 5000, null),
+                    new NewsCache(new File(context.getCacheDir(), "search-test"), 1024 * 1024), store,
+                    new NewsMemo(32, 60 * 1000, NewsSync.SYSTEM_CLOCK), new NewsFetchPolicy(), executor);
+            NewsViewModel viewModel = new NewsViewModel(context, repository);
+
+            typeInto(viewModel, "climate");
+            idleFor(DEBOUNCE_MILLIS);
+            waitUntilLoaded(viewModel);
+            int requests = server.requestCount();
+            assertTrue("requests " + requests, requests >= 1 && requests <= 2);
+            assertNotNull(viewModel.getNews().getValue());
+            assertFalse(viewModel.getNews().getValue().isEmpty());
+
+            typeInto(viewModel, " talks");
+            idleFor(DEBOUNCE_MILLIS);
+            waitUntilLoaded(viewModel);
+            assertEquals(2, viewModel.searches());
+            assertEquals("climate talks", viewModel.getQuery().words);
+            requests = server.requestCount();
+
+            // backspacing to the first words shows their results without a request
+            for (int i = " talks".length() - 1; i >= 0; i--) {
+                viewModel.search("climate" + " talks".substring(0, i));
+                idleFor(KEYSTROKE_MILLIS);
+            }
+            idleFor(DEBOUNCE_MILLIS);
+            assertEquals(2, viewModel.searches());
+            assertEquals(requests, server.requestCount());
+            assertEquals("climate", viewModel.getQuery().words);
+            assertFalse(viewModel.isLoading().getValue());
+        } finally {
+            executor.shutdownNow();
+            store.close();
+            server.shutdown();
+        }
+    }
+
+    // types the text after what was typed before
+    private void type(String text) {
+        for (int i = 0; i < text.length(); i++) {
+            mTyped += text.charAt(i);
+            mSearch.onTextChanged(mTyped);
+            idleFor(KEYSTROKE_MILLIS);
+        }
+    }
+
+    private static void typeInto(NewsViewModel viewModel, String text) {
+        String typed = viewModel.getSearchText() == null ? "" : viewModel.getSearchText();
+        for (int i = 0; i < text.length(); i++) {
+            typed += text.charAt(i);
+            viewModel.search(typed);
+            idleFor(KEYSTROKE_MILLIS);
+        }
+    }
+
+    private static News news(String id, String title) {
+        return new News(id, "World news", title, "Jane Doe", 0, "https://www.theguardian.com/" + id);
+    }
+
+    private static void idleFor(long millis) {
+        shadowOf(Looper.getMainLooper()).idleFor(Duration.ofMillis(millis));
+    }
+
+    private static void waitUntilLoaded(NewsViewModel viewModel) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 10000;
+        while (Boolean.TRUE.equals(viewModel.isLoading().getValue()) && System.currentTimeMillis() < deadline) {
+            shadowOf(Looper.getMainLooper()).idle();
+            Thread.sleep(10);
+        }
+        assertFalse(viewModel.isLoading().getValue());
+    }
+}
@@ -0,0 +1,293 @@
+package com.example.theguardiannews;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import android.content.Context;
+import android.database.sqlite.SQLiteDatabase;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+
+/**
+ * Tests for {@link NewsStore}: section queries, replacing and trimming rows, the batched write
+ * made by {@link Utilities#fetchNewsData(String, NewsCache, NewsStore)}, full-text search, and
+ * insert and search speed.
+ */
+@RunWith(RobolectricTestRunner.class)
+public class NewsStoreTest {
+
+    private static final int ARTICLES = 10000;
+    private static final int UNBATCHED_ARTICLES = 1000;
+    private static final int SEARCH_CORPUS = 50000;
+    private static final int SEARCH_ROUNDS = 200;
+    private static final long NOV_1_2022 = 1667260800000L;
+    // typed, as search() takes one section or several
+    private static final String EVERY_SECTION = null;
+
+    private Context mContext;
+    private NewsStore mStore;
+
+    @Before
+    public void setUp() {
+        mContext = RuntimeEnvironment.getApplication();
+        mStore = new NewsStore(mContext, "test-news.db", 50000);
+    }
+
+    @After
+    public void tearDown() {
+        mStore.close();
+    }
+
+    @Test
+    public void query_filtersBySectionNewestFirst() {
+        List<News> news = new ArrayList<News>();
+        news.add(news("world/1", "world", 1, "Jane Doe"));
+        news.add(news("football/2", "football", 2, "John Roe"));
+        news.add(news("world/3", "world", 3, "Jane Doe", "John Roe"));
+        news.add(news("world/4", "world", 4));
+        mStore.putAll(news);
+
+        List<News> world = mStore.query("world", 10);
+        assertEquals(3, world.size());
+        // an article nobody is credited for is kept
+        assertEquals("world/4", world.get(0).getId());
+        assertEquals(0, world.get(0).getAuthorCount());
+        // contributors of one article keep their order
+        assertEquals("world/3", world.get(1).getId());
+        assertEquals(Arrays.asList("Jane Doe", "John Roe"), world.get(1).getAuthors());
+        assertEquals("world/1", world.get(2).getId());
+        assertEquals("World news", world.get(2).getSection());
+        assertEquals(NOV_1_2022 + 3600 * 1000L, world.get(2).getPublishedAt());
+
+        // the limit counts articles, not contributors
+        assertEquals(4, mStore.query(null, 10).size());
+        assertEquals(2, mStore.query(null, 2).size());
+        assertEquals("world/3", mStore.query(null, 2).get(1).getId());
+        assertEquals(0, mStore.query("technology", 10).size());
+    }
+
+    @Test
+    public void putAll_replacesTheSameArticle() {
+        mStore.putAll(Collections.singletonList(news("world/1", "world", 1, "Jane Doe", "John Roe")));
+        News updated = new News("world/1", "world", "World news", "Updated title",
+                Collections.singletonList("Jane Doe"), NOV_1_2022, "https://www.theguardian.com/world/1", "");
+        mStore.putAll(Collections.singletonList(updated));
+
+        assertEquals(1, mStore.count());
+        News stored = mStore.query("world", 10).get(0);
+        assertEquals("Updated title", stored.getTitle());
+        // a contributor no longer credited is gone, from the search index too
+        assertEquals(Collections.singletonList("Jane Doe"), stored.getAuthors());
+        assertEquals(0, mStore.search("roe", EVERY_SECTION, 10).size());
+    }
+
+    @Test
+    public void putAll_deletesTheOldestOverBudget() {
+        NewsStore small = new NewsStore(mContext, "small-news.db", 3);
+        try {
+            List<News> news = new ArrayList<News>();
+            for (int i = 0; i < 5; i++) {
+                news.add(news("world/" + i, "world", i, "Jane Doe", "John Roe"));
+            }
+            small.putAll(news);
+
+            List<News> kept = small.query(null, 10);
+            assertEquals(3, kept.size());
+            assertEquals("world/4", kept.get(0).getId());
+            assertEquals("world/2", kept.get(2).getId());
+        } finally {
+            small.close();
+        }
+    }
+
+    @Test
+    public void fetchNewsData_writesTheResultsToTheStore() throws IOException {
+        MockWebServer server = new MockWebServer();
+        server.enqueue(new MockResponse().setBody(Fixtures.string(Fixtures.SEARCH_RESPONSE)));
+        server.start();
+        try {
+            List<News> fetched = Utilities.fetchNewsData(server.url("/search?page=1").toString(), null, mStore);
+
+            assertEquals(fetched.size(), mStore.count());
+            List<News> world = mStore.query("world", 100);
+            assertTrue(world.size() > 0);
+            for (News item : world) {
+                assertEquals("World news", item.getSection());
+            }
+        } finally {
+            server.shutdown();
+        }
+    }
+
+    @Test
+    public void search_matchesPrefixesAndRanksTitlesFirst() {
+        List<News> news = new ArrayList<News>();
+        news.add(article("world/1", "world", "World news", "Talks stall as the deadline nears", "Clive Jones", 1));
+        news.add(article("environment/2", "environment", "Environment", "Climate talks resume", "Jane Doe", 2));
+        news.add(article("environment/3", "environment", "Environment", "Rivers run dry", "Jane Doe", 3));
+        mStore.putAll(news);
+
+        // "cli" is a prefix of a title word in one article and an author in another
+        List<News> found = mStore.search("cli", EVERY_SECTION, 10);
+        assertEquals(2, found.size());
+        assertEquals("environment/2", found.get(0).getId());
+        assertEquals("world/1", found.get(1).getId());
+
+        // every word has to match, in any of the indexed columns
+        assertEquals(1, mStore.search("talks jane", EVERY_SECTION, 10).size());
+        assertEquals(2, mStore.search("environment", EVERY_SECTION, 10).size());
+        assertEquals(1, mStore.search("cli", "world", 10).size());
+        assertEquals(0, mStore.search("floods", EVERY_SECTION, 10).size());
+    }
+
+    @Test
+    public void search_followsReplacedAndDeletedRows() {
+        NewsStore small = new NewsStore(mContext, "replaced-news.db", 1);
+        try {
+            small.putAll(Collections.singletonList(article("world/1", "world", "World news",
+                    "Old headline", "Jane Doe", 1)));
+            small.putAll(Collections.singletonList(article("world/1", "world", "World news",
+                    "New headline", "Jane Doe", 1)));
+            assertEquals(0, small.search("old", EVERY_SECTION, 10).size());
+            assertEquals(1, small.search("new", EVERY_SECTION, 10).size());
+
+            // trimmed rows leave the index too
+            small.putAll(Collections.singletonList(article("world/2", "world", "World news",
+                    "Later story", "Jane Doe", 2)));
+            assertEquals(0, small.search("headline", EVERY_SECTION, 10).size());
+            assertEquals(1, small.search("story", EVERY_SECTION, 10).size());
+        } finally {
+            small.close();
+        }
+    }
+
+    @Test
+    public void matchExpression_keepsWordsAndDropsSyntax() {
+        assertEquals("climate* talks*", NewsStore.matchExpression("  Climate   talks "));
+        assertEquals("a* not* b* c*", NewsStore.matchExpression("\"a\" NOT b* (c)"));
+        assertEquals("", NewsStore.matchExpression(" -* "));
+    }
+
+    @Test
+    public void search_answersInMillisecondsOver50kArticles() {
+        NewsStore large = new NewsStore(mContext, "large-news.db", SEARCH_CORPUS);
+        try {
+            String[] words = {"climate", "election", "budget", "transfer", "storm", "market",
+                    "vaccine", "strike", "summit", "energy", "housing", "court", "record", "river",
+                    "league", "startup", "privacy", "drought", "border", "museum"};
+            String[] authors = {"Jane Doe", "John Roe", "Ada Byron", "Clive Jones", "Mina Patel"};
+            String[] sections = {"world", "football", "technology", "environment"};
+            Random random = new Random(3);
+            List<News> corpus = new ArrayList<News>(SEARCH_CORPUS);
+            for (int i = 0; i < SEARCH_CORPUS; i++) {
+                String title = words[random.nextInt(words.length)] + " " + words[random.nextInt(words.length)]
+                        + " " + words[random.nextInt(words.length)] + " " + i;
+                corpus.add(article("corpus/" + i, sections[i % sections.length], sections[i % sections.length],
+                        title, authors[random.nextInt(authors.length)], i));
+            }
+            large.putAll(corpus);
+
+            String[] queries = {"cli", "climate", "storm court", "jane", "ele bud", "techn", "priv", "m"};
+            for (String query : queries) {
+                large.search(query, EVERY_SECTION, 15);
+            }
+            long[] nanos = new long[SEARCH_ROUNDS];
+            for (int i = 0; i < SEARCH_ROUNDS; i++) {
+                long start = System.nanoTime();
+                List<News> found = large.search(queries[i % queries.length], EVERY_SECTION, 15);
+                nanos[i] = System.nanoTime() - start;
+                assertTrue(found.size() > 0);
+            }
+            Arrays.sort(nanos);
+
+            long median = nanos[SEARCH_ROUNDS / 2] / 1000;
+            assertTrue("p50 " + median + " us, p95 " + nanos[SEARCH_ROUNDS * 95 / 100] / 1000 + " us",
+                    median < 100000);
+        } finally {
+            large.close();
+        }
+    }
+
+    @Test
+    public void putAll_inserts10kArticlesInOneTransaction() {
+        List<News> batch = new ArrayList<News>(ARTICLES);
+        String[] sections = {"world", "football", "technology", "environment"};
+        for (int i = 0; i < ARTICLES; i++) {
+            batch.add(news("batch/" + i, sections[i % sections.length], i, "Author " + i % 97));
+        }
+
+        long start = System.nanoTime();
+        mStore.putAll(batch);
+        long batchedNanos = System.nanoTime() - start;
+
+        // the same rows written the way a per-article insert would, one transaction each
+        NewsStore unbatched = new NewsStore(mContext, "unbatched-news.db", 50000);
+        long unbatchedNanos;
+        try {
+            start = System.nanoTime();
+            for (int i = 0; i < UNBATCHED_ARTICLES; i++) {
+                unbatched.putAll(Collections.singletonList(batch.get(i)));
+            }
+            unbatchedNanos = System.nanoTime() - start;
+        } finally {
+            unbatched.close();
+        }
+
+        assertEquals(ARTICLES, mStore.count());
+        assertEquals(ARTICLES / sections.length, mStore.query("football", ARTICLES).size());
+        assertTrue("one transaction " + batchedNanos / ARTICLES / 1000 + " us/article, one each "
+                        + unbatchedNanos / UNBATCHED_ARTICLES / 1000 + " us/article",
+                batchedNanos / ARTICLES < unbatchedNanos / UNBATCHED_ARTICLES);
+    }
+
+    @Test
+    public void databaseOfAnUnknownVersion_isStartedAfresh() {
+        // left by a newer build, with a schema this one knows nothing of
+        File path = mContext.getDatabasePath("newer-news.db");
+        path.getParentFile().mkdirs();
+        SQLiteDatabase newer = SQLiteDatabase.openOrCreateDatabase(path, null);
+        newer.execSQL("CREATE TABLE articles (uuid BLOB PRIMARY KEY)");
+        newer.execSQL("CREATE TABLE syncs (feed TEXT)");
+        newer.setVersion(99);
+        newer.close();
+
+        NewsStore store = new NewsStore(mContext, "newer-news.db", 100);
+        try {
+            store.putAll(Collections.singletonList(news("world/1", "world", 1, "Jane Doe")));
+            store.markSynced(Collections.singletonList("world"), NOV_1_2022);
+            assertEquals(1, store.count());
+            assertEquals(NOV_1_2022, store.syncedAt("world"));
+            assertEquals("world/1", store.search("jane", EVERY_SECTION, 10).get(0).getId());
+        } finally {
+            store.close();
+        }
+    }
+
+    private static News article(String id, String sectionId, String section, String title,
+                                String author, int hoursAfter) {
+        return new News(id, sectionId, section, title, Collections.singletonList(author),
+                NOV_1_2022 + hoursAfter * 3600 * 1000L, "https://www.theguardian.com/" + id, "");
+    }
+
+    private static News news(String id, String sectionId, int hoursAfter, String... authors) {
+        String section = sectionId.equals("world") ? "World news" : sectionId;
+        return new News(id, sectionId, section, "Title " + id, Arrays.asList(authors),
+                NOV_1_2022 + hoursAfter * 3600 * 1000L, "https://www.theguardian.com/" + id, "");
+    }
+}
@@ -0,0 +1,185 @@
+package com.example.theguardiannews;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import android.content.Context;
+
+import androidx.work.WorkInfo;
+import androidx.work.WorkManager;
+import androidx.work.testing.WorkManagerTestInitHelper;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+
+/**
+ * Tests for {@link NewsSync} against a stub server with a clock the test moves, and for the
+ * scheduling done by {@link NewsSyncWorker}.
+ */
+@RunWith(RobolectricTestRunner.class)
+public class NewsSyncTest {
+
+    private static final long HOUR = 60 * 60 * 1000L;
+
+    private Context mContext;
+    private MockWebServer mServer;
+    private NewsStore mStore;
+    private FakeClock mClock;
+    private NewsSync mSync;
+
+    @Before
+    public void setUp() throws IOException {
+        mContext = RuntimeEnvironment.getApplication();
+        mServer = new MockWebServer();
+        mServer.start();
+        mStore = new NewsStore(mContext, "sync-news.db", 5000);
+        mClock = new FakeClock();
+        mClock.mNow = 1667260800000L;
+        mSync = new NewsSync(mContext, mStore, mServer.url("/search").toString(), mClock);
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        mStore.close();
+        mServer.shutdown();
+    }
+
+    @Test
+    public void sync_coalescesSectionsIntoOneRequest() throws Exception {
+        mServer.enqueue(new MockResponse().setBody(Fixtures.string(Fixtures.SEARCH_RESPONSE)));
+
+        assertTrue(mSync.sync(Arrays.asList("world", "technology", "football"), 15));
+
+        assertEquals(1, mServer.getRequestCount());
+        RecordedRequest request = mServer.takeRequest();
+        assertEquals("football|technology|world", request.getRequestUrl().queryParameter("section"));
+        assertEquals("45", request.getRequestUrl().queryParameter("page-size"));
+        assertTrue(mStore.count() > 0);
+        assertEquals(mClock.mNow, mStore.syncedAt("world"));
+        assertEquals(mClock.mNow, mStore.syncedAt("football"));
+        assertEquals(0, mStore.syncedAt("all"));
+    }
+
+    @Test
+    public void sync_fetchesAllSectionsWithoutAFilter() throws Exception {
+        mServer.enqueue(new MockResponse().setBody(Fixtures.string(Fixtures.SEARCH_RESPONSE)));
+
+        assertTrue(mSync.sync(Arrays.asList("all"), 150));
+
+        RecordedRequest request = mServer.takeRequest();
+        assertNull(request.getRequestUrl().queryParameter("section"));
+        assertEquals("150", request.getRequestUrl().queryParameter("page-size"));
+        assertEquals(mClock.mNow, mStore.syncedAt("all"));
+    }
+
+    @Test
+    public void sync_capsThePageSize() throws Exception {
+        mServer.enqueue(new MockResponse().setBody(Fixtures.string(Fixtures.SEARCH_RESPONSE)));
+
+        mSync.sync(Arrays.asList("world", "football", "technology", "environment"), 60);
+
+        assertEquals("200", mServer.takeRequest().getRequestUrl().queryParameter("page-size"));
+    }
+
+    @Test
+    public void sync_asksForACrowdedOutSectionOnItsOwn() throws Exception {
+        // the newest ten articles of the two sections are all from the world
+        mServer.enqueue(new MockResponse().setBody(body("world", 10)));
+        mServer.enqueue(new MockResponse().setBody(body("football", 3)));
+
+        assertTrue(mSync.sync(Arrays.asList("world", "football"), 5));
+
+        assertEquals(2, mServer.getRequestCount());
+        assertEquals("football|world", mServer.takeRequest().getRequestUrl().queryParameter("section"));
+        RecordedRequest own = mServer.takeRequest();
+        assertEquals("football", own.getRequestUrl().queryParameter("section"));
+        assertEquals("5", own.getRequestUrl().queryParameter("page-size"));
+        assertEquals(mClock.mNow, mStore.syncedAt("world"));
+        // three are all there are
+        assertEquals(mClock.mNow, mStore.syncedAt("football"));
+    }
+
+    @Test
+    public void sync_sectionShortOfArticlesIsNotRecorded() {
+        mServer.enqueue(new MockResponse().setBody(body("world", 10)));
+        mServer.enqueue(new MockResponse().setResponseCode(503));
+
+        assertFalse(mSync.sync(Arrays.asList("world", "football"), 5));
+
+        assertTrue(mSync.isFresh("world", HOUR));
+        assertFalse(mSync.isFresh("football", HOUR));
+    }
+
+    @Test
+    public void sync_failureIsNotRecorded() {
+        mServer.enqueue(new MockResponse().setResponseCode(503));
+
+        assertFalse(mSync.sync(Arrays.asList("world"), 15));
+        assertEquals(0, mStore.syncedAt("world"));
+        assertFalse(mSync.isFresh("world", HOUR));
+    }
+
+    @Test
+    public void isFresh_followsTheClock() throws IOException {
+        mServer.enqueue(new MockResponse().setBody(Fixtures.string(Fixtures.SEARCH_RESPONSE)));
+        mSync.sync(Arrays.asList("world"), 15);
+
+        mClock.mNow += HOUR - 1;
+        assertTrue(mSync.isFresh("world", HOUR));
+        assertFalse(mSync.isFresh("football", HOUR));
+
+        mClock.mNow += 1;
+        assertFalse(mSync.isFresh("world", HOUR));
+    }
+
+    @Test
+    public void schedule_keepsOnePeriodicSync() throws Exception {
+        WorkManagerTestInitHelper.initializeTestWorkManager(mContext);
+
+        NewsSyncWorker.schedule(mContext);
+        NewsSyncWorker.schedule(mContext);
+
+        List<WorkInfo> work = WorkManager.getInstance(mContext)
+                .getWorkInfosForUniqueWork(NewsSyncWorker.WORK_NAME).get();
+        assertEquals(1, work.size());
+        assertEquals(WorkInfo.State.ENQUEUED, work.get(0).getState());
+    }
+
+    // a Guardian answer of the given number of articles of one section, newest first
+    private static String body(String section, int count) {
+        StringBuilder body = new StringBuilder("{\"response\":{\"status\":\"ok\",\"results\":[");
+        for (int i = 0; i < count; i++) {
+            String id = section + "/2022/nov/01/article-" + i;
+            body.append(i == 0 ? "" : ",").append("{\"id\":\"").append(id)
+                    .append("\",\"sectionId\":\"").append(section).append("\",\"sectionName\":\"")
+                    .append(section).append("\",\"webTitle\":\"Article ").append(i)
+                    .append("\",\"webPublicationDate\":\"2022-11-01T").append(String.format(Locale.ROOT, "%02d", 23 - i))
+                    .append(":00:00Z\",\"webUrl\":\"https://www.theguardian.com/").append(id).append("\"}");
+        }
+        return body.append("]}}").toString();
+    }
+
+    private static class FakeClock implements NewsSync.Clock {
+        long mNow;
+
+        @Override
+        public long currentTimeMillis() {
+            return mNow;
+        }
+    }
+}
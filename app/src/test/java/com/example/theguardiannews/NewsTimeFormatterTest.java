@@ -0,0 +1,164 @@
+package com.example.theguardiannews;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.robolectric.Shadows.shadowOf;
+
+import android.app.Application;
+import android.content.Intent;
+import android.os.Looper;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.Locale;
+import java.util.Random;
+import java.util.TimeZone;
+
+/**
+ * Tests for {@link NewsTimeFormatter}, checked against {@link SimpleDateFormat}, plus a
+ * microbenchmark against the three-SimpleDateFormat conversion it replaces. The relative
+ * texts come from the app's resources.
+ */
+@RunWith(RobolectricTestRunner.class)
+public class NewsTimeFormatterTest {
+
+    private static final long NOV_1_2022_2300_UTC = 1667343600000L;
+    private static final int ROUNDS = 20000;
+
+    @Test
+    public void parse_readsUtcOffsetsAndFractions() {
+        assertEquals(NOV_1_2022_2300_UTC, NewsTimeFormatter.parse("2022-11-01T23:00:00Z"));
+        assertEquals(NOV_1_2022_2300_UTC + 123, NewsTimeFormatter.parse("2022-11-01T23:00:00.123Z"));
+        assertEquals(NOV_1_2022_2300_UTC + 500, NewsTimeFormatter.parse("2022-11-01T23:00:00.5Z"));
+        assertEquals(NOV_1_2022_2300_UTC, NewsTimeFormatter.parse("2022-11-02T00:30:00+01:30"));
+        assertEquals(NOV_1_2022_2300_UTC, NewsTimeFormatter.parse("2022-11-01T18:00:00-05:00"));
+        assertEquals(0, NewsTimeFormatter.parse("1970-01-01T00:00:00Z"));
+        assertEquals(951782400000L, NewsTimeFormatter.parse("2000-02-29T00:00:00Z"));
+    }
+
+    @Test
+    public void parse_rejectsMalformedText() {
+        String[] bad = {"", "2022-11-01", "2022-13-01T00:00:00Z", "2022-11-01 23:00:00Z",
+                "2022-11-01T23:00:00X", "20x2-11-01T23:00:00Z"};
+        for (String text : bad) {
+            try {
+                NewsTimeFormatter.parse(text);
+                fail("Parsed " + text);
+            } catch (IllegalArgumentException expected) {
+                // expected
+            }
+        }
+    }
+
+    @Test
+    public void format_matchesSimpleDateFormatInSeveralZones() {
+        String[] zones = {"UTC", "Europe/London", "America/New_York", "Asia/Kolkata", "Australia/Sydney"};
+        Random random = new Random(42);
+        for (String id : zones) {
+            TimeZone zone = TimeZone.getTimeZone(id);
+            NewsTimeFormatter formatter = new NewsTimeFormatter(zone, Locale.US);
+            SimpleDateFormat date = new SimpleDateFormat("MMM d yyyy", Locale.US);
+            SimpleDateFormat time = new SimpleDateFormat("h:mm a", Locale.US);
+            date.setTimeZone(zone);
+            time.setTimeZone(zone);
+            for (int i = 0; i < 2000; i++) {
+                long instant = (long) (random.nextDouble() * 4102444800000L);
+                assertEquals(date.format(instant) + "\n" + time.format(instant), formatter.format(instant));
+            }
+        }
+    }
+
+    @Test
+    public void format_showsUtcInstantInLocalTime() {
+        NewsTimeFormatter formatter = new NewsTimeFormatter(TimeZone.getTimeZone("Europe/Paris"), Locale.US);
+        // 23:00 UTC is midnight the next day in Paris
+        assertEquals("Nov 2 2022\n12:00 AM", formatter.format(NewsTimeFormatter.parse("2022-11-01T23:00:00Z")));
+    }
+
+    @Test
+    public void formatRelative_bucketsAndReusesText() {
+        NewsTimeFormatter formatter = new NewsTimeFormatter(TimeZone.getTimeZone("UTC"), Locale.US,
+                RuntimeEnvironment.getApplication().getResources());
+        long now = NOV_1_2022_2300_UTC;
+        assertEquals("just now", formatter.formatRelative(now - 20 * 1000, now));
+        assertEquals("5 min ago", formatter.formatRelative(now - 5 * 60 * 1000 - 10, now));
+        assertEquals("3 h ago", formatter.formatRelative(now - 3 * 3600 * 1000 - 10, now));
+        assertNull(formatter.formatRelative(now - 25 * 3600 * 1000L, now));
+        assertSame(formatter.formatRelative(now - 5 * 60 * 1000, now),
+                formatter.formatRelative(now - 5 * 60 * 1000 - 30 * 1000, now));
+        assertEquals("1 h ago", formatter.formatRelative(now - 3600 * 1000, now));
+
+        // without resources only the absolute time is shown
+        assertNull(new NewsTimeFormatter(TimeZone.getTimeZone("UTC"), Locale.US).formatRelative(now, now));
+    }
+
+    @Test
+    public void timeZoneOrLocaleChange_dropsTheDefaultFormatter() {
+        Application application = RuntimeEnvironment.getApplication();
+        NewsTimeFormatter formatter = NewsTimeFormatter.getDefault(application);
+        assertSame(formatter, NewsTimeFormatter.getDefault(application));
+        assertSame(formatter, NewsTimeFormatter.getDefault());
+
+        application.sendBroadcast(new Intent(Intent.ACTION_TIMEZONE_CHANGED));
+        shadowOf(Looper.getMainLooper()).idle();
+        NewsTimeFormatter afterZone = NewsTimeFormatter.getDefault(application);
+        assertNotSame(formatter, afterZone);
+
+        application.sendBroadcast(new Intent(Intent.ACTION_LOCALE_CHANGED));
+        shadowOf(Looper.getMainLooper()).idle();
+        assertNotSame(afterZone, NewsTimeFormatter.getDefault(application));
+    }
+
+    @Test
+    public void format_allocatesLessThanTheSimpleDateFormatConversion() throws ParseException {
+        String[] stamps = new String[64];
+        Random random = new Random(7);
+        NewsTimeFormatter formatter = new NewsTimeFormatter(TimeZone.getDefault(), Locale.getDefault());
+        SimpleDateFormat iso = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss'Z'", Locale.US);
+        iso.setTimeZone(TimeZone.getTimeZone("UTC"));
+        for (int i = 0; i < stamps.length; i++) {
+            stamps[i] = iso.format(new Date(1600000000000L + random.nextInt(Integer.MAX_VALUE) * 100L));
+        }
+
+        // warm up both
+        for (int i = 0; i < ROUNDS; i++) {
+            legacyConversion(stamps[i % stamps.length]);
+            formatter.format(NewsTimeFormatter.parse(stamps[i % stamps.length]));
+        }
+
+        long bytes = Fixtures.allocatedBytes();
+        for (int i = 0; i < ROUNDS; i++) {
+            legacyConversion(stamps[i % stamps.length]);
+        }
+        long legacyBytes = Fixtures.allocatedBytes() - bytes;
+
+        bytes = Fixtures.allocatedBytes();
+        for (int i = 0; i < ROUNDS; i++) {
+            formatter.format(NewsTimeFormatter.parse(stamps[i % stamps.length]));
+        }
+        long newBytes = Fixtures.allocatedBytes() - bytes;
+
+        assertTrue("NewsTimeFormatter " + newBytes / ROUNDS + " B/op, SimpleDateFormat "
+                + legacyBytes / ROUNDS, newBytes < legacyBytes);
+    }
+
+    // the conversion the parser used before: chop the Z, parse as local time, format twice
+    private static String legacyConversion(String stamp) throws ParseException {
+        String jsonTime = stamp.substring(0, stamp.indexOf("Z"));
+        Date date = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss").parse(jsonTime);
+        long milliSeconds = date.getTime();
+        String articleDate = new SimpleDateFormat("MMM d yyyy").format(milliSeconds);
+        String articleTime = new SimpleDateFormat("h:mm a").format(milliSeconds);
+        return articleDate + "\n" + articleTime;
+    }
+}
@@ -0,0 +1,222 @@
+package com.example.theguardiannews;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import okhttp3.mockwebserver.Dispatcher;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+import okhttp3.mockwebserver.SocketPolicy;
+
+/**
+ * Tests for {@link ResilientHttpEngine} against a stub server that fails on demand: errors
+ * and dropped connections are retried, when the server says to if it does, a slow answer is
+ * raced by a second request, no request outlasts its deadline, and a server that keeps
+ * failing is left alone for a while.
+ */
+@RunWith(RobolectricTestRunner.class)
+public class ResilientHttpEngineTest {
+
+    private static final long BACKOFF_MILLIS = 10;
+    private static final long OPEN_MILLIS = 30 * 1000L;
+
+    private MockWebServer mServer;
+    private String mBody;
+    private ExecutorService mExecutor;
+    private FakeClock mClock;
+    // the faults of the next requests, one for each, then the body for the rest
+    private final AtomicInteger mRequests = new AtomicInteger();
+    private volatile Fault[] mFaults = new Fault[0];
+
+    private enum Fault {
+        UNAVAILABLE, DISCONNECT, SLOW, BUSY_FOR_A_SECOND, BUSY_FOR_AN_HOUR
+    }
+
+    @Before
+    public void setUp() throws IOException {
+        mBody = Fixtures.string(Fixtures.SEARCH_RESPONSE);
+        mServer = new MockWebServer();
+        mServer.setDispatcher(new Dispatcher() {
+            @Override
+            public MockResponse dispatch(RecordedRequest request) {
+                int index = mRequests.getAndIncrement();
+                Fault[] faults = mFaults;
+                Fault fault = index < faults.length ? faults[index] : null;
+                if (fault == Fault.UNAVAILABLE) {
+                    return new MockResponse().setResponseCode(503);
+                } else if (fault == Fault.DISCONNECT) {
+                    return new MockResponse().setSocketPolicy(SocketPolicy.DISCONNECT_AT_START);
+                } else if (fault == Fault.BUSY_FOR_A_SECOND) {
+                    return new MockResponse().setResponseCode(429).setHeader("Retry-After", "1");
+                } else if (fault == Fault.BUSY_FOR_AN_HOUR) {
+                    return new MockResponse().setResponseCode(503).setHeader("Retry-After", "3600");
+                } else if (fault == Fault.SLOW) {
+                    return new MockResponse().setBody(mBody).setHeadersDelay(3, TimeUnit.SECONDS);
+                }
+                return new MockResponse().setBody(mBody);
+            }
+        });
+        mServer.start();
+        mExecutor = Executors.newCachedThreadPool();
+        mClock = new FakeClock();
+        mClock.mNow = 1667260800000L;
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        mExecutor.shutdownNow();
+        mServer.shutdown();
+    }
+
+    @Test
+    public void failedRequests_areRetriedUntilTheServerAnswers() throws NewsFetchException {
+        mFaults = new Fault[]{Fault.UNAVAILABLE, Fault.DISCONNECT};
+        HttpEngine engine = engine(3, 0, 5);
+
+        List<News> news = fetch(engine);
+
+        assertNotNull(news);
+        assertTrue(news.size() > 0);
+        assertEquals(3, mServer.getRequestCount());
+    }
+
+    @Test
+    public void serverFailingEveryAttempt_tellsWhy() {
+        mFaults = new Fault[]{Fault.UNAVAILABLE, Fault.UNAVAILABLE, Fault.UNAVAILABLE};
+        HttpEngine engine = engine(3, 0, 5);
+
+        assertFailure(engine, NewsFetchException.Reason.SERVER);
+        assertEquals(3, mServer.getRequestCount());
+    }
+
+    @Test
+    public void slowAnswer_isRacedByASecondRequest() throws NewsFetchException {
+        mFaults = new Fault[]{Fault.SLOW};
+        HttpEngine engine = engine(1, 200, 5);
+
+        long start = System.nanoTime();
+        List<News> news = fetch(engine);
+        long millis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+
+        assertNotNull(news);
+        assertEquals(2, mServer.getRequestCount());
+        // the second request answered long before the first would have
+        assertTrue("took " + millis + "ms", millis < 2000);
+    }
+
+    @Test
+    public void slowAnswers_areGivenUpAtTheDeadline() {
+        mFaults = new Fault[]{Fault.SLOW, Fault.SLOW, Fault.SLOW};
+        HttpEngine engine = engine(3, 200, 5, 500);
+
+        // both raced attempts are still waiting for their headers when the deadline passes,
+        // and there is no time left to try again
+        assertFailure(engine, NewsFetchException.Reason.TIMEOUT);
+        assertEquals(2, mRequests.get());
+    }
+
+    @Test
+    public void retryAfter_isWaitedForBeforeTheNextAttempt() throws NewsFetchException {
+        mFaults = new Fault[]{Fault.BUSY_FOR_A_SECOND};
+        HttpEngine engine = engine(2, 0, 5);
+
+        long start = System.nanoTime();
+        assertNotNull(fetch(engine));
+        long millis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+
+        assertEquals(2, mServer.getRequestCount());
+        assertTrue("took " + millis + "ms", millis >= 1000);
+    }
+
+    @Test
+    public void retryAfterBeyondTheDeadline_isNotWaitedFor() {
+        mFaults = new Fault[]{Fault.BUSY_FOR_AN_HOUR};
+        HttpEngine engine = engine(3, 0, 5, 5000);
+
+        assertFailure(engine, NewsFetchException.Reason.SERVER);
+        assertEquals(1, mServer.getRequestCount());
+    }
+
+    @Test
+    public void retryAfter_isReadInSecondsOrAsADate() {
+        long now = mClock.mNow;
+        assertEquals(120000, ResilientHttpEngine.retryAfterMillis(" 120 ", now));
+        // 1 November 2022, midnight GMT, is now
+        assertEquals(30000, ResilientHttpEngine.retryAfterMillis("Tue, 01 Nov 2022 00:00:30 GMT", now));
+        assertEquals(0, ResilientHttpEngine.retryAfterMillis("Mon, 31 Oct 2022 23:00:00 GMT", now));
+        assertEquals(-1, ResilientHttpEngine.retryAfterMillis("soon", now));
+        assertEquals(-1, ResilientHttpEngine.retryAfterMillis(null, now));
+    }
+
+    @Test
+    public void serverFailingRepeatedly_isLeftAloneForAWhile() throws NewsFetchException {
+        mFaults = new Fault[]{Fault.UNAVAILABLE, Fault.UNAVAILABLE, Fault.UNAVAILABLE};
+        HttpEngine engine = engine(1, 0, 2);
+
+        assertFailure(engine, NewsFetchException.Reason.SERVER);
+        assertFailure(engine, NewsFetchException.Reason.SERVER);
+        // open: failing fast without a request
+        assertFailure(engine, NewsFetchException.Reason.UNAVAILABLE);
+        assertEquals(2, mServer.getRequestCount());
+
+        // half open: the one request let through fails, so it is open again
+        mClock.mNow += OPEN_MILLIS;
+        assertFailure(engine, NewsFetchException.Reason.SERVER);
+        assertFailure(engine, NewsFetchException.Reason.UNAVAILABLE);
+        assertEquals(3, mServer.getRequestCount());
+
+        // the server is back, and so are the requests
+        mClock.mNow += OPEN_MILLIS;
+        assertNotNull(fetch(engine));
+        assertNotNull(fetch(engine));
+        assertEquals(5, mServer.getRequestCount());
+    }
+
+    private HttpEngine engine(int maxAttempts, long hedgeAfterMillis, int failureThreshold) {
+        return engine(maxAttempts, hedgeAfterMillis, failureThreshold, 0);
+    }
+
+    private HttpEngine engine(int maxAttempts, long hedgeAfterMillis, int failureThreshold,
+                              long deadlineMillis) {
+        return new ResilientHttpEngine(new OkHttpEngine(5000, 5000, null), maxAttempts, BACKOFF_MILLIS,
+                hedgeAfterMillis, failureThreshold, OPEN_MILLIS, deadlineMillis, mExecutor, mClock);
+    }
+
+    private List<News> fetch(HttpEngine engine) throws NewsFetchException {
+        return Utilities.fetchNewsOrThrow(engine, mServer.url("/search").toString(), null, null, null, null);
+    }
+
+    private void assertFailure(HttpEngine engine, NewsFetchException.Reason reason) {
+        try {
+            fetch(engine);
+            fail("expected " + reason);
+        } catch (NewsFetchException e) {
+            assertEquals(reason, e.reason);
+        }
+    }
+
+    private static class FakeClock implements NewsSync.Clock {
+        volatile long mNow;
+
+        @Override
+        public long currentTimeMillis() {
+            return mNow;
+        }
+    }
+}
@@ -0,0 +1,237 @@
+package com.example.theguardiannews;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.robolectric.Shadows.shadowOf;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.os.Looper;
+import android.widget.ImageView;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+
+import javax.imageio.ImageIO;
+
+import okhttp3.mockwebserver.Dispatcher;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+import okio.Buffer;
+
+/**
+ * Tests for {@link ThumbnailLoader} against a stub server of 500x300 images, the size the
+ * Guardian sends: the hit rate and the bitmap memory held while scrolling a 500-row list
+ * down and back up, and the sharing and cancelling of fetches.
+ */
+@RunWith(RobolectricTestRunner.class)
+public class ThumbnailLoaderTest {
+
+    private static final int ROWS = 500;
+    // rows on screen at once, each with its own view
+    private static final int VISIBLE = 10;
+    // bitmaps the memory cache holds in the scrolling test
+    private static final int IN_MEMORY = 50;
+    private static final int WIDTH = 100;
+    private static final int HEIGHT = 60;
+
+    private Context mContext;
+    private MockWebServer mServer;
+    private byte[] mImage;
+    private File mDirectory;
+
+    @Before
+    public void setUp() throws IOException {
+        mContext = RuntimeEnvironment.getApplication();
+        mImage = png(500, 300);
+        mServer = new MockWebServer();
+        mServer.setDispatcher(new Dispatcher() {
+            @Override
+            public MockResponse dispatch(RecordedRequest request) {
+                return new MockResponse().setBody(new Buffer().write(mImage));
+            }
+        });
+        mServer.start();
+        mDirectory = new File(mContext.getCacheDir(), "thumbnail-test");
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        mServer.shutdown();
+        File[] files = mDirectory.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+    }
+
+    @Test
+    public void scrolling_downAndBackUp_fetchesEachImageOnce() {
+        int bitmapBytes = ThumbnailLoader.decode(mImage, WIDTH, HEIGHT).getByteCount();
+        int budget = bitmapBytes * IN_MEMORY;
+        // runs each fetch on the calling thread, the delivery still goes through the looper
+        ThumbnailLoader loader = loader(budget, new Executor() {
+            @Override
+            public void execute(Runnable command) {
+                command.run();
+            }
+        });
+        List<ImageView> views = new ArrayList<ImageView>();
+        for (int i = 0; i < VISIBLE; i++) {
+            views.add(new ImageView(mContext));
+        }
+
+        for (int row = 0; row < ROWS; row++) {
+            bind(loader, views, row);
+        }
+        int downLoads = loader.networkLoads();
+        for (int row = ROWS - 1; row >= 0; row--) {
+            bind(loader, views, row);
+        }
+
+        // the way back up never goes to the network: the newest rows are in memory, the rest on disk
+        assertEquals(ROWS, downLoads);
+        assertEquals(ROWS, loader.networkLoads());
+        assertEquals(ROWS, mServer.getRequestCount());
+        assertEquals(IN_MEMORY, loader.memoryHits());
+        assertEquals(ROWS - IN_MEMORY, loader.diskHits());
+        // the budget was filled, and only passed by the bitmap added before the eldest went
+        String peak = "peak " + loader.peakMemoryBytes() / 1024 + " KB, budget " + budget / 1024 + " KB";
+        assertTrue(peak, loader.peakMemoryBytes() > budget);
+        assertTrue(peak, loader.peakMemoryBytes() <= budget + bitmapBytes);
+    }
+
+    @Test
+    public void rowsWaitingForTheSameUrl_shareOneFetch() {
+        QueueExecutor executor = new QueueExecutor();
+        ThumbnailLoader loader = loader(1024 * 1024, executor);
+        ImageView first = new ImageView(mContext);
+        ImageView second = new ImageView(mContext);
+
+        loader.load(url(0), first);
+        loader.load(url(0), second);
+        executor.runAll();
+        shadowOf(Looper.getMainLooper()).idle();
+
+        assertEquals(1, executor.mRun);
+        assertEquals(1, mServer.getRequestCount());
+        assertNotNull(first.getDrawable());
+        assertNotNull(second.getDrawable());
+    }
+
+    @Test
+    public void recycledRow_cancelsItsFetch() {
+        QueueExecutor executor = new QueueExecutor();
+        ThumbnailLoader loader = loader(1024 * 1024, executor);
+        ImageView recycled = new ImageView(mContext);
+        ImageView shared = new ImageView(mContext);
+        ImageView stillShown = new ImageView(mContext);
+
+        loader.load(url(0), recycled);
+        loader.cancel(recycled);
+        // a fetch is only cancelled once nobody waits for it
+        loader.load(url(1), shared);
+        loader.load(url(1), stillShown);
+        loader.cancel(shared);
+        executor.runAll();
+        shadowOf(Looper.getMainLooper()).idle();
+
+        assertEquals(1, mServer.getRequestCount());
+        assertNull(recycled.getDrawable());
+        assertNull(shared.getDrawable());
+        assertNotNull(stillShown.getDrawable());
+    }
+
+    @Test
+    public void reboundRow_showsOnlyItsNewImage() {
+        QueueExecutor executor = new QueueExecutor();
+        ThumbnailLoader loader = loader(1024 * 1024, executor);
+        ImageView view = new ImageView(mContext);
+
+        loader.load(url(0), view);
+        loader.load("", view);
+        executor.runAll();
+        shadowOf(Looper.getMainLooper()).idle();
+
+        assertEquals(0, mServer.getRequestCount());
+        assertNull(view.getDrawable());
+    }
+
+    @Test
+    public void inSampleSize_keepsTheImageAtLeastTheTargetSize() {
+        assertEquals(4, ThumbnailLoader.inSampleSize(500, 300, WIDTH, HEIGHT));
+        assertEquals(1, ThumbnailLoader.inSampleSize(500, 300, 300, 300));
+        assertEquals(1, ThumbnailLoader.inSampleSize(50, 30, WIDTH, HEIGHT));
+        assertEquals(16, ThumbnailLoader.inSampleSize(3000, 1800, 150, 90));
+    }
+
+    @Test
+    public void decode_samplesTheImageDown() {
+        Bitmap bitmap = ThumbnailLoader.decode(mImage, WIDTH, HEIGHT);
+
+        assertTrue(bitmap.getWidth() >= WIDTH && bitmap.getWidth() < 2 * WIDTH);
+        assertTrue(bitmap.getHeight() >= HEIGHT && bitmap.getHeight() < 2 * HEIGHT);
+    }
+
+    // binds the row to the view that shows it, as the list does while scrolling
+    private void bind(ThumbnailLoader loader, List<ImageView> views, int row) {
+        loader.load(url(row), views.get(row % VISIBLE));
+        shadowOf(Looper.getMainLooper()).idle();
+    }
+
+    private ThumbnailLoader loader(int memoryBytes, Executor executor) {
+        return new ThumbnailLoader(new OkHttpEngine(1000, 1000, null),
+                new ImageDiskCache(mDirectory, 64 * 1024 * 1024), memoryBytes, WIDTH, HEIGHT, executor);
+    }
+
+    private String url(int row) {
+        return mServer.url("/img/" + row + ".png").toString();
+    }
+
+    private static byte[] png(int width, int height) throws IOException {
+        BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        for (int x = 0; x < width; x++) {
+            for (int y = 0; y < height; y++) {
+                image.setRGB(x, y, (x * 255 / width) << 16 | (y * 255 / height) << 8);
+            }
+        }
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ImageIO.write(image, "png", out);
+        return out.toByteArray();
+    }
+
+    // holds the fetches until the test runs them
+    private static class QueueExecutor implements Executor {
+        final List<Runnable> mQueue = new ArrayList<Runnable>();
+        int mRun;
+
+        @Override
+        public void execute(Runnable command) {
+            mQueue.add(command);
+        }
+
+        void runAll() {
+            for (Runnable command : mQueue) {
+                command.run();
+                mRun++;
+            }
+            mQueue.clear();
+        }
+    }
+}
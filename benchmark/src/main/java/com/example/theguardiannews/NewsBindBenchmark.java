@@ -0,0 +1,81 @@
+package com.example.theguardiannews;
+
+import static org.junit.Assert.assertEquals;
+
+import android.content.Context;
+
+import androidx.benchmark.BenchmarkState;
+import androidx.benchmark.junit4.BenchmarkRule;
+import androidx.recyclerview.widget.LinearLayoutManager;
+import androidx.recyclerview.widget.RecyclerView;
+import androidx.test.annotation.UiThreadTest;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.platform.app.InstrumentationRegistry;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * Times binding rows of the recorded results in {@link NewsAdapter}, the work done for every
+ * row that scrolls into view, and styling them in {@link NewsStyler}, done once a page.
+ */
+@RunWith(AndroidJUnit4.class)
+public class NewsBindBenchmark {
+
+    private static final int RESULTS = 100;
+
+    @Rule
+    public BenchmarkRule mBenchmarkRule = new BenchmarkRule();
+
+    @Test
+    @UiThreadTest
+    public void bindRow() throws IOException {
+        Context context = InstrumentationRegistry.getInstrumentation().getTargetContext();
+        List<News> news = recordedNews();
+        new NewsStyler(context).style(news);
+        NewsAdapter adapter = new NewsAdapter(context, new NewsAdapter.OnNewsClickListener() {
+            @Override
+            public void onNewsClick(News news) {
+            }
+        });
+        // the first list is submitted at once, without a diff on another thread
+        adapter.submitList(news);
+        assertEquals(RESULTS, adapter.getItemCount());
+        RecyclerView parent = new RecyclerView(context);
+        parent.setLayoutManager(new LinearLayoutManager(context));
+        NewsAdapter.ViewHolder holder = adapter.onCreateViewHolder(parent, 0);
+
+        BenchmarkState state = mBenchmarkRule.getState();
+        int position = 0;
+        while (state.keepRunning()) {
+            adapter.onBindViewHolder(holder, position++ % RESULTS);
+        }
+    }
+
+    @Test
+    public void styleResults() throws IOException {
+        Context context = InstrumentationRegistry.getInstrumentation().getTargetContext();
+        NewsStyler styler = new NewsStyler(context);
+        List<News> news = recordedNews();
+
+        BenchmarkState state = mBenchmarkRule.getState();
+        while (state.keepRunning()) {
+            styler.style(news);
+        }
+    }
+
+    // the recorded results without their thumbnails, so binding never waits on the network
+    private static List<News> recordedNews() throws IOException {
+        List<News> recorded = Utilities.extractNews(RecordedResponses.search(RESULTS));
+        for (int i = 0; i < recorded.size(); i++) {
+            News item = recorded.get(i);
+            recorded.set(i, new News(item.getId(), item.getSectionId(), item.getSection(), item.getTitle(),
+                    item.getAuthors(), item.getPublishedAt(), item.getLink(), ""));
+        }
+        return recorded;
+    }
+}
@@ -0,0 +1,88 @@
+package com.example.theguardiannews;
+
+import androidx.benchmark.BenchmarkState;
+import androidx.benchmark.junit4.BenchmarkRule;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.platform.app.InstrumentationRegistry;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.Locale;
+
+/**
+ * Times the text worked out for every result and query: reading and formatting publication
+ * dates, and turning the words typed in the settings into the Guardian and full-text search
+ * strings.
+ */
+@RunWith(AndroidJUnit4.class)
+public class NewsFormatBenchmark {
+
+    // a day of timestamps in the recorded response's format, a quarter of an hour apart
+    private static final String[] DATES = new String[96];
+    private static final long[] TIMES = new long[DATES.length];
+    private static final long NOV_1_2022 = 1667260800000L;
+
+    private static final String[] SEARCHES = {"climate", "  climate   talks ", "brexit vote  deal",
+            "\"a\" NOT b* (c)", "world cup final  result  tonight"};
+
+    static {
+        for (int i = 0; i < DATES.length; i++) {
+            DATES[i] = String.format(Locale.US, "2022-11-01T%02d:%02d:00Z", i / 4, i % 4 * 15);
+            TIMES[i] = NOV_1_2022 + i * 15 * 60 * 1000L;
+        }
+    }
+
+    @Rule
+    public BenchmarkRule mBenchmarkRule = new BenchmarkRule();
+
+    @Test
+    public void parsePublicationDate() {
+        BenchmarkState state = mBenchmarkRule.getState();
+        int i = 0;
+        while (state.keepRunning()) {
+            Utilities.parsePublicationDate(DATES[i++ % DATES.length]);
+        }
+    }
+
+    @Test
+    public void timeConversion() {
+        NewsTimeFormatter formatter = NewsTimeFormatter.getDefault();
+        BenchmarkState state = mBenchmarkRule.getState();
+        int i = 0;
+        while (state.keepRunning()) {
+            Utilities.timeConversion(TIMES[i++ % TIMES.length], formatter);
+        }
+    }
+
+    @Test
+    public void formatRelative() {
+        NewsTimeFormatter formatter = NewsTimeFormatter.getDefault(
+                InstrumentationRegistry.getInstrumentation().getTargetContext());
+        long now = NOV_1_2022 + DATES.length * 15 * 60 * 1000L;
+        BenchmarkState state = mBenchmarkRule.getState();
+        int i = 0;
+        while (state.keepRunning()) {
+            formatter.formatRelative(TIMES[i++ % TIMES.length], now);
+        }
+    }
+
+    @Test
+    public void searchStringFormatter() {
+        BenchmarkState state = mBenchmarkRule.getState();
+        int i = 0;
+        while (state.keepRunning()) {
+            MainActivity.searchStringFormatter(SEARCHES[i++ % SEARCHES.length], "AND");
+        }
+    }
+
+    @Test
+    public void matchExpression() {
+        BenchmarkState state = mBenchmarkRule.getState();
+        int i = 0;
+        while (state.keepRunning()) {
+            NewsStore.matchExpression(SEARCHES[i++ % SEARCHES.length]);
+        }
+    }
+}
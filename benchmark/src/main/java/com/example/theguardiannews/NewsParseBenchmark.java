@@ -0,0 +1,66 @@
+package com.example.theguardiannews;
+
+import static org.junit.Assert.assertEquals;
+
+import androidx.benchmark.BenchmarkState;
+import androidx.benchmark.junit4.BenchmarkRule;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Parses responses of 10, 100 and 1,000 results with the streaming {@link NewsJsonParser} and
+ * the DOM based {@link Utilities#extractNews(String)}.
+ */
+@RunWith(Parameterized.class)
+public class NewsParseBenchmark {
+
+    @Parameterized.Parameters(name = "results={0}")
+    public static List<Object[]> sizes() {
+        return Arrays.asList(new Object[][]{{10}, {100}, {1000}});
+    }
+
+    @Rule
+    public BenchmarkRule mBenchmarkRule = new BenchmarkRule();
+
+    private final int mResults;
+    private String mBody;
+    private byte[] mBytes;
+
+    public NewsParseBenchmark(int results) {
+        mResults = results;
+    }
+
+    @Before
+    public void setUp() throws IOException {
+        mBody = RecordedResponses.search(mResults);
+        mBytes = mBody.getBytes(Charset.forName("UTF-8"));
+    }
+
+    @Test
+    public void streamingParser() throws IOException {
+        assertEquals(mResults, NewsJsonParser.parse(new ByteArrayInputStream(mBytes)).size());
+        BenchmarkState state = mBenchmarkRule.getState();
+        while (state.keepRunning()) {
+            NewsJsonParser.parse(new ByteArrayInputStream(mBytes));
+        }
+    }
+
+    @Test
+    public void extractNews() {
+        assertEquals(mResults, Utilities.extractNews(mBody).size());
+        BenchmarkState state = mBenchmarkRule.getState();
+        while (state.keepRunning()) {
+            Utilities.extractNews(mBody);
+        }
+    }
+}
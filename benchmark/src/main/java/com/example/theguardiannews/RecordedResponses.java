@@ -0,0 +1,71 @@
+package com.example.theguardiannews;
+
+import android.content.Context;
+
+import androidx.test.platform.app.InstrumentationRegistry;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.Charset;
+
+/**
+ * The recorded Guardian /search response the unit tests use, packaged with the benchmarks,
+ * and responses of any size made from its results.
+ */
+final class RecordedResponses {
+
+    /** A recorded /search response with 12 results, some with several contributors. */
+    static final String SEARCH_RESPONSE = "guardian_search.json";
+
+    private RecordedResponses() {
+    }
+
+    /**
+     * A response with the given number of results, the recorded ones repeated in turn with
+     * their ids and links made unique.
+     */
+    static String search(int results) throws IOException {
+        try {
+            JSONObject recorded = new JSONObject(string(SEARCH_RESPONSE));
+            JSONObject response = recorded.getJSONObject("response");
+            JSONArray source = response.getJSONArray("results");
+            JSONArray copies = new JSONArray();
+            for (int i = 0; i < results; i++) {
+                JSONObject result = new JSONObject(source.getJSONObject(i % source.length()).toString());
+                if (i >= source.length()) {
+                    String suffix = "-" + i / source.length();
+                    result.put("id", result.getString("id") + suffix);
+                    result.put("webUrl", result.getString("webUrl") + suffix);
+                }
+                copies.put(result);
+            }
+            response.put("results", copies);
+            response.put("pageSize", results);
+            return recorded.toString();
+        } catch (JSONException e) {
+            throw new IOException("Malformed fixture " + SEARCH_RESPONSE, e);
+        }
+    }
+
+    static String string(String name) throws IOException {
+        // the assets are in the benchmark APK, not the app under test
+        Context context = InstrumentationRegistry.getInstrumentation().getContext();
+        InputStream in = context.getAssets().open(name);
+        try {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] buffer = new byte[8192];
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                out.write(buffer, 0, read);
+            }
+            return new String(out.toByteArray(), Charset.forName("UTF-8"));
+        } finally {
+            in.close();
+        }
+    }
+}
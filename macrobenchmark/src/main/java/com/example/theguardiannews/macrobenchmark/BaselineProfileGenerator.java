@@ -0,0 +1,41 @@
+package com.example.theguardiannews.macrobenchmark;
+
+import androidx.benchmark.macro.MacrobenchmarkScope;
+import androidx.benchmark.macro.junit4.BaselineProfileRule;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.Collections;
+
+import kotlin.Unit;
+import kotlin.jvm.functions.Function1;
+
+/**
+ * Collects the Baseline Profile shipped in {@code app/src/main/baseline-prof.txt}: the
+ * classes and methods used to start the app, show and scroll the feed, and open the
+ * settings. It needs a rooted device or an emulator image without Google Play.
+ */
+@RunWith(AndroidJUnit4.class)
+public class BaselineProfileGenerator {
+
+    @Rule
+    public BaselineProfileRule mProfileRule = new BaselineProfileRule();
+
+    @Test
+    public void feedAndSettings() {
+        mProfileRule.collectBaselineProfile(NewsJourneys.PACKAGE,
+                Collections.<String>emptyList(),
+                new Function1<MacrobenchmarkScope, Unit>() {
+                    @Override
+                    public Unit invoke(MacrobenchmarkScope scope) {
+                        NewsJourneys.startAndWaitForRows(scope);
+                        NewsJourneys.scrollFeed(scope);
+                        NewsJourneys.openSettings(scope);
+                        return Unit.INSTANCE;
+                    }
+                });
+    }
+}
@@ -0,0 +1,70 @@
+package com.example.theguardiannews.macrobenchmark;
+
+import androidx.benchmark.macro.MacrobenchmarkScope;
+import androidx.test.uiautomator.By;
+import androidx.test.uiautomator.Direction;
+import androidx.test.uiautomator.UiDevice;
+import androidx.test.uiautomator.UiObject2;
+import androidx.test.uiautomator.Until;
+
+/**
+ * What the benchmarks and the profile generator do with the app: start it, wait for the
+ * first rows, scroll the feed and open the settings.
+ */
+final class NewsJourneys {
+
+    static final String PACKAGE = "com.example.theguardiannews";
+
+    // how long the first page may take from the store or the server
+    private static final long LOAD_TIMEOUT_MILLIS = 10000;
+    private static final long UI_TIMEOUT_MILLIS = 3000;
+
+    private NewsJourneys() {
+    }
+
+    /**
+     * Start the app from the launcher and wait until its first page of rows is shown.
+     */
+    static void startAndWaitForRows(MacrobenchmarkScope scope) {
+        scope.pressHome();
+        scope.startActivityAndWait();
+        scope.getDevice().wait(Until.hasObject(By.res(PACKAGE, "title_text")), LOAD_TIMEOUT_MILLIS);
+    }
+
+    /**
+     * Fling the feed down and back up, which binds and recycles its rows.
+     */
+    static void scrollFeed(MacrobenchmarkScope scope) {
+        UiDevice device = scope.getDevice();
+        UiObject2 list = device.findObject(By.res(PACKAGE, "list"));
+        if (list == null) {
+            return;
+        }
+        // keeps the fling away from the gesture navigation area
+        list.setGestureMargin(device.getDisplayWidth() / 5);
+        list.fling(Direction.DOWN);
+        device.waitForIdle();
+        list.fling(Direction.UP);
+        device.waitForIdle();
+    }
+
+    /**
+     * Open the settings from the overflow menu and come back to the feed.
+     */
+    static void openSettings(MacrobenchmarkScope scope) {
+        UiDevice device = scope.getDevice();
+        UiObject2 more = device.wait(Until.findObject(By.desc("More options")), UI_TIMEOUT_MILLIS);
+        if (more == null) {
+            return;
+        }
+        more.click();
+        UiObject2 settings = device.wait(Until.findObject(By.text("Settings")), UI_TIMEOUT_MILLIS);
+        if (settings == null) {
+            return;
+        }
+        settings.click();
+        device.wait(Until.hasObject(By.text("Number of items to request")), UI_TIMEOUT_MILLIS);
+        device.pressBack();
+        device.wait(Until.hasObject(By.res(PACKAGE, "list")), UI_TIMEOUT_MILLIS);
+    }
+}
@@ -0,0 +1,73 @@
+package com.example.theguardiannews.macrobenchmark;
+
+import androidx.benchmark.macro.BaselineProfileMode;
+import androidx.benchmark.macro.CompilationMode;
+import androidx.benchmark.macro.MacrobenchmarkScope;
+import androidx.benchmark.macro.Metric;
+import androidx.benchmark.macro.StartupMode;
+import androidx.benchmark.macro.StartupTimingMetric;
+import androidx.benchmark.macro.junit4.MacrobenchmarkRule;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import kotlin.Unit;
+import kotlin.jvm.functions.Function1;
+
+/**
+ * Starts the app cold and warm, without and with its Baseline Profile, and reports the time
+ * to initial display, the first frame, and the time to full display, when the first page of
+ * rows is loaded and the app calls {@code reportFullyDrawn()}.
+ */
+@RunWith(Parameterized.class)
+public class StartupBenchmark {
+
+    private static final int ITERATIONS = 10;
+
+    @Parameterized.Parameters(name = "{0},{2}")
+    public static List<Object[]> modes() {
+        return Arrays.asList(new Object[][]{
+                {StartupMode.COLD, new CompilationMode.None(), "none"},
+                {StartupMode.COLD, new CompilationMode.Partial(BaselineProfileMode.Require, 0), "baselineProfile"},
+                {StartupMode.WARM, new CompilationMode.None(), "none"},
+                {StartupMode.WARM, new CompilationMode.Partial(BaselineProfileMode.Require, 0), "baselineProfile"}});
+    }
+
+    @Rule
+    public MacrobenchmarkRule mBenchmarkRule = new MacrobenchmarkRule();
+
+    private final StartupMode mStartupMode;
+    private final CompilationMode mCompilationMode;
+
+    public StartupBenchmark(StartupMode startupMode, CompilationMode compilationMode, String name) {
+        mStartupMode = startupMode;
+        mCompilationMode = compilationMode;
+    }
+
+    @Test
+    public void startup() {
+        mBenchmarkRule.measureRepeated(NewsJourneys.PACKAGE,
+                Collections.<Metric>singletonList(new StartupTimingMetric()),
+                mCompilationMode, mStartupMode, ITERATIONS,
+                new Function1<MacrobenchmarkScope, Unit>() {
+                    @Override
+                    public Unit invoke(MacrobenchmarkScope scope) {
+                        scope.pressHome();
+                        return Unit.INSTANCE;
+                    }
+                },
+                new Function1<MacrobenchmarkScope, Unit>() {
+                    @Override
+                    public Unit invoke(MacrobenchmarkScope scope) {
+                        NewsJourneys.startAndWaitForRows(scope);
+                        return Unit.INSTANCE;
+                    }
+                });
+    }
+}